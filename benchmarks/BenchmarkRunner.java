@@ -0,0 +1,65 @@
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+// MINIMAL BENCHMARK HARNESS: WARM-UP, TIMED MEASUREMENT, THROUGHPUT AND LATENCY PERCENTILES
+// (JMH cannot generate benchmarks for classes in the default package, which is where the app lives.)
+public class BenchmarkRunner {
+
+    @FunctionalInterface
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    private final long warmupNanos;
+    private final long measureNanos;
+    private final Pattern filter;
+
+    public BenchmarkRunner(double warmupSeconds, double measureSeconds, String filterRegex) {
+        this.warmupNanos = (long) (warmupSeconds * 1_000_000_000L);
+        this.measureNanos = (long) (measureSeconds * 1_000_000_000L);
+        this.filter = Pattern.compile(filterRegex);
+    }
+
+    public static void printHeader() {
+        System.out.printf("%-32s %12s %10s %10s %10s %10s %10s %8s%n",
+                "benchmark", "ops/s", "p50(us)", "p90(us)", "p99(us)", "p99.9(us)", "max(us)", "samples");
+    }
+
+    /** Runs the operation if its name matches the filter and prints one result line. */
+    public void run(String name, Operation operation) throws Exception {
+        if (!filter.matcher(name).find()) {
+            return;
+        }
+        long warmupEnd = System.nanoTime() + warmupNanos;
+        while (System.nanoTime() < warmupEnd) {
+            operation.run();
+        }
+
+        long[] samples = new long[1 << 16];
+        int count = 0;
+        long start = System.nanoTime();
+        long end = start + measureNanos;
+        long now = start;
+        while (now < end) {
+            operation.run();
+            long after = System.nanoTime();
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = after - now;
+            now = after;
+        }
+        double seconds = (now - start) / 1_000_000_000.0;
+
+        Arrays.sort(samples, 0, count);
+        System.out.printf("%-32s %12.1f %10.1f %10.1f %10.1f %10.1f %10.1f %8d%n",
+                name, count / seconds,
+                micros(samples, count, 0.50), micros(samples, count, 0.90), micros(samples, count, 0.99),
+                micros(samples, count, 0.999), samples[count - 1] / 1000.0, count);
+    }
+
+    private static double micros(long[] sorted, int count, double percentile) {
+        int idx = (int) Math.ceil(percentile * count) - 1;
+        return sorted[Math.max(0, Math.min(idx, count - 1))] / 1000.0;
+    }
+}
@@ -0,0 +1,278 @@
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+// EMBEDDED H2 (MySQL MODE) DATABASE SEEDED FROM create_and_populate.sql PLUS SCALED DATA
+public class H2Fixture {
+
+    private static final String[] SKIPPED_PREFIXES = {
+            "create database", "use ", "set foreign_key_checks", "drop ", "create trigger", "create function"
+    };
+
+    // MySQL's DATE_ADD(x, INTERVAL n UNIT) has no H2 equivalent in MySQL mode
+    private static final Pattern DATE_ADD = Pattern.compile("DATE_ADD\\(([^,]+), INTERVAL (\\d+) (\\w+)\\)");
+
+    // QUERY_CACHE_SIZE=0: otherwise H2 answers repeated identical queries from a result cache
+    private static final String URL = "jdbc:h2:mem:hospital_bench;MODE=MySQL;DB_CLOSE_DELAY=-1;QUERY_CACHE_SIZE=0";
+
+    public final ConnectionPool pool;
+    public final int patientCount;
+    public final int doctorCount;
+    public final int appointmentCount;
+    public final int billCount;
+    /** First id of the Person rows that are not (yet) patients, for insert benchmarks. */
+    public final int spareFirstPersonId;
+    public final int spareCount;
+
+    public H2Fixture(Path schemaScript, int patients, int doctors, int appointments, int spares) throws Exception {
+        this(schemaScript, patients, doctors, appointments, spares, false);
+    }
+
+    /** @param metrics time every statement through QueryMetrics (off by default so benchmarks measure the DAOs alone) */
+    public H2Fixture(Path schemaScript, int patients, int doctors, int appointments, int spares,
+                     boolean metrics) throws Exception {
+        this.pool = new ConnectionPool(poolProperties(URL, metrics));
+
+        runScript(schemaScript);
+
+        SplittableRandom random = new SplittableRandom(42);
+        PatientOnboarding onboarding = new PatientOnboarding(pool, 5000);
+        onboarding.onboard(IntStream.range(0, patients).mapToObj(i -> new PatientOnboarding.NewPatient(
+                "First" + i, "Last" + i, LocalDate.of(1940, 1, 1).plusDays(random.nextInt(25_000)),
+                "INS-" + i, i % 3 == 0 ? "Seeded note " + i : null)));
+
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            seedDoctors(connection, doctors);
+            seedAppointmentsAndBills(connection, appointments, random);
+            this.spareFirstPersonId = seedSparePersons(connection, spares);
+            connection.commit();
+        }
+        // The BillTotals and PatientBalance triggers are MySQL-only, so fill both once from the seeded bills
+        new BillSummaryTable(pool, true).rebuild();
+        new PatientBalanceLedger(pool, true).rebuild();
+        this.patientCount = count("Patient");
+        this.doctorCount = count("Doctor");
+        this.appointmentCount = count("Appointment");
+        this.billCount = count("Bill");
+        this.spareCount = spares;
+    }
+
+    public int maxId(String table, String column) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(" + column + "), 0) FROM " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    public int[] ids(String table, String column) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT " + column + " FROM " + table + " ORDER BY " + column)) {
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private int count(String table) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    // Runs the plain DDL/DML of the MySQL script; DELIMITER blocks, stored functions and triggers are skipped
+    /** A second pool over the same database whose every statement, commit and borrow waits rttMicros first. */
+    public ConnectionPool poolWithLatency(long rttMicros, boolean metrics) throws SQLException {
+        LatencyDriver.register();
+        return new ConnectionPool(poolProperties(LatencyDriver.url(URL, rttMicros), metrics));
+    }
+
+    private static Properties poolProperties(String url, boolean metrics) {
+        Properties props = new Properties();
+        props.setProperty("url", url);
+        props.setProperty("user", "sa");
+        props.setProperty("password", "");
+        props.setProperty("pool.minIdle", "4");
+        props.setProperty("pool.leakThresholdMs", "0");
+        props.setProperty("metrics.enabled", String.valueOf(metrics));
+        props.setProperty("metrics.slowQueryMs", "0");
+        return props;
+    }
+
+    private void runScript(Path script) throws IOException, SQLException {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inDelimiterBlock = false;
+        for (String line : Files.readAllLines(script, StandardCharsets.UTF_8)) {
+            String trimmed = line.trim();
+            if (trimmed.toUpperCase(Locale.ROOT).startsWith("DELIMITER")) {
+                inDelimiterBlock = !trimmed.endsWith(";");
+                continue;
+            }
+            if (inDelimiterBlock) {
+                continue;
+            }
+            int comment = line.indexOf("--");
+            String code = comment >= 0 ? line.substring(0, comment) : line;
+            current.append(code).append('\n');
+            if (code.trim().endsWith(";")) {
+                String sql = current.toString().trim();
+                statements.add(sql.substring(0, sql.length() - 1));
+                current.setLength(0);
+            }
+        }
+
+        try (Connection connection = pool.getConnection();
+             Statement stmt = connection.createStatement()) {
+            for (String sql : statements) {
+                String lower = sql.toLowerCase(Locale.ROOT);
+                boolean skip = sql.isEmpty();
+                for (String prefix : SKIPPED_PREFIXES) {
+                    skip |= lower.startsWith(prefix);
+                }
+                if (!skip) {
+                    stmt.execute(DATE_ADD.matcher(sql).replaceAll("DATEADD('$3', $2, $1)"));
+                }
+            }
+        }
+    }
+
+    private static void seedDoctors(Connection connection, int doctors) throws SQLException {
+        try (PreparedStatement person = connection.prepareStatement(
+                     "INSERT INTO Person (first_name, last_name, date_of_birth) VALUES (?, ?, ?)",
+                     Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement staff = connection.prepareStatement(
+                     "INSERT INTO Staff (staff_id, staff_role_id, department_id, hire_date) VALUES (?, 1, ?, ?)");
+             PreparedStatement doctor = connection.prepareStatement(
+                     "INSERT INTO Doctor (staff_id, specialty_id, license_no) VALUES (?, ?, ?)")) {
+            for (int i = 0; i < doctors; i++) {
+                person.setString(1, "Doc" + i);
+                person.setString(2, "Tor" + i);
+                person.setTimestamp(3, Timestamp.valueOf(LocalDateTime.of(1970, 1, 1, 0, 0)));
+                person.executeUpdate();
+                int id;
+                try (ResultSet keys = person.getGeneratedKeys()) {
+                    keys.next();
+                    id = keys.getInt(1);
+                }
+                staff.setInt(1, id);
+                staff.setInt(2, 1 + i % 2);
+                staff.setDate(3, Date.valueOf(LocalDate.of(2010, 1, 1)));
+                staff.executeUpdate();
+                doctor.setInt(1, id);
+                doctor.setInt(2, 1 + i % 2);
+                doctor.setString(3, "BENCH-LIC-" + i);
+                doctor.executeUpdate();
+            }
+        }
+    }
+
+    private static void seedAppointmentsAndBills(Connection connection, int appointments, SplittableRandom random)
+            throws SQLException {
+        int[] patientIds = idsOf(connection, "SELECT patient_id FROM Patient");
+        int[] doctorIds = idsOf(connection, "SELECT staff_id FROM Doctor");
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 8, 0);
+        try (PreparedStatement appt = connection.prepareStatement(
+                "INSERT INTO Appointment (patient_id, doctor_id, scheduled_at, reason, status_id) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < appointments; i++) {
+                appt.setInt(1, patientIds[random.nextInt(patientIds.length)]);
+                appt.setInt(2, doctorIds[random.nextInt(doctorIds.length)]);
+                appt.setTimestamp(3, Timestamp.valueOf(base.plusMinutes(30L * i)));
+                appt.setString(4, "Visit " + i);
+                appt.setInt(5, 1 + random.nextInt(3));
+                appt.addBatch();
+                if (i % 1000 == 999) {
+                    appt.executeBatch();
+                }
+            }
+            appt.executeBatch();
+        }
+
+        // Every other appointment gets a bill with two lines
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("INSERT INTO Bill (patient_id, appointment_id, created_at) "
+                    + "SELECT patient_id, appointment_id, scheduled_at FROM Appointment WHERE MOD(appointment_id, 2) = 0");
+        }
+        try (PreparedStatement item = connection.prepareStatement(
+                "INSERT INTO BillItem (bill_no, order_no, charge_type, service_id, description, amount) VALUES (?, ?, ?, ?, ?, ?)")) {
+            int n = 0;
+            for (int billNo : idsOf(connection, "SELECT bill_no FROM Bill WHERE bill_no > 1")) {
+                item.setInt(1, billNo);
+                item.setInt(2, 1);
+                item.setString(3, "Doctor");
+                item.setNull(4, Types.INTEGER);
+                item.setString(5, "Consultation");
+                item.setBigDecimal(6, new BigDecimal("100.00"));
+                item.addBatch();
+                item.setInt(1, billNo);
+                item.setInt(2, 2);
+                item.setString(3, "Service");
+                item.setInt(4, 2);
+                item.setString(5, "X-Ray imaging");
+                item.setBigDecimal(6, new BigDecimal("250.00"));
+                item.addBatch();
+                if (++n % 500 == 0) {
+                    item.executeBatch();
+                }
+            }
+            item.executeBatch();
+        }
+    }
+
+    private static int seedSparePersons(Connection connection, int spares) throws SQLException {
+        int first = -1;
+        try (PreparedStatement person = connection.prepareStatement(
+                "INSERT INTO Person (first_name, last_name, date_of_birth) VALUES ('Spare', 'Person', ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < spares; i++) {
+                person.setTimestamp(1, Timestamp.valueOf(LocalDateTime.of(1990, 1, 1, 0, 0)));
+                person.executeUpdate();
+                try (ResultSet keys = person.getGeneratedKeys()) {
+                    keys.next();
+                    if (first < 0) {
+                        first = keys.getInt(1);
+                    }
+                }
+            }
+        }
+        return first;
+    }
+
+    private static int[] idsOf(Connection connection, String sql) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
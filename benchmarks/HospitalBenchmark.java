@@ -0,0 +1,437 @@
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// DAO BENCHMARKS AGAINST AN EMBEDDED H2 DATABASE
+//   mvn -Pbench compile exec:java -Dexec.args="patients=10000 appointments=100000 seconds=5 filter=appointment"
+// Arguments (all optional): patients, doctors, appointments, warmup, seconds, filter (regex on benchmark names),
+// schema (path to create_and_populate.sql), metrics (on: time every statement and print the top 15 at the end),
+// rtt (microseconds added to every statement, commit and connection check, as a network to MySQL would; 0 = none).
+public class HospitalBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                options.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        int patients = Integer.parseInt(options.getOrDefault("patients", "10000"));
+        int doctors = Integer.parseInt(options.getOrDefault("doctors", "50"));
+        int appointments = Integer.parseInt(options.getOrDefault("appointments", "50000"));
+        double warmup = Double.parseDouble(options.getOrDefault("warmup", "2"));
+        double seconds = Double.parseDouble(options.getOrDefault("seconds", "5"));
+        String filter = options.getOrDefault("filter", ".*");
+        Path schema = Path.of(options.getOrDefault("schema", "src/create_and_populate.sql"));
+        boolean metrics = options.getOrDefault("metrics", "off").equals("on");
+        long rttMicros = Long.parseLong(options.getOrDefault("rtt", "0"));
+
+        long seedStart = System.nanoTime();
+        H2Fixture db = new H2Fixture(schema, patients, doctors, appointments, 1000, metrics);
+        System.out.printf("Seeded %d patients, %d doctors, %d appointments, %d bills in %.1fs%n%n",
+                db.patientCount, db.doctorCount, db.appointmentCount, db.billCount,
+                (System.nanoTime() - seedStart) / 1e9);
+
+        // Seeding runs without the simulated latency
+        ConnectionPool pool = rttMicros > 0 ? db.poolWithLatency(rttMicros, metrics) : db.pool;
+        if (rttMicros > 0) {
+            System.out.printf("Simulated round trip: %d us per statement, commit and connection check%n%n", rttMicros);
+        }
+        if (metrics) {
+            // Seeding is not part of any benchmark
+            pool.metrics().reset();
+        }
+        new HospitalBenchmark(db, pool, new BenchmarkRunner(warmup, seconds, filter)).runAll();
+        if (metrics) {
+            System.out.println();
+            System.out.print(pool.metrics().report(15));
+        }
+        if (pool != db.pool) {
+            pool.close();
+        }
+        db.pool.close();
+    }
+
+    private static final String LEGACY_BILL_SUMMARY = "SELECT b.bill_no, b.patient_id, p.first_name, p.last_name, "
+            + "b.appointment_id, b.created_at, COALESCE(SUM(bi.amount), 0) FROM Bill b "
+            + "JOIN Patient pt ON pt.patient_id = b.patient_id JOIN Person p ON p.person_id = pt.patient_id "
+            + "LEFT JOIN BillItem bi ON bi.bill_no = b.bill_no "
+            + "GROUP BY b.bill_no, b.patient_id, p.first_name, p.last_name, b.appointment_id, b.created_at "
+            + "HAVING b.bill_no < ? ORDER BY b.bill_no DESC LIMIT 20";
+
+    private static final String LEGACY_PATIENT_BALANCE = "SELECT COALESCE(SUM(bi.amount), 0) FROM Bill b "
+            + "LEFT JOIN BillItem bi ON bi.bill_no = b.bill_no WHERE b.patient_id = ?";
+
+    // Main.viewPatientDetailsWithJoin: demographics again plus the appointment count
+    private static final String LEGACY_PATIENT_DETAILS = "SELECT p.person_id, p.first_name, p.last_name, p.date_of_birth, "
+            + "pt.insurance_id, pt.notes, COUNT(a.appointment_id) FROM Person p "
+            + "JOIN Patient pt ON pt.patient_id = p.person_id LEFT JOIN Appointment a ON a.patient_id = pt.patient_id "
+            + "WHERE p.person_id = ? GROUP BY p.person_id, p.first_name, p.last_name, p.date_of_birth, pt.insurance_id, pt.notes";
+
+    // How booking and billing notes used to be added: rewrite the patient's whole notes column
+    private static final String LEGACY_APPEND_NOTE = "UPDATE Patient SET notes = CONCAT(COALESCE(notes, ''), ?) WHERE patient_id = ?";
+    private static final String BENCH_NOTE = "Follow-up booked, patient asked for a morning slot next time.";
+
+    // The old filter on v_patient_appointments: the IS NULL sort key matches no index, so every row of the status is sorted
+    private static final String LEGACY_APPOINTMENTS_BY_STATUS = "SELECT pt.patient_id, p.first_name, p.last_name, "
+            + "a.appointment_id, a.doctor_id, a.scheduled_at, a.reason, ast.status FROM Patient pt "
+            + "JOIN Person p ON p.person_id = pt.patient_id LEFT JOIN Appointment a ON a.patient_id = pt.patient_id "
+            + "LEFT JOIN AppointmentStatus ast ON ast.status_id = a.status_id "
+            + "WHERE ast.status = ? ORDER BY a.scheduled_at IS NULL, a.scheduled_at LIMIT 50";
+
+    private static final String[] LEGACY_CORE_TABLES = {"person", "staffrole", "specialty", "department", "patient",
+            "staff", "doctor", "appointmentstatus", "appointment", "bill"};
+
+    private final H2Fixture db;
+    private final ConnectionPool pool;
+    private final BenchmarkRunner runner;
+    private final SplittableRandom random = new SplittableRandom(7);
+    private final int[] patientIds;
+    private final int[] doctorIds;
+    private final int[] billNos;
+    private final int maxAppointmentId;
+    private final AtomicInteger nextSparePerson;
+    private final AtomicInteger nextFreeSlot = new AtomicInteger();
+    // First year after the seeded appointments (2031 at the default sizes); the schedule benchmarks book from here
+    private final int scheduleYear;
+
+    HospitalBenchmark(H2Fixture db, ConnectionPool pool, BenchmarkRunner runner) throws Exception {
+        this.db = db;
+        this.pool = pool;
+        this.runner = runner;
+        this.patientIds = db.ids("Patient", "patient_id");
+        this.doctorIds = db.ids("Doctor", "staff_id");
+        this.billNos = db.ids("Bill", "bill_no");
+        this.maxAppointmentId = db.maxId("Appointment", "appointment_id");
+        this.scheduleYear = Math.max(2031, LocalDateTime.of(2024, 1, 1, 8, 0).plusMinutes(30L * maxAppointmentId).getYear() + 1);
+        this.nextSparePerson = new AtomicInteger();
+    }
+
+    void runAll() throws Exception {
+        ReferenceData referenceData = new ReferenceData(pool, Duration.ofMinutes(5));
+        PatientTable patients = new PatientTable(pool, null, null);
+        PatientTable cachedPatients = new PatientTable(pool, new EntityCache<>("patient", 10_000, Duration.ofMinutes(1)), null);
+        AppointmentTable appointments = new AppointmentTable(pool, referenceData, null, null, null);
+        AppointmentTable cachedAppointments = new AppointmentTable(pool, referenceData,
+                new EntityCache<>("appointment", 10_000, Duration.ofMinutes(1)), null, null);
+        BillTable bills = new BillTable(pool, referenceData, null);
+        // H2Fixture fills both tables, standing in for the MySQL triggers
+        BillSummaryTable billSummaries = new BillSummaryTable(pool, true);
+        PatientBalanceLedger balances = new PatientBalanceLedger(pool, true);
+
+        BenchmarkRunner.printHeader();
+
+        // ---------- single-row lookups ----------
+        runner.run("patient.selectById", () -> patients.selectPatientByID(anyPatient()));
+        runner.run("patient.selectById.cached", () -> cachedPatients.selectPatientByID(hotPatient()));
+        runner.run("appointment.selectById", () -> appointments.selectAppointmentByID(anyAppointment()));
+        runner.run("appointment.selectById.cached", () -> cachedAppointments.selectAppointmentByID(hotAppointment()));
+        runner.run("bill.selectById", () -> bills.selectBillByID(anyBill()));
+        runner.run("bill.listItems", () -> bills.listBillItems(anyBill()));
+        runner.run("bill.listForPatient", () -> bills.listBillsForPatient(anyPatient()));
+        runner.run("appointment.listForPatient", () -> appointments.listAppointmentsForPatient(anyPatient()));
+        runner.run("balance.ledger", () -> balances.balanceOf(anyPatient()));
+        // What GetPatientBalance used to do per call
+        runner.run("balance.aggregate", () -> {
+            try (Connection connection = pool.getConnection();
+                 PreparedStatement ps = connection.prepareStatement(LEGACY_PATIENT_BALANCE)) {
+                ps.setInt(1, anyPatient());
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                }
+            }
+        });
+        int[] balanceBatch = new int[500];
+        runner.run("balance.ledgerBatch(500)", () -> {
+            for (int i = 0; i < balanceBatch.length; i++) {
+                balanceBatch[i] = anyPatient();
+            }
+            balances.balancesOf(balanceBatch);
+        });
+
+        // ---------- patient dashboard: three lookups one after another vs in parallel ----------
+        runner.run("dashboard.serial", () -> {
+            int patientId = anyPatient();
+            patients.selectPatientByID(patientId);
+            appointments.listAppointmentsForPatient(patientId);
+            bills.listBillsForPatient(patientId);
+        });
+        try (AsyncDao async = new AsyncDao(pool, patients, appointments, bills)) {
+            runner.run("dashboard.async", () -> AsyncDao.await(async.dashboard(anyPatient())));
+        }
+        // The patient screen before PatientDashboard: four round trips, Person/Patient joined again in each
+        runner.run("dashboard.fourQueries", () -> {
+            int patientId = anyPatient();
+            patients.selectPatientByID(patientId);
+            try (Connection connection = pool.getConnection()) {
+                for (String sql : new String[] {LEGACY_PATIENT_DETAILS, LEGACY_PATIENT_BALANCE}) {
+                    try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                        ps.setInt(1, patientId);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            rs.next();
+                        }
+                    }
+                }
+            }
+            bills.listBillsForPatient(patientId);
+        });
+        PatientDashboardQuery dashboardQuery = new PatientDashboardQuery(pool, referenceData, billSummaries, balances);
+        runner.run("dashboard.singleQuery", () -> dashboardQuery.load(anyPatient(), 5, 5));
+
+        // ---------- list scans ----------
+        runner.run("patient.listPage(50)", () -> patients.listPatientsAfter(anyPatient(), 50));
+        runner.run("appointment.listPage(50)", () -> appointments.listAppointmentsAfter(anyAppointment(), 50));
+        runner.run("billSummary.latestPage(20)", () -> billSummaries.listLatest(anyBill(), 20));
+        // What the old BillSummary view did on every dashboard read
+        runner.run("billSummary.aggregatePage(20)", () -> {
+            try (Connection connection = pool.getConnection();
+                 PreparedStatement ps = connection.prepareStatement(LEGACY_BILL_SUMMARY)) {
+                ps.setInt(1, anyBill());
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        rs.getBigDecimal(7);
+                    }
+                }
+            }
+        });
+        int[] sink = new int[1];
+        runner.run("patient.streamAll", () -> patients.streamAllPatients(p -> sink[0] += p.patientId()));
+        runner.run("appointment.streamAll", () -> appointments.streamAllAppointments(a -> sink[0] += a.appointmentId()));
+
+        // ---------- appointment search: one keyset page of 50 from a random point in time ----------
+        AppointmentSearch search = new AppointmentSearch(pool, referenceData);
+        runner.run("search.week(50)", () -> {
+            LocalDateTime from = anyTime();
+            search.search(AppointmentSearch.Filter.any().between(from, from.plusDays(7)), null, 50);
+        });
+        runner.run("search.doctor(50)", () -> search.search(AppointmentSearch.Filter.any().doctor(anyDoctor())
+                .between(anyTime(), null), null, 50));
+        runner.run("search.patient(50)", () -> search.search(AppointmentSearch.Filter.any().patient(anyPatient()), null, 50));
+        runner.run("search.status+week(50)", () -> {
+            LocalDateTime from = anyTime();
+            search.search(AppointmentSearch.Filter.any().status(1 + random.nextInt(3)).between(from, from.plusDays(7)), null, 50);
+        });
+        runner.run("search.doctor+status(50)", () -> search.search(AppointmentSearch.Filter.any().doctor(anyDoctor())
+                .status(1 + random.nextInt(3)).between(anyTime(), null), null, 50));
+        runner.run("search.allFilters(50)", () -> {
+            LocalDateTime from = anyTime();
+            search.search(AppointmentSearch.Filter.any().patient(anyPatient()).doctor(anyDoctor())
+                    .status(1 + random.nextInt(3)).between(from, from.plusDays(365)), null, 50);
+        });
+        // Any page deep into the table, reached by its cursor
+        runner.run("search.cursorPage(50)", () -> search.search(AppointmentSearch.Filter.any(),
+                new AppointmentSearch.Cursor(anyTime(), 0), 50));
+        runner.run("search.statusView(legacy)", () -> {
+            try (Connection connection = pool.getConnection();
+                 PreparedStatement ps = connection.prepareStatement(LEGACY_APPOINTMENTS_BY_STATUS)) {
+                ps.setString(1, referenceData.statusName(1 + random.nextInt(3)));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        rs.getInt(4);
+                    }
+                }
+            }
+        });
+
+        // ---------- writes ----------
+        runner.run("patient.updateNotes", () -> patients.updatePatientNotes(anyPatient(), "Benchmark note"));
+        runner.run("patient.insert+delete", () -> {
+            // insert+delete leaves the Person row free again, so a small ring of spare persons is enough
+            int personId = db.spareFirstPersonId + Math.floorMod(nextSparePerson.getAndIncrement(), db.spareCount);
+            patients.insertPatient(personId, "BENCH", null);
+            patients.deletePatient(personId);
+        });
+        runner.run("appointment.insert", () -> appointments.insertAppointment(anyPatient(), anyDoctor(),
+                Timestamp.valueOf(LocalDateTime.of(2030, 1, 1, 9, 0)), "Benchmark", 1));
+        runner.run("appointment.updateStatus", () -> appointments.updateAppointmentStatus(anyAppointment(), 1 + random.nextInt(3)));
+        runner.run("appointment.insert+delete", () -> appointments.deleteAppointment(appointments.insertAppointment(
+                anyPatient(), anyDoctor(), Timestamp.valueOf(LocalDateTime.of(2030, 1, 1, 9, 0)), null, 1)));
+        runner.run("bill.insert+delete", () -> bills.deleteBill(bills.insertBill(anyPatient(), null)));
+        List<BillTable.NewItem> threeItems = List.of(BillTable.NewItem.service(1), BillTable.NewItem.service(2),
+                BillTable.NewItem.charge("Room", "Ward bed", new BigDecimal("80.00")));
+        runner.run("bill.createWithItems(3)+delete", () -> bills.deleteBill(
+                bills.createBillWithItems(anyPatient(), null, threeItems).bill().billNo()));
+
+        // ---------- patient notes: one long-stay patient gets every note ----------
+        // The CONCAT column grows with each call; an appended PatientNote row costs the same however many came before
+        int notePatient = patientIds[patientIds.length - 1];
+        runner.run("note.concat(samePatient)", () -> {
+            try (Connection connection = pool.getConnection();
+                 PreparedStatement ps = connection.prepareStatement(LEGACY_APPEND_NOTE)) {
+                ps.setString(1, "\n[Benchmark] " + BENCH_NOTE);
+                ps.setInt(2, notePatient);
+                ps.executeUpdate();
+            }
+        });
+        PatientNotes notes = new PatientNotes(pool);
+        runner.run("note.append(samePatient)", () -> notes.append(notePatient, "bench", BENCH_NOTE));
+        Path noteLogFile = Files.createTempFile("bench-notes", ".log");
+        Files.delete(noteLogFile);
+        try (PatientNoteLog noteLog = PatientNoteLog.open(noteLogFile)) {
+            PatientNotes loggedNotes = new PatientNotes(pool, noteLog, null);
+            runner.run("note.append+log", () -> loggedNotes.append(anyPatient(), "bench", BENCH_NOTE));
+            // Eight writers at once share the log's fsyncs (group commit). Log only: H2 in MySQL mode can hand out
+            // duplicate AUTO_INCREMENT keys to concurrent inserts, so the table is left out here.
+            ExecutorService writers = Executors.newFixedThreadPool(8);
+            AtomicLong nextNoteId = new AtomicLong(1L << 40);
+            try {
+                List<Future<?>> pending = new ArrayList<>(8);
+                runner.run("noteLog.append(8 concurrent)", () -> {
+                    for (int i = 0; i < 8; i++) {
+                        PatientNote note = new PatientNote(nextNoteId.getAndIncrement(), anyPatient(),
+                                LocalDateTime.now(), "bench", BENCH_NOTE);
+                        pending.add(writers.submit(() -> {
+                            noteLog.append(note);
+                            return null;
+                        }));
+                    }
+                    for (Future<?> done : pending) {
+                        done.get();
+                    }
+                    pending.clear();
+                });
+            } finally {
+                writers.shutdown();
+            }
+            if (noteLog.stats().records() > 0) {
+                System.out.println(noteLog.stats());
+            }
+        } finally {
+            Files.deleteIfExists(noteLogFile);
+        }
+
+        // ---------- multi-statement transaction ----------
+        runner.run("billing.transaction", () -> {
+            try (Connection connection = pool.getConnection()) {
+                connection.setAutoCommit(false);
+                BillingWorkflow.apply(connection, null, null, new BillingWorkflow.Request(anyPatient(), anyDoctor(),
+                        Timestamp.valueOf(LocalDateTime.of(2030, 1, 1, 10, 0)), "Benchmark", 1, "bench"));
+                connection.commit();
+            }
+        });
+        BookingService booking = new BookingService(pool, null, null, null, 5, Duration.ofMillis(5));
+        runner.run("booking.service", () -> booking.bookAndBill(new BillingWorkflow.Request(anyPatient(), anyDoctor(),
+                Timestamp.valueOf(LocalDateTime.of(2030, 1, 1, 10, 0)), "Benchmark", 1, "bench")));
+        if (booking.stats().committed() > 0) {
+            System.out.println(booking.stats());
+        }
+
+        // ---------- double-booking check ----------
+        DoctorSchedule schedule = new DoctorSchedule(pool, referenceData, 30);
+        long warmStart = System.nanoTime();
+        int indexed = schedule.warm(LocalDateTime.of(2000, 1, 1, 0, 0));
+        System.out.printf("Doctor schedule: %d appointment(s) indexed in %.1f ms%n", indexed, (System.nanoTime() - warmStart) / 1e6);
+        AppointmentTable scheduledAppointments = new AppointmentTable(pool, referenceData, null, schedule, null);
+        LocalDateTime taken = LocalDateTime.of(scheduleYear, 1, 1, 9, 0);
+        for (int doctorId : doctorIds) {
+            scheduledAppointments.insertAppointment(anyPatient(), doctorId, Timestamp.valueOf(taken), "Benchmark", 1);
+        }
+        runner.run("schedule.rejectOverlap", () -> {
+            try {
+                schedule.hold(anyDoctor(), taken.plusMinutes(10)).close();
+            } catch (DoctorSchedule.ConflictException expected) {
+                return; // the outcome being measured
+            }
+            throw new IllegalStateException("overlapping slot was accepted");
+        });
+        runner.run("schedule.hold+release", () -> schedule.hold(anyDoctor(), freeSlot()).close());
+        runner.run("appointment.book+delete", () -> scheduledAppointments.deleteAppointment(
+                scheduledAppointments.insertAppointment(anyPatient(), anyDoctor(), Timestamp.valueOf(freeSlot()), null, 1)));
+
+        // ---------- free-slot search ----------
+        // A busy week: every doctor ~90% booked (held in memory only), so searches have to skip most slots
+        LocalDate busyWeek = LocalDate.of(scheduleYear, 3, 1).with(TemporalAdjusters.nextOrSame(DayOfWeek.MONDAY));
+        for (int doctorId : doctorIds) {
+            for (int day = 0; day < 7; day++) {
+                for (int k = 0; k < schedule.slotsPerDay(); k++) {
+                    if (random.nextInt(10) != 0) {
+                        schedule.hold(doctorId, schedule.slotStart(busyWeek.plusDays(day), k));
+                    }
+                }
+            }
+        }
+        SlotSearch slotSearch = new SlotSearch(pool, schedule);
+        int specialties = db.maxId("Specialty", "specialty_id");
+        LocalDateTime weekStart = busyWeek.atStartOfDay();
+        runner.run("slotSearch.anyDoctor(10)", () -> slotSearch.search(null,
+                weekStart.plusHours(random.nextInt(72)), weekStart.plusDays(7), 10));
+        runner.run("slotSearch.specialty(10)", () -> slotSearch.search(1 + random.nextInt(specialties),
+                weekStart.plusHours(random.nextInt(72)), weekStart.plusDays(7), 10));
+        runner.run("slotSearch.specialty(week)", () -> slotSearch.search(1 + random.nextInt(specialties),
+                weekStart, weekStart.plusDays(7), Integer.MAX_VALUE));
+
+        // ---------- startup schema check ----------
+        // What ensureCoreTables used to do on every launch: one metadata lookup per core table
+        runner.run("startup.metadataProbe", () -> {
+            try (Connection connection = pool.getConnection()) {
+                DatabaseMetaData meta = connection.getMetaData();
+                for (String table : LEGACY_CORE_TABLES) {
+                    try (ResultSet rs = meta.getTables(null, null, table, null)) {
+                        rs.next();
+                    }
+                }
+            }
+        });
+        runner.run("startup.schemaVersion", () -> {
+            try (Connection connection = pool.getConnection()) {
+                SchemaMigrations.appliedVersions(connection);
+            }
+        });
+    }
+
+    // A slot no other benchmark operation has used: one hour further on each call
+    private LocalDateTime freeSlot() {
+        return LocalDateTime.of(scheduleYear + 1, 1, 1, 0, 0).plusHours(nextFreeSlot.getAndIncrement());
+    }
+
+    // Seeded appointments are 30 minutes apart from 2024-01-01 08:00
+    private LocalDateTime anyTime() {
+        return LocalDateTime.of(2024, 1, 1, 8, 0).plusMinutes(30L * random.nextInt(maxAppointmentId));
+    }
+
+    private int anyPatient() {
+        return patientIds[random.nextInt(patientIds.length)];
+    }
+
+    // Front-desk access pattern: a few hundred patients read over and over
+    private int hotPatient() {
+        return patientIds[random.nextInt(Math.min(500, patientIds.length))];
+    }
+
+    private int anyDoctor() {
+        return doctorIds[random.nextInt(doctorIds.length)];
+    }
+
+    private int anyAppointment() {
+        return 1 + random.nextInt(maxAppointmentId);
+    }
+
+    private int hotAppointment() {
+        return 1 + random.nextInt(Math.min(500, maxAppointmentId));
+    }
+
+    private int anyBill() {
+        return billNos[random.nextInt(billNos.length)];
+    }
+}
@@ -0,0 +1,125 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+// JDBC DRIVER THAT ADDS A SIMULATED NETWORK ROUND TRIP TO EVERY CALL THAT WOULD REACH A REMOTE SERVER
+//   jdbc:rtt:<micros>:<real url>, e.g. jdbc:rtt:250:jdbc:h2:mem:hospital_bench
+// Embedded H2 answers in-process, so a benchmark against it counts statements as nearly free; against MySQL each
+// one also pays a trip over the network. Every execute*, commit, rollback, setAutoCommit and isValid (the pool's
+// check on borrow) waits <micros> before it runs. Fetching the rows of a result set is not delayed.
+public final class LatencyDriver implements Driver {
+
+    private static final String PREFIX = "jdbc:rtt:";
+    // Parking overshoots by tens of microseconds, so the last stretch of each delay is spun
+    private static final long SPIN_NANOS = 50_000;
+
+    private static volatile boolean registered;
+
+    public static synchronized void register() throws SQLException {
+        if (!registered) {
+            DriverManager.registerDriver(new LatencyDriver());
+            registered = true;
+        }
+    }
+
+    /** The url to hand to ConnectionPool for the given real url and delay. */
+    public static String url(String realUrl, long rttMicros) {
+        return PREFIX + rttMicros + ":" + realUrl;
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        int colon = url.indexOf(':', PREFIX.length());
+        if (colon < 0) {
+            throw new SQLException("Expected " + PREFIX + "<micros>:<url>, got " + url);
+        }
+        long rttNanos = Long.parseLong(url.substring(PREFIX.length(), colon)) * 1000;
+        Connection connection = DriverManager.getConnection(url.substring(colon + 1), info);
+        return (Connection) wrap(Connection.class, connection, rttNanos);
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    // Connections hand out wrapped statements; both delay the calls that cost a round trip
+    private static Object wrap(Class<?> type, Object target, long rttNanos) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("execute") || name.equals("commit") || name.equals("rollback")
+                    || name.equals("setAutoCommit") || name.equals("isValid")) {
+                roundTrip(rttNanos);
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+            if (result instanceof Statement statement && type == Connection.class) {
+                return wrap(statementType(statement), statement, rttNanos);
+            }
+            return result;
+        };
+        return Proxy.newProxyInstance(LatencyDriver.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    private static Class<?> statementType(Statement statement) {
+        if (statement instanceof CallableStatement) {
+            return CallableStatement.class;
+        }
+        return statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+    }
+
+    private static void roundTrip(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+        }
+        while (System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,6 @@
+import java.time.LocalDateTime;
+
+// ONE APPOINTMENT ROW WITH ITS STATUS NAME
+public record Appointment(int appointmentId, int patientId, int doctorId, LocalDateTime scheduledAt,
+                          String reason, int statusId, String status) {
+}
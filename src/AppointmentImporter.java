@@ -0,0 +1,702 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// NIGHTLY BULK IMPORT OF PARTNER-CLINIC APPOINTMENTS FROM A CSV FILE
+//   mvn compile exec:java -Dexec.mainClass=AppointmentImporter -Dexec.args="file=partner.csv parsers=4 writers=2"
+// Arguments: file (required), rejects (default <file>.rejects), parsers, writers, batch (rows per transaction),
+// segment (MB of the file per parse task).
+// One row per line: patient_id,doctor_id,scheduled_at,reason,status. scheduled_at is "yyyy-MM-dd HH:mm:ss"
+// (or with a T), reason may be quoted ("" inside quotes is one ") or \N / empty for none, and status is a
+// status_id or a status name. A first line starting with patient_id is a header and is skipped.
+//
+// Pipeline: the file is memory-mapped in line-aligned segments; parser threads parse and validate segments
+// in parallel against patient, doctor and status IDs loaded once at the start (no SELECT per row), and hand
+// full batches to the writers through a bounded queue, so parsing stalls instead of filling the heap when the
+// database falls behind. Each writer holds one connection and inserts a batch with multi-row INSERTs in one
+// transaction. A batch the database refuses is rolled back and retried row by row, so only the offending rows
+// are rejected. Rejected rows go to the rejects file as "<line>\t<reason>\t<original line>".
+// With a DoctorSchedule, every row takes a hold on its slot before its batch is inserted: a row whose slot is
+// taken (by an indexed appointment or another row of the file) is rejected, and the others are indexed as
+// soon as their batch commits, so holds and SlotSearch stay current. With a ChangeOutbox, each imported row
+// records its Appointment INSERT event in the batch's transaction.
+public class AppointmentImporter {
+
+    public record Report(long imported, long rejected, long elapsedNanos, Path rejectsFile) {
+        public double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : imported * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d appointment(s) imported, %,d rejected%s in %.1f s = %,.0f rows/s",
+                    imported, rejected, rejected == 0 ? "" : " (see " + rejectsFile + ")",
+                    elapsedNanos / 1e9, rowsPerSecond());
+        }
+    }
+
+    // A parsed, validated line; the original text stays in the mapped segment until it is needed for a reject
+    private record Row(Segment segment, int start, int end, int line, int patientId, int doctorId,
+                       LocalDateTime scheduledAt, String reason, int statusId) { }
+
+    // Rows per multi-row INSERT statement, as in PatientOnboarding
+    private static final int ROWS_PER_STATEMENT = 1000;
+    private static final int FIELDS = 5;
+    private static final int MAX_REASON_LENGTH = 255;
+    private static final List<Row> END_OF_INPUT = List.of();
+    private static final long PROGRESS_INTERVAL_MILLIS = 2000;
+
+    private final ConnectionPool pool;
+    private final DoctorSchedule schedule;
+    private final ChangeOutbox outbox;
+    private final int parsers;
+    private final int writers;
+    private final int batchSize;
+    private final long segmentBytes;
+
+    private BitSet patientIds;
+    private BitSet doctorIds;
+    private Map<String, Integer> statusesByName;
+    private BitSet statusIds;
+
+    /**
+     * @param batchSize    rows per transaction
+     * @param segmentBytes how much of the file one parse task maps and parses (lines are never split)
+     */
+    public AppointmentImporter(ConnectionPool pool, int parsers, int writers, int batchSize, long segmentBytes) {
+        this(pool, null, null, parsers, writers, batchSize, segmentBytes);
+    }
+
+    /**
+     * @param schedule     optional; rejects double-booked rows and indexes the imported ones
+     * @param outbox       optional; records an Appointment INSERT event per imported row
+     * @param batchSize    rows per transaction
+     * @param segmentBytes how much of the file one parse task maps and parses (lines are never split)
+     */
+    public AppointmentImporter(ConnectionPool pool, DoctorSchedule schedule, ChangeOutbox outbox,
+                               int parsers, int writers, int batchSize, long segmentBytes) {
+        if (parsers < 1 || writers < 1 || batchSize < 1 || segmentBytes < 1 || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("parsers, writers, batch and segment must be at least 1 (segment below 2 GB)");
+        }
+        this.pool = pool;
+        this.schedule = schedule;
+        this.outbox = outbox;
+        this.parsers = parsers;
+        this.writers = writers;
+        this.batchSize = batchSize;
+        this.segmentBytes = segmentBytes;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                options.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        if (!options.containsKey("file")) {
+            System.out.println("Usage: AppointmentImporter file=<csv> [rejects=<file>] [parsers=N] [writers=N] [batch=N] [segment=MB]");
+            return;
+        }
+        Path file = Path.of(options.get("file"));
+        try {
+            ConnectionPool pool = DB.pool();
+            ChangeOutbox outbox = Boolean.parseBoolean(DB.properties().getProperty("outbox.enabled", "false").trim())
+                    ? new ChangeOutbox() : null;
+            DoctorSchedule schedule = Main.warmDoctorSchedule(pool, new ReferenceData(pool, Duration.ofDays(1)));
+            AppointmentImporter importer = new AppointmentImporter(pool, schedule, outbox,
+                    Integer.parseInt(options.getOrDefault("parsers", String.valueOf(Runtime.getRuntime().availableProcessors()))),
+                    Integer.parseInt(options.getOrDefault("writers", String.valueOf(Math.min(2, pool.stats().maxSize())))),
+                    Integer.parseInt(options.getOrDefault("batch", "5000")),
+                    Long.parseLong(options.getOrDefault("segment", "32")) << 20);
+            System.out.println(importer.importFile(file,
+                    Path.of(options.getOrDefault("rejects", file + ".rejects"))));
+        } finally {
+            DB.shutdown();
+        }
+    }
+
+    // 1. IMPORT EVERY VALID LINE OF THE FILE; REJECTED LINES GO TO rejectsFile
+    public Report importFile(Path file, Path rejectsFile) throws SQLException, IOException, InterruptedException {
+        long start = System.nanoTime();
+        loadValidIds();
+
+        BlockingQueue<List<Row>> batches = new ArrayBlockingQueue<>(2 * writers);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        LongAdder imported = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        ExecutorService writerThreads = Executors.newFixedThreadPool(writers);
+        ExecutorService parserThreads = Executors.newFixedThreadPool(parsers);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             Rejects rejects = new Rejects(rejectsFile, rejected)) {
+            for (int w = 0; w < writers; w++) {
+                writerThreads.execute(() -> runWriter(batches, failure, imported, rejects));
+            }
+
+            List<Segment> segments = split(channel);
+            List<Future<?>> parsed = new ArrayList<>(segments.size());
+            for (Segment segment : segments) {
+                parsed.add(parserThreads.submit(() -> {
+                    parseSegment(segment, batches, failure, rejects);
+                    return null;
+                }));
+            }
+            parserThreads.shutdown();
+            while (!parserThreads.awaitTermination(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                System.out.printf("  %,d imported, %,d rejected, %,.0f rows/s%n", imported.sum(), rejected.sum(),
+                        imported.sum() / ((System.nanoTime() - start) / 1e9));
+            }
+            for (Future<?> segment : parsed) {
+                try {
+                    segment.get();
+                } catch (ExecutionException ex) {
+                    failure.compareAndSet(null, ex.getCause() instanceof Exception e ? e : ex);
+                }
+            }
+            for (int w = 0; w < writers; w++) {
+                while (!batches.offer(END_OF_INPUT, 100, TimeUnit.MILLISECONDS)) {
+                    if (failure.get() != null) {
+                        batches.clear(); // the writers may be gone; nothing queued will be inserted anyway
+                    }
+                }
+            }
+            writerThreads.shutdown();
+            writerThreads.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            parserThreads.shutdownNow();
+            writerThreads.shutdownNow();
+        }
+
+        Exception error = failure.get();
+        if (error instanceof SQLException sql) {
+            throw sql;
+        } else if (error instanceof IOException io) {
+            throw io;
+        } else if (error != null) {
+            throw new IllegalStateException("Import failed", error);
+        }
+        if (rejected.sum() == 0) {
+            Files.deleteIfExists(rejectsFile);
+        }
+        return new Report(imported.sum(), rejected.sum(), System.nanoTime() - start, rejectsFile);
+    }
+
+    // 2. PATIENT, DOCTOR AND STATUS IDS, READ ONCE; A ROW DELETED DURING THE IMPORT IS STILL CAUGHT BY ITS FOREIGN KEY
+    private void loadValidIds() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            patientIds = loadIds(connection, "SELECT patient_id FROM Patient");
+            doctorIds = loadIds(connection, "SELECT staff_id FROM Doctor");
+        }
+        ReferenceData referenceData = new ReferenceData(pool, Duration.ofDays(1));
+        statusIds = new BitSet();
+        statusesByName = new HashMap<>();
+        for (int statusId : referenceData.statusIds()) {
+            statusIds.set(statusId);
+            statusesByName.put(referenceData.statusName(statusId).toLowerCase(Locale.ROOT), statusId);
+        }
+    }
+
+    private static BitSet loadIds(Connection connection, String sql) throws SQLException {
+        BitSet ids = new BitSet();
+        try (PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(DB.streamingFetchSize(connection));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.set(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    // 3. CUT THE FILE INTO SEGMENTS OF ABOUT segmentBytes THAT END AFTER A NEWLINE, EACH MAPPED ON ITS OWN
+    private List<Segment> split(FileChannel channel) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        long size = channel.size();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(size, start + segmentBytes);
+            // Move the cut to just after the next newline
+            while (end < size) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                int newline = -1;
+                for (int i = 0; i < read && newline < 0; i++) {
+                    if (probe.get(i) == '\n') {
+                        newline = i;
+                    }
+                }
+                if (newline >= 0) {
+                    end += newline + 1;
+                    break;
+                }
+                end += Math.max(read, 0);
+            }
+            if (end - start > Integer.MAX_VALUE) {
+                throw new IOException("A line near byte " + start + " is longer than 2 GB");
+            }
+            segments.add(new Segment(segments.isEmpty() ? null : segments.get(segments.size() - 1),
+                    channel.map(FileChannel.MapMode.READ_ONLY, start, end - start)));
+            start = end;
+        }
+        return segments;
+    }
+
+    // 4. PARSE AND VALIDATE ONE SEGMENT; FULL BATCHES ARE HANDED TO THE WRITERS (BLOCKS WHILE THE QUEUE IS FULL)
+    private void parseSegment(Segment segment, BlockingQueue<List<Row>> batches, AtomicReference<Exception> failure,
+                              Rejects rejects) throws IOException, InterruptedException {
+        MappedByteBuffer data = segment.data;
+        int limit = data.limit();
+        int[] fieldStarts = new int[FIELDS + 1];
+        int[] fieldEnds = new int[FIELDS + 1];
+        List<Row> batch = new ArrayList<>(batchSize);
+        int line = 0;
+        int pos = 0;
+        while (pos < limit && failure.get() == null) {
+            int next = pos;
+            while (next < limit && data.get(next) != '\n') {
+                next++;
+            }
+            int end = next > pos && data.get(next - 1) == '\r' ? next - 1 : next;
+            line++;
+            if (end > pos && !(segment.previous == null && line == 1 && startsWith(data, pos, end, "patient_id"))) {
+                String problem;
+                int fields = splitFields(data, pos, end, fieldStarts, fieldEnds);
+                if (fields != FIELDS) {
+                    problem = "expected " + FIELDS + " fields, found " + (fields > FIELDS ? "more" : fields);
+                } else {
+                    Row row = new Row(segment, pos, end, line,
+                            parseInt(data, fieldStarts[0], fieldEnds[0]),
+                            parseInt(data, fieldStarts[1], fieldEnds[1]),
+                            parseDateTime(data, fieldStarts[2], fieldEnds[2]),
+                            parseText(data, fieldStarts[3], fieldEnds[3]),
+                            parseStatus(data, fieldStarts[4], fieldEnds[4]));
+                    problem = validate(row);
+                    if (problem == null) {
+                        batch.add(row);
+                        if (batch.size() == batchSize) {
+                            offer(batches, batch, failure);
+                            batch = new ArrayList<>(batchSize);
+                        }
+                    }
+                }
+                if (problem != null) {
+                    rejects.add(segment, line, pos, end, problem);
+                }
+            }
+            pos = next + 1;
+        }
+        if (!batch.isEmpty()) {
+            offer(batches, batch, failure);
+        }
+    }
+
+    private String validate(Row row) {
+        if (row.patientId() < 0) {
+            return "patient_id is not a number";
+        } else if (row.doctorId() < 0) {
+            return "doctor_id is not a number";
+        } else if (row.scheduledAt() == null) {
+            return "scheduled_at is not yyyy-MM-dd HH:mm:ss";
+        } else if (row.statusId() < 0) {
+            return "unknown status";
+        } else if (!patientIds.get(row.patientId())) {
+            return "unknown patient " + row.patientId();
+        } else if (!doctorIds.get(row.doctorId())) {
+            return "unknown doctor " + row.doctorId();
+        } else if (row.reason() != null && row.reason().length() > MAX_REASON_LENGTH) {
+            return "reason longer than " + MAX_REASON_LENGTH + " characters";
+        }
+        return null;
+    }
+
+    // 5. WRITERS: ONE CONNECTION EACH, ONE TRANSACTION PER BATCH
+    private void runWriter(BlockingQueue<List<Row>> batches, AtomicReference<Exception> failure, LongAdder imported,
+                           Rejects rejects) {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            List<Row> batch;
+            while ((batch = batches.take()) != END_OF_INPUT) {
+                if (failure.get() != null) {
+                    continue; // keep draining so parsers blocked on the queue can finish
+                }
+                imported.add(insertBatch(connection, batch, rejects));
+            }
+        } catch (SQLException | IOException | RuntimeException ex) {
+            failure.compareAndSet(null, ex);
+            batches.clear();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Returns the rows inserted; when the batch as a whole fails, every row is tried on its own.
+    // A lost connection (SQLState class 08) fails the import instead of rejecting every remaining row.
+    private int insertBatch(Connection connection, List<Row> batch, Rejects rejects) throws SQLException, IOException {
+        DoctorSchedule.Hold[] holds = new DoctorSchedule.Hold[batch.size()];
+        try {
+            List<Row> rows = holdSlots(batch, holds, rejects);
+            int[] ids = new int[rows.size()];
+            try {
+                for (int from = 0; from < rows.size(); from += ROWS_PER_STATEMENT) {
+                    insertRows(connection, rows, from, Math.min(from + ROWS_PER_STATEMENT, rows.size()), ids);
+                }
+                recordEvents(connection, rows, ids, 0, rows.size());
+                connection.commit();
+                committed(holds, ids, 0, rows.size());
+                return rows.size();
+            } catch (SQLException ex) {
+                if (connectionLost(ex)) {
+                    throw ex;
+                }
+                connection.rollback();
+            }
+            int inserted = 0;
+            for (int i = 0; i < rows.size(); i++) {
+                try {
+                    insertRows(connection, rows, i, i + 1, ids);
+                    recordEvents(connection, rows, ids, i, i + 1);
+                    connection.commit();
+                    committed(holds, ids, i, i + 1);
+                    inserted++;
+                } catch (SQLException ex) {
+                    if (connectionLost(ex)) {
+                        throw ex;
+                    }
+                    connection.rollback();
+                    Row row = rows.get(i);
+                    rejects.add(row.segment(), row.line(), row.start(), row.end(), "rejected by the database: " + ex.getMessage());
+                }
+            }
+            return inserted;
+        } finally {
+            // Releases the slots of rows that did not commit; confirmed holds are left alone
+            for (DoctorSchedule.Hold hold : holds) {
+                if (hold != null) {
+                    hold.close();
+                }
+            }
+        }
+    }
+
+    // Holds each row's slot; rows whose slot is taken are rejected. The holds line up with the returned rows.
+    private List<Row> holdSlots(List<Row> batch, DoctorSchedule.Hold[] holds, Rejects rejects)
+            throws SQLException, IOException {
+        if (schedule == null) {
+            return batch;
+        }
+        List<Row> rows = new ArrayList<>(batch.size());
+        for (Row row : batch) {
+            if (!schedule.occupiesSlot(row.statusId())) {
+                rows.add(row);
+                continue;
+            }
+            try {
+                holds[rows.size()] = schedule.hold(row.doctorId(), row.scheduledAt());
+                rows.add(row);
+            } catch (DoctorSchedule.ConflictException ex) {
+                rejects.add(row.segment(), row.line(), row.start(), row.end(), ex.getMessage());
+            }
+        }
+        return rows;
+    }
+
+    // After commit: index the rows in the schedule and wake the outbox relay
+    private void committed(DoctorSchedule.Hold[] holds, int[] ids, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (holds[i] != null) {
+                holds[i].confirm(ids[i]);
+            }
+        }
+        if (outbox != null) {
+            outbox.committed();
+        }
+    }
+
+    private void recordEvents(Connection connection, List<Row> rows, int[] ids, int from, int to) throws SQLException {
+        if (outbox == null) {
+            return;
+        }
+        List<ChangeOutbox.Change> changes = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            Row row = rows.get(i);
+            changes.add(new ChangeOutbox.Change("Appointment", ids[i], "INSERT", ChangeOutbox.payload()
+                    .put("patient_id", row.patientId()).put("doctor_id", row.doctorId())
+                    .put("scheduled_at", Timestamp.valueOf(row.scheduledAt())).put("reason", row.reason())
+                    .put("status_id", row.statusId())));
+        }
+        outbox.recordAll(connection, changes);
+    }
+
+    private static boolean connectionLost(SQLException ex) {
+        return ex.getSQLState() != null && ex.getSQLState().startsWith("08");
+    }
+
+    // Writes the new appointment_ids of rows [from, to) into ids when the schedule or the outbox needs them
+    private void insertRows(Connection connection, List<Row> rows, int from, int to, int[] ids) throws SQLException {
+        StringBuilder sql = new StringBuilder("INSERT INTO Appointment (patient_id, doctor_id, scheduled_at, reason, status_id) VALUES ");
+        for (int i = from; i < to; i++) {
+            sql.append(i == from ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+        }
+        boolean needIds = schedule != null || outbox != null;
+        try (PreparedStatement ps = connection.prepareStatement(sql.toString(),
+                needIds ? Statement.RETURN_GENERATED_KEYS : Statement.NO_GENERATED_KEYS)) {
+            int idx = 1;
+            for (int i = from; i < to; i++) {
+                Row row = rows.get(i);
+                ps.setInt(idx++, row.patientId());
+                ps.setInt(idx++, row.doctorId());
+                ps.setTimestamp(idx++, Timestamp.valueOf(row.scheduledAt()));
+                if (row.reason() == null) {
+                    ps.setNull(idx++, Types.VARCHAR);
+                } else {
+                    ps.setString(idx++, row.reason());
+                }
+                ps.setInt(idx++, row.statusId());
+            }
+            ps.executeUpdate();
+            if (needIds) {
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    int i = from;
+                    while (i < to && keys.next()) {
+                        ids[i++] = keys.getInt(1);
+                    }
+                    if (i < to) {
+                        throw new SQLException("Appointment insert returned " + (i - from) + " ID(s) for " + (to - from) + " row(s)");
+                    }
+                }
+            }
+        }
+    }
+
+    // Gives up (and drops the batch) once another stage has failed, so nobody waits on a dead consumer
+    private static void offer(BlockingQueue<List<Row>> batches, List<Row> batch, AtomicReference<Exception> failure)
+            throws InterruptedException {
+        while (!batches.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            if (failure.get() != null) {
+                return;
+            }
+        }
+    }
+
+    // ---------- FIELD PARSING (straight from the mapped bytes; only the reason becomes a String) ----------
+
+    // Field boundaries of [start, end) with quotes stripped; returns the field count (stops counting past FIELDS)
+    private static int splitFields(MappedByteBuffer data, int start, int end, int[] starts, int[] ends) {
+        int count = 0;
+        int pos = start;
+        while (count <= FIELDS) {
+            int fieldStart = pos;
+            int fieldEnd;
+            if (pos < end && data.get(pos) == '"') {
+                fieldStart = ++pos;
+                while (pos < end && !(data.get(pos) == '"' && (pos + 1 >= end || data.get(pos + 1) != '"'))) {
+                    pos += data.get(pos) == '"' ? 2 : 1;
+                }
+                fieldEnd = pos;
+                pos++; // closing quote
+            } else {
+                while (pos < end && data.get(pos) != ',') {
+                    pos++;
+                }
+                fieldEnd = pos;
+            }
+            starts[count] = fieldStart;
+            ends[count] = fieldEnd;
+            count++;
+            if (pos >= end) {
+                return count;
+            }
+            pos++; // comma
+        }
+        return count;
+    }
+
+    private static boolean startsWith(MappedByteBuffer data, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (Character.toLowerCase((char) data.get(start + i)) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Non-negative int, or -1 if the field is not one
+    private static int parseInt(MappedByteBuffer data, int start, int end) {
+        while (start < end && data.get(start) == ' ') {
+            start++;
+        }
+        while (end > start && data.get(end - 1) == ' ') {
+            end--;
+        }
+        if (start == end || end - start > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = data.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    // yyyy-MM-dd HH:mm:ss or yyyy-MM-ddTHH:mm:ss; null if malformed
+    private static LocalDateTime parseDateTime(MappedByteBuffer data, int start, int end) {
+        if (end - start != 19 || data.get(start + 4) != '-' || data.get(start + 7) != '-'
+                || (data.get(start + 10) != ' ' && data.get(start + 10) != 'T')
+                || data.get(start + 13) != ':' || data.get(start + 16) != ':') {
+            return null;
+        }
+        int year = parseInt(data, start, start + 4);
+        int month = parseInt(data, start + 5, start + 7);
+        int day = parseInt(data, start + 8, start + 10);
+        int hour = parseInt(data, start + 11, start + 13);
+        int minute = parseInt(data, start + 14, start + 16);
+        int second = parseInt(data, start + 17, start + 19);
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0) {
+            return null;
+        }
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second);
+        } catch (DateTimeException ex) {
+            return null;
+        }
+    }
+
+    // UTF-8 text with "" unescaped; null for an empty field or \N
+    private static String parseText(MappedByteBuffer data, int start, int end) {
+        if (start == end || (end - start == 2 && data.get(start) == '\\' && data.get(start + 1) == 'N')) {
+            return null;
+        }
+        byte[] bytes = new byte[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            byte b = data.get(i);
+            bytes[length++] = b;
+            if (b == '"' && i + 1 < end && data.get(i + 1) == '"') {
+                i++;
+            }
+        }
+        String text = new String(bytes, 0, length, StandardCharsets.UTF_8).trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    // status_id or status name (any case); -1 if unknown
+    private int parseStatus(MappedByteBuffer data, int start, int end) {
+        int id = parseInt(data, start, end);
+        if (id >= 0) {
+            return statusIds.get(id) ? id : -1;
+        }
+        String name = parseText(data, start, end);
+        Integer byName = name == null ? null : statusesByName.get(name.toLowerCase(Locale.ROOT));
+        return byName == null ? -1 : byName;
+    }
+
+    // One mapped part of the file. Line numbers are counted relative to the segment while parsing; the absolute
+    // number (newlines in every earlier segment) is only worked out when a line of this segment is rejected.
+    private static final class Segment {
+        private final Segment previous;
+        private final MappedByteBuffer data;
+        private long firstLine = -1;
+
+        Segment(Segment previous, MappedByteBuffer data) {
+            this.previous = previous;
+            this.data = data;
+        }
+
+        synchronized long firstLine() {
+            if (firstLine < 0) {
+                firstLine = previous == null ? 0 : previous.firstLine() + previous.lineCount();
+            }
+            return firstLine;
+        }
+
+        // Every segment but the last ends with a newline
+        private long lineCount() {
+            long lines = 0;
+            for (int i = 0; i < data.limit(); i++) {
+                if (data.get(i) == '\n') {
+                    lines++;
+                }
+            }
+            return lines;
+        }
+
+        String text(int start, int end) {
+            byte[] bytes = new byte[end - start];
+            data.get(start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    // The rejects file; written under a lock since rejects are expected to be rare
+    private static final class Rejects implements AutoCloseable {
+        private final Path file;
+        private final LongAdder count;
+        private BufferedWriter out;
+
+        Rejects(Path file, LongAdder count) {
+            this.file = file;
+            this.count = count;
+        }
+
+        void add(Segment segment, int line, int start, int end, String reason) throws IOException {
+            long lineNumber = segment.firstLine() + line;
+            String text = segment.text(start, end);
+            synchronized (this) {
+                if (out == null) {
+                    out = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+                }
+                out.append(Long.toString(lineNumber)).append('\t').append(reason.replace('\t', ' ').replace('\n', ' '))
+                        .append('\t').append(text).append('\n');
+            }
+            count.increment();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+// APPOINTMENT SEARCH BY DATE RANGE, DOCTOR, PATIENT AND STATUS, ONE KEYSET PAGE AT A TIME
+// Every filter is optional. Rows come in (scheduled_at, appointment_id) order and each page continues after the
+// cursor of the previous one, so page 1,000 costs the same as page 1. Each combination is served by one index
+// whose leading column is the most selective equality filter given (patient, then doctor, then status) followed
+// by (scheduled_at, appointment_id); the date range and the cursor become a range on that index, and the other
+// filters are checked on the rows inside it. The index is named in the query, so the plan does not depend on
+// table statistics.
+public class AppointmentSearch {
+
+    /** The optional filters; from is inclusive, to exclusive. Build with {@code Filter.any().doctor(7)...}. */
+    public record Filter(LocalDateTime from, LocalDateTime to, Integer doctorId, Integer patientId, Integer statusId) {
+        public static Filter any() {
+            return new Filter(null, null, null, null, null);
+        }
+
+        public Filter between(LocalDateTime from, LocalDateTime to) {
+            return new Filter(from, to, doctorId, patientId, statusId);
+        }
+
+        public Filter doctor(Integer doctorId) {
+            return new Filter(from, to, doctorId, patientId, statusId);
+        }
+
+        public Filter patient(Integer patientId) {
+            return new Filter(from, to, doctorId, patientId, statusId);
+        }
+
+        public Filter status(Integer statusId) {
+            return new Filter(from, to, doctorId, patientId, statusId);
+        }
+    }
+
+    /** Position after the last row of a page; its text form ("2024-05-01T09:30/1234") can be handed to clients. */
+    public record Cursor(LocalDateTime scheduledAt, int appointmentId) {
+        public static Cursor parse(String text) {
+            int slash = text.lastIndexOf('/');
+            try {
+                return new Cursor(LocalDateTime.parse(text.substring(0, slash)),
+                        Integer.parseInt(text.substring(slash + 1)));
+            } catch (DateTimeParseException | IndexOutOfBoundsException | NumberFormatException ex) {
+                throw new IllegalArgumentException("Not an appointment cursor: " + text, ex);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return scheduledAt + "/" + appointmentId;
+        }
+    }
+
+    /** One page of results; next is null on the last page. */
+    public record Page(List<Appointment> appointments, Cursor next) { }
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    // {index, DDL}; appointment_id is implicit at the end of every InnoDB secondary index, and spelled out so
+    // that other engines also return the keyset order straight from the index
+    private static final String[][] INDEXES = {
+            {"idx_appt_patient_time", "CREATE INDEX idx_appt_patient_time ON Appointment(patient_id, scheduled_at, appointment_id)"},
+            {"idx_appt_status_time", "CREATE INDEX idx_appt_status_time ON Appointment(status_id, scheduled_at, appointment_id)"},
+            {"idx_appt_time", "CREATE INDEX idx_appt_time ON Appointment(scheduled_at, appointment_id)"}
+    };
+    // Single-column indexes the composite ones above replace (also for the foreign keys)
+    private static final String[] SUPERSEDED_INDEXES = {"idx_appt_patient", "idx_appointment_status"};
+
+    private final ConnectionPool pool;
+    private final RowMapper<Appointment> mapper;
+
+    public AppointmentSearch(ConnectionPool pool, ReferenceData referenceData) {
+        this.pool = pool;
+        this.mapper = RowMappers.appointment(referenceData);
+    }
+
+    /** Creates the search indexes (and the doctor index DoctorSchedule shares), then drops the ones they replace. */
+    public static void ensureSchema(Connection connection) throws SQLException {
+        DoctorSchedule.ensureSchema(connection);
+        try (Statement stmt = connection.createStatement()) {
+            for (String[] index : INDEXES) {
+                if (!Schema.indexExists(connection, "Appointment", index[0])) {
+                    stmt.executeUpdate(index[1]);
+                }
+            }
+            for (String index : SUPERSEDED_INDEXES) {
+                if (Schema.indexExists(connection, "Appointment", index)) {
+                    stmt.executeUpdate("DROP INDEX " + index + " ON Appointment");
+                }
+            }
+        }
+    }
+
+    // 1. ONE PAGE OF MATCHING APPOINTMENTS AFTER THE CURSOR (NULL FOR THE FIRST PAGE)
+    public Page search(Filter filter, Cursor after, int pageSize) throws SQLException {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("pageSize must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        List<Appointment> rows = new ArrayList<>(pageSize + 1);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql(filter, after != null, indexHint(connection)))) {
+            int idx = 1;
+            // Equality filters first, in the order sql() wrote them
+            for (Integer value : new Integer[] {filter.patientId(), filter.doctorId(), filter.statusId()}) {
+                if (value != null) {
+                    ps.setInt(idx++, value);
+                }
+            }
+            if (filter.from() != null) {
+                ps.setTimestamp(idx++, Timestamp.valueOf(filter.from()));
+            }
+            if (filter.to() != null) {
+                ps.setTimestamp(idx++, Timestamp.valueOf(filter.to()));
+            }
+            if (after != null) {
+                Timestamp at = Timestamp.valueOf(after.scheduledAt());
+                ps.setTimestamp(idx++, at);
+                ps.setTimestamp(idx++, at);
+                ps.setInt(idx++, after.appointmentId());
+            }
+            // One extra row tells whether there is a next page
+            ps.setInt(idx, pageSize + 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(mapper.map(rs));
+                }
+            }
+        }
+        if (rows.size() <= pageSize) {
+            return new Page(rows, null);
+        }
+        rows.remove(pageSize);
+        Appointment last = rows.get(pageSize - 1);
+        return new Page(rows, new Cursor(last.scheduledAt(), last.appointmentId()));
+    }
+
+    /** The index a filter is served by. */
+    static String indexFor(Filter filter) {
+        if (filter.patientId() != null) {
+            return "idx_appt_patient_time";
+        }
+        if (filter.doctorId() != null) {
+            return "idx_appt_doctor_time";
+        }
+        if (filter.statusId() != null) {
+            return "idx_appt_status_time";
+        }
+        return "idx_appt_time";
+    }
+
+    // Built from fixed fragments with placeholders only: at most 64 distinct statements, all cacheable
+    static String sql(Filter filter, boolean afterCursor, String hint) {
+        List<String> where = new ArrayList<>(7);
+        if (filter.patientId() != null) {
+            where.add("Appointment.patient_id = ?");
+        }
+        if (filter.doctorId() != null) {
+            where.add("Appointment.doctor_id = ?");
+        }
+        if (filter.statusId() != null) {
+            where.add("Appointment.status_id = ?");
+        }
+        if (filter.from() != null) {
+            where.add("Appointment.scheduled_at >= ?");
+        }
+        if (filter.to() != null) {
+            where.add("Appointment.scheduled_at < ?");
+        }
+        if (afterCursor) {
+            // The first term bounds the index range; the second skips the rows at the cursor's time up to it
+            where.add("Appointment.scheduled_at >= ?");
+            where.add("(Appointment.scheduled_at > ? OR Appointment.appointment_id > ?)");
+        }
+        return "SELECT " + RowMappers.APPOINTMENT_COLUMNS + " FROM Appointment " + hint + " (" + indexFor(filter) + ")"
+                + (where.isEmpty() ? "" : " WHERE " + String.join(" AND ", where))
+                + " ORDER BY " + orderFor(filter) + "Appointment.scheduled_at, Appointment.appointment_id LIMIT ?";
+    }
+
+    // The index's leading column is fixed by its equality filter, so ordering by it changes nothing; naming it lets
+    // planners that only match ORDER BY against a whole index prefix (H2) read the page in index order unsorted
+    private static String orderFor(Filter filter) {
+        if (filter.patientId() != null) {
+            return "Appointment.patient_id, ";
+        }
+        if (filter.doctorId() != null) {
+            return "Appointment.doctor_id, ";
+        }
+        if (filter.statusId() != null) {
+            return "Appointment.status_id, ";
+        }
+        return "";
+    }
+
+    // MySQL: FORCE INDEX rules out a table scan; H2 (benchmarks) only knows USE INDEX
+    private static String indexHint(Connection connection) throws SQLException {
+        String driver = connection.getMetaData().getDriverName();
+        return driver != null && driver.contains("MySQL") ? "FORCE INDEX" : "USE INDEX";
+    }
+}
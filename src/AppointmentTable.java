@@ -1,74 +1,258 @@
 import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 // HANDLES SELECT, UPDATE, INSERT, DELETE FOR APPOINTMENT TABLE
 public class AppointmentTable {
-    private Connection connection;
+    /** Largest keyset page listAppointmentsAfter and forEachAppointment accept. */
+    public static final int MAX_PAGE_SIZE = 1000;
 
-    public AppointmentTable(Connection connection) {
-        this.connection = connection;
+    private static final String SELECT_APPOINTMENT = "SELECT " + RowMappers.APPOINTMENT_COLUMNS + " FROM Appointment ";
+
+    private final ConnectionPool pool;
+    private final ReferenceData referenceData;
+    private final RowMapper<Appointment> mapper;
+    private final EntityCache<Appointment> cache;
+    private final DoctorSchedule schedule;
+    private final ChangeOutbox outbox;
+
+    /**
+     * @param cache    read-through cache for selectAppointmentByID, invalidated by every write through this class;
+     *                 null reads the table every time
+     * @param schedule double-booking index; inserts are checked against it and every write keeps it current;
+     *                 null writes without a conflict check
+     * @param outbox   change outbox; every write then records its event in the same transaction; null records none
+     */
+    public AppointmentTable(ConnectionPool pool, ReferenceData referenceData, EntityCache<Appointment> cache,
+                            DoctorSchedule schedule, ChangeOutbox outbox) {
+        this.pool = pool;
+        this.referenceData = referenceData;
+        this.mapper = RowMappers.appointment(referenceData);
+        this.cache = cache;
+        this.schedule = schedule;
+        this.outbox = outbox;
+    }
+
+    /**
+     * Streams every appointment through the callback with a forward-only streaming result set.
+     * The connection stays busy until the scan ends, so the callback must not call back into the DAOs.
+     */
+    public void streamAllAppointments(Consumer<Appointment> callback) throws SQLException {
+        String sql = SELECT_APPOINTMENT + "ORDER BY Appointment.appointment_id";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(DB.streamingFetchSize(connection));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    callback.accept(mapper.map(rs));
+                }
+            }
+        }
     }
 
-    // SELECT ALL APPOINTMENTS
-    public void listAllAppointments() throws SQLException {
-        String sql = "SELECT Appointment.appointment_id, Appointment.patient_id, Appointment.doctor_id, "
-                    + "Appointment.scheduled_at, Appointment.reason, AppointmentStatus.status "
-                    + "FROM Appointment JOIN AppointmentStatus ON Appointment.status_id = AppointmentStatus.status_id";
-        try (PreparedStatement ps = connection.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-            System.out.println("\n-- All Appointments --");
-            System.out.println("ID | Patient | Doctor | Date | Status | Reason");
-            while (rs.next()) {
-                System.out.printf("%d | %d | %d | %s | %s | %s%n",
-                        rs.getInt("appointment_id"),
-                        rs.getInt("patient_id"),
-                        rs.getInt("doctor_id"),
-                        rs.getTimestamp("scheduled_at").toString(),
-                        rs.getString("status"),
-                        rs.getString("reason")
-                );
+    /**
+     * Keyset page: up to {@code limit} appointments with appointment_id greater than {@code afterAppointmentId},
+     * in id order. Pass 0 for the first page and the last id of a page to get the next one.
+     */
+    public List<Appointment> listAppointmentsAfter(int afterAppointmentId, int limit) throws SQLException {
+        String sql = SELECT_APPOINTMENT + "WHERE Appointment.appointment_id > ? ORDER BY Appointment.appointment_id LIMIT ?";
+        checkPageSize(limit);
+        List<Appointment> page = new ArrayList<>(limit);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, afterAppointmentId);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    page.add(mapper.map(rs));
+                }
             }
         }
+        return page;
+    }
+
+    /**
+     * Walks the whole table one keyset page at a time; only one page is held in memory and
+     * no connection is held between pages, so the callback may use the DAOs.
+     */
+    public void forEachAppointment(int pageSize, Consumer<Appointment> callback) throws SQLException {
+        checkPageSize(pageSize);
+        int after = 0;
+        List<Appointment> page;
+        do {
+            page = listAppointmentsAfter(after, pageSize);
+            for (Appointment appointment : page) {
+                callback.accept(appointment);
+            }
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1).appointmentId();
+            }
+        } while (page.size() == pageSize);
+    }
+
+    private static void checkPageSize(int pageSize) {
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+    }
+
+    // LIST THE APPOINTMENTS OF ONE PATIENT, OLDEST FIRST
+    public List<Appointment> listAppointmentsForPatient(int patientId) throws SQLException {
+        String sql = SELECT_APPOINTMENT + "WHERE Appointment.patient_id = ? ORDER BY Appointment.scheduled_at";
+        List<Appointment> rows = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, patientId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(mapper.map(rs));
+                }
+            }
+        }
+        return rows;
     }
 
     // SELECT INDIVIDUAL APPOINTMENT BY ID
-    public void selectAppointmentByID(int apptId) throws SQLException {
-        String sql = "SELECT Appointment.appointment_id, Appointment.patient_id, Appointment.doctor_id, "
-                + "Appointment.scheduled_at, Appointment.reason, AppointmentStatus.status "
-                + "FROM Appointment JOIN AppointmentStatus ON Appointment.status_id = AppointmentStatus.status_id "
-                + "WHERE Appointment.appointment_id = ?";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+    public Optional<Appointment> selectAppointmentByID(int apptId) throws SQLException {
+        long stamp = 0;
+        if (cache != null) {
+            Appointment cached = cache.get(apptId);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+            stamp = cache.stamp();
+        }
+        String sql = SELECT_APPOINTMENT + "WHERE Appointment.appointment_id = ?";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, apptId);
             try (ResultSet rs = ps.executeQuery()) {
-                System.out.println("\n-- Appointment Details --");
-                if (rs.next()) {
-                    System.out.printf("ID: %d%n", rs.getInt("appointment_id"));
-                    System.out.printf("Patient ID: %d%n", rs.getInt("patient_id"));
-                    System.out.printf("Doctor ID: %d%n", rs.getInt("doctor_id"));
-                    System.out.printf("Scheduled At: %s%n", rs.getTimestamp("scheduled_at").toString());
-                    System.out.printf("Status: %s%n", rs.getString("status"));
-                    System.out.printf("Reason: %s%n", rs.getString("reason"));
-                } else {
-                    System.out.println("No appointment found with ID " + apptId);
+                if (!rs.next()) {
+                    return Optional.empty();
+                }
+                Appointment appointment = mapper.map(rs);
+                if (cache != null) {
+                    cache.putIfFresh(apptId, appointment, stamp);
                 }
+                return Optional.of(appointment);
             }
         }
     }
 
+    /**
+     * Drops a cached appointment; callers that change Appointment rows outside this class must call it after commit.
+     */
+    public void evict(int apptId) {
+        if (cache != null) {
+            cache.invalidate(apptId);
+        }
+    }
+
     // UPDATE APPOINTMENT STATUS
-    public void updateAppointmentStatus(int apptId, int statusID) throws SQLException {
+    // With a schedule, moving a Cancelled appointment back to a slot-taking status throws
+    // DoctorSchedule.ConflictException if its slot has been booked since
+    public int updateAppointmentStatus(int apptId, int statusID) throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            if (schedule != null && schedule.occupiesSlot(statusID)) {
+                return updateAppointmentStatusTakingSlot(connection, apptId, statusID);
+            }
+            int rows = outbox == null ? updateAppointmentStatus(connection, apptId, statusID)
+                    : outbox.execute(connection, c -> updateAppointmentStatus(c, apptId, statusID));
+            if (rows > 0 && schedule != null) {
+                schedule.release(apptId); // a Cancelled appointment frees its slot
+            }
+            return rows;
+        } finally {
+            evict(apptId);
+        }
+    }
+
+    // An appointment that did not hold its slot (Cancelled) takes it back like a new booking:
+    // hold, locking check and UPDATE in one transaction, confirm after commit
+    private int updateAppointmentStatusTakingSlot(Connection connection, int apptId, int statusID) throws SQLException {
+        String sql = "SELECT doctor_id, scheduled_at, status_id FROM Appointment WHERE appointment_id = ? FOR UPDATE";
+        DoctorSchedule.Hold hold = null;
+        connection.setAutoCommit(false);
+        try {
+            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                ps.setInt(1, apptId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next() && !schedule.occupiesSlot(rs.getInt(3))) {
+                        int doctorId = rs.getInt(1);
+                        LocalDateTime slot = rs.getTimestamp(2).toLocalDateTime();
+                        hold = schedule.hold(doctorId, slot);
+                        schedule.checkFree(connection, doctorId, slot);
+                    }
+                }
+            }
+            int rows = updateAppointmentStatus(connection, apptId, statusID);
+            connection.commit();
+            if (outbox != null) {
+                outbox.committed();
+            }
+            if (hold != null) {
+                hold.confirm(apptId);
+            }
+            return rows;
+        } catch (SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            if (hold != null) {
+                hold.close();
+            }
+        }
+    }
+
+    private int updateAppointmentStatus(Connection connection, int apptId, int statusID) throws SQLException {
         String sql = "UPDATE Appointment SET status_id = ? WHERE appointment_id = ?";
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, statusID);
             ps.setInt(2, apptId);
             int rows = ps.executeUpdate();
-            System.out.println(rows + " appointment record(s) updated.");
+            if (rows > 0 && outbox != null) {
+                outbox.record(connection, "Appointment", apptId, "UPDATE", ChangeOutbox.payload().put("status_id", statusID));
+            }
+            return rows;
+        }
+    }
+
+    // INSERT NEW APPOINTMENT TO TABLE, RETURNS THE NEW appointment_id
+    // With a schedule, a slot that overlaps another appointment of the doctor throws DoctorSchedule.ConflictException
+    public int insertAppointment(int patientId, int doctorId, Timestamp scheduledAt, String reason, int statusId) throws SQLException {
+        if (schedule == null || !schedule.occupiesSlot(statusId)) {
+            try (Connection connection = pool.getConnection()) {
+                return outbox == null ? insertAppointment(connection, patientId, doctorId, scheduledAt, reason, statusId)
+                        : outbox.execute(connection, c -> insertAppointment(c, patientId, doctorId, scheduledAt, reason, statusId));
+            }
+        }
+        LocalDateTime slot = scheduledAt.toLocalDateTime();
+        try (DoctorSchedule.Hold hold = schedule.hold(doctorId, slot);
+             Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                schedule.checkFree(connection, doctorId, slot);
+                int appointmentId = insertAppointment(connection, patientId, doctorId, scheduledAt, reason, statusId);
+                connection.commit();
+                if (outbox != null) {
+                    outbox.committed();
+                }
+                hold.confirm(appointmentId);
+                return appointmentId;
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            }
         }
     }
 
-    // INSERT NEW APPOINTMENT TO TABLE
-    public void insertAppointment(int patientId, int doctorId, Timestamp scheduledAt, String reason, int statusId) throws SQLException {
+    private int insertAppointment(Connection connection, int patientId, int doctorId, Timestamp scheduledAt,
+                                  String reason, int statusId) throws SQLException {
         String sql = "INSERT INTO Appointment (patient_id, doctor_id, scheduled_at, reason, status_id) VALUES(?, ?, ?, ?, ?)";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             ps.setInt(1, patientId);
             ps.setInt(2, doctorId);
             ps.setTimestamp(3, scheduledAt);
@@ -78,18 +262,45 @@ public class AppointmentTable {
                 ps.setString(4, reason);
             }
             ps.setInt(5, statusId);
-            int rows = ps.executeUpdate();
-            System.out.println(rows + " appointment record(s) inserted.");
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (keys.next()) {
+                    int appointmentId = keys.getInt(1);
+                    evict(appointmentId);
+                    if (outbox != null) {
+                        outbox.record(connection, "Appointment", appointmentId, "INSERT", ChangeOutbox.payload()
+                                .put("patient_id", patientId).put("doctor_id", doctorId).put("scheduled_at", scheduledAt)
+                                .put("reason", reason).put("status_id", statusId));
+                    }
+                    return appointmentId;
+                }
+            }
         }
+        throw new SQLException("Appointment insert succeeded but no ID was returned.");
     }
 
     // DELETE APPOINTMENT FROM TABLE
-    public void deleteAppointment(int id) throws SQLException {
+    public int deleteAppointment(int id) throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            int rows = outbox == null ? deleteAppointment(connection, id) : outbox.execute(connection, c -> deleteAppointment(c, id));
+            if (rows > 0 && schedule != null) {
+                schedule.release(id);
+            }
+            return rows;
+        } finally {
+            evict(id);
+        }
+    }
+
+    private int deleteAppointment(Connection connection, int id) throws SQLException {
         String sql = "DELETE FROM Appointment WHERE appointment_id = ?";
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, id);
             int rows = ps.executeUpdate();
-            System.out.println(rows + " appointment record(s) deleted.");
+            if (rows > 0 && outbox != null) {
+                outbox.record(connection, "Appointment", id, "DELETE", ChangeOutbox.payload());
+            }
+            return rows;
         }
     }
 }
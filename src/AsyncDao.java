@@ -0,0 +1,113 @@
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+// ASYNCHRONOUS FACADE OVER PatientTable, AppointmentTable AND BillTable
+// Each call runs the blocking JDBC method on its own virtual thread and completes a CompletableFuture,
+// so independent lookups run in parallel and take as long as the slowest one instead of their sum.
+// A semaphore with one permit per pooled connection bounds how many calls run at once; callers beyond that
+// wait for a permit (cheap on a virtual thread) instead of timing out in ConnectionPool.getConnection().
+// A failed call completes its future exceptionally with a CompletionException wrapping the SQLException.
+public class AsyncDao implements AutoCloseable {
+
+    /** Everything the patient dashboard shows; patient is empty if there is no such patient. */
+    public record Dashboard(Optional<Patient> patient, List<Appointment> appointments, List<Bill> bills) { }
+
+    /** One blocking DAO call. */
+    @FunctionalInterface
+    public interface Call<T> {
+        T call() throws SQLException;
+    }
+
+    private final PatientTable patients;
+    private final AppointmentTable appointments;
+    private final BillTable bills;
+    private final int maxConcurrency;
+    private final Semaphore permits;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public AsyncDao(ConnectionPool pool, PatientTable patients, AppointmentTable appointments, BillTable bills) {
+        this.patients = patients;
+        this.appointments = appointments;
+        this.bills = bills;
+        this.maxConcurrency = pool.stats().maxSize();
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    /**
+     * Runs {@code call} on a virtual thread once a permit is free. The call must not wait on another
+     * future from this facade: with every permit held by such callers, nothing could make progress.
+     */
+    public <T> CompletableFuture<T> submit(Call<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(new SQLException("Interrupted while waiting for a connection permit", ex));
+            }
+            try {
+                return call.call();
+            } catch (SQLException ex) {
+                throw new CompletionException(ex);
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    // 1. PATIENT BY ID
+    public CompletableFuture<Optional<Patient>> patient(int patientId) {
+        return submit(() -> patients.selectPatientByID(patientId));
+    }
+
+    // 2. APPOINTMENTS OF A PATIENT
+    public CompletableFuture<List<Appointment>> appointmentsForPatient(int patientId) {
+        return submit(() -> appointments.listAppointmentsForPatient(patientId));
+    }
+
+    // 3. BILLS OF A PATIENT
+    public CompletableFuture<List<Bill>> billsForPatient(int patientId) {
+        return submit(() -> bills.listBillsForPatient(patientId));
+    }
+
+    // 4. PATIENT, APPOINTMENTS AND BILLS FETCHED IN PARALLEL
+    public CompletableFuture<Dashboard> dashboard(int patientId) {
+        CompletableFuture<Optional<Patient>> patient = patient(patientId);
+        CompletableFuture<List<Appointment>> visits = appointmentsForPatient(patientId);
+        CompletableFuture<List<Bill>> patientBills = billsForPatient(patientId);
+        return CompletableFuture.allOf(patient, visits, patientBills)
+                .thenApply(done -> new Dashboard(patient.join(), visits.join(), patientBills.join()));
+    }
+
+    /**
+     * Waits for {@code future} and rethrows a failed call's SQLException, for callers that are themselves
+     * blocking (such as the console menu).
+     */
+    public static <T> T await(CompletableFuture<T> future) throws SQLException {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof SQLException sql) {
+                throw sql;
+            }
+            throw ex;
+        }
+    }
+
+    /** Number of calls currently running (holding a permit). */
+    public int inFlight() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /** Waits for running calls to finish and stops the executor. */
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
@@ -0,0 +1,5 @@
+import java.time.LocalDateTime;
+
+// ONE BILL HEADER ROW; appointmentId IS NULL FOR BILLS NOT TIED TO A VISIT
+public record Bill(int billNo, int patientId, Integer appointmentId, LocalDateTime createdAt) {
+}
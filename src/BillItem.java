@@ -0,0 +1,6 @@
+import java.math.BigDecimal;
+
+// ONE LINE OF A BILL; serviceId IS ONLY SET FOR Service CHARGES
+public record BillItem(int billNo, int orderNo, String chargeType, Integer serviceId,
+                       String description, BigDecimal amount) {
+}
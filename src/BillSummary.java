@@ -0,0 +1,7 @@
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// ONE ROW OF THE BILLING DASHBOARD: A BILL HEADER WITH ITS MAINTAINED ITEM COUNT AND TOTAL
+public record BillSummary(int billNo, int patientId, String firstName, String lastName, Integer appointmentId,
+                          LocalDateTime createdAt, int itemCount, BigDecimal totalAmount) {
+}
@@ -0,0 +1,216 @@
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+// HANDLES THE MAINTAINED BillTotals TABLE BEHIND THE BILLING DASHBOARD
+// One row per bill with its item count and running total. Triggers on Bill and BillItem keep it current,
+// so every writer (DAOs, BillingWorkflow, LOAD DATA, ad-hoc SQL) is covered. Deleting a bill removes its
+// row through the foreign key cascade; MySQL does not fire the BillItem triggers for cascaded deletes,
+// and it does not need to here. Until the table and its triggers are in place (migration 4 needs the
+// TRIGGER privilege), the reads aggregate Bill and BillItem as the old BillSummary view did.
+public class BillSummaryTable {
+
+    /** A bill whose maintained row is missing or disagrees with its BillItem rows. */
+    public record Mismatch(int billNo, int expectedItems, BigDecimal expectedTotal,
+                           Integer actualItems, BigDecimal actualTotal) {
+        @Override
+        public String toString() {
+            return actualTotal == null
+                    ? String.format("Bill %d: no BillTotals row (expected %d item(s), %.2f)", billNo, expectedItems, expectedTotal)
+                    : String.format("Bill %d: BillTotals has %d item(s), %.2f but BillItem has %d item(s), %.2f",
+                    billNo, actualItems, actualTotal, expectedItems, expectedTotal);
+        }
+    }
+
+    static final String CREATE_TABLE = "CREATE TABLE BillTotals ("
+            + "bill_no INT PRIMARY KEY,"
+            + "patient_id INT NOT NULL,"
+            + "appointment_id INT,"
+            + "created_at DATETIME,"
+            + "item_count INT NOT NULL DEFAULT 0,"
+            + "total_amount DECIMAL(12,2) NOT NULL DEFAULT 0,"
+            + "FOREIGN KEY (bill_no) REFERENCES Bill(bill_no) ON DELETE CASCADE ON UPDATE CASCADE)";
+
+    static final String CREATE_PATIENT_INDEX = "CREATE INDEX idx_billtotals_patient ON BillTotals(patient_id)";
+
+    // Keeps the old view name working for reports; it now reads the maintained rows instead of aggregating
+    static final String CREATE_VIEW = "CREATE OR REPLACE VIEW BillSummary AS "
+            + "SELECT t.bill_no, t.patient_id, p.first_name, p.last_name, t.appointment_id, t.created_at, t.total_amount "
+            + "FROM BillTotals t JOIN Person p ON p.person_id = t.patient_id";
+
+    // {name, statement}; must match the trigger section of create_and_populate.sql
+    static final String[][] TRIGGERS = {
+            {"trg_billtotals_bill_insert",
+                    "CREATE TRIGGER trg_billtotals_bill_insert AFTER INSERT ON Bill FOR EACH ROW "
+                            + "INSERT INTO BillTotals (bill_no, patient_id, appointment_id, created_at, item_count, total_amount) "
+                            + "VALUES (NEW.bill_no, NEW.patient_id, NEW.appointment_id, NEW.created_at, 0, 0)"},
+            {"trg_billtotals_bill_update",
+                    "CREATE TRIGGER trg_billtotals_bill_update AFTER UPDATE ON Bill FOR EACH ROW "
+                            + "UPDATE BillTotals SET patient_id = NEW.patient_id, appointment_id = NEW.appointment_id, "
+                            + "created_at = NEW.created_at WHERE bill_no = NEW.bill_no"},
+            {"trg_billtotals_item_insert",
+                    "CREATE TRIGGER trg_billtotals_item_insert AFTER INSERT ON BillItem FOR EACH ROW "
+                            + "UPDATE BillTotals SET item_count = item_count + 1, total_amount = total_amount + NEW.amount "
+                            + "WHERE bill_no = NEW.bill_no"},
+            {"trg_billtotals_item_update",
+                    "CREATE TRIGGER trg_billtotals_item_update AFTER UPDATE ON BillItem FOR EACH ROW BEGIN "
+                            + "UPDATE BillTotals SET item_count = item_count - 1, total_amount = total_amount - OLD.amount "
+                            + "WHERE bill_no = OLD.bill_no; "
+                            + "UPDATE BillTotals SET item_count = item_count + 1, total_amount = total_amount + NEW.amount "
+                            + "WHERE bill_no = NEW.bill_no; "
+                            + "END"},
+            {"trg_billtotals_item_delete",
+                    "CREATE TRIGGER trg_billtotals_item_delete AFTER DELETE ON BillItem FOR EACH ROW "
+                            + "UPDATE BillTotals SET item_count = item_count - 1, total_amount = total_amount - OLD.amount "
+                            + "WHERE bill_no = OLD.bill_no"}
+    };
+
+    // The same aggregation the old BillSummary view ran on every read; used to rebuild and verify, and by
+    // the reads while the table is not maintained
+    private static final String AGGREGATE = "SELECT b.bill_no, b.patient_id, b.appointment_id, b.created_at, "
+            + "COUNT(bi.order_no) AS item_count, COALESCE(SUM(bi.amount), 0) AS total_amount "
+            + "FROM Bill b LEFT JOIN BillItem bi ON bi.bill_no = b.bill_no "
+            + "GROUP BY b.bill_no, b.patient_id, b.appointment_id, b.created_at";
+
+    private final ConnectionPool pool;
+    // Named BillTotals either way so RowMappers.BILL_SUMMARY_COLUMNS applies
+    private final String source;
+    private final boolean maintained;
+
+    /**
+     * @param maintained whether migration 4 is applied (SchemaMigrations.Result.isApplied); if not, every read
+     *                   aggregates Bill and BillItem instead of reading BillTotals
+     */
+    public BillSummaryTable(ConnectionPool pool, boolean maintained) {
+        this.pool = pool;
+        this.maintained = maintained;
+        this.source = maintained ? "BillTotals" : "(" + AGGREGATE + ") BillTotals";
+    }
+
+    /**
+     * Creates BillTotals, its triggers and the BillSummary view where missing. If the table or any trigger
+     * had to be created, changes may have been missed, so the table is rebuilt. If a trigger or the
+     * rebuild fails, whatever this call created is dropped again and the readers keep aggregating.
+     */
+    public static void ensureSchema(Connection connection) throws SQLException {
+        List<String> created = new ArrayList<>(); // DROP statements, newest first
+        try (Statement stmt = connection.createStatement()) {
+            try {
+                if (!Schema.tableExists(connection, "BillTotals")) {
+                    stmt.executeUpdate(CREATE_TABLE);
+                    created.add(0, "DROP TABLE BillTotals");
+                    stmt.executeUpdate(CREATE_PATIENT_INDEX);
+                }
+                for (String[] trigger : TRIGGERS) {
+                    if (!Schema.triggerExists(connection, trigger[0])) {
+                        stmt.executeUpdate(trigger[1]);
+                        created.add(0, "DROP TRIGGER " + trigger[0]);
+                    }
+                }
+                if (!created.isEmpty()) {
+                    rebuild(connection);
+                }
+            } catch (SQLException ex) {
+                Schema.undo(connection, created, ex);
+                throw ex;
+            }
+            stmt.executeUpdate(CREATE_VIEW);
+        }
+    }
+
+    /** False while BillTotals is not kept current; verify and rebuild then have nothing to work on. */
+    public boolean maintained() {
+        return maintained;
+    }
+
+    // 1. LIST SUMMARY ROWS NEWEST FIRST, ONE PAGE AT A TIME (KEYSET ON bill_no; NULL = FIRST PAGE)
+    public List<BillSummary> listLatest(Integer beforeBillNo, int limit) throws SQLException {
+        String sql = "SELECT " + RowMappers.BILL_SUMMARY_COLUMNS
+                + " FROM " + source + " JOIN Person ON Person.person_id = BillTotals.patient_id"
+                + " WHERE BillTotals.bill_no < ? ORDER BY BillTotals.bill_no DESC LIMIT ?";
+
+        List<BillSummary> rows = new ArrayList<>(limit);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, beforeBillNo == null ? Integer.MAX_VALUE : beforeBillNo);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(RowMappers.BILL_SUMMARY.map(rs));
+                }
+            }
+        }
+        return rows;
+    }
+
+    // 2. LIST SUMMARY ROWS FOR ONE PATIENT
+    public List<BillSummary> listForPatient(int patientID) throws SQLException {
+        String sql = "SELECT " + RowMappers.BILL_SUMMARY_COLUMNS
+                + " FROM " + source + " JOIN Person ON Person.person_id = BillTotals.patient_id"
+                + " WHERE BillTotals.patient_id = ? ORDER BY BillTotals.bill_no";
+
+        List<BillSummary> rows = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, patientID);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(RowMappers.BILL_SUMMARY.map(rs));
+                }
+            }
+        }
+        return rows;
+    }
+
+    // 3. COMPARE EVERY MAINTAINED ROW WITH A FULL AGGREGATION OF BillItem (AT MOST maxReported MISMATCHES)
+    public List<Mismatch> verify(int maxReported) throws SQLException {
+        String sql = "SELECT a.bill_no, a.items, a.total, t.item_count, t.total_amount FROM ("
+                + "SELECT b.bill_no, COUNT(bi.order_no) AS items, COALESCE(SUM(bi.amount), 0) AS total "
+                + "FROM Bill b LEFT JOIN BillItem bi ON bi.bill_no = b.bill_no GROUP BY b.bill_no) a "
+                + "LEFT JOIN BillTotals t ON t.bill_no = a.bill_no "
+                + "WHERE t.bill_no IS NULL OR t.item_count <> a.items OR t.total_amount <> a.total "
+                + "ORDER BY a.bill_no LIMIT ?";
+
+        List<Mismatch> mismatches = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, maxReported);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    mismatches.add(new Mismatch(
+                            rs.getInt(1),
+                            rs.getInt(2),
+                            rs.getBigDecimal(3),
+                            RowMappers.nullableInt(rs, 4),
+                            rs.getBigDecimal(5)));
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    // 4. RECOMPUTE EVERY ROW FROM Bill AND BillItem IN ONE TRANSACTION, RETURNS THE ROW COUNT
+    public int rebuild() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            return rebuild(connection);
+        }
+    }
+
+    private static int rebuild(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM BillTotals");
+            int rows = stmt.executeUpdate("INSERT INTO BillTotals "
+                    + "(bill_no, patient_id, appointment_id, created_at, item_count, total_amount) " + AGGREGATE);
+            connection.commit();
+            return rows;
+        } catch (SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+}
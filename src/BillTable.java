@@ -1,64 +1,114 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
-// HANDLES SELECT, INSERT, DELETE FOR BILL TABLE
+// HANDLES SELECT, INSERT, DELETE FOR BILL AND BILLITEM TABLES
 public class BillTable {
 
-    private Connection connection;
+    /**
+     * One line to add to a bill. For a Service line the amount may be null: it is then taken from the
+     * cached Service price list, and a null description defaults to the service's description.
+     */
+    public record NewItem(String chargeType, Integer serviceId, String description, BigDecimal amount) {
+        public static NewItem service(int serviceId) {
+            return new NewItem("Service", serviceId, null, null);
+        }
+
+        public static NewItem charge(String chargeType, String description, BigDecimal amount) {
+            return new NewItem(chargeType, null, description, amount);
+        }
+    }
+
+    /** A bill as written, with its items and their total; nothing is read back from the database. */
+    public record CreatedBill(Bill bill, List<BillItem> items, BigDecimal total) { }
+
+    // Values of the BillItem.charge_type ENUM
+    private static final Set<String> CHARGE_TYPES =
+            Set.of("Doctor", "Room", "Prescription", "Medication", "Service", "Other");
+
+    private static final String INSERT_ITEM = "INSERT INTO BillItem "
+            + "(bill_no, order_no, charge_type, service_id, description, amount) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final ConnectionPool pool;
+    private final ReferenceData referenceData;
+    private final ChangeOutbox outbox;
 
-    public BillTable(Connection connection) {
-        this.connection = connection;
+    /**
+     * @param outbox change outbox; every bill write then records its event in the same transaction; null records none
+     */
+    public BillTable(ConnectionPool pool, ReferenceData referenceData, ChangeOutbox outbox) {
+        this.pool = pool;
+        this.referenceData = referenceData;
+        this.outbox = outbox;
     }
 
     // 1. LIST ALL BILLS FOR A PATIENT
-    public void listBillsForPatient(int patientID) throws SQLException {
+    public List<Bill> listBillsForPatient(int patientID) throws SQLException {
         String sql =
-                "SELECT bill_no, patient_id, appointment_id, created_at " + "FROM Bill WHERE patient_id = ?";
+                "SELECT " + RowMappers.BILL_COLUMNS + " FROM Bill WHERE patient_id = ? ORDER BY bill_no";
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        List<Bill> bills = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, patientID);
             try (ResultSet rs = ps.executeQuery()) {
-                System.out.println("BillNo | Patient | Appointment | CreatedAt");
-
                 while (rs.next()) {
-                    System.out.printf("%d | %d | %s | %s%n",
-                            rs.getInt("bill_no"),
-                            rs.getInt("patient_id"),
-                            rs.getInt("appointment_id") == 0 ? "NULL" : rs.getInt("appointment_id"),
-                            rs.getTimestamp("created_at").toString()
-                    );
+                    bills.add(RowMappers.BILL.map(rs));
                 }
             }
         }
+        return bills;
     }
 
     // 2. SELECT A SPECIFIC BILL BY ID
-    public void selectBillByID(int billNo) throws SQLException {
+    public Optional<Bill> selectBillByID(int billNo) throws SQLException {
         String sql =
-                "SELECT bill_no, patient_id, appointment_id, created_at " +
-                        "FROM Bill WHERE bill_no = ?";
+                "SELECT " + RowMappers.BILL_COLUMNS + " FROM Bill WHERE bill_no = ?";
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, billNo);
 
             try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? Optional.of(RowMappers.BILL.map(rs)) : Optional.empty();
+            }
+        }
+    }
 
-                if (rs.next()) {
-                    System.out.println("Bill Details:");
-                    System.out.printf("Bill %d: patient=%d appointment=%s created_at=%s%n",
-                            rs.getInt("bill_no"),
-                            rs.getInt("patient_id"),
-                            rs.getInt("appointment_id") == 0 ? "NULL" : rs.getInt("appointment_id"),
-                            rs.getTimestamp("created_at").toString()
-                    );
-                } else {
-                    System.out.println("No bill found with ID " + billNo);
+    // 3. LIST THE LINE ITEMS OF A BILL
+    public List<BillItem> listBillItems(int billNo) throws SQLException {
+        String sql =
+                "SELECT " + RowMappers.BILL_ITEM_COLUMNS + " FROM BillItem WHERE bill_no = ? ORDER BY order_no";
+
+        List<BillItem> items = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, billNo);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    items.add(RowMappers.BILL_ITEM.map(rs));
                 }
             }
         }
+        return items;
     }
 
-    // 3. INSERT NEW BILL
-    public void insertBill(int patientID, Integer appointmentID) throws SQLException {
+    // 4. INSERT NEW BILL, RETURNS THE NEW bill_no
+    public int insertBill(int patientID, Integer appointmentID) throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            return outbox == null ? insertBill(connection, patientID, appointmentID)
+                    : outbox.execute(connection, c -> insertBill(c, patientID, appointmentID));
+        }
+    }
+
+    private int insertBill(Connection connection, int patientID, Integer appointmentID) throws SQLException {
 
         String sql = "INSERT INTO Bill (patient_id, appointment_id) VALUES (?, ?)";
 
@@ -81,27 +131,195 @@ public class BillTable {
 
             try (ResultSet keys = ps.getGeneratedKeys()) {
                 if (keys.next()) {
-                    int newID = keys.getInt(1);
-                    System.out.println("Bill inserted with ID: " + newID);
+                    int billNo = keys.getInt(1);
+                    if (outbox != null) {
+                        outbox.record(connection, "Bill", billNo, "INSERT", ChangeOutbox.payload()
+                                .put("patient_id", patientID).put("appointment_id", appointmentID));
+                    }
+                    return billNo;
                 }
             }
         }
+        throw new SQLException("Bill insert succeeded but no ID was returned.");
     }
 
-    // 4. DELETE BILL
-    public void deleteBill(int billNo) throws SQLException {
+    // 5. DELETE BILL
+    public int deleteBill(int billNo) throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            return outbox == null ? deleteBill(connection, billNo) : outbox.execute(connection, c -> deleteBill(c, billNo));
+        }
+    }
+
+    private int deleteBill(Connection connection, int billNo) throws SQLException {
         String sql = "DELETE FROM Bill WHERE bill_no = ?";
 
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, billNo);
 
             int rows = ps.executeUpdate();
+            if (rows > 0 && outbox != null) {
+                outbox.record(connection, "Bill", billNo, "DELETE", ChangeOutbox.payload());
+            }
+            return rows;
+        }
+    }
 
-            if (rows > 0) {
-                System.out.println("Bill " + billNo + " has been deleted.");
-            } else {
-                System.out.println("No bill found with ID: " + billNo);
+    // 6. INSERT A BILL AND ITS LINE ITEMS IN ONE TRANSACTION
+    public CreatedBill createBillWithItems(int patientID, Integer appointmentID, List<NewItem> newItems)
+            throws SQLException {
+        // Resolve prices before taking any locks; an unknown service fails here, not half-way through
+        List<NewItem> resolved = resolve(newItems);
+        // DATETIME keeps whole seconds; truncate so the returned value equals the stored one
+        LocalDateTime createdAt = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        String sql = "INSERT INTO Bill (patient_id, appointment_id, created_at) VALUES (?, ?, ?)";
+
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                int billNo;
+                try (PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                    ps.setInt(1, patientID);
+                    if (appointmentID == null) {
+                        ps.setNull(2, Types.INTEGER);
+                    } else {
+                        ps.setInt(2, appointmentID);
+                    }
+                    ps.setTimestamp(3, Timestamp.valueOf(createdAt));
+                    ps.executeUpdate();
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        if (!keys.next()) {
+                            throw new SQLException("Bill insert succeeded but no ID was returned.");
+                        }
+                        billNo = keys.getInt(1);
+                    }
+                }
+                List<BillItem> items = insertItems(connection, billNo, 1, resolved);
+                BigDecimal total = total(items);
+                if (outbox != null) {
+                    outbox.record(connection, "Bill", billNo, "INSERT", ChangeOutbox.payload()
+                            .put("patient_id", patientID).put("appointment_id", appointmentID)
+                            .put("created_at", Timestamp.valueOf(createdAt)).put("items", items.size()).put("total", total));
+                }
+                connection.commit();
+                if (outbox != null) {
+                    outbox.committed();
+                }
+                return new CreatedBill(new Bill(billNo, patientID, appointmentID, createdAt), items, total);
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            }
+        }
+    }
+
+    // 7. APPEND LINE ITEMS TO AN EXISTING BILL, RETURNS THE NEW ITEMS
+    public List<BillItem> addBillItems(int billNo, List<NewItem> newItems) throws SQLException {
+        List<NewItem> resolved = resolve(newItems);
+        // Locking the bill row serializes concurrent appends, so each gets its own order_no range
+        String lockSql = "SELECT bill_no FROM Bill WHERE bill_no = ? FOR UPDATE";
+        String nextSql = "SELECT COALESCE(MAX(order_no), 0) + 1 FROM BillItem WHERE bill_no = ?";
+
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = connection.prepareStatement(lockSql)) {
+                    ps.setInt(1, billNo);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) {
+                            throw new SQLException("No bill found with ID " + billNo);
+                        }
+                    }
+                }
+                int firstOrderNo;
+                try (PreparedStatement ps = connection.prepareStatement(nextSql)) {
+                    ps.setInt(1, billNo);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                        firstOrderNo = rs.getInt(1);
+                    }
+                }
+                List<BillItem> items = insertItems(connection, billNo, firstOrderNo, resolved);
+                if (outbox != null && !items.isEmpty()) {
+                    outbox.record(connection, "Bill", billNo, "UPDATE", ChangeOutbox.payload()
+                            .put("first_order_no", firstOrderNo).put("items_added", items.size())
+                            .put("amount_added", total(items)));
+                }
+                connection.commit();
+                if (outbox != null) {
+                    outbox.committed();
+                }
+                return items;
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            }
+        }
+    }
+
+    public static BigDecimal total(List<BillItem> items) {
+        BigDecimal total = BigDecimal.ZERO.setScale(2);
+        for (BillItem item : items) {
+            total = total.add(item.amount());
+        }
+        return total;
+    }
+
+    // Batch-inserts the lines with consecutive order_no values starting at firstOrderNo
+    private static List<BillItem> insertItems(Connection connection, int billNo, int firstOrderNo,
+                                              List<NewItem> resolved) throws SQLException {
+        List<BillItem> items = new ArrayList<>(resolved.size());
+        if (resolved.isEmpty()) {
+            return items;
+        }
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_ITEM)) {
+            int orderNo = firstOrderNo;
+            for (NewItem item : resolved) {
+                ps.setInt(1, billNo);
+                ps.setInt(2, orderNo);
+                ps.setString(3, item.chargeType());
+                if (item.serviceId() == null) {
+                    ps.setNull(4, Types.INTEGER);
+                } else {
+                    ps.setInt(4, item.serviceId());
+                }
+                ps.setString(5, item.description());
+                ps.setBigDecimal(6, item.amount());
+                ps.addBatch();
+                items.add(new BillItem(billNo, orderNo, item.chargeType(), item.serviceId(), item.description(), item.amount()));
+                orderNo++;
+            }
+            ps.executeBatch();
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    // Validates each line and fills in service prices/descriptions; amounts are rounded to DECIMAL(10,2)
+    private List<NewItem> resolve(List<NewItem> newItems) throws SQLException {
+        List<NewItem> resolved = new ArrayList<>(newItems.size());
+        for (NewItem item : newItems) {
+            if (!CHARGE_TYPES.contains(item.chargeType())) {
+                throw new SQLException("Unknown charge type: " + item.chargeType());
+            }
+            String description = item.description();
+            BigDecimal amount = item.amount();
+            if (item.serviceId() != null) {
+                ReferenceData.Service service = referenceData.service(item.serviceId());
+                if (service == null) {
+                    throw new SQLException("No service found with ID " + item.serviceId());
+                }
+                if (amount == null && item.chargeType().equals("Service")) {
+                    amount = service.unitPrice();
+                }
+                if (description == null) {
+                    description = service.description();
+                }
+            }
+            if (amount == null || amount.signum() < 0) {
+                throw new SQLException("Bill item needs a non-negative amount: " + item);
             }
+            resolved.add(new NewItem(item.chargeType(), item.serviceId(), description,
+                    amount.setScale(2, RoundingMode.HALF_UP)));
         }
+        return resolved;
     }
 }
@@ -0,0 +1,106 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+// APPOINTMENT + BILL + PATIENT NOTE UNITS OF WORK
+// Runs on the caller's connection; the caller owns auto-commit, commit and rollback.
+public class BillingWorkflow {
+
+    public record Request(int patientId, int doctorId, Timestamp scheduledAt, String reason, int statusId, String note) { }
+
+    /** billNo is 0 for schedule(...), which makes no bill; note is null when the request had no note. */
+    public record Result(int appointmentId, int billNo, PatientNote note) { }
+
+    private static final String INSERT_APPOINTMENT =
+            "INSERT INTO Appointment (patient_id, doctor_id, scheduled_at, reason, status_id) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_BILL = "INSERT INTO Bill (patient_id, appointment_id) VALUES (?, ?)";
+    // Table-only notes for callers without a configured PatientNotes (no audit log, no outbox)
+    private static final PatientNotes TABLE_NOTES = new PatientNotes(null);
+
+    private BillingWorkflow() {
+    }
+
+    /**
+     * Inserts the appointment, a bill linked to it, and adds the request's note to the patient (source "billing").
+     * After its commit the caller calls {@code outbox.committed()} and {@code notes.committed(result.note())}.
+     *
+     * @param notes  writes the note; null writes it to the PatientNote table only
+     * @param outbox records the Appointment and Bill INSERT events; null records none
+     */
+    public static Result apply(Connection connection, PatientNotes notes, ChangeOutbox outbox, Request request)
+            throws SQLException {
+        int appointmentId = insertAppointment(connection, outbox, request);
+
+        int billNo;
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_BILL, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setInt(1, request.patientId());
+            ps.setInt(2, appointmentId);
+            ps.executeUpdate();
+            billNo = generatedKey(ps, "Bill");
+        }
+        if (outbox != null) {
+            outbox.record(connection, "Bill", billNo, "INSERT", ChangeOutbox.payload()
+                    .put("patient_id", request.patientId()).put("appointment_id", appointmentId));
+        }
+
+        PatientNote note = addNote(connection, notes, request, "billing");
+        return new Result(appointmentId, billNo, note);
+    }
+
+    /**
+     * As {@link #apply}, but with no bill: inserts the appointment (recording its INSERT event) and adds the
+     * request's note to the patient (source "booking").
+     */
+    public static Result schedule(Connection connection, PatientNotes notes, ChangeOutbox outbox, Request request)
+            throws SQLException {
+        int appointmentId = insertAppointment(connection, outbox, request);
+        return new Result(appointmentId, 0, addNote(connection, notes, request, "booking"));
+    }
+
+    private static int insertAppointment(Connection connection, ChangeOutbox outbox, Request request)
+            throws SQLException {
+        int appointmentId;
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_APPOINTMENT, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setInt(1, request.patientId());
+            ps.setInt(2, request.doctorId());
+            ps.setTimestamp(3, request.scheduledAt());
+            if (request.reason() == null || request.reason().isEmpty()) {
+                ps.setNull(4, Types.VARCHAR);
+            } else {
+                ps.setString(4, request.reason());
+            }
+            ps.setInt(5, request.statusId());
+            ps.executeUpdate();
+            appointmentId = generatedKey(ps, "Appointment");
+        }
+        if (outbox != null) {
+            outbox.record(connection, "Appointment", appointmentId, "INSERT", ChangeOutbox.payload()
+                    .put("patient_id", request.patientId()).put("doctor_id", request.doctorId())
+                    .put("scheduled_at", request.scheduledAt()).put("reason", request.reason())
+                    .put("status_id", request.statusId()));
+        }
+        return appointmentId;
+    }
+
+    // A blank note adds nothing to the history, so only non-blank notes are written; null when none was
+    private static PatientNote addNote(Connection connection, PatientNotes notes, Request request, String source)
+            throws SQLException {
+        if (request.note() == null || request.note().isBlank()) {
+            return null;
+        }
+        return (notes == null ? TABLE_NOTES : notes).append(connection, request.patientId(), source, request.note());
+    }
+
+    private static int generatedKey(PreparedStatement ps, String table) throws SQLException {
+        try (ResultSet keys = ps.getGeneratedKeys()) {
+            if (keys.next()) {
+                return keys.getInt(1);
+            }
+        }
+        throw new SQLException(table + " insert succeeded but no ID was returned.");
+    }
+}
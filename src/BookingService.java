@@ -0,0 +1,224 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// NON-INTERACTIVE BOOKING TRANSACTIONS
+// Callers collect and validate all input first; the transaction itself only runs the SQL and commits,
+// so row locks are held for milliseconds. Deadlocks and lock-wait timeouts roll back and retry with
+// jittered exponential backoff. With a DoctorSchedule, a slot that is already taken is rejected before
+// the transaction starts.
+public class BookingService {
+
+    /** What a committed transaction cost: attempts (1 = no retry) and time spent in COMMIT / overall. */
+    public record Outcome<T>(T value, int attempts, long commitNanos, long elapsedNanos) {
+        public int retries() {
+            return attempts - 1;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("committed after %d attempt(s), commit %.2f ms, total %.2f ms",
+                    attempts, commitNanos / 1e6, elapsedNanos / 1e6);
+        }
+    }
+
+    public record Stats(long committed, long failed, long retries, double avgCommitMillis, double maxCommitMillis) {
+        @Override
+        public String toString() {
+            return String.format("Bookings: committed=%d failed=%d retries=%d avgCommit=%.2fms maxCommit=%.2fms",
+                    committed, failed, retries, avgCommitMillis, maxCommitMillis);
+        }
+    }
+
+    /** The SQL of one transaction; may run several times, so it must not have side effects outside the connection. */
+    @FunctionalInterface
+    public interface UnitOfWork<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    // MySQL: ER_LOCK_DEADLOCK (whole transaction rolled back) and ER_LOCK_WAIT_TIMEOUT (statement rolled back)
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+    private static final int ER_LOCK_DEADLOCK = 1213;
+
+    private final ConnectionPool pool;
+    private final PatientNotes notes;
+    private final DoctorSchedule schedule;
+    private final ChangeOutbox outbox;
+    private final int maxAttempts;
+    private final long baseBackoffNanos;
+    private final long maxBackoffNanos;
+
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder commitNanos = new LongAdder();
+    private final LongAccumulator maxCommitNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param notes          writes each booking's patient note; null writes it to the PatientNote table only
+     * @param schedule       checked and updated for every booking; null books without a conflict check
+     * @param outbox         records the Appointment and Bill INSERT events of every booking; null records none
+     * @param maxAttempts    total tries per transaction, including the first
+     * @param baseBackoff    upper bound of the first retry's random delay; doubles per retry
+     */
+    public BookingService(ConnectionPool pool, PatientNotes notes, DoctorSchedule schedule, ChangeOutbox outbox,
+                          int maxAttempts, Duration baseBackoff) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.pool = pool;
+        this.notes = notes;
+        this.schedule = schedule;
+        this.outbox = outbox;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffNanos = baseBackoff.toNanos();
+        this.maxBackoffNanos = Math.max(baseBackoffNanos, TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /** Appointment + bill + "billing" patient note, in one transaction. */
+    public Outcome<BillingWorkflow.Result> bookAndBill(BillingWorkflow.Request request) throws SQLException {
+        try (DoctorSchedule.Hold hold = holdSlot(request)) {
+            Outcome<BillingWorkflow.Result> outcome = execute(connection -> {
+                checkSlot(connection, request);
+                return BillingWorkflow.apply(connection, notes, outbox, request);
+            });
+            if (hold != null) {
+                hold.confirm(outcome.value().appointmentId());
+            }
+            afterCommit(outcome.value().note());
+            return outcome;
+        }
+    }
+
+    /** Appointment + "booking" patient note, in one transaction; returns the appointment_id. */
+    public Outcome<Integer> book(BillingWorkflow.Request request) throws SQLException {
+        try (DoctorSchedule.Hold hold = holdSlot(request)) {
+            Outcome<BillingWorkflow.Result> outcome = execute(connection -> {
+                checkSlot(connection, request);
+                return BillingWorkflow.schedule(connection, notes, outbox, request);
+            });
+            int appointmentId = outcome.value().appointmentId();
+            if (hold != null) {
+                hold.confirm(appointmentId);
+            }
+            afterCommit(outcome.value().note());
+            return new Outcome<>(appointmentId, outcome.attempts(), outcome.commitNanos(), outcome.elapsedNanos());
+        }
+    }
+
+    /**
+     * Runs {@code work} in a transaction on a pooled connection and commits it. Deadlocks and lock-wait
+     * timeouts roll back and retry up to maxAttempts; any other error rolls back and is rethrown.
+     */
+    public <T> Outcome<T> execute(UnitOfWork<T> work) throws SQLException {
+        long start = System.nanoTime();
+        for (int attempt = 1; ; attempt++) {
+            try (Connection connection = pool.getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    T value = work.run(connection);
+                    long commitStart = System.nanoTime();
+                    connection.commit();
+                    long commitTime = System.nanoTime() - commitStart;
+
+                    committed.increment();
+                    commitNanos.add(commitTime);
+                    maxCommitNanos.accumulate(commitTime);
+                    return new Outcome<>(value, attempt, commitTime, System.nanoTime() - start);
+                } catch (SQLException ex) {
+                    rollbackQuietly(connection, ex);
+                    if (!isRetryable(ex) || attempt >= maxAttempts) {
+                        failed.increment();
+                        throw ex;
+                    }
+                }
+            } // the pool restores auto-commit when the connection is returned
+            retries.increment();
+            backoff(attempt);
+        }
+    }
+
+    public Stats stats() {
+        long commits = committed.sum();
+        return new Stats(commits, failed.sum(), retries.sum(),
+                commits == 0 ? 0 : commitNanos.sum() / 1e6 / commits, maxCommitNanos.get() / 1e6);
+    }
+
+    /**
+     * True for errors where rolling back and running the same transaction again can succeed. Looks through both
+     * the getNextException() chain and the cause chain, since wrappers (the pool proxy, BatchUpdateException)
+     * may carry the driver's deadlock as either.
+     */
+    static boolean isRetryable(SQLException ex) {
+        return isRetryable(ex, Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    private static boolean isRetryable(Throwable t, Set<Throwable> seen) {
+        // seen: the two chains can meet, and a badly built chain can loop
+        for (; t != null && seen.add(t); t = t.getCause()) {
+            if (t instanceof SQLException e) {
+                int code = e.getErrorCode();
+                // SQLState 40001 is the standard serialization-failure class (MySQL reports deadlocks with it)
+                if (code == ER_LOCK_DEADLOCK || code == ER_LOCK_WAIT_TIMEOUT || "40001".equals(e.getSQLState())) {
+                    return true;
+                }
+                if (e.getNextException() != null && isRetryable(e.getNextException(), seen)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Null when there is no schedule or the booking is Cancelled (it takes no slot);
+    // throws DoctorSchedule.ConflictException if the slot is taken
+    private DoctorSchedule.Hold holdSlot(BillingWorkflow.Request request) throws SQLException {
+        return schedule == null || !schedule.occupiesSlot(request.statusId()) ? null
+                : schedule.hold(request.doctorId(), request.scheduledAt().toLocalDateTime());
+    }
+
+    private void checkSlot(Connection connection, BillingWorkflow.Request request) throws SQLException {
+        if (schedule != null && schedule.occupiesSlot(request.statusId())) {
+            schedule.checkFree(connection, request.doctorId(), request.scheduledAt().toLocalDateTime());
+        }
+    }
+
+    // Once the booking is committed: wakes the outbox relay and writes the committed note to the audit log
+    private void afterCommit(PatientNote note) throws SQLException {
+        if (outbox != null) {
+            outbox.committed();
+        }
+        if (notes != null) {
+            notes.committed(note);
+        }
+    }
+
+    private static void rollbackQuietly(Connection connection, SQLException cause) {
+        try {
+            connection.rollback();
+        } catch (SQLException rollbackEx) {
+            cause.addSuppressed(rollbackEx);
+        }
+    }
+
+    // Full jitter: sleep a random time up to base * 2^(attempt-1), so competing retries spread out
+    private void backoff(int attempt) throws SQLException {
+        long ceiling = Math.min(maxBackoffNanos, baseBackoffNanos << Math.min(attempt - 1, 20));
+        if (ceiling <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting to retry the transaction", ex);
+        }
+    }
+}
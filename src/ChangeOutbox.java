@@ -0,0 +1,165 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// TRANSACTIONAL OUTBOX FOR Appointment, Bill AND Patient CHANGES
+// A DAO that is given an outbox writes one ChangeOutbox row per changed entity in the same transaction as the
+// change, after the change itself. The event therefore becomes visible exactly when the change commits and
+// disappears with it on rollback; OutboxRelay only ever reads committed events. Because the row is written
+// while the changed row is still locked, two events for the same entity get event_ids in commit order.
+public class ChangeOutbox {
+
+    /** One committed change; payload is a JSON object with the changed columns. */
+    public record Event(long eventId, String entity, int entityId, String operation, String payload,
+                        LocalDateTime createdAt) { }
+
+    /** One event to record; see {@link #recordAll}. */
+    public record Change(String entity, int entityId, String operation, Payload payload) { }
+
+    /** A write that runs inside an outbox transaction; returns its update count or generated id. */
+    @FunctionalInterface
+    public interface Mutation {
+        int apply(Connection connection) throws SQLException;
+    }
+
+    static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS ChangeOutbox ("
+            + "event_id BIGINT PRIMARY KEY AUTO_INCREMENT,"
+            + "entity VARCHAR(20) NOT NULL,"
+            + "entity_id INT NOT NULL,"
+            + "operation VARCHAR(10) NOT NULL,"
+            + "payload TEXT NOT NULL,"
+            + "created_at DATETIME(3) NOT NULL)";
+
+    private static final String INSERT_EVENT =
+            "INSERT INTO ChangeOutbox (entity, entity_id, operation, payload, created_at) VALUES (?, ?, ?, ?, ?)";
+
+    // Released after each commit that wrote events, so the relay does not wait out its poll interval
+    private final Semaphore pending = new Semaphore(0);
+
+    public static void ensureSchema(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(CREATE_TABLE);
+        }
+    }
+
+    /** Starts a JSON payload, e.g. {@code ChangeOutbox.payload().put("status_id", 2)}. */
+    public static Payload payload() {
+        return new Payload();
+    }
+
+    // 1. WRITE ONE EVENT ON THE CALLER'S CONNECTION; THE CALLER OWNS THE TRANSACTION
+    public void record(Connection connection, String entity, int entityId, String operation, Payload payload)
+            throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_EVENT)) {
+            ps.setString(1, entity);
+            ps.setInt(2, entityId);
+            ps.setString(3, operation);
+            ps.setString(4, payload.toString());
+            ps.setTimestamp(5, Timestamp.valueOf(LocalDateTime.now()));
+            ps.executeUpdate();
+        }
+    }
+
+    /** As {@link #record}, for many events in one JDBC batch (bulk writers). */
+    public void recordAll(Connection connection, List<Change> changes) throws SQLException {
+        if (changes.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_EVENT)) {
+            for (Change change : changes) {
+                ps.setString(1, change.entity());
+                ps.setInt(2, change.entityId());
+                ps.setString(3, change.operation());
+                ps.setString(4, change.payload().toString());
+                ps.setTimestamp(5, now);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    // 2. RUN A SINGLE-STATEMENT WRITE AND ITS EVENT IN ONE TRANSACTION
+    public int execute(Connection connection, Mutation mutation) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            int rows = mutation.apply(connection);
+            connection.commit();
+            committed();
+            return rows;
+        } catch (SQLException | RuntimeException ex) {
+            connection.rollback();
+            throw ex;
+        }
+    }
+
+    /** Call after committing a transaction that recorded events; wakes the relay. */
+    public void committed() {
+        if (pending.availablePermits() == 0) {
+            pending.release();
+        }
+    }
+
+    /** Waits until some transaction has committed events, or the timeout passes. */
+    boolean awaitEvents(long timeoutMillis) throws InterruptedException {
+        boolean signalled = pending.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        pending.drainPermits();
+        return signalled;
+    }
+
+    /** A flat JSON object built from column values. */
+    public static final class Payload {
+        private final StringBuilder json = new StringBuilder(64).append('{');
+
+        public Payload put(String name, Object value) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            quote(name);
+            json.append(':');
+            if (value == null) {
+                json.append("null");
+            } else if (value instanceof Number || value instanceof Boolean) {
+                json.append(value);
+            } else if (value instanceof Timestamp timestamp) {
+                quote(timestamp.toLocalDateTime().toString());
+            } else {
+                quote(value.toString());
+            }
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return json + "}";
+        }
+
+        private void quote(String text) {
+            json.append('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '"' -> json.append("\\\"");
+                    case '\\' -> json.append("\\\\");
+                    case '\n' -> json.append("\\n");
+                    case '\r' -> json.append("\\r");
+                    case '\t' -> json.append("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            json.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            json.append(c);
+                        }
+                    }
+                }
+            }
+            json.append('"');
+        }
+    }
+}
@@ -0,0 +1,539 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// BOUNDED JDBC CONNECTION POOL (WARM-UP, VALIDATION ON BORROW, LEAK DETECTION, STATEMENT CACHE, QUERY METRICS)
+public class ConnectionPool implements AutoCloseable {
+
+    /**
+     * Point-in-time snapshot of pool usage.
+     * Wait times cover the whole borrow call, including validation and opening new connections. waiting is the
+     * number of threads blocked for a connection; rollbacks include transactions the pool rolled back because a
+     * connection came back with one still open.
+     */
+    public record Stats(int active, int idle, int open, int maxSize, int waiting,
+                        long borrows, double avgWaitMillis, double p99WaitMillis, double maxWaitMillis, long leaksDetected,
+                        long commits, long rollbacks,
+                        long statementHits, long statementMisses, long statementEvictions) {
+        @Override
+        public String toString() {
+            long lookups = statementHits + statementMisses;
+            return String.format("active=%d idle=%d open=%d max=%d waiting=%d borrows=%d avgWait=%.3fms p99Wait=%.3fms "
+                            + "maxWait=%.3fms leaks=%d%n"
+                            + "transactions: commits=%d rollbacks=%d%n"
+                            + "statement cache: hits=%d misses=%d evictions=%d hitRatio=%.1f%%",
+                    active, idle, open, maxSize, waiting, borrows, avgWaitMillis, p99WaitMillis, maxWaitMillis,
+                    leaksDetected, commits, rollbacks, statementHits, statementMisses, statementEvictions,
+                    lookups == 0 ? 0.0 : 100.0 * statementHits / lookups);
+        }
+    }
+
+    // A physical connection plus the prepared statements cached on it
+    private record Physical(Connection connection, StatementCache statements) { }
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minIdle;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    private final BlockingDeque<Physical> idle = new LinkedBlockingDeque<>();
+    private final Set<Lease> leased = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final LatencyHistogram borrowWait = new LatencyHistogram();
+    private final LongAdder leakCount = new LongAdder();
+    private final LongAdder commitCount = new LongAdder();
+    private final LongAdder rollbackCount = new LongAdder();
+    private final StatementCache.Counters statementCounters = new StatementCache.Counters();
+    private final QueryMetrics metrics;
+    private final ScheduledExecutorService leakDetector;
+    private volatile boolean closed;
+
+    /**
+     * Reads url/user/password plus the optional pool.* and metrics.* keys and opens pool.minIdle connections
+     * up front.
+     */
+    public ConnectionPool(Properties props) throws SQLException {
+        this.url = props.getProperty("url");
+        this.user = props.getProperty("user");
+        this.password = props.getProperty("password");
+        if (url == null || user == null || password == null) {
+            throw new IllegalStateException("db.properties must define url, user, and password");
+        }
+        this.maxSize = intProperty(props, "pool.maxSize", 10);
+        this.minIdle = Math.min(intProperty(props, "pool.minIdle", 2), maxSize);
+        this.borrowTimeoutMillis = intProperty(props, "pool.borrowTimeoutMs", 5000);
+        this.leakThresholdMillis = intProperty(props, "pool.leakThresholdMs", 30000);
+        this.validationTimeoutSeconds = intProperty(props, "pool.validationTimeoutSeconds", 2);
+        this.statementCacheSize = intProperty(props, "pool.statementCacheSize", 64);
+        if (maxSize < 1) {
+            throw new IllegalStateException("pool.maxSize must be at least 1");
+        }
+        this.permits = new Semaphore(maxSize, true);
+        this.metrics = QueryMetrics.fromProperties(props);
+
+        for (int i = 0; i < minIdle; i++) {
+            idle.offerLast(openPhysical());
+        }
+
+        if (leakThresholdMillis > 0) {
+            leakDetector = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "connection-leak-detector");
+                t.setDaemon(true);
+                return t;
+            });
+            long period = Math.max(leakThresholdMillis / 2, 1000);
+            leakDetector.scheduleAtFixedRate(this::reportLeaks, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            leakDetector = null;
+        }
+    }
+
+    /**
+     * Borrows a validated connection, blocking up to pool.borrowTimeoutMs when all connections are in use.
+     * Closing the returned connection hands it back to the pool instead of closing the socket.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException("Timed out after " + borrowTimeoutMillis
+                        + "ms waiting for a connection (" + stats() + ")");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection", ex);
+        }
+
+        try {
+            Physical physical = takeValidIdle();
+            if (physical == null) {
+                physical = openPhysical();
+            }
+            borrowWait.record(System.nanoTime() - start);
+            Lease lease = new Lease(physical, leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null);
+            leased.add(lease);
+            return lease.proxy;
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    public Stats stats() {
+        long borrows = borrowWait.count();
+        double avgWait = borrows == 0 ? 0 : borrowWait.totalNanos() / (double) borrows / 1_000_000.0;
+        return new Stats(leased.size(), idle.size(), openCount.get(), maxSize, permits.getQueueLength(),
+                borrows, avgWait, borrowWait.quantileNanos(0.99) / 1_000_000.0, borrowWait.maxNanos() / 1_000_000.0,
+                leakCount.sum(), commitCount.sum(), rollbackCount.sum(),
+                statementCounters.hits(), statementCounters.misses(), statementCounters.evictions());
+    }
+
+    /** Per-statement latency, rows and errors; null when metrics.enabled=false. */
+    public QueryMetrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (leakDetector != null) {
+            leakDetector.shutdownNow();
+        }
+        Physical physical;
+        while ((physical = idle.pollFirst()) != null) {
+            closePhysical(physical);
+        }
+    }
+
+    private Physical takeValidIdle() {
+        Physical physical;
+        while ((physical = idle.pollFirst()) != null) {
+            try {
+                if (physical.connection.isValid(validationTimeoutSeconds)) {
+                    return physical;
+                }
+            } catch (SQLException ignored) {
+                // fall through and discard the broken connection
+            }
+            closePhysical(physical);
+        }
+        return null;
+    }
+
+    private Physical openPhysical() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, user, password);
+        openCount.incrementAndGet();
+        StatementCache statements = statementCacheSize > 0
+                ? new StatementCache(connection, statementCacheSize, statementCounters)
+                : null;
+        return new Physical(connection, statements);
+    }
+
+    private void closePhysical(Physical physical) {
+        openCount.decrementAndGet();
+        if (physical.statements != null) {
+            physical.statements.clear();
+        }
+        try {
+            physical.connection.close();
+        } catch (SQLException ignored) {
+            // the connection is being discarded anyway
+        }
+    }
+
+    private void release(Lease lease) {
+        leased.remove(lease);
+        Physical physical = lease.physical;
+        try {
+            Connection connection = physical.connection;
+            if (!connection.getAutoCommit()) {
+                // Always safe; only counted when work may have run since the last commit or rollback
+                if (lease.transactionOpen) {
+                    rollbackCount.increment();
+                }
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            if (closed) {
+                closePhysical(physical);
+            } else {
+                idle.offerFirst(physical);
+            }
+        } catch (SQLException ex) {
+            closePhysical(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void reportLeaks() {
+        long now = System.nanoTime();
+        for (Lease lease : leased) {
+            long heldMillis = TimeUnit.NANOSECONDS.toMillis(now - lease.borrowedAt);
+            if (heldMillis >= leakThresholdMillis && !lease.leakReported) {
+                lease.leakReported = true;
+                leakCount.increment();
+                System.err.println("WARNING: connection held for " + heldMillis + "ms (threshold "
+                        + leakThresholdMillis + "ms), possible leak:");
+                lease.borrowStack.printStackTrace();
+            }
+        }
+    }
+
+    private static int intProperty(Properties props, String key, int defaultValue) {
+        String value = props.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalStateException("db.properties key " + key + " must be an integer, got: " + value);
+        }
+    }
+
+    // One checkout of a physical connection; the proxy routes close() back to the pool
+    private final class Lease implements InvocationHandler {
+        private final Physical physical;
+        private final Throwable borrowStack;
+        private final long borrowedAt = System.nanoTime();
+        private final Connection proxy;
+        private volatile boolean leakReported;
+        // Auto-commit is off and a statement may have been created since the last commit or rollback
+        private volatile boolean transactionOpen;
+        private boolean returned;
+
+        Lease(Physical physical, Throwable borrowStack) {
+            this.physical = physical;
+            this.borrowStack = borrowStack;
+            this.proxy = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (!returned) {
+                            returned = true;
+                            release(this);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    synchronized (this) {
+                        return returned || physical.connection.isClosed();
+                    }
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical.connection + "]";
+                default:
+                    break;
+            }
+            synchronized (this) {
+                if (returned) {
+                    throw new SQLException("Connection has already been returned to the pool");
+                }
+            }
+            if (physical.statements != null && method.getName().equals("prepareStatement")) {
+                Class<?>[] types = method.getParameterTypes();
+                if (types.length == 1) {
+                    return cachedStatement((String) args[0], Statement.NO_GENERATED_KEYS);
+                }
+                if (types.length == 2 && types[1] == int.class) {
+                    return cachedStatement((String) args[0], (Integer) args[1]);
+                }
+            }
+            Object result;
+            try {
+                result = method.invoke(physical.connection, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+            // Whole-transaction outcomes only; rollback(Savepoint) is not counted
+            if (args == null && method.getName().equals("commit")) {
+                commitCount.increment();
+                transactionOpen = false;
+            } else if (args == null && method.getName().equals("rollback")) {
+                rollbackCount.increment();
+                transactionOpen = false;
+            } else if (method.getName().equals("setAutoCommit")) {
+                transactionOpen = !(Boolean) args[0];
+            } else if (result instanceof Statement) {
+                statementCreated();
+            }
+            // createStatement / prepareStatement / prepareCall not served from the cache: wrapped only for timing
+            if (metrics != null && result instanceof Statement statement) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String text ? text : null;
+                return statementProxy(method.getReturnType(),
+                        new PooledStatement(this, sql, Statement.NO_GENERATED_KEYS, false, statement));
+            }
+            return result;
+        }
+
+        private void statementCreated() throws SQLException {
+            if (!transactionOpen && !physical.connection.getAutoCommit()) {
+                transactionOpen = true;
+            }
+        }
+
+        private PreparedStatement cachedStatement(String sql, int autoGeneratedKeys) throws SQLException {
+            statementCreated();
+            PreparedStatement statement = physical.statements.checkout(sql, autoGeneratedKeys);
+            return (PreparedStatement) statementProxy(PreparedStatement.class,
+                    new PooledStatement(this, sql, autoGeneratedKeys, true, statement));
+        }
+
+        private Object statementProxy(Class<?> type, PooledStatement handler) {
+            handler.proxy = (Statement) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+            return handler.proxy;
+        }
+    }
+
+    // Caller-facing handle on a statement. A cached one goes back to the per-connection cache on close();
+    // with metrics enabled every execute* call is timed and the rows it returns or changes are counted.
+    private final class PooledStatement implements InvocationHandler {
+        private final Lease lease;
+        private final String sql;
+        private final int autoGeneratedKeys;
+        private final boolean cached;
+        private final Statement statement;
+        private Statement proxy;
+        // First SQL passed to Statement.addBatch(String), used to label the batch
+        private String batchSql;
+        private boolean closed;
+
+        PooledStatement(Lease lease, String sql, int autoGeneratedKeys, boolean cached, Statement statement) {
+            this.lease = lease;
+            this.sql = sql;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+            this.cached = cached;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        if (cached) {
+                            lease.physical.statements.release(sql, autoGeneratedKeys, (PreparedStatement) statement);
+                        } else {
+                            statement.close();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || statement.isClosed();
+                case "getConnection":
+                    return lease.proxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return (cached ? "CachedStatement[" : "PooledStatement[") + (sql != null ? sql : statement) + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            if (metrics != null) {
+                if (name.startsWith("execute")) {
+                    return timed(method, args);
+                }
+                if (name.equals("addBatch") && args != null && args.length == 1 && batchSql == null) {
+                    batchSql = (String) args[0];
+                } else if (name.equals("clearBatch")) {
+                    batchSql = null;
+                } else if (name.equals("getResultSet")) {
+                    ResultSet rs = (ResultSet) invokeOnStatement(method, args);
+                    return rs == null ? null : countingResultSet(rs, metrics.entry(label(null)));
+                }
+            }
+            return invokeOnStatement(method, args);
+        }
+
+        private Object timed(Method method, Object[] args) throws Throwable {
+            String text = label(args != null && args.length > 0 && args[0] instanceof String s ? s : null);
+            QueryMetrics.Entry entry = metrics.entry(text);
+            boolean failed = true;
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = invokeOnStatement(method, args);
+                failed = false;
+            } finally {
+                metrics.record(entry, text, method.getName(), System.nanoTime() - start, failed);
+                if (method.getName().endsWith("Batch")) {
+                    batchSql = null;
+                }
+            }
+            if (result instanceof ResultSet rs) {
+                return countingResultSet(rs, entry);
+            } else if (result instanceof Integer count) {
+                entry.addRows(count);
+            } else if (result instanceof Long count) {
+                entry.addRows(count);
+            } else if (result instanceof int[] counts) {
+                for (int count : counts) {
+                    entry.addRows(count);
+                }
+            } else if (result instanceof long[] counts) {
+                for (long count : counts) {
+                    entry.addRows(count);
+                }
+            }
+            return result;
+        }
+
+        // SQL an execution is recorded under: the SQL passed to execute*, else the prepared SQL, else the batch
+        private String label(String executed) {
+            if (executed != null) {
+                return executed;
+            }
+            if (sql != null) {
+                return sql;
+            }
+            return batchSql != null ? batchSql : "(empty batch)";
+        }
+
+        private Object invokeOnStatement(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        private ResultSet countingResultSet(ResultSet rs, QueryMetrics.Entry entry) {
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class}, new CountingResultSet(rs, entry, proxy));
+        }
+    }
+
+    // Counts the rows read through next(); the count is added when the result set runs out or is closed
+    private static final class CountingResultSet implements InvocationHandler {
+        private final ResultSet rs;
+        private final QueryMetrics.Entry entry;
+        private final Statement statement;
+        private long rows;
+
+        CountingResultSet(ResultSet rs, QueryMetrics.Entry entry, Statement statement) {
+            this.rs = rs;
+            this.entry = entry;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next":
+                    boolean more = rs.next();
+                    if (more) {
+                        rows++;
+                    } else {
+                        flush();
+                    }
+                    return more;
+                case "close":
+                    flush();
+                    rs.close();
+                    return null;
+                case "getStatement":
+                    return statement;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(rs, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+
+        private void flush() {
+            entry.addRows(rows);
+            rows = 0;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+// CONSOLE RENDERING OF THE RECORDS RETURNED BY THE TABLE CLASSES
+public final class ConsoleView {
+
+    private ConsoleView() {
+    }
+
+    // ---------- PATIENTS ----------
+
+    public static void printPatientListHeader() {
+        System.out.println("\n-- All Patients --");
+        System.out.println("ID | Name | DOB | Insurance | Notes");
+    }
+
+    public static void printPatientRow(Patient p) {
+        System.out.printf("%d | %s %s | %s | %s | %s%n",
+                p.patientId(),
+                p.firstName(),
+                p.lastName(),
+                format(p.dateOfBirth()),
+                p.insuranceId(),
+                p.notes());
+    }
+
+    public static void printPatient(int requestedId, Optional<Patient> patient) {
+        System.out.println("\n-- Patient Details --");
+        if (patient.isPresent()) {
+            Patient p = patient.get();
+            System.out.printf("ID: %d%n", p.patientId());
+            System.out.printf("Name: %s %s%n", p.firstName(), p.lastName());
+            System.out.printf("DOB: %s%n", format(p.dateOfBirth()));
+            System.out.printf("Insurance: %s%n", p.insuranceId());
+            System.out.printf("Notes: %s%n", p.notes());
+        } else {
+            System.out.println("No patient found with ID " + requestedId);
+        }
+    }
+
+    public static void printNoteHistory(int patientId, List<PatientNote> notes) {
+        System.out.println("\n-- Note History for Patient " + patientId + " --");
+        if (notes.isEmpty()) {
+            System.out.println("No notes recorded.");
+            return;
+        }
+        for (PatientNote n : notes) {
+            System.out.printf("#%d | %s | %s | %s%n", n.noteId(), format(n.writtenAt()), n.source(), n.text());
+        }
+    }
+
+    // ---------- APPOINTMENTS ----------
+
+    public static void printAppointmentListHeader() {
+        System.out.println("\n-- All Appointments --");
+        System.out.println("ID | Patient | Doctor | Date | Status | Reason");
+    }
+
+    public static void printAppointmentRow(Appointment a) {
+        System.out.printf("%d | %d | %d | %s | %s | %s%n",
+                a.appointmentId(),
+                a.patientId(),
+                a.doctorId(),
+                format(a.scheduledAt()),
+                a.status(),
+                a.reason());
+    }
+
+    public static void printAppointment(int requestedId, Optional<Appointment> appointment) {
+        System.out.println("\n-- Appointment Details --");
+        if (appointment.isPresent()) {
+            Appointment a = appointment.get();
+            System.out.printf("ID: %d%n", a.appointmentId());
+            System.out.printf("Patient ID: %d%n", a.patientId());
+            System.out.printf("Doctor ID: %d%n", a.doctorId());
+            System.out.printf("Scheduled At: %s%n", format(a.scheduledAt()));
+            System.out.printf("Status: %s%n", a.status());
+            System.out.printf("Reason: %s%n", a.reason());
+        } else {
+            System.out.println("No appointment found with ID " + requestedId);
+        }
+    }
+
+    // ---------- BILLS ----------
+
+    public static void printBills(List<Bill> bills) {
+        System.out.println("BillNo | Patient | Appointment | CreatedAt");
+        for (Bill b : bills) {
+            System.out.printf("%d | %d | %s | %s%n",
+                    b.billNo(),
+                    b.patientId(),
+                    b.appointmentId() == null ? "NULL" : b.appointmentId(),
+                    format(b.createdAt()));
+        }
+    }
+
+    public static void printBill(int requestedNo, Optional<Bill> bill, List<BillItem> items) {
+        if (bill.isEmpty()) {
+            System.out.println("No bill found with ID " + requestedNo);
+            return;
+        }
+        Bill b = bill.get();
+        System.out.println("Bill Details:");
+        System.out.printf("Bill %d: patient=%d appointment=%s created_at=%s%n",
+                b.billNo(),
+                b.patientId(),
+                b.appointmentId() == null ? "NULL" : b.appointmentId(),
+                format(b.createdAt()));
+        if (!items.isEmpty()) {
+            System.out.println("  # | Type | Service | Description | Amount");
+            for (BillItem item : items) {
+                System.out.printf("  %d | %s | %s | %s | %.2f%n",
+                        item.orderNo(),
+                        item.chargeType(),
+                        item.serviceId() == null ? "-" : item.serviceId(),
+                        item.description(),
+                        item.amount());
+            }
+        }
+    }
+
+    public static void printBillSummaryHeader() {
+        System.out.println("Bill | Patient | Name | Appt | Created | Items | Total");
+    }
+
+    public static void printBillSummaryRow(BillSummary s) {
+        System.out.printf("%d | %d | %s %s | %s | %s | %d | %.2f%n",
+                s.billNo(),
+                s.patientId(),
+                s.firstName(),
+                s.lastName(),
+                s.appointmentId() == null ? "NULL" : s.appointmentId(),
+                format(s.createdAt()),
+                s.itemCount(),
+                s.totalAmount());
+    }
+
+    // ---------- WRITE RESULTS ----------
+
+    public static void printRowsAffected(int rows, String entity, String action) {
+        System.out.println(rows + " " + entity + " record(s) " + action + ".");
+    }
+
+    private static String format(LocalDateTime value) {
+        return value == null ? "NULL" : Timestamp.valueOf(value).toString();
+    }
+}
@@ -1,13 +1,89 @@
 // filepath: c:\Users\auson\Desktop\Hospital\src\DB.java
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.util.Properties;
-import java.io.InputStream;
 
 public class DB {
     private static final String PROPS_PATH = "/db.properties"; // must be on classpath
 
-    public static Connection getConnection() throws Exception {
+    private static volatile Properties properties;
+    private static volatile ConnectionPool pool;
+
+    /**
+     * Borrows a pooled connection. Always close it (try-with-resources) so it goes back to the pool.
+     */
+    public static Connection getConnection() throws SQLException {
+        return pool().getConnection();
+    }
+
+    /**
+     * Shared pool, created on first use from db.properties (parsed once per JVM).
+     */
+    public static ConnectionPool pool() throws SQLException {
+        ConnectionPool current = pool;
+        if (current == null) {
+            synchronized (DB.class) {
+                current = pool;
+                if (current == null) {
+                    current = new ConnectionPool(properties());
+                    pool = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Fetch size that makes the driver stream rows one at a time instead of buffering the whole result.
+     * MySQL Connector/J only streams with Integer.MIN_VALUE; other drivers take a normal fetch size.
+     */
+    public static int streamingFetchSize(Connection connection) throws SQLException {
+        String driver = connection.getMetaData().getDriverName();
+        return driver != null && driver.contains("MySQL") ? Integer.MIN_VALUE : 1000;
+    }
+
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
+    /**
+     * Contents of db.properties, read from the classpath once per JVM.
+     */
+    public static Properties properties() {
+        Properties current = properties;
+        if (current == null) {
+            synchronized (DB.class) {
+                current = properties;
+                if (current == null) {
+                    current = loadProperties();
+                    properties = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Optional numeric setting from db.properties.
+     */
+    public static long longProperty(String key, long defaultValue) {
+        String value = properties().getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalStateException("db.properties key " + key + " must be a number, got: " + value);
+        }
+    }
+
+    private static Properties loadProperties() {
         // Ensure driver present (older JVMs sometimes need this)
         try {
             Class.forName("com.mysql.cj.jdbc.Driver");
@@ -21,15 +97,9 @@ public class DB {
                 throw new IllegalStateException("Missing " + PROPS_PATH + " on classpath. Create src/db.properties and ensure it's copied alongside classes.");
             }
             props.load(in);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not read " + PROPS_PATH + ": " + ex.getMessage(), ex);
         }
-
-        String url = props.getProperty("url");
-        String user = props.getProperty("user");
-        String pass = props.getProperty("password");
-        if (url == null || user == null || pass == null) {
-            throw new IllegalStateException("db.properties must define url, user, and password");
-        }
-        return DriverManager.getConnection(url, user, pass);
+        return props;
     }
 }
-
@@ -0,0 +1,477 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// PARALLEL, RESUMABLE EXPORT OF Appointment, Bill AND BillItem TO GZIP-COMPRESSED CSV FOR ANALYTICS
+//   mvn compile exec:java -Dexec.mainClass=DataExporter -Dexec.args="out=export workers=4 chunk=100000"
+// Arguments (all optional): out, workers, chunk (primary-key values per file), tables (comma-separated),
+// level (gzip level 1-9).
+// Each table's key space is cut into fixed spans [k*chunk, (k+1)*chunk), one file per span:
+// <out>/<table>/<table>-<first key>-<last key>.csv.gz, in the LOAD DATA format of TableWriter (no header row;
+// the columns are listed in the checkpoint file). Workers each hold one pooled connection and take the next
+// unexported span. A file is written under a .part name, forced to disk and renamed, then the span is appended
+// to <out>/export.checkpoint; a rerun with the same out and chunk skips every span listed there. Each span is
+// read by a single statement, so a file is consistent in itself but spans are not one snapshot.
+public class DataExporter {
+
+    /** How to read one column from the ResultSet and which TableWriter method writes it. */
+    enum Kind { INT, TEXT, DATETIME, MONEY }
+
+    record Table(String name, String key, String orderBy, String[] columns, Kind[] kinds) {
+        String selectSql() {
+            return "SELECT " + String.join(", ", columns) + " FROM " + name
+                    + " WHERE " + key + " >= ? AND " + key + " < ? ORDER BY " + orderBy;
+        }
+    }
+
+    /** One file's worth of work: keys [start, end) of one table. */
+    record Chunk(Table table, long start, long end) {
+        String checkpointKey() {
+            return table.name() + " " + start + " " + end;
+        }
+
+        String fileName() {
+            return String.format("%s-%010d-%010d.csv.gz", table.name().toLowerCase(Locale.ROOT), start, end - 1);
+        }
+    }
+
+    /** Rows, files and time of one worker; rowsPerSecond counts only time spent exporting. */
+    public record WorkerStats(String name, int chunks, long rows, long bytes, long busyNanos) {
+        public double rowsPerSecond() {
+            return busyNanos == 0 ? 0 : rows / (busyNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d file(s), %,d rows, %.1f MB in %.1f s = %,.0f rows/s",
+                    name, chunks, rows, bytes / 1e6, busyNanos / 1e9, rowsPerSecond());
+        }
+    }
+
+    public record Summary(int chunksWritten, int chunksSkipped, long rows, long bytes, long elapsedNanos,
+                          List<WorkerStats> workers) {
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(String.format(
+                    "%d file(s) written, %d already done; %,d rows, %.1f MB compressed in %.1f s = %,.0f rows/s",
+                    chunksWritten, chunksSkipped, rows, bytes / 1e6, elapsedNanos / 1e9,
+                    elapsedNanos == 0 ? 0 : rows / (elapsedNanos / 1e9)));
+            for (WorkerStats worker : workers) {
+                out.append(System.lineSeparator()).append("  ").append(worker);
+            }
+            return out.toString();
+        }
+    }
+
+    static final List<Table> TABLES = List.of(
+            new Table("Appointment", "appointment_id", "appointment_id",
+                    new String[] {"appointment_id", "patient_id", "doctor_id", "scheduled_at", "reason", "status_id"},
+                    new Kind[] {Kind.INT, Kind.INT, Kind.INT, Kind.DATETIME, Kind.TEXT, Kind.INT}),
+            new Table("Bill", "bill_no", "bill_no",
+                    new String[] {"bill_no", "patient_id", "appointment_id", "created_at"},
+                    new Kind[] {Kind.INT, Kind.INT, Kind.INT, Kind.DATETIME}),
+            new Table("BillItem", "bill_no", "bill_no, order_no",
+                    new String[] {"bill_no", "order_no", "charge_type", "service_id", "description", "amount"},
+                    new Kind[] {Kind.INT, Kind.INT, Kind.TEXT, Kind.INT, Kind.TEXT, Kind.MONEY})
+    );
+
+    private static final String CHECKPOINT_FILE = "export.checkpoint";
+    // Per worker: one buffer of encoded CSV waiting for the deflater, one of compressed bytes waiting for the disk
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final long PROGRESS_INTERVAL_MILLIS = 2000;
+
+    private final ConnectionPool pool;
+    private final Path outDir;
+    private final int workers;
+    private final long chunkKeys;
+    private final int level;
+
+    public DataExporter(ConnectionPool pool, Path outDir, int workers, long chunkKeys, int level) {
+        if (workers < 1 || chunkKeys < 1) {
+            throw new IllegalArgumentException("workers and chunk must be at least 1");
+        }
+        this.pool = pool;
+        this.outDir = outDir;
+        this.workers = workers;
+        this.chunkKeys = chunkKeys;
+        this.level = level;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                options.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        List<Table> tables = new ArrayList<>();
+        for (String name : options.getOrDefault("tables", "Appointment,Bill,BillItem").split(",")) {
+            tables.add(TABLES.stream().filter(t -> t.name().equalsIgnoreCase(name.trim())).findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("tables must be among Appointment, Bill, BillItem; got: " + name)));
+        }
+        try {
+            ConnectionPool pool = DB.pool();
+            DataExporter exporter = new DataExporter(pool,
+                    Path.of(options.getOrDefault("out", "export")),
+                    Integer.parseInt(options.getOrDefault("workers", String.valueOf(Math.min(4, pool.stats().maxSize())))),
+                    Long.parseLong(options.getOrDefault("chunk", "100000")),
+                    Integer.parseInt(options.getOrDefault("level", "1")));
+            System.out.println("Exported " + exporter.export(tables));
+        } finally {
+            DB.shutdown();
+        }
+    }
+
+    // 1. EXPORT EVERY SPAN OF THE GIVEN TABLES NOT YET IN THE CHECKPOINT
+    public Summary export(List<Table> tables) throws SQLException, IOException, InterruptedException {
+        long start = System.nanoTime();
+        Files.createDirectories(outDir);
+        Set<String> done = readCheckpoint(tables);
+
+        List<Chunk> pending = new ArrayList<>();
+        int skipped = 0;
+        try (Connection connection = pool.getConnection()) {
+            for (Table table : tables) {
+                Files.createDirectories(outDir.resolve(table.name().toLowerCase(Locale.ROOT)));
+                long[] range = keyRange(connection, table);
+                if (range == null) {
+                    continue;
+                }
+                for (long first = Math.floorDiv(range[0], chunkKeys) * chunkKeys; first <= range[1]; first += chunkKeys) {
+                    Chunk chunk = new Chunk(table, first, first + chunkKeys);
+                    if (done.contains(chunk.checkpointKey())) {
+                        skipped++;
+                    } else {
+                        pending.add(chunk);
+                    }
+                }
+            }
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        LongAdder rowsSoFar = new LongAdder();
+        AtomicInteger chunksSoFar = new AtomicInteger();
+        int threads = Math.max(1, Math.min(workers, pending.size()));
+        WorkerStats[] stats = new WorkerStats[threads];
+        try (FileChannel checkpoint = FileChannel.open(outDir.resolve(CHECKPOINT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            if (checkpoint.size() == 0) {
+                writeCheckpointHeader(checkpoint, tables);
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            for (int w = 0; w < threads; w++) {
+                int worker = w;
+                executor.execute(() -> stats[worker] = runWorker("worker-" + (worker + 1), pending, next, failure,
+                        checkpoint, rowsSoFar, chunksSoFar));
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("  %d/%d file(s), %,d rows, %,.0f rows/s%n", chunksSoFar.get(), pending.size(),
+                        rowsSoFar.sum(), rowsSoFar.sum() / seconds);
+            }
+        }
+        Exception error = failure.get();
+        if (error instanceof SQLException sql) {
+            throw sql;
+        } else if (error instanceof IOException io) {
+            throw io;
+        } else if (error != null) {
+            throw new IllegalStateException("Export failed", error);
+        }
+
+        long rows = 0;
+        long bytes = 0;
+        for (WorkerStats worker : stats) {
+            rows += worker.rows();
+            bytes += worker.bytes();
+        }
+        return new Summary(pending.size(), skipped, rows, bytes, System.nanoTime() - start, Arrays.asList(stats));
+    }
+
+    // One connection for the worker's whole life; stops taking spans once any worker has failed
+    private WorkerStats runWorker(String name, List<Chunk> pending, AtomicInteger next, AtomicReference<Exception> failure,
+                                 FileChannel checkpoint, LongAdder rowsSoFar, AtomicInteger chunksSoFar) {
+        int chunks = 0;
+        long rows = 0;
+        long bytes = 0;
+        long busy = 0;
+        ByteBuffer encoded = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        ByteBuffer compressed = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        try (Connection connection = pool.getConnection()) {
+            int index;
+            while (failure.get() == null && (index = next.getAndIncrement()) < pending.size()) {
+                Chunk chunk = pending.get(index);
+                long chunkStart = System.nanoTime();
+                Path file = outDir.resolve(chunk.table().name().toLowerCase(Locale.ROOT)).resolve(chunk.fileName());
+                long written = exportChunk(connection, chunk, file, encoded, compressed);
+                long size = written > 0 ? Files.size(file) : 0;
+                recordCheckpoint(checkpoint, chunk, written);
+                busy += System.nanoTime() - chunkStart;
+                chunks++;
+                rows += written;
+                bytes += size;
+                rowsSoFar.add(written);
+                chunksSoFar.incrementAndGet();
+            }
+        } catch (SQLException | IOException | RuntimeException ex) {
+            failure.compareAndSet(null, ex);
+        }
+        return new WorkerStats(name, chunks, rows, bytes, busy);
+    }
+
+    // 2. ONE SPAN: STREAM THE ROWS INTO <file>.part, FORCE IT TO DISK AND RENAME; RETURNS THE ROW COUNT
+    // An empty span leaves no file.
+    long exportChunk(Connection connection, Chunk chunk, Path file, ByteBuffer encoded, ByteBuffer compressed)
+            throws SQLException, IOException {
+        Table table = chunk.table();
+        Path part = file.resolveSibling(file.getFileName() + ".part");
+        long rows;
+        try (PreparedStatement ps = connection.prepareStatement(table.selectSql(),
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(DB.streamingFetchSize(connection));
+            ps.setLong(1, chunk.start());
+            ps.setLong(2, chunk.end());
+            try (ResultSet rs = ps.executeQuery();
+                 GzipChannelWriter gzip = new GzipChannelWriter(part, level, encoded, compressed);
+                 TableWriter csv = TableWriter.csv(gzip, table.name(), table.columns())) {
+                Kind[] kinds = table.kinds();
+                while (rs.next()) {
+                    for (int i = 0; i < kinds.length; i++) {
+                        writeValue(csv, rs, i + 1, kinds[i]);
+                    }
+                    csv.end();
+                }
+                rows = csv.rows();
+            }
+        } catch (SQLException | IOException | RuntimeException ex) {
+            Files.deleteIfExists(part);
+            throw ex;
+        }
+        if (rows == 0) {
+            Files.delete(part);
+        } else {
+            Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return rows;
+    }
+
+    private static void writeValue(TableWriter csv, ResultSet rs, int column, Kind kind) throws SQLException, IOException {
+        switch (kind) {
+            case INT -> {
+                int value = rs.getInt(column);
+                if (rs.wasNull()) {
+                    csv.nullValue();
+                } else {
+                    csv.integer(value);
+                }
+            }
+            case TEXT -> csv.string(rs.getString(column));
+            case DATETIME -> {
+                Timestamp value = rs.getTimestamp(column);
+                if (value == null) {
+                    csv.nullValue();
+                } else {
+                    csv.dateTime(value.toLocalDateTime());
+                }
+            }
+            case MONEY -> {
+                BigDecimal value = rs.getBigDecimal(column);
+                if (value == null) {
+                    csv.nullValue();
+                } else {
+                    csv.money(value.movePointRight(2).longValueExact());
+                }
+            }
+        }
+    }
+
+    private static long[] keyRange(Connection connection, Table table) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(" + table.key() + "), MAX(" + table.key() + ") FROM " + table.name())) {
+            rs.next();
+            long min = rs.getLong(1);
+            return rs.wasNull() ? null : new long[] {min, rs.getLong(2)};
+        }
+    }
+
+    // ---------- CHECKPOINT ----------
+    // "# <table> chunk=<keys> columns=<c1,c2,...>" per table, then "<table> <start> <end> <rows>" per finished span
+
+    private Set<String> readCheckpoint(List<Table> tables) throws IOException {
+        Set<String> done = new HashSet<>();
+        Path file = outDir.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return done;
+        }
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(" ");
+            if (line.startsWith("#") || fields.length < 4) {
+                continue;
+            }
+            long span = Long.parseLong(fields[2]) - Long.parseLong(fields[1]);
+            if (span != chunkKeys && tables.stream().anyMatch(t -> t.name().equals(fields[0]))) {
+                throw new IllegalStateException(outDir + " was exported with chunk=" + span
+                        + "; resume with the same chunk size or use another out directory");
+            }
+            done.add(fields[0] + " " + fields[1] + " " + fields[2]);
+        }
+        return done;
+    }
+
+    private void writeCheckpointHeader(FileChannel checkpoint, List<Table> tables) throws IOException {
+        StringBuilder header = new StringBuilder();
+        for (Table table : tables) {
+            header.append("# ").append(table.name()).append(" chunk=").append(chunkKeys)
+                    .append(" columns=").append(String.join(",", table.columns())).append('\n');
+        }
+        checkpoint.write(ByteBuffer.wrap(header.toString().getBytes(StandardCharsets.UTF_8)));
+        checkpoint.force(false);
+    }
+
+    // Appended only after the span's file is durable under its final name
+    private static void recordCheckpoint(FileChannel checkpoint, Chunk chunk, long rows) throws IOException {
+        byte[] line = (chunk.checkpointKey() + " " + rows + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized (checkpoint) {
+            checkpoint.write(ByteBuffer.wrap(line));
+            checkpoint.force(false);
+        }
+    }
+
+    // ---------- GZIP OUTPUT ----------
+
+    /**
+     * A Writer producing one gzip member through a FileChannel: characters are UTF-8 encoded into a direct
+     * buffer, deflated into a second direct buffer and written with no heap copies. close() writes the
+     * trailer and forces the file to disk.
+     */
+    static final class GzipChannelWriter extends Writer {
+        private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+        private static final byte[] NO_INPUT = new byte[0];
+
+        private final FileChannel channel;
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer input;
+        private final ByteBuffer output;
+        private boolean closed;
+
+        GzipChannelWriter(Path file, int level, ByteBuffer input, ByteBuffer output) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            this.deflater = new Deflater(level, true);
+            this.input = input.clear();
+            this.output = output.clear().order(ByteOrder.LITTLE_ENDIAN);
+            this.output.put(HEADER);
+        }
+
+        @Override
+        public Writer append(CharSequence text) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(text);
+            while (encoder.encode(chars, input, false) == CoderResult.OVERFLOW) {
+                deflateInput();
+            }
+            return this;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            append(CharBuffer.wrap(buffer, offset, length));
+        }
+
+        @Override
+        public void flush() {
+            // Buffers are written when full and on close; a partial deflate block would only cost ratio
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                deflateInput();
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflateInto();
+                }
+                if (output.remaining() < 8) {
+                    writeOutput();
+                }
+                output.putInt((int) crc.getValue()).putInt((int) deflater.getBytesRead());
+                writeOutput();
+                channel.force(true);
+            } finally {
+                deflater.end();
+                channel.close();
+            }
+        }
+
+        private void deflateInput() throws IOException {
+            input.flip();
+            crc.update(input.duplicate());
+            deflater.setInput(input);
+            while (!deflater.needsInput()) {
+                deflateInto();
+            }
+            // The deflater keeps reading from the buffer it was given; detach it before the buffer is refilled
+            deflater.setInput(NO_INPUT);
+            input.clear();
+        }
+
+        private void deflateInto() throws IOException {
+            if (!output.hasRemaining()) {
+                writeOutput();
+            }
+            deflater.deflate(output);
+        }
+
+        private void writeOutput() throws IOException {
+            output.flip();
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+            output.clear();
+        }
+    }
+}
@@ -0,0 +1,524 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+// SEEDABLE SYNTHETIC DATA FOR SCALE TESTING: Person, Patient, Staff, Doctor, Appointment, Bill, BillItem
+//   mvn compile exec:java -Dexec.mainClass=DataGenerator -Dexec.args="appointments=1000000 seed=42"
+//   mvn compile exec:java -Dexec.mainClass=DataGenerator -Dexec.args="appointments=50000000 mode=csv out=generated"
+// mode=jdbc (default) inserts through the pool in db.properties; mode=csv writes one file per table plus
+// load.sql (run it with: mysql --local-infile=1 hospital < generated/load.sql).
+// Arguments (all optional): appointments, patients, doctors, seed, mode, out, batch, from, days, asOf, slotMinutes.
+//
+// The reference tables (StaffRole, Specialty, Department, AppointmentStatus, Service) must already exist;
+// they are read from the database and every generated row points at them. New ids start after the current
+// MAX() of each table, so the generator can run against a populated database. The same seed and sizes
+// always give the same rows.
+public class DataGenerator {
+
+    /**
+     * @param from  first day that can have appointments (moved forward to a Monday)
+     * @param days        length of the appointment calendar; only weekdays 08:00-17:00 are booked
+     * @param asOf        "today": earlier appointments are Completed or Cancelled and may be billed,
+     *                    later ones are Scheduled or Cancelled
+     * @param slotMinutes length of one appointment (schedule.slotMinutes); a doctor has at most one per slot
+     */
+    public record Config(long seed, int patients, int doctors, int appointments,
+                         LocalDate from, int days, LocalDate asOf, int slotMinutes, int rowsPerStatement) {
+
+        public Config {
+            if (patients < 1 || doctors < 1 || appointments < 0 || days < 7 || rowsPerStatement < 1
+                    || slotMinutes < 1 || slotMinutes > WORKING_MINUTES) {
+                throw new IllegalArgumentException("Invalid generator config: " + this);
+            }
+            long slots = (long) doctors * (days / 7 * 5) * (WORKING_MINUTES / slotMinutes);
+            if (appointments > slots) {
+                throw new IllegalArgumentException(appointments + " appointments do not fit in " + slots
+                        + " doctor slots; add doctors or days");
+            }
+        }
+
+        public int slotsPerDay() {
+            return WORKING_MINUTES / slotMinutes;
+        }
+
+        /** Sizes that keep roughly the ratios of a general hospital: ~8 visits per patient, ~4000 per doctor. */
+        public static Config forAppointments(int appointments, long seed) {
+            LocalDate from = LocalDate.of(2022, 1, 3);
+            return new Config(seed, Math.max(1000, appointments / 8), Math.max(10, appointments / 4000), appointments,
+                    from, 3 * 365, from.plusDays(2 * 365), 30, 1000);
+        }
+    }
+
+    public record Summary(long persons, long patients, long staff, long doctors,
+                          long appointments, long bills, long billItems, long elapsedNanos) {
+        public double rowsPerSecond() {
+            long total = persons + patients + staff + doctors + appointments + bills + billItems;
+            return elapsedNanos == 0 ? 0 : total * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d persons, %d patients, %d staff, %d doctors, %d appointments, %d bills, "
+                            + "%d bill items in %.1fs (%.0f rows/s)",
+                    persons, patients, staff, doctors, appointments, bills, billItems,
+                    elapsedNanos / 1e9, rowsPerSecond());
+        }
+    }
+
+    // Reference rows the generated data points at, plus the first free id of each generated table
+    private record Catalog(int staffRoleDoctor, int staffRoleNurse, int staffRoleAdmin,
+                           int[] specialtyIds, long[] specialtyFeeCents, String[] specialtyNames,
+                           int[] departmentIds, int[] serviceIds, long[] servicePriceCents, String[] serviceNames,
+                           int scheduled, int completed, int cancelled,
+                           int firstPersonId, int firstAppointmentId, int firstBillNo) { }
+
+    private static final String[] FIRST_NAMES = {
+            "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda", "David", "Elizabeth",
+            "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Carlos", "Karen",
+            "Daniel", "Lisa", "Matthew", "Nancy", "Anthony", "Sandra", "Mark", "Ashley", "Wei", "Emily",
+            "Ahmed", "Fatima", "Raj", "Priya", "Kenji", "Yuki", "Olga", "Ivan", "Sofia", "Lucas"
+    };
+    private static final String[] LAST_NAMES = {
+            "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+            "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+            "Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark", "Ramirez", "Lewis", "Robinson",
+            "Nguyen", "Chen", "Khan", "Patel", "Kim", "Tanaka", "Ivanova", "Schmidt", "Rossi", "Silva"
+    };
+    private static final String[] REASONS = {
+            "Regular checkup", "Follow-up visit", "Chest pain", "Persistent cough", "Fever", "Headache",
+            "Back pain", "Vaccination", "Blood pressure review", "Lab results review", "Shortness of breath",
+            "Skin rash", "Abdominal pain", "Prescription renewal", "Pre-operative assessment", "Fatigue"
+    };
+    private static final String[] NOTES = {
+            "Allergic to penicillin", "Diabetic (type 2)", "Hypertension", "Asthma", "Prefers morning appointments",
+            "Latex allergy", "Pacemaker", "Requires interpreter"
+    };
+    private static final String[] MEDICATIONS = {
+            "Amoxicillin 500mg", "Ibuprofen 400mg", "Metformin 850mg", "Lisinopril 10mg", "Salbutamol inhaler",
+            "Atorvastatin 20mg", "Omeprazole 20mg", "Paracetamol 500mg"
+    };
+
+    private static final int WORKING_MINUTES = 9 * 60; // appointments start from 08:00 and end by 17:00
+    private static final long ROOM_NIGHT_CENTS = 45_000;
+
+    private final Config config;
+
+    public DataGenerator(Config config) {
+        this.config = config;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                options.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        Config defaults = Config.forAppointments(
+                Integer.parseInt(options.getOrDefault("appointments", "100000")),
+                Long.parseLong(options.getOrDefault("seed", "42")));
+        LocalDate from = LocalDate.parse(options.getOrDefault("from", defaults.from().toString()));
+        int days = Integer.parseInt(options.getOrDefault("days", String.valueOf(defaults.days())));
+        Config config = new Config(defaults.seed(),
+                Integer.parseInt(options.getOrDefault("patients", String.valueOf(defaults.patients()))),
+                Integer.parseInt(options.getOrDefault("doctors", String.valueOf(defaults.doctors()))),
+                defaults.appointments(),
+                from,
+                days,
+                LocalDate.parse(options.getOrDefault("asOf", from.plusDays(days * 2L / 3).toString())),
+                Integer.parseInt(options.getOrDefault("slotMinutes", String.valueOf(DB.longProperty("schedule.slotMinutes", 30)))),
+                Integer.parseInt(options.getOrDefault("batch", String.valueOf(defaults.rowsPerStatement()))));
+        String mode = options.getOrDefault("mode", "jdbc");
+
+        DataGenerator generator = new DataGenerator(config);
+        try {
+            Summary summary;
+            if (mode.equals("csv")) {
+                summary = generator.writeCsv(DB.pool(), Path.of(options.getOrDefault("out", "generated")));
+            } else if (mode.equals("jdbc")) {
+                summary = generator.insert(DB.pool());
+            } else {
+                throw new IllegalArgumentException("mode must be jdbc or csv, got: " + mode);
+            }
+            System.out.println("Generated " + summary);
+        } finally {
+            DB.shutdown();
+        }
+    }
+
+    /** Inserts the data set with multi-row INSERTs, committing one statement at a time. */
+    public Summary insert(ConnectionPool pool) throws SQLException, IOException {
+        try (Connection connection = pool.getConnection()) {
+            Catalog catalog = loadCatalog(connection);
+            int n = config.rowsPerStatement();
+            try (TableWriter person = TableWriter.jdbc(connection, n, null, "Person", PERSON_COLUMNS);
+                 TableWriter patient = TableWriter.jdbc(connection, n, person, "Patient", PATIENT_COLUMNS);
+                 TableWriter staff = TableWriter.jdbc(connection, n, person, "Staff", STAFF_COLUMNS);
+                 TableWriter doctor = TableWriter.jdbc(connection, n, staff, "Doctor", DOCTOR_COLUMNS);
+                 TableWriter appointment = TableWriter.jdbc(connection, n, doctor, "Appointment", APPOINTMENT_COLUMNS);
+                 TableWriter bill = TableWriter.jdbc(connection, n, appointment, "Bill", BILL_COLUMNS);
+                 TableWriter billItem = TableWriter.jdbc(connection, n, bill, "BillItem", BILL_ITEM_COLUMNS)) {
+                // Appointments reference patients too; make sure every Patient row is in before the first one
+                return generate(catalog, person, patient, staff, doctor, appointment, bill, billItem,
+                        patient::flush);
+            }
+        }
+    }
+
+    /**
+     * Writes one CSV file per table into {@code dir}, plus load.sql with the LOAD DATA statements in
+     * foreign-key order. The pool is only used to read the reference tables and the current max ids.
+     */
+    public Summary writeCsv(ConnectionPool pool, Path dir) throws SQLException, IOException {
+        Catalog catalog;
+        try (Connection connection = pool.getConnection()) {
+            catalog = loadCatalog(connection);
+        }
+        Summary summary;
+        List<TableWriter> writers = new ArrayList<>();
+        try (TableWriter person = open(writers, dir, "Person", PERSON_COLUMNS);
+             TableWriter patient = open(writers, dir, "Patient", PATIENT_COLUMNS);
+             TableWriter staff = open(writers, dir, "Staff", STAFF_COLUMNS);
+             TableWriter doctor = open(writers, dir, "Doctor", DOCTOR_COLUMNS);
+             TableWriter appointment = open(writers, dir, "Appointment", APPOINTMENT_COLUMNS);
+             TableWriter bill = open(writers, dir, "Bill", BILL_COLUMNS);
+             TableWriter billItem = open(writers, dir, "BillItem", BILL_ITEM_COLUMNS)) {
+            summary = generate(catalog, person, patient, staff, doctor, appointment, bill, billItem, () -> { });
+        }
+
+        try (Writer out = Files.newBufferedWriter(dir.resolve("load.sql"), StandardCharsets.UTF_8)) {
+            out.write("-- Generated by DataGenerator (seed " + config.seed() + ")\n");
+            out.write("-- Every row references rows earlier in this file or existing reference data,\n");
+            out.write("-- so checks are switched off only for load speed.\n");
+            out.write("SET foreign_key_checks = 0;\nSET unique_checks = 0;\n\n");
+            for (TableWriter writer : writers) {
+                out.write(writer.loadDataStatement());
+                out.write("\n\n");
+            }
+            out.write("SET unique_checks = 1;\nSET foreign_key_checks = 1;\n");
+        }
+        System.out.println("Wrote " + writers.size() + " CSV files and load.sql to " + dir.toAbsolutePath());
+        return summary;
+    }
+
+    private static TableWriter open(List<TableWriter> writers, Path dir, String table, String[] columns)
+            throws IOException {
+        TableWriter writer = TableWriter.csv(dir, table, columns);
+        writers.add(writer);
+        return writer;
+    }
+
+    private static final String[] PERSON_COLUMNS = {"person_id", "first_name", "last_name", "date_of_birth"};
+    private static final String[] PATIENT_COLUMNS = {"patient_id", "insurance_id", "notes"};
+    private static final String[] STAFF_COLUMNS = {"staff_id", "staff_role_id", "department_id", "hire_date"};
+    private static final String[] DOCTOR_COLUMNS = {"staff_id", "specialty_id", "license_no"};
+    private static final String[] APPOINTMENT_COLUMNS =
+            {"appointment_id", "patient_id", "doctor_id", "scheduled_at", "reason", "status_id"};
+    private static final String[] BILL_COLUMNS = {"bill_no", "patient_id", "appointment_id", "created_at"};
+    private static final String[] BILL_ITEM_COLUMNS =
+            {"bill_no", "order_no", "charge_type", "service_id", "description", "amount"};
+
+    private interface Step {
+        void run() throws SQLException, IOException;
+    }
+
+    private Summary generate(Catalog catalog, TableWriter person, TableWriter patient, TableWriter staff,
+                             TableWriter doctor, TableWriter appointment, TableWriter bill, TableWriter billItem,
+                             Step beforeAppointments) throws SQLException, IOException {
+        long start = System.nanoTime();
+        // One stream per phase, so changing e.g. the doctor count does not reshuffle every patient
+        SplittableRandom patientRandom = new SplittableRandom(config.seed());
+        SplittableRandom staffRandom = new SplittableRandom(config.seed() * 31 + 1);
+        SplittableRandom visitRandom = new SplittableRandom(config.seed() * 31 + 2);
+
+        // 1. PATIENTS: ids firstPersonId .. firstPersonId + patients - 1
+        int firstPatientId = catalog.firstPersonId();
+        for (int i = 0; i < config.patients(); i++) {
+            int id = firstPatientId + i;
+            person.integer(id)
+                    .string(pick(patientRandom, FIRST_NAMES))
+                    .string(pick(patientRandom, LAST_NAMES))
+                    .dateTime(config.asOf().minusDays(patientAgeDays(patientRandom)).atStartOfDay())
+                    .end();
+            patient.integer(id)
+                    .string(patientRandom.nextInt(100) < 85 ? String.format("INS-%08d", id) : null)
+                    .string(patientRandom.nextInt(100) < 20 ? pick(patientRandom, NOTES) : null)
+                    .end();
+        }
+
+        // 2. STAFF: doctors first (so their ids are contiguous), then two nurses per doctor, then admins
+        int firstDoctorId = firstPatientId + config.patients();
+        int doctors = config.doctors();
+        int staffCount = doctors + 2 * doctors + Math.max(1, doctors / 2);
+        int[] doctorSpecialty = new int[doctors]; // index into catalog.specialtyIds()
+        for (int i = 0; i < staffCount; i++) {
+            int id = firstDoctorId + i;
+            int ageYears = 26 + staffRandom.nextInt(40);
+            int role = i < doctors ? catalog.staffRoleDoctor()
+                    : i < 3 * doctors ? catalog.staffRoleNurse() : catalog.staffRoleAdmin();
+            person.integer(id)
+                    .string(pick(staffRandom, FIRST_NAMES))
+                    .string(pick(staffRandom, LAST_NAMES))
+                    .dateTime(config.asOf().minusYears(ageYears).minusDays(staffRandom.nextInt(365)).atStartOfDay())
+                    .end();
+            staff.integer(id)
+                    .integer(role)
+                    .integer(pick(staffRandom, catalog.departmentIds()))
+                    .date(config.asOf().minusDays(staffRandom.nextInt(365 * Math.min(30, ageYears - 24))))
+                    .end();
+            if (i < doctors) {
+                doctorSpecialty[i] = staffRandom.nextInt(catalog.specialtyIds().length);
+                doctor.integer(id)
+                        .integer(catalog.specialtyIds()[doctorSpecialty[i]])
+                        .string("GEN-" + id)
+                        .end();
+            }
+        }
+        beforeAppointments.run();
+
+        // 3. APPOINTMENTS, each completed visit billed with a consultation line plus extras
+        LocalDate monday = config.from();
+        while (monday.getDayOfWeek() != DayOfWeek.MONDAY) {
+            monday = monday.plusDays(1);
+        }
+        int slotsPerDay = config.slotsPerDay();
+        int calendarSize = config.days() / 7 * 5 * slotsPerDay;
+        // One bit per weekday slot of each doctor, so no doctor is booked twice for the same slot
+        BitSet[] calendars = new BitSet[doctors];
+        LocalDateTime now = config.asOf().atStartOfDay();
+        int patientStride = coprimeStride(config.patients());
+        int doctorStride = coprimeStride(doctors);
+        int billNo = catalog.firstBillNo();
+        long reportEvery = Math.max(1_000_000, config.appointments() / 20);
+
+        for (int i = 0; i < config.appointments(); i++) {
+            int appointmentId = catalog.firstAppointmentId() + i;
+            // A quarter of the patients account for ~40% of the visits; doctor load is skewed more mildly
+            int patientId = firstPatientId + skewed(visitRandom, config.patients(), 1.5, patientStride);
+            int doctorIndex = skewed(visitRandom, doctors, 1.3, doctorStride);
+            int wanted = visitRandom.nextInt(calendarSize / slotsPerDay) * slotsPerDay + visitRandom.nextInt(slotsPerDay);
+            int slot;
+            // A taken slot moves to the doctor's next free one; a fully booked doctor passes the visit on
+            // (Config guarantees there is room somewhere)
+            while ((slot = freeSlot(calendar(calendars, doctorIndex, calendarSize), wanted, calendarSize)) < 0) {
+                doctorIndex = (doctorIndex + 1) % doctors;
+            }
+            calendars[doctorIndex].set(slot);
+            int day = slot / slotsPerDay;
+            LocalDateTime scheduledAt = monday.plusDays(7L * (day / 5) + day % 5).atTime(8, 0)
+                    .plusMinutes((long) config.slotMinutes() * (slot % slotsPerDay));
+            boolean past = scheduledAt.isBefore(now);
+            int status = past
+                    ? (visitRandom.nextInt(100) < 88 ? catalog.completed() : catalog.cancelled())
+                    : (visitRandom.nextInt(100) < 93 ? catalog.scheduled() : catalog.cancelled());
+            appointment.integer(appointmentId)
+                    .integer(patientId)
+                    .integer(firstDoctorId + doctorIndex)
+                    .dateTime(scheduledAt)
+                    .string(pick(visitRandom, REASONS))
+                    .integer(status)
+                    .end();
+
+            if (status == catalog.completed() && visitRandom.nextInt(100) < 95) {
+                bill.integer(billNo)
+                        .integer(patientId)
+                        .integer(appointmentId)
+                        .dateTime(scheduledAt.plusMinutes(30 + visitRandom.nextInt(210)))
+                        .end();
+                int spec = doctorSpecialty[doctorIndex];
+                billItem.integer(billNo).integer(1).string("Doctor").nullValue()
+                        .string("Consultation - " + catalog.specialtyNames()[spec])
+                        .money(catalog.specialtyFeeCents()[spec])
+                        .end();
+                writeExtraItems(visitRandom, catalog, billItem, billNo, 2, visitRandom.nextInt(4));
+                billNo++;
+            }
+            // About one visit in fifty is followed by a pharmacy bill with no appointment
+            if (past && visitRandom.nextInt(50) == 0) {
+                bill.integer(billNo)
+                        .integer(patientId)
+                        .nullValue()
+                        .dateTime(scheduledAt.plusDays(1 + visitRandom.nextInt(14)))
+                        .end();
+                writeMedicationItems(visitRandom, billItem, billNo, 1, 1 + visitRandom.nextInt(3));
+                billNo++;
+            }
+
+            if ((i + 1) % reportEvery == 0) {
+                System.out.printf("  %,d appointments (%.0f rows/s)%n", i + 1,
+                        (person.rows() + patient.rows() + staff.rows() + doctor.rows() + appointment.rows()
+                                + bill.rows() + billItem.rows()) * 1e9 / (System.nanoTime() - start));
+            }
+        }
+
+        for (TableWriter writer : List.of(person, patient, staff, doctor, appointment, bill, billItem)) {
+            writer.flush();
+        }
+        return new Summary(person.rows(), patient.rows(), staff.rows(), doctor.rows(),
+                appointment.rows(), bill.rows(), billItem.rows(), System.nanoTime() - start);
+    }
+
+    private static void writeExtraItems(SplittableRandom random, Catalog catalog, TableWriter billItem,
+                                        int billNo, int orderNo, int count) throws SQLException, IOException {
+        for (int k = 0; k < count; k++, orderNo++) {
+            int kind = random.nextInt(10);
+            if (kind < 6 && catalog.serviceIds().length > 0) {
+                int s = random.nextInt(catalog.serviceIds().length);
+                billItem.integer(billNo).integer(orderNo).string("Service").integer(catalog.serviceIds()[s])
+                        .string(catalog.serviceNames()[s]).money(catalog.servicePriceCents()[s]).end();
+            } else if (kind < 9) {
+                writeMedicationItems(random, billItem, billNo, orderNo, 1);
+            } else {
+                int nights = 1 + random.nextInt(5);
+                billItem.integer(billNo).integer(orderNo).string("Room").nullValue()
+                        .string(nights + " night(s) ward stay").money(nights * ROOM_NIGHT_CENTS).end();
+            }
+        }
+    }
+
+    private static void writeMedicationItems(SplittableRandom random, TableWriter billItem, int billNo,
+                                             int orderNo, int count) throws SQLException, IOException {
+        for (int k = 0; k < count; k++, orderNo++) {
+            billItem.integer(billNo).integer(orderNo).string("Medication").nullValue()
+                    .string(pick(random, MEDICATIONS)).money(500 + random.nextInt(29_500)).end();
+        }
+    }
+
+    // Age in days: triangular over 0-95 years, so most patients are middle-aged and few are very young or old
+    private static long patientAgeDays(SplittableRandom random) {
+        return (long) ((random.nextDouble() + random.nextDouble()) / 2 * 95 * 365);
+    }
+
+    private static BitSet calendar(BitSet[] calendars, int doctorIndex, int size) {
+        if (calendars[doctorIndex] == null) {
+            calendars[doctorIndex] = new BitSet(size);
+        }
+        return calendars[doctorIndex];
+    }
+
+    // First free slot at or after wanted, wrapping to the start of the calendar; -1 if every slot is taken
+    private static int freeSlot(BitSet calendar, int wanted, int size) {
+        int free = calendar.nextClearBit(wanted);
+        if (free >= size) {
+            free = calendar.nextClearBit(0);
+        }
+        return free >= size ? -1 : free;
+    }
+
+    // Index in [0, n) drawn with density falling off by the given power, then spread over the id range
+    // with a stride coprime to n so that the "busy" rows are not all the lowest ids
+    private static int skewed(SplittableRandom random, int n, double power, int stride) {
+        int rank = (int) (n * Math.pow(random.nextDouble(), power));
+        return (int) ((long) rank * stride % n);
+    }
+
+    private static int coprimeStride(int n) {
+        int stride = 1_000_003;
+        while (gcd(stride, n) != 1) {
+            stride += 2;
+        }
+        return stride;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private static String pick(SplittableRandom random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static int pick(SplittableRandom random, int[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    // ---------- REFERENCE DATA ----------
+
+    private static Catalog loadCatalog(Connection connection) throws SQLException {
+        Map<String, Integer> roles = namedIds(connection, "SELECT name, staff_role_id FROM StaffRole");
+        Map<String, Integer> statuses = namedIds(connection, "SELECT status, status_id FROM AppointmentStatus");
+
+        List<Object[]> specialties = rows(connection,
+                "SELECT specialty_id, ROUND(base_visit_fee * 100), name FROM Specialty ORDER BY specialty_id");
+        List<Object[]> services = rows(connection,
+                "SELECT service_id, ROUND(unit_price * 100), COALESCE(description, code) FROM Service ORDER BY service_id");
+        List<Object[]> departments = rows(connection,
+                "SELECT department_id, 0, name FROM Department ORDER BY department_id");
+        if (specialties.isEmpty() || departments.isEmpty()) {
+            throw new SQLException("Specialty and Department need at least one row before generating data");
+        }
+
+        return new Catalog(
+                required(roles, "Doctor", "StaffRole"),
+                required(roles, "Nurse", "StaffRole"),
+                required(roles, "Admin", "StaffRole"),
+                specialties.stream().mapToInt(r -> (Integer) r[0]).toArray(),
+                specialties.stream().mapToLong(r -> (Long) r[1]).toArray(),
+                specialties.stream().map(r -> (String) r[2]).toArray(String[]::new),
+                departments.stream().mapToInt(r -> (Integer) r[0]).toArray(),
+                services.stream().mapToInt(r -> (Integer) r[0]).toArray(),
+                services.stream().mapToLong(r -> (Long) r[1]).toArray(),
+                services.stream().map(r -> (String) r[2]).toArray(String[]::new),
+                required(statuses, "Scheduled", "AppointmentStatus"),
+                required(statuses, "Completed", "AppointmentStatus"),
+                required(statuses, "Cancelled", "AppointmentStatus"),
+                nextId(connection, "SELECT COALESCE(MAX(person_id), 0) + 1 FROM Person"),
+                nextId(connection, "SELECT COALESCE(MAX(appointment_id), 0) + 1 FROM Appointment"),
+                nextId(connection, "SELECT COALESCE(MAX(bill_no), 0) + 1 FROM Bill"));
+    }
+
+    private static Map<String, Integer> namedIds(Connection connection, String sql) throws SQLException {
+        Map<String, Integer> ids = new HashMap<>();
+        try (PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                ids.put(rs.getString(1), rs.getInt(2));
+            }
+        }
+        return ids;
+    }
+
+    private static int required(Map<String, Integer> ids, String name, String table) throws SQLException {
+        Integer id = ids.get(name);
+        if (id == null) {
+            throw new SQLException(table + " has no row named '" + name + "'");
+        }
+        return id;
+    }
+
+    // (int id, long cents, String name) per row
+    private static List<Object[]> rows(Connection connection, String sql) throws SQLException {
+        List<Object[]> rows = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new Object[] {rs.getInt(1), rs.getLong(2), rs.getString(3)});
+            }
+        }
+        return rows;
+    }
+
+    private static int nextId(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// IN-MEMORY INDEX OF EACH DOCTOR'S BOOKED SLOTS, USED TO REJECT DOUBLE-BOOKINGS BEFORE TOUCHING THE DATABASE
+// Every appointment occupies [scheduled_at, scheduled_at + slot); Cancelled appointments occupy nothing.
+// Each doctor has a sorted map of slot starts guarded by its own lock, so bookings for different doctors
+// never contend. A booking first takes a hold on its slot (visible to every other thread at once), then
+// runs its transaction, then confirms or drops the hold. Writers outside this process are not seen here,
+// so the booking transaction also checks the slot with a locking read on (doctor_id, scheduled_at).
+// Alongside the sorted map, each doctor keeps one occupancy bitmap per day over the working-day grid
+// (dayStart..dayEnd in slot steps, at most 64 slots): bit k is set while any appointment or hold overlaps
+// grid slot k. SlotSearch reads these bitmaps to find free slots without looking at appointments.
+public class DoctorSchedule {
+
+    /** Thrown when the requested slot overlaps another appointment (or another booking in progress). */
+    public static class ConflictException extends SQLException {
+        private static final long serialVersionUID = 1L;
+        private final int doctorId;
+        private final Integer appointmentId;
+
+        ConflictException(int doctorId, LocalDateTime requested, Integer appointmentId) {
+            super("Doctor " + doctorId + " is not free at " + requested
+                    + (appointmentId == null ? " (another booking is in progress)" : " (appointment " + appointmentId + ")"));
+            this.doctorId = doctorId;
+            this.appointmentId = appointmentId;
+        }
+
+        public int doctorId() {
+            return doctorId;
+        }
+
+        /** The appointment in the way, or null if it is a booking that has not committed yet. */
+        public Integer appointmentId() {
+            return appointmentId;
+        }
+    }
+
+    /**
+     * A slot reserved while its booking transaction runs. Call {@link #confirm} with the new appointment_id
+     * after commit; closing an unconfirmed hold releases the slot.
+     */
+    public final class Hold implements AutoCloseable {
+        private final int doctorId;
+        private final long start;
+        private final int token;
+        private boolean done;
+
+        private Hold(int doctorId, long start, int token, boolean done) {
+            this.doctorId = doctorId;
+            this.start = start;
+            this.token = token;
+            this.done = done;
+        }
+
+        public void confirm(int appointmentId) {
+            if (!done) {
+                done = true;
+                slots(doctorId).replace(start, token, appointmentId);
+                byAppointment.put(appointmentId, new Slot(doctorId, start));
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!done) {
+                done = true;
+                slots(doctorId).remove(start, token);
+            }
+        }
+    }
+
+    private record Slot(int doctorId, long start) { }
+
+    // One doctor's slot starts (epoch seconds, UTC) -> appointment_id, or a negative hold token,
+    // and the occupancy bitmaps kept in step with them
+    private final class DoctorSlots {
+        private final TreeMap<Long, Integer> starts = new TreeMap<>();
+        // floorDiv(epochDay, DAYS_PER_CHUNK) -> one bitmap per day of that chunk
+        private final HashMap<Long, long[]> busy = new HashMap<>();
+
+        // Returns the id in the way, or null after putting value at start
+        synchronized Integer putIfFree(long start, int value) {
+            Map.Entry<Long, Integer> before = starts.floorEntry(start);
+            if (before != null && before.getKey() > start - slotSeconds) {
+                return before.getValue();
+            }
+            Map.Entry<Long, Integer> after = starts.ceilingEntry(start);
+            if (after != null && after.getKey() < start + slotSeconds) {
+                return after.getValue();
+            }
+            starts.put(start, value);
+            for (long day = firstDay(start); day <= lastDay(start); day++) {
+                long mask = gridMask(day, start);
+                if (mask != 0) {
+                    chunk(day, true)[dayInChunk(day)] |= mask;
+                }
+            }
+            return null;
+        }
+
+        synchronized void replace(long start, int oldValue, int newValue) {
+            starts.replace(start, oldValue, newValue);
+        }
+
+        synchronized void remove(long start, int value) {
+            if (!starts.remove(start, value)) {
+                return;
+            }
+            // A grid slot stays busy while any other start still overlaps it
+            for (long day = firstDay(start); day <= lastDay(start); day++) {
+                long mask = gridMask(day, start);
+                long[] days = mask == 0 ? null : chunk(day, false);
+                if (days == null) {
+                    continue;
+                }
+                for (long bits = mask; bits != 0; bits &= bits - 1) {
+                    int k = Long.numberOfTrailingZeros(bits);
+                    long gridStart = gridOrigin(day) + k * slotSeconds;
+                    Long other = starts.higherKey(gridStart - slotSeconds);
+                    if (other == null || other >= gridStart + slotSeconds) {
+                        days[dayInChunk(day)] &= ~(1L << k);
+                    }
+                }
+            }
+        }
+
+        synchronized long busySlots(long epochDay) {
+            long[] days = chunk(epochDay, false);
+            return days == null ? 0 : days[dayInChunk(epochDay)];
+        }
+
+        private long[] chunk(long epochDay, boolean create) {
+            long key = Math.floorDiv(epochDay, DAYS_PER_CHUNK);
+            return create ? busy.computeIfAbsent(key, k -> new long[DAYS_PER_CHUNK]) : busy.get(key);
+        }
+
+        // Position of epochDay in its chunk's array
+        private static int dayInChunk(long epochDay) {
+            return Math.floorMod(epochDay, DAYS_PER_CHUNK);
+        }
+
+        synchronized int size() {
+            return starts.size();
+        }
+    }
+
+    private static final long SECONDS_PER_DAY = 86_400;
+    private static final int DAYS_PER_CHUNK = 32;
+
+    // appointment_id (implicit in InnoDB) also orders AppointmentSearch pages for one doctor
+    static final String CREATE_INDEX = "CREATE INDEX idx_appt_doctor_time ON Appointment(doctor_id, scheduled_at, appointment_id)";
+
+    // Bound to ReferenceData.cancelledStatusId()
+    private static final String NOT_CANCELLED = "status_id <> ?";
+
+    private final ConnectionPool pool;
+    private final ReferenceData referenceData;
+    private final long slotSeconds;
+    private final long dayStartSeconds;
+    private final int slotsPerDay;
+    private final ConcurrentHashMap<Integer, DoctorSlots> doctors = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Slot> byAppointment = new ConcurrentHashMap<>();
+    private final AtomicInteger nextToken = new AtomicInteger();
+    private volatile long horizon = Long.MIN_VALUE;
+
+    public DoctorSchedule(ConnectionPool pool, ReferenceData referenceData, int slotMinutes) {
+        this(pool, referenceData, slotMinutes, LocalTime.of(8, 0), LocalTime.of(18, 0));
+    }
+
+    /**
+     * @param referenceData tells which status is Cancelled (takes no slot)
+     * @param dayStart      first bookable slot of each day
+     * @param dayEnd        end of the last bookable slot; (dayEnd - dayStart) / slotMinutes must be 1..64
+     */
+    public DoctorSchedule(ConnectionPool pool, ReferenceData referenceData, int slotMinutes,
+                          LocalTime dayStart, LocalTime dayEnd) {
+        if (slotMinutes < 1) {
+            throw new IllegalArgumentException("slotMinutes must be at least 1");
+        }
+        long slots = (dayEnd.toSecondOfDay() - dayStart.toSecondOfDay()) / (slotMinutes * 60L);
+        if (slots < 1 || slots > Long.SIZE) {
+            throw new IllegalArgumentException("A working day must hold 1 to 64 slots, not " + slots);
+        }
+        this.pool = pool;
+        this.referenceData = referenceData;
+        this.slotSeconds = slotMinutes * 60L;
+        this.dayStartSeconds = dayStart.toSecondOfDay();
+        this.slotsPerDay = (int) slots;
+    }
+
+    /** Creates the (doctor_id, scheduled_at) index the warm-up scan and the in-transaction check use. */
+    public static void ensureSchema(Connection connection) throws SQLException {
+        if (!Schema.indexExists(connection, "Appointment", "idx_appt_doctor_time")) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate(CREATE_INDEX);
+            }
+        }
+    }
+
+    // 1. LOAD EVERY NON-CANCELLED APPOINTMENT FROM since ONWARDS, RETURNS THE NUMBER INDEXED
+    // Bookings earlier than since are not indexed and are only checked in the database.
+    public int warm(LocalDateTime since) throws SQLException {
+        String sql = "SELECT appointment_id, doctor_id, scheduled_at FROM Appointment "
+                + "WHERE scheduled_at >= ? AND " + NOT_CANCELLED;
+        int loaded = 0;
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(DB.streamingFetchSize(connection));
+            ps.setTimestamp(1, Timestamp.valueOf(since));
+            ps.setInt(2, referenceData.cancelledStatusId());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (index(rs.getInt(1), rs.getInt(2), rs.getTimestamp(3).toLocalDateTime())) {
+                        loaded++;
+                    }
+                }
+            }
+        }
+        horizon = epochSeconds(since);
+        return loaded;
+    }
+
+    // 2. RESERVE A SLOT FOR A BOOKING, OR THROW ConflictException WITHOUT ANY DATABASE ACCESS
+    public Hold hold(int doctorId, LocalDateTime scheduledAt) throws ConflictException {
+        long start = epochSeconds(scheduledAt);
+        int token = -1 - (nextToken.getAndIncrement() & Integer.MAX_VALUE);
+        if (start < horizon) {
+            // Not indexed this far back; the in-transaction check is the only guard
+            return new Hold(doctorId, start, token, true);
+        }
+        Integer inTheWay = slots(doctorId).putIfFree(start, token);
+        if (inTheWay != null) {
+            throw new ConflictException(doctorId, scheduledAt, inTheWay < 0 ? null : inTheWay);
+        }
+        return new Hold(doctorId, start, token, false);
+    }
+
+    // 3. CHECK THE SLOT INSIDE THE BOOKING TRANSACTION, LOCKING THE (doctor_id, scheduled_at) RANGE
+    // Catches appointments written by other processes; concurrent inserts into the range wait on the lock.
+    public void checkFree(Connection connection, int doctorId, LocalDateTime scheduledAt) throws SQLException {
+        String sql = "SELECT appointment_id FROM Appointment "
+                + "WHERE doctor_id = ? AND scheduled_at > ? AND scheduled_at < ? AND " + NOT_CANCELLED
+                + " LIMIT 1 FOR UPDATE";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, doctorId);
+            ps.setTimestamp(2, Timestamp.valueOf(scheduledAt.minusSeconds(slotSeconds)));
+            ps.setTimestamp(3, Timestamp.valueOf(scheduledAt.plusSeconds(slotSeconds)));
+            ps.setInt(4, referenceData.cancelledStatusId());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    throw new ConflictException(doctorId, scheduledAt, rs.getInt(1));
+                }
+            }
+        }
+    }
+
+    // 4. DROP AN APPOINTMENT FROM THE INDEX (DELETED OR CANCELLED)
+    public void release(int appointmentId) {
+        Slot slot = byAppointment.remove(appointmentId);
+        if (slot != null) {
+            slots(slot.doctorId()).remove(slot.start(), appointmentId);
+        }
+    }
+
+    // 5. RE-READ ONE APPOINTMENT AFTER A CHANGE MADE OUTSIDE THE BOOKING PATH
+    // Throws ConflictException if the stored row now overlaps another appointment (a double-booking written
+    // without a hold); the row is then left unindexed and the one already indexed keeps the slot.
+    public void refresh(int appointmentId) throws SQLException {
+        String sql = "SELECT doctor_id, scheduled_at FROM Appointment WHERE appointment_id = ? AND " + NOT_CANCELLED;
+        release(appointmentId);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, appointmentId);
+            ps.setInt(2, referenceData.cancelledStatusId());
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    int doctorId = rs.getInt(1);
+                    LocalDateTime scheduledAt = rs.getTimestamp(2).toLocalDateTime();
+                    long start = epochSeconds(scheduledAt);
+                    Integer inTheWay = start < horizon ? null : put(appointmentId, doctorId, start);
+                    if (inTheWay != null) {
+                        throw new ConflictException(doctorId, scheduledAt, inTheWay < 0 ? null : inTheWay);
+                    }
+                }
+            }
+        }
+    }
+
+    /** False for the Cancelled status: such appointments take no slot, so they need no hold or check. */
+    public boolean occupiesSlot(int statusId) {
+        return !referenceData.isCancelled(statusId);
+    }
+
+    // 6. OCCUPANCY BITMAP OF ONE DOCTOR'S DAY: BIT k SET = GRID SLOT k IS TAKEN (OR ON HOLD)
+    public long busySlots(int doctorId, LocalDate day) {
+        DoctorSlots slots = doctors.get(doctorId);
+        return slots == null ? 0 : slots.busySlots(day.toEpochDay());
+    }
+
+    public int slotsPerDay() {
+        return slotsPerDay;
+    }
+
+    public LocalDateTime slotStart(LocalDate day, int slot) {
+        return day.atStartOfDay().plusSeconds(dayStartSeconds + slot * slotSeconds);
+    }
+
+    /** Earliest time the index covers; bookings before it are only checked in the database. */
+    public LocalDateTime indexedFrom() {
+        long from = horizon;
+        return from == Long.MIN_VALUE ? LocalDateTime.MIN : LocalDateTime.ofEpochSecond(from, 0, ZoneOffset.UTC);
+    }
+
+    /** Number of indexed appointments, including holds not yet confirmed. */
+    public int size() {
+        int total = 0;
+        for (DoctorSlots slots : doctors.values()) {
+            total += slots.size();
+        }
+        return total;
+    }
+
+    // Existing rows that overlap (legacy double-bookings) keep the first one seen; the rest stay unindexed
+    private boolean index(int appointmentId, int doctorId, LocalDateTime scheduledAt) {
+        long start = epochSeconds(scheduledAt);
+        return start >= horizon && put(appointmentId, doctorId, start) == null;
+    }
+
+    // Returns the id (or hold token) in the way, or null after indexing the appointment
+    private Integer put(int appointmentId, int doctorId, long start) {
+        Integer inTheWay = slots(doctorId).putIfFree(start, appointmentId);
+        if (inTheWay == null) {
+            byAppointment.put(appointmentId, new Slot(doctorId, start));
+        }
+        return inTheWay;
+    }
+
+    private DoctorSlots slots(int doctorId) {
+        return doctors.computeIfAbsent(doctorId, id -> new DoctorSlots());
+    }
+
+    private long gridOrigin(long epochDay) {
+        return epochDay * SECONDS_PER_DAY + dayStartSeconds;
+    }
+
+    // Grid slots of epochDay that [start, start + slot) overlaps, as a bitmap
+    private long gridMask(long epochDay, long start) {
+        long origin = gridOrigin(epochDay);
+        long from = Math.max(0, Math.floorDiv(start - origin, slotSeconds));
+        long to = Math.min(slotsPerDay - 1, Math.floorDiv(start + slotSeconds - 1 - origin, slotSeconds));
+        if (from > to) {
+            return 0;
+        }
+        return (-1L >>> (Long.SIZE - (to - from + 1))) << from;
+    }
+
+    // Days an appointment starting at start can touch
+    private static long firstDay(long start) {
+        return Math.floorDiv(start, SECONDS_PER_DAY);
+    }
+
+    private long lastDay(long start) {
+        return Math.floorDiv(start + slotSeconds - 1, SECONDS_PER_DAY);
+    }
+
+    private static long epochSeconds(LocalDateTime value) {
+        return value.toEpochSecond(ZoneOffset.UTC);
+    }
+}
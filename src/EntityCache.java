@@ -0,0 +1,97 @@
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// BOUNDED LRU CACHE OF ROWS BY PRIMARY KEY, WITH TTL AND HIT/EVICTION COUNTERS
+// Writers call invalidate(id) after every change; readers load with the stamp()/putIfFresh() pair
+// so a row read before a concurrent write can never be cached after that write's invalidation.
+public class EntityCache<V> {
+
+    public record Stats(String name, int size, int maxSize, long hits, long misses, long evictions, long expirations) {
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : hits / (double) total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s cache: size=%d/%d hits=%d misses=%d hitRatio=%.1f%% evictions=%d expirations=%d",
+                    name, size, maxSize, hits, misses, 100 * hitRatio(), evictions, expirations);
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAtNanos) { }
+
+    private final String name;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<Integer, Entry<V>> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private long invalidations;
+
+    public EntityCache(String name, int maxSize, Duration ttl) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(Math.min(maxSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry<V>> eldest) {
+                if (size() > EntityCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** Cached value, or null on a miss (absent or expired). */
+    public synchronized V get(int id) {
+        Entry<V> entry = entries.get(id);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAtNanos() > 0) {
+            entries.remove(id);
+            expirations.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value();
+    }
+
+    /** Take this before reading from the database; pass it to {@link #putIfFresh}. */
+    public synchronized long stamp() {
+        return invalidations;
+    }
+
+    /** Caches the value unless something was invalidated since {@code stamp} was taken. */
+    public synchronized void putIfFresh(int id, V value, long stamp) {
+        if (stamp == invalidations) {
+            entries.put(id, new Entry<>(value, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    public synchronized void invalidate(int id) {
+        invalidations++;
+        entries.remove(id);
+    }
+
+    public synchronized void clear() {
+        invalidations++;
+        entries.clear();
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(name, entries.size(), maxSize, hits.sum(), misses.sum(), evictions.sum(), expirations.sum());
+    }
+}
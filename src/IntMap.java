@@ -0,0 +1,101 @@
+import java.util.Arrays;
+
+// IMMUTABLE int -> V HASH MAP (OPEN ADDRESSING, KEYS STAY PRIMITIVE)
+public final class IntMap<V> {
+
+    private final int[] keys;
+    private final Object[] values;
+    private final int mask;
+    private final int size;
+
+    private IntMap(int[] keys, Object[] values, int mask, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.mask = mask;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int idx = mix(key) & mask;
+        Object value;
+        while ((value = values[idx]) != null) {
+            if (keys[idx] == key) {
+                return (V) value;
+            }
+            idx = (idx + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Keys in ascending order. */
+    public int[] keys() {
+        int[] out = new int[size];
+        int n = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                out[n++] = keys[i];
+            }
+        }
+        Arrays.sort(out);
+        return out;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public static <V> Builder<V> builder() {
+        return new Builder<>();
+    }
+
+    public static final class Builder<V> {
+        private int[] keys = new int[16];
+        private Object[] values = new Object[16];
+        private int size;
+
+        /** Values must be non-null; a repeated key keeps the last value. */
+        public Builder<V> put(int key, V value) {
+            if (value == null) {
+                throw new IllegalArgumentException("IntMap values must not be null");
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = key;
+            values[size] = value;
+            size++;
+            return this;
+        }
+
+        public IntMap<V> build() {
+            int capacity = Integer.highestOneBit(Math.max(4, size * 2) - 1) << 1;
+            int mask = capacity - 1;
+            int[] tableKeys = new int[capacity];
+            Object[] tableValues = new Object[capacity];
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                int idx = mix(keys[i]) & mask;
+                while (tableValues[idx] != null && tableKeys[idx] != keys[i]) {
+                    idx = (idx + 1) & mask;
+                }
+                if (tableValues[idx] == null) {
+                    distinct++;
+                }
+                tableKeys[idx] = keys[i];
+                tableValues[idx] = values[i];
+            }
+            return new IntMap<>(tableKeys, tableValues, mask, distinct);
+        }
+    }
+}
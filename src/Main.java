@@ -1,17 +1,23 @@
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.sql.Timestamp;
 import java.sql.Types;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Scanner;
 
 public class Main {
@@ -26,17 +32,48 @@ public class Main {
     }
 
     public static void main(String[] args) {
-        try (Scanner scanner = new Scanner(System.in);
-             Connection connection = DB.getConnection()) {
-
-            ensureCoreTables(connection);
-            ensureSeedData(connection);
-            createBillSummaryArtifacts(connection);
-            ensurePatientAppointmentsView(connection);
-
-            PatientTable patientTable = new PatientTable(connection);
-            AppointmentTable appointmentTable = new AppointmentTable(connection);
-            BillTable billTable = new BillTable(connection);
+        MetricsServer metricsServer = null;
+        OutboxRelay outboxRelay = null;
+        PatientNoteLog noteLog = null;
+        try (Scanner scanner = new Scanner(System.in)) {
+
+            long startupStart = System.nanoTime();
+            SchemaMigrations.Result schema;
+            try (Connection connection = DB.getConnection()) {
+                schema = SchemaMigrations.migrate(connection);
+            }
+            System.out.println(schema);
+
+            ConnectionPool pool = DB.pool();
+            ReferenceData referenceData = new ReferenceData(pool,
+                    Duration.ofSeconds(DB.longProperty("cache.referenceTtlSeconds", 300)));
+            int entityCacheSize = (int) DB.longProperty("cache.entityMaxSize", 1000);
+            Duration entityCacheTtl = Duration.ofSeconds(DB.longProperty("cache.entityTtlSeconds", 60));
+            EntityCache<Patient> patientCache = entityCacheSize > 0
+                    ? new EntityCache<>("patient", entityCacheSize, entityCacheTtl) : null;
+            EntityCache<Appointment> appointmentCache = entityCacheSize > 0
+                    ? new EntityCache<>("appointment", entityCacheSize, entityCacheTtl) : null;
+            DoctorSchedule doctorSchedule = warmDoctorSchedule(pool, referenceData);
+            SlotSearch slotSearch = new SlotSearch(pool, doctorSchedule);
+            ChangeOutbox outbox = Boolean.parseBoolean(DB.properties().getProperty("outbox.enabled", "false").trim())
+                    ? new ChangeOutbox() : null;
+            PatientTable patientTable = new PatientTable(pool, patientCache, outbox);
+            noteLog = openNoteLog();
+            PatientNotes patientNotes = new PatientNotes(pool, noteLog, outbox);
+            AppointmentTable appointmentTable = new AppointmentTable(pool, referenceData, appointmentCache, doctorSchedule, outbox);
+            BillTable billTable = new BillTable(pool, referenceData, outbox);
+            BillSummaryTable billSummaryTable = new BillSummaryTable(pool, schema.isApplied(SchemaMigrations.BILL_TOTALS));
+            PatientBalanceLedger balanceLedger = new PatientBalanceLedger(pool,
+                    schema.isApplied(SchemaMigrations.PATIENT_BALANCE));
+            PatientDashboardQuery dashboardQuery = new PatientDashboardQuery(pool, referenceData, billSummaryTable,
+                    balanceLedger);
+            AppointmentSearch appointmentSearch = new AppointmentSearch(pool, referenceData);
+            BookingService bookingService = new BookingService(pool, patientNotes, doctorSchedule, outbox,
+                    (int) DB.longProperty("booking.maxAttempts", 5),
+                    Duration.ofMillis(DB.longProperty("booking.backoffMillis", 20)));
+            outboxRelay = startOutboxRelay(pool, outbox);
+            metricsServer = startMetricsServer(pool, bookingService, doctorSchedule, outboxRelay, patientCache, appointmentCache);
+            System.out.printf("Startup: ready in %.1f ms%n", (System.nanoTime() - startupStart) / 1e6);
 
             boolean running = true;
             while (running) {
@@ -44,13 +81,13 @@ public class Main {
                 String choice = scanner.nextLine().trim();
                 switch (choice) {
                     case "1":
-                        try { patientTable.listAllPatients(); } catch (SQLException ex) { logError("view all patients", ex); }
+                        try { listAllPatients(patientTable); } catch (SQLException ex) { logError("view all patients", ex); }
                         break;
                     case "2":
                         try { viewPatientByID(patientTable, scanner); } catch (SQLException ex) { logError("view patient by ID", ex); }
                         break;
                     case "3":
-                        try { appointmentTable.listAllAppointments(); } catch (SQLException ex) { logError("view all appointments", ex); }
+                        try { listAllAppointments(appointmentTable); } catch (SQLException ex) { logError("view all appointments", ex); }
                         break;
                     case "4":
                         try { viewAppointmentByID(appointmentTable, scanner); } catch (SQLException ex) { logError("view appointment by ID", ex); }
@@ -59,7 +96,7 @@ public class Main {
                         try { insertPatient(patientTable, scanner); } catch (SQLException ex) { logError("insert patient", ex); }
                         break;
                     case "6":
-                        try { updatePatientNotes(patientTable, scanner); } catch (SQLException ex) { logError("update patient notes", ex); }
+                        try { addPatientNote(patientNotes, scanner); } catch (SQLException ex) { logError("add patient note", ex); }
                         break;
                     case "7":
                         try { deletePatient(patientTable, scanner); } catch (SQLException ex) { logError("delete patient", ex); }
@@ -74,16 +111,16 @@ public class Main {
                         try { deleteAppointment(appointmentTable, scanner); } catch (SQLException ex) { logError("delete appointment", ex); }
                         break;
                     case "11":
-                        runAppointmentTransaction(connection, scanner);
+                        runAppointmentTransaction(referenceData, bookingService, scanner);
                         break;
                     case "12":
-                        try { viewAllPersons(connection); } catch (SQLException ex) { logError("view all persons", ex); }
+                        try { viewAllPersons(); } catch (SQLException ex) { logError("view all persons", ex); }
                         break;
                     case "13":
-                        try { viewPatientDetailsWithJoin(connection, scanner); } catch (SQLException ex) { logError("view patient details", ex); }
+                        try { viewPatientDetailsWithJoin(scanner); } catch (SQLException ex) { logError("view patient details", ex); }
                         break;
                     case "14":
-                        try { viewAppointmentsByStatus(connection, scanner); } catch (SQLException ex) { logError("view appointments by status", ex); }
+                        try { viewAppointmentsByStatus(referenceData, scanner); } catch (SQLException ex) { logError("view appointments by status", ex); }
                         break;
                     case "15":
                         try { listBillsForPatient(billTable, scanner); } catch (SQLException ex) { logError("list bills", ex); }
@@ -98,13 +135,55 @@ public class Main {
                         try { deleteBill(billTable, scanner); } catch (SQLException ex) { logError("delete bill", ex); }
                         break;
                     case "19":
-                        runBillingTransaction(connection, scanner);
+                        runBillingTransaction(referenceData, bookingService, scanner);
                         break;
                     case "20":
-                        try { viewBillSummary(connection); } catch (SQLException ex) { logError("view bill summary", ex); }
+                        try { viewBillSummary(billSummaryTable, scanner); } catch (SQLException ex) { logError("view bill summary", ex); }
                         break;
                     case "21":
-                        try { viewPatientBalance(connection, scanner); } catch (SQLException ex) { logError("view patient balance", ex); }
+                        try { viewPatientBalance(balanceLedger, scanner); } catch (SQLException ex) { logError("view patient balance", ex); }
+                        break;
+                    case "22":
+                        System.out.println("\n-- Connection Pool --");
+                        System.out.println(pool.stats());
+                        System.out.println(bookingService.stats());
+                        if (patientCache != null) {
+                            System.out.println(patientCache.stats());
+                            System.out.println(appointmentCache.stats());
+                        }
+                        if (outboxRelay != null) {
+                            System.out.println(outboxRelay.stats());
+                        }
+                        if (noteLog != null) {
+                            System.out.println(noteLog.stats());
+                        }
+                        break;
+                    case "23":
+                        try {
+                            referenceData.refresh();
+                            slotSearch.refresh();
+                            System.out.println("Reference data reloaded.");
+                        } catch (SQLException ex) {
+                            logError("reload reference data", ex);
+                        }
+                        break;
+                    case "24":
+                        try { verifyBillingTotals(billSummaryTable, balanceLedger, scanner); } catch (SQLException ex) { logError("verify billing totals", ex); }
+                        break;
+                    case "25":
+                        findFreeSlots(slotSearch, scanner);
+                        break;
+                    case "26":
+                        try { viewPatientDashboard(dashboardQuery, scanner); } catch (SQLException ex) { logError("view patient dashboard", ex); }
+                        break;
+                    case "27":
+                        showQueryMetrics(pool.metrics(), scanner);
+                        break;
+                    case "28":
+                        try { viewPatientNoteHistory(patientNotes, scanner); } catch (SQLException ex) { logError("view patient note history", ex); }
+                        break;
+                    case "29":
+                        try { searchAppointments(appointmentSearch, scanner); } catch (SQLException ex) { logError("search appointments", ex); }
                         break;
                     case "0":
                         running = false;
@@ -118,6 +197,21 @@ public class Main {
             System.out.println("Fatal DB error: " + ex.getMessage());
         } catch (Exception ex) {
             System.out.println("Fatal error: " + ex.getMessage());
+        } finally {
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
+            if (outboxRelay != null) {
+                outboxRelay.close();
+            }
+            if (noteLog != null) {
+                try {
+                    noteLog.close();
+                } catch (IOException ex) {
+                    System.out.println("Could not close the note audit log: " + ex.getMessage());
+                }
+            }
+            DB.shutdown();
         }
     }
 
@@ -127,14 +221,18 @@ public class Main {
         System.out.println("  1) View All Patients (via PatientTable class)");
         System.out.println("  2) View Patient by ID (via PatientTable class)");
         System.out.println("  5) Insert New Patient");
-        System.out.println("  6) Update Patient Notes");
+        System.out.println("  6) Add Patient Note");
         System.out.println("  7) Delete Patient");
+        System.out.println("  28) View Patient Note History");
+        System.out.println("  26) View Patient Dashboard (details, upcoming appointments, recent bills, balance in one query)");
         System.out.println("\nAPPOINTMENT OPERATIONS:");
         System.out.println("  3) View All Appointments (via AppointmentTable class)");
         System.out.println("  4) View Appointment by ID (via AppointmentTable class)");
         System.out.println("  8) Insert New Appointment");
         System.out.println("  9) Update Appointment Status");
         System.out.println("  10) Delete Appointment");
+        System.out.println("  25) Find Free Appointment Slots (any doctor or by specialty)");
+        System.out.println("  29) Search Appointments (date range, doctor, patient, status; paged)");
         System.out.println("\nADDITIONAL SELECT QUERIES (Direct in Main.java):");
         System.out.println("  12) View All Persons");
         System.out.println("  13) View Patient Details with JOIN");
@@ -148,95 +246,93 @@ public class Main {
         System.out.println("  11) Run Appointment Transaction (COMMIT/ROLLBACK Demo)");
         System.out.println("  19) Run Billing Transaction (Appointment + Bill + Notes)");
         System.out.println("\nREPORTING / VIEWS / FUNCTIONS:");
-        System.out.println("  20) View BillSummary View");
-        System.out.println("  21) View Patient Balance via Stored Function");
+        System.out.println("  20) View Bill Summary (maintained totals, newest first)");
+        System.out.println("  21) View Patient Balances (ledger, several IDs at once)");
+        System.out.println("\nDIAGNOSTICS:");
+        System.out.println("  22) View Connection Pool and Cache Stats");
+        System.out.println("  23) Reload Reference Data (statuses, roles, specialties, departments, services, doctors)");
+        System.out.println("  24) Verify / Rebuild Bill Totals and Patient Balances");
+        System.out.println("  27) View Query Metrics (latency percentiles, rows, errors per statement)");
         System.out.println("\n  0) Exit");
         System.out.println("================================================");
         System.out.print("Select option: ");
     }
 
-    // Create or replace a VIEW combining Patient, Person, Appointment, and AppointmentStatus
-    private static void ensurePatientAppointmentsView(Connection connection) throws SQLException {
-        String sql = ""
-            + "CREATE OR REPLACE VIEW v_patient_appointments AS "
-            + "SELECT "
-            + "  pt.patient_id, "
-            + "  p.first_name, "
-            + "  p.last_name, "
-            + "  a.appointment_id, "
-            + "  a.doctor_id, "
-            + "  a.scheduled_at, "
-            + "  a.reason, "
-            + "  ast.status "
-            + "FROM Patient pt "
-            + "JOIN Person p ON p.person_id = pt.patient_id "
-            + "LEFT JOIN Appointment a ON a.patient_id = pt.patient_id "
-            + "LEFT JOIN AppointmentStatus ast ON ast.status_id = a.status_id";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.executeUpdate();
-        }
+    // Keyset-paged search; every filter is optional and each page is one index range scan
+    private static void searchAppointments(AppointmentSearch appointmentSearch, Scanner scanner) throws SQLException {
+        System.out.println("\n-- Search Appointments --");
+        LocalDate fromDate = promptOptionalDate(scanner, "From date yyyy-MM-dd (blank for no lower bound)");
+        LocalDate toDate = promptOptionalDate(scanner, "To date yyyy-MM-dd, inclusive (blank for no upper bound)");
+        Integer doctorId = promptOptionalInt(scanner, "Doctor ID (blank for all)");
+        Integer patientId = promptOptionalInt(scanner, "Patient ID (blank for all)");
+        Integer statusId = promptOptionalInt(scanner, "Status ID (1=Scheduled, 2=Completed, 3=Cancelled; blank for all)");
+        Integer pageSize = promptOptionalInt(scanner, "Page size (blank for 20)");
+
+        AppointmentSearch.Filter filter = AppointmentSearch.Filter.any()
+                .between(fromDate == null ? null : fromDate.atStartOfDay(),
+                        toDate == null ? null : toDate.plusDays(1).atStartOfDay())
+                .doctor(doctorId).patient(patientId).status(statusId);
+        int size = Math.max(1, Math.min(pageSize == null ? 20 : pageSize, AppointmentSearch.MAX_PAGE_SIZE));
+        AppointmentSearch.Cursor cursor = null;
+        int shown = 0;
+        do {
+            AppointmentSearch.Page page = appointmentSearch.search(filter, cursor, size);
+            if (shown == 0) {
+                ConsoleView.printAppointmentListHeader();
+            }
+            page.appointments().forEach(ConsoleView::printAppointmentRow);
+            shown += page.appointments().size();
+            cursor = page.next();
+        } while (cursor != null && promptString(scanner, "Enter for the next page, q to stop").isEmpty());
+        System.out.println(shown == 0 ? "No appointments match." : shown + " appointment(s) shown.");
+    }
+
+    private static void listAllPatients(PatientTable patientTable) throws SQLException {
+        ConsoleView.printPatientListHeader();
+        patientTable.streamAllPatients(ConsoleView::printPatientRow);
     }
 
-    // Query the VIEW using PreparedStatement and optional filters
-    private static void viewPatientAppointmentsFromView(Connection connection, Scanner scanner) throws SQLException {
-        System.out.println("\n-- View Patient Appointments (from SQL VIEW) --");
-        Integer patientId = promptOptionalInt(scanner, "Filter by Patient ID (blank for all)");
-        Integer statusId = promptOptionalInt(scanner, "Filter by Status ID (1=Scheduled, 2=Completed, 3=Cancelled; blank for all)");
-
-        String base = "SELECT patient_id, first_name, last_name, appointment_id, doctor_id, scheduled_at, reason, status "
-                    + "FROM v_patient_appointments ";
-        String where = "";
-        if (patientId != null && statusId != null) {
-            where = "WHERE patient_id = ? AND status = (SELECT status FROM AppointmentStatus WHERE status_id = ?) ";
-        } else if (patientId != null) {
-            where = "WHERE patient_id = ? ";
-        } else if (statusId != null) {
-            where = "WHERE status = (SELECT status FROM AppointmentStatus WHERE status_id = ?) ";
-        }
-        String order = "ORDER BY scheduled_at IS NULL, scheduled_at";
+    private static void viewPatientByID(PatientTable patientTable, Scanner scanner) throws SQLException {
+        System.out.print("Enter Patient ID: ");
+        int id = Integer.parseInt(scanner.nextLine().trim());
+        ConsoleView.printPatient(id, patientTable.selectPatientByID(id));
+    }
 
-        try (PreparedStatement ps = connection.prepareStatement(base + where + " " + order)) {
-            int idx = 1;
-            if (patientId != null) {
-                ps.setInt(idx++, patientId);
-            }
-            if (statusId != null) {
-                ps.setInt(idx++, statusId);
-            }
+    private static void viewPatientDashboard(PatientDashboardQuery dashboardQuery, Scanner scanner) throws SQLException {
+        int id = promptInt(scanner, "Enter Patient ID");
+        long start = System.nanoTime();
+        Optional<PatientDashboard> loaded = dashboardQuery.load(id, 5, 5);
+        long nanos = System.nanoTime() - start;
 
-            try (ResultSet rs = ps.executeQuery()) {
-                System.out.println("PID | Name | ApptID | DoctorID | Scheduled At | Status | Reason");
-                System.out.println("-----------------------------------------------------------------");
-                boolean any = false;
-                while (rs.next()) {
-                    any = true;
-                    System.out.printf("%d | %s %s | %s | %s | %s | %s | %s%n",
-                            rs.getInt("patient_id"),
-                            rs.getString("first_name"),
-                            rs.getString("last_name"),
-                            rs.getObject("appointment_id"),
-                            rs.getObject("doctor_id"),
-                            rs.getObject("scheduled_at"),
-                            rs.getString("status"),
-                            rs.getString("reason"));
-                }
-                if (!any) {
-                    System.out.println("No rows found for given filters.");
-                }
-            }
+        ConsoleView.printPatient(id, loaded.map(PatientDashboard::patient));
+        if (loaded.isEmpty()) {
+            return;
         }
+        PatientDashboard dashboard = loaded.get();
+        System.out.printf("Total Appointments: %d%n", dashboard.appointmentCount());
+        System.out.printf("Balance: %.2f%n", dashboard.balance());
+        System.out.println("\nUpcoming Appointments:");
+        if (dashboard.upcoming().isEmpty()) {
+            System.out.println("(none)");
+        } else {
+            System.out.println("ID | Patient | Doctor | Date | Status | Reason");
+            dashboard.upcoming().forEach(ConsoleView::printAppointmentRow);
+        }
+        System.out.println("\nRecent Bills:");
+        ConsoleView.printBillSummaryHeader();
+        dashboard.recentBills().forEach(ConsoleView::printBillSummaryRow);
+        System.out.printf("(1 query, %.2f ms)%n", nanos / 1e6);
     }
 
-    private static void viewPatientByID(PatientTable patientTable, Scanner scanner) throws SQLException {
-        System.out.print("Enter Patient ID: ");
-        int id = Integer.parseInt(scanner.nextLine().trim());
-        patientTable.selectPatientByID(id);
+    private static void listAllAppointments(AppointmentTable appointmentTable) throws SQLException {
+        ConsoleView.printAppointmentListHeader();
+        appointmentTable.streamAllAppointments(ConsoleView::printAppointmentRow);
     }
 
     private static void viewAppointmentByID(AppointmentTable appointmentTable, Scanner scanner) throws SQLException {
         System.out.print("Enter Appointment ID: ");
         int id = Integer.parseInt(scanner.nextLine().trim());
-        appointmentTable.selectAppointmentByID(id);
+        ConsoleView.printAppointment(id, appointmentTable.selectAppointmentByID(id));
     }
 
     private static void insertPatient(PatientTable patientTable, Scanner scanner) throws SQLException {
@@ -244,20 +340,30 @@ public class Main {
         int patientId = promptInt(scanner, "Existing Person ID");
         String insurance = promptString(scanner, "Insurance ID");
         String notes = promptString(scanner, "Notes (optional)");
-        patientTable.insertPatient(patientId, insurance, notes);
+        ConsoleView.printRowsAffected(patientTable.insertPatient(patientId, insurance, notes), "patient", "inserted");
+    }
+
+    private static void addPatientNote(PatientNotes patientNotes, Scanner scanner) throws SQLException {
+        System.out.println("\n-- Add Patient Note --");
+        int patientId = promptInt(scanner, "Patient ID");
+        String text = promptString(scanner, "Note");
+        if (text.isEmpty()) {
+            System.out.println("Nothing to add.");
+            return;
+        }
+        PatientNote note = patientNotes.append(patientId, "console", text);
+        System.out.println("Note #" + note.noteId() + " added.");
     }
 
-    private static void updatePatientNotes(PatientTable patientTable, Scanner scanner) throws SQLException {
-        System.out.println("\n-- Update Patient Notes --");
+    private static void viewPatientNoteHistory(PatientNotes patientNotes, Scanner scanner) throws SQLException {
         int patientId = promptInt(scanner, "Patient ID");
-        String notes = promptString(scanner, "New notes");
-        patientTable.updatePatientNotes(patientId, notes);
+        ConsoleView.printNoteHistory(patientId, patientNotes.history(patientId));
     }
 
     private static void deletePatient(PatientTable patientTable, Scanner scanner) throws SQLException {
         System.out.println("\n-- Delete Patient --");
         int patientId = promptInt(scanner, "Patient ID");
-        patientTable.deletePatient(patientId);
+        ConsoleView.printRowsAffected(patientTable.deletePatient(patientId), "patient", "deleted");
     }
 
     private static void insertAppointment(AppointmentTable appointmentTable, Scanner scanner) throws SQLException {
@@ -267,257 +373,356 @@ public class Main {
         Timestamp scheduledAt = promptTimestamp(scanner, "Scheduled time (yyyy-MM-dd HH:mm)");
         String reason = promptString(scanner, "Reason (optional)");
         int statusId = promptInt(scanner, "Status ID (1=Scheduled, 2=Completed, 3=Cancelled)");
-        appointmentTable.insertAppointment(patientId, doctorId, scheduledAt, reason, statusId);
+        int appointmentId = appointmentTable.insertAppointment(patientId, doctorId, scheduledAt, reason, statusId);
+        System.out.println("1 appointment record(s) inserted with ID: " + appointmentId);
     }
 
     private static void updateAppointmentStatus(AppointmentTable appointmentTable, Scanner scanner) throws SQLException {
         System.out.println("\n-- Update Appointment Status --");
         int appointmentId = promptInt(scanner, "Appointment ID");
         int statusId = promptInt(scanner, "New Status ID (1=Scheduled, 2=Completed, 3=Cancelled)");
-        appointmentTable.updateAppointmentStatus(appointmentId, statusId);
+        ConsoleView.printRowsAffected(appointmentTable.updateAppointmentStatus(appointmentId, statusId), "appointment", "updated");
     }
 
     private static void deleteAppointment(AppointmentTable appointmentTable, Scanner scanner) throws SQLException {
         System.out.println("\n-- Delete Appointment --");
         int appointmentId = promptInt(scanner, "Appointment ID");
-        appointmentTable.deleteAppointment(appointmentId);
+        ConsoleView.printRowsAffected(appointmentTable.deleteAppointment(appointmentId), "appointment", "deleted");
     }
 
     private static void listBillsForPatient(BillTable billTable, Scanner scanner) throws SQLException {
         System.out.println("\n-- List Bills for Patient --");
         int patientId = promptInt(scanner, "Patient ID");
-        billTable.listBillsForPatient(patientId);
+        ConsoleView.printBills(billTable.listBillsForPatient(patientId));
     }
 
     private static void viewBillByID(BillTable billTable, Scanner scanner) throws SQLException {
         System.out.println("\n-- View Bill --");
         int billNo = promptInt(scanner, "Bill Number");
-        billTable.selectBillByID(billNo);
+        Optional<Bill> bill = billTable.selectBillByID(billNo);
+        ConsoleView.printBill(billNo, bill, bill.isPresent() ? billTable.listBillItems(billNo) : List.of());
     }
 
     private static void insertBill(BillTable billTable, Scanner scanner) throws SQLException {
         System.out.println("\n-- Insert Bill --");
         int patientId = promptInt(scanner, "Patient ID");
         Integer appointmentId = promptOptionalInt(scanner, "Appointment ID (blank if none)");
-        billTable.insertBill(patientId, appointmentId);
+
+        // Collect every line first; the bill and its items are then written in one short transaction
+        List<BillTable.NewItem> items = new ArrayList<>();
+        while (true) {
+            String type = promptString(scanner, "Item " + (items.size() + 1)
+                    + " charge type (Doctor/Room/Prescription/Medication/Service/Other, blank to finish)");
+            if (type.isEmpty()) {
+                break;
+            }
+            if (type.equalsIgnoreCase("Service")) {
+                int serviceId = promptInt(scanner, "Service ID");
+                BigDecimal amount = promptOptionalAmount(scanner, "Amount (blank for list price)");
+                items.add(new BillTable.NewItem("Service", serviceId, null, amount));
+            } else {
+                String description = promptString(scanner, "Description");
+                BigDecimal amount = null;
+                while (amount == null) {
+                    amount = promptOptionalAmount(scanner, "Amount");
+                }
+                items.add(BillTable.NewItem.charge(capitalize(type), description, amount));
+            }
+        }
+
+        BillTable.CreatedBill created = billTable.createBillWithItems(patientId, appointmentId, items);
+        System.out.println("Bill inserted with ID: " + created.bill().billNo());
+        ConsoleView.printBill(created.bill().billNo(), Optional.of(created.bill()), created.items());
+        System.out.printf("Total: %.2f%n", created.total());
+    }
+
+    private static void findFreeSlots(SlotSearch slotSearch, Scanner scanner) {
+        System.out.println("\n-- Find Free Appointment Slots --");
+        Integer specialtyId = promptOptionalInt(scanner, "Specialty ID (blank for any doctor)");
+        Integer days = promptOptionalInt(scanner, "Days to search, from today (blank for 7)");
+        Integer count = promptOptionalInt(scanner, "Number of slots (blank for 10)");
+
+        LocalDateTime from = LocalDateTime.now();
+        LocalDateTime to = from.toLocalDate().plusDays(days == null ? 7 : days).atStartOfDay();
+        long start = System.nanoTime();
+        List<SlotSearch.FreeSlot> slots = slotSearch.search(specialtyId, from, to, count == null ? 10 : count);
+        long nanos = System.nanoTime() - start;
+
+        if (slots.isEmpty()) {
+            System.out.println("No free slots found.");
+        }
+        for (SlotSearch.FreeSlot slot : slots) {
+            System.out.println(slot);
+        }
+        System.out.printf("(%d slot(s) found in %.3f ms)%n", slots.size(), nanos / 1e6);
+    }
+
+    // Null when notes.auditLog is blank or the file cannot be opened (notes then go to the table only)
+    private static PatientNoteLog openNoteLog() {
+        String file = DB.properties().getProperty("notes.auditLog", "patient-notes.log").trim();
+        if (file.isEmpty()) {
+            return null;
+        }
+        try {
+            return PatientNoteLog.open(Path.of(file));
+        } catch (IOException ex) {
+            System.out.println("Note audit log disabled, cannot open " + file + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    // Only the process with outbox.file set relays; other processes just write events
+    private static OutboxRelay startOutboxRelay(ConnectionPool pool, ChangeOutbox outbox) {
+        String file = DB.properties().getProperty("outbox.file", "").trim();
+        if (outbox == null || file.isEmpty()) {
+            return null;
+        }
+        try {
+            OutboxRelay relay = new OutboxRelay(pool, outbox, (int) DB.longProperty("outbox.batchSize", 500),
+                    Duration.ofMillis(DB.longProperty("outbox.pollMillis", 1000)))
+                    .addSink(new OutboxRelay.FileSink(Path.of(file)))
+                    .start();
+            System.out.println("Outbox: relaying change events to " + file);
+            return relay;
+        } catch (IOException ex) {
+            System.out.println("Outbox relay not started, cannot open " + file + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    // Serves /metrics on 127.0.0.1:metrics.httpPort for Prometheus; null when the port is 0 or cannot be bound
+    private static MetricsServer startMetricsServer(ConnectionPool pool, BookingService bookingService,
+                                                    DoctorSchedule doctorSchedule, OutboxRelay outboxRelay,
+                                                    EntityCache<?>... caches) {
+        int port = (int) DB.longProperty("metrics.httpPort", 0);
+        if (port <= 0) {
+            return null;
+        }
+        try {
+            MetricsServer server = new MetricsServer(port)
+                    .registerPool(pool)
+                    .registerBookings(bookingService)
+                    .registerSchedule(doctorSchedule);
+            if (pool.metrics() != null) {
+                server.registerQueries(pool.metrics());
+            }
+            if (outboxRelay != null) {
+                server.registerOutbox(outboxRelay);
+            }
+            for (EntityCache<?> cache : caches) {
+                if (cache != null) {
+                    server.registerCache(cache);
+                }
+            }
+            server.start();
+            System.out.println("Metrics: http://127.0.0.1:" + server.port() + "/metrics");
+            return server;
+        } catch (IOException ex) {
+            System.out.println("Metrics endpoint not started on port " + port + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    private static void showQueryMetrics(QueryMetrics metrics, Scanner scanner) {
+        System.out.println("\n-- Query Metrics (slowest total time first) --");
+        if (metrics == null) {
+            System.out.println("Query metrics are disabled (metrics.enabled=false in db.properties).");
+            return;
+        }
+        Integer top = promptOptionalInt(scanner, "Statements to show (blank for 20, 0 for all)");
+        System.out.print(metrics.report(top == null ? 20 : top));
+
+        String file = promptString(scanner, "Write full report to file (blank to skip)");
+        if (!file.isEmpty()) {
+            try {
+                metrics.writeReport(Path.of(file));
+                System.out.println("Report written to " + file);
+            } catch (IOException ex) {
+                System.out.println("Failed to write report: " + ex.getMessage());
+            }
+        }
+        if (promptString(scanner, "Reset counters? (y/n)").equalsIgnoreCase("y")) {
+            metrics.reset();
+            System.out.println("Query metrics reset.");
+        }
     }
 
     private static void deleteBill(BillTable billTable, Scanner scanner) throws SQLException {
         System.out.println("\n-- Delete Bill --");
         int billNo = promptInt(scanner, "Bill Number");
-        billTable.deleteBill(billNo);
+        if (billTable.deleteBill(billNo) > 0) {
+            System.out.println("Bill " + billNo + " has been deleted.");
+        } else {
+            System.out.println("No bill found with ID: " + billNo);
+        }
     }
 
-    private static void runAppointmentTransaction(Connection connection, Scanner scanner) {
-        System.out.println("\n========== TRANSACTION DEMO: Schedule Appointment + Update Patient Notes ==========");
+    private static void runAppointmentTransaction(ReferenceData referenceData, BookingService bookingService, Scanner scanner) {
+        System.out.println("\n========== TRANSACTION DEMO: Schedule Appointment + Add Patient Note ==========");
         System.out.println("This transaction will:");
         System.out.println("  1. Insert a new appointment");
-        System.out.println("  2. Update patient notes to reflect the appointment");
-        System.out.println("  3. Ask you to COMMIT or ROLLBACK");
+        System.out.println("  2. Add a patient note about the appointment");
+        System.out.println("You confirm first; the transaction then runs and commits without waiting on input.");
         System.out.println();
 
-        int patientId = promptInt(scanner, "Patient ID");
-        int doctorId = promptInt(scanner, "Doctor ID (staff_id)");
-        Timestamp appointmentTime = promptTimestamp(scanner, "Appointment time (yyyy-MM-dd HH:mm)");
-        String reason = promptString(scanner, "Reason for visit");
-        int statusId = promptInt(scanner, "Status ID (1=Scheduled, 2=Completed, 3=Cancelled)");
-        String noteFragment = promptString(scanner, "Note text to append to patient record");
+        BillingWorkflow.Request request = promptBookingRequest(referenceData, scanner, "Reason for visit");
+        if (request == null || !confirm(scanner)) {
+            return;
+        }
 
         try {
-            if (!assertEntityExists(connection, "SELECT 1 FROM Patient WHERE patient_id = ?", patientId, "Patient")) {
-                return;
-            }
-            if (!assertEntityExists(connection, "SELECT 1 FROM Doctor WHERE staff_id = ?", doctorId, "Doctor")) {
-                return;
-            }
-            if (!assertEntityExists(connection, "SELECT 1 FROM AppointmentStatus WHERE status_id = ?", statusId, "Status")) {
-                return;
-            }
-
-            connection.setAutoCommit(false);
-
-            String insertAppointment = "INSERT INTO Appointment (patient_id, doctor_id, scheduled_at, reason, status_id) VALUES (?, ?, ?, ?, ?)";
-            try (PreparedStatement ps = connection.prepareStatement(insertAppointment)) {
-                ps.setInt(1, patientId);
-                ps.setInt(2, doctorId);
-                ps.setTimestamp(3, appointmentTime);
-                ps.setString(4, reason);
-                ps.setInt(5, statusId);
-                int rows = ps.executeUpdate();
-                System.out.println("\u2713 Step 1: Inserted " + rows + " appointment(s)");
-            }
-
-            String updateNotes = "UPDATE Patient SET notes = CONCAT(COALESCE(notes, ''), ?) WHERE patient_id = ?";
-            try (PreparedStatement ps = connection.prepareStatement(updateNotes)) {
-                ps.setString(1, "\n[Appointment Scheduled] " + noteFragment);
-                ps.setInt(2, patientId);
-                int rows = ps.executeUpdate();
-                System.out.println("\u2713 Step 2: Updated " + rows + " patient record(s)");
-            }
-
-            System.out.println("\n>>> Transaction ready. Commit or rollback? (y=COMMIT / n=ROLLBACK): ");
-            System.out.print("Your choice: ");
-            String choice = scanner.nextLine().trim();
-
-            if (choice.equalsIgnoreCase("y")) {
-                connection.commit();
-                System.out.println("\u2713\u2713\u2713 Transaction COMMITTED successfully! \u2713\u2713\u2713");
-            } else {
-                connection.rollback();
-                System.out.println("\u2717\u2717\u2717 Transaction ROLLED BACK - no changes made. \u2717\u2717\u2717");
-            }
+            BookingService.Outcome<Integer> outcome = bookingService.book(request);
+            System.out.println("\u2713 Step 1: Inserted appointment " + outcome.value());
+            System.out.println("\u2713 Step 2: Appended note to patient " + request.patientId());
+            System.out.println("\u2713\u2713\u2713 Transaction COMMITTED successfully! \u2713\u2713\u2713");
+            System.out.println(outcome);
         } catch (SQLException ex) {
-            try {
-                connection.rollback();
-                System.out.println("\u2717\u2717\u2717 Transaction ROLLED BACK due to error. \u2717\u2717\u2717");
-            } catch (SQLException rollbackEx) {
-                System.out.println("CRITICAL: Rollback failed: " + rollbackEx.getMessage());
-            }
+            System.out.println("\u2717\u2717\u2717 Transaction ROLLED BACK due to error. \u2717\u2717\u2717");
             System.out.println("Transaction failed: " + ex.getMessage());
             ex.printStackTrace();
-        } finally {
-            try {
-                connection.setAutoCommit(true);
-            } catch (SQLException ex) {
-                System.out.println("Could not reset auto-commit: " + ex.getMessage());
-            }
         }
     }
 
-    private static void runBillingTransaction(Connection connection, Scanner scanner) {
+    private static void runBillingTransaction(ReferenceData referenceData, BookingService bookingService, Scanner scanner) {
         System.out.println("\n========== TRANSACTION DEMO: Appointment + Bill + Patient Note ==========");
         System.out.println("This transaction will:");
         System.out.println("  1. Insert a new appointment");
         System.out.println("  2. Immediately create a bill linked to that appointment");
         System.out.println("  3. Append a billing note to the patient record");
-        System.out.println("  4. Let you COMMIT or ROLLBACK the whole workflow");
+        System.out.println("You confirm first; the transaction then runs and commits without waiting on input.");
         System.out.println();
 
+        BillingWorkflow.Request request = promptBookingRequest(referenceData, scanner, "Reason (optional, blank allowed)");
+        if (request == null || !confirm(scanner)) {
+            return;
+        }
+
+        try {
+            BookingService.Outcome<BillingWorkflow.Result> outcome = bookingService.bookAndBill(request);
+            System.out.println("\u2713 Step 1: Inserted appointment " + outcome.value().appointmentId());
+            System.out.println("\u2713 Step 2: Inserted bill " + outcome.value().billNo());
+            System.out.println("\u2713 Step 3: Appended note to patient " + request.patientId());
+            System.out.println("\u2713\u2713\u2713 Billing transaction COMMITTED successfully! \u2713\u2713\u2713");
+            System.out.println(outcome);
+        } catch (SQLException ex) {
+            System.out.println("\u2717\u2717\u2717 Billing transaction ROLLED BACK due to error. \u2717\u2717\u2717");
+            System.out.println("Transaction failed: " + ex.getMessage());
+            ex.printStackTrace();
+        }
+    }
+
+    // Collects and validates everything the booking transactions need, before any transaction starts
+    private static BillingWorkflow.Request promptBookingRequest(ReferenceData referenceData, Scanner scanner, String reasonPrompt) {
         int patientId = promptInt(scanner, "Patient ID");
         int doctorId = promptInt(scanner, "Doctor ID (staff_id)");
         Timestamp appointmentTime = promptTimestamp(scanner, "Appointment time (yyyy-MM-dd HH:mm)");
-        String reason = promptString(scanner, "Reason (optional, blank allowed)");
-        if (reason.isEmpty()) {
-            reason = null;
-        }
+        String reason = promptString(scanner, reasonPrompt);
         int statusId = promptInt(scanner, "Status ID (1=Scheduled, 2=Completed, 3=Cancelled)");
         String noteFragment = promptString(scanner, "Note text to append to patient record");
 
-        try {
+        try (Connection connection = DB.getConnection()) {
             if (!assertEntityExists(connection, "SELECT 1 FROM Patient WHERE patient_id = ?", patientId, "Patient")) {
-                return;
+                return null;
             }
             if (!assertEntityExists(connection, "SELECT 1 FROM Doctor WHERE staff_id = ?", doctorId, "Doctor")) {
-                return;
-            }
-            if (!assertEntityExists(connection, "SELECT 1 FROM AppointmentStatus WHERE status_id = ?", statusId, "Status")) {
-                return;
-            }
-
-            connection.setAutoCommit(false);
-
-            int newAppointmentId;
-            String insertAppointment = "INSERT INTO Appointment (patient_id, doctor_id, scheduled_at, reason, status_id) VALUES (?, ?, ?, ?, ?)";
-            try (PreparedStatement ps = connection.prepareStatement(insertAppointment, Statement.RETURN_GENERATED_KEYS)) {
-                ps.setInt(1, patientId);
-                ps.setInt(2, doctorId);
-                ps.setTimestamp(3, appointmentTime);
-                if (reason == null) {
-                    ps.setNull(4, Types.VARCHAR);
-                } else {
-                    ps.setString(4, reason);
-                }
-                ps.setInt(5, statusId);
-                int rows = ps.executeUpdate();
-                System.out.println("\u2713 Step 1: Inserted " + rows + " appointment(s)");
-
-                try (ResultSet keys = ps.getGeneratedKeys()) {
-                    if (keys.next()) {
-                        newAppointmentId = keys.getInt(1);
-                    } else {
-                        throw new SQLException("Appointment insert succeeded but no ID was returned.");
-                    }
-                }
-            }
-
-            String insertBill = "INSERT INTO Bill (patient_id, appointment_id) VALUES (?, ?)";
-            try (PreparedStatement ps = connection.prepareStatement(insertBill)) {
-                ps.setInt(1, patientId);
-                ps.setInt(2, newAppointmentId);
-                int rows = ps.executeUpdate();
-                System.out.println("\u2713 Step 2: Inserted " + rows + " bill(s)");
-            }
-
-            String updateNotes = "UPDATE Patient SET notes = CONCAT(COALESCE(notes, ''), ?) WHERE patient_id = ?";
-            try (PreparedStatement ps = connection.prepareStatement(updateNotes)) {
-                ps.setString(1, "\n[Billing Transaction] " + noteFragment);
-                ps.setInt(2, patientId);
-                int rows = ps.executeUpdate();
-                System.out.println("\u2713 Step 3: Updated " + rows + " patient record(s)");
-            }
-
-            System.out.println("\n>>> Transaction ready. Commit or rollback? (y=COMMIT / n=ROLLBACK): ");
-            System.out.print("Your choice: ");
-            String choice = scanner.nextLine().trim();
-
-            if (choice.equalsIgnoreCase("y")) {
-                connection.commit();
-                System.out.println("\u2713\u2713\u2713 Billing transaction COMMITTED successfully! \u2713\u2713\u2713");
-            } else {
-                connection.rollback();
-                System.out.println("\u2717\u2717\u2717 Billing transaction ROLLED BACK - no changes made. \u2717\u2717\u2717");
+                return null;
             }
         } catch (SQLException ex) {
-            try {
-                connection.rollback();
-                System.out.println("\u2717\u2717\u2717 Billing transaction ROLLED BACK due to error. \u2717\u2717\u2717");
-            } catch (SQLException rollbackEx) {
-                System.out.println("CRITICAL: Rollback failed: " + rollbackEx.getMessage());
-            }
-            System.out.println("Transaction failed: " + ex.getMessage());
-            ex.printStackTrace();
-        } finally {
-            try {
-                connection.setAutoCommit(true);
-            } catch (SQLException ex) {
-                System.out.println("Could not reset auto-commit: " + ex.getMessage());
-            }
+            logError("validate the booking", ex);
+            return null;
         }
+        if (referenceData.statusName(statusId) == null) {
+            System.out.println("Status ID " + statusId + " does not exist. Operation cancelled.");
+            return null;
+        }
+        return new BillingWorkflow.Request(patientId, doctorId, appointmentTime,
+                reason.isEmpty() ? null : reason, statusId, noteFragment);
     }
 
-    private static void viewBillSummary(Connection connection) throws SQLException {
-        String sql = "SELECT bill_no, patient_id, first_name, last_name, appointment_id, created_at, total_amount FROM BillSummary ORDER BY bill_no";
-        try (PreparedStatement ps = connection.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-            System.out.println("\n-- Bill Summary View --");
-            System.out.println("Bill | Patient | Name | Appt | Created | Total");
-            while (rs.next()) {
-                System.out.printf("%d | %d | %s %s | %s | %s | %.2f%n",
-                        rs.getInt("bill_no"),
-                        rs.getInt("patient_id"),
-                        rs.getString("first_name"),
-                        rs.getString("last_name"),
-                        rs.getObject("appointment_id") == null ? "NULL" : rs.getInt("appointment_id"),
-                        rs.getTimestamp("created_at"),
-                        rs.getDouble("total_amount"));
-            }
+    private static boolean confirm(Scanner scanner) {
+        System.out.println("\n>>> Run and COMMIT this transaction? (y=COMMIT / n=CANCEL): ");
+        System.out.print("Your choice: ");
+        if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+            return true;
         }
+        System.out.println("\u2717\u2717\u2717 Cancelled - no changes made. \u2717\u2717\u2717");
+        return false;
     }
 
-    private static void viewPatientBalance(Connection connection, Scanner scanner) throws SQLException {
-        System.out.println("\n-- Patient Balance (Stored Function) --");
-        int patientId = promptInt(scanner, "Patient ID");
-        String sql = "SELECT GetPatientBalance(?) AS balance";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setInt(1, patientId);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    System.out.printf("Patient %d outstanding balance: %.2f%n", patientId, rs.getDouble("balance"));
-                } else {
-                    System.out.println("Function did not return a result.");
-                }
+    private static void viewBillSummary(BillSummaryTable billSummaryTable, Scanner scanner) throws SQLException {
+        final int pageSize = 20;
+        System.out.println("\n-- Bill Summary (newest first) --");
+        ConsoleView.printBillSummaryHeader();
+        Integer before = null;
+        while (true) {
+            List<BillSummary> page = billSummaryTable.listLatest(before, pageSize);
+            page.forEach(ConsoleView::printBillSummaryRow);
+            if (page.size() < pageSize) {
+                break;
+            }
+            System.out.print("Show more? (y/n): ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                break;
+            }
+            before = page.get(page.size() - 1).billNo();
+        }
+    }
+
+    private static void verifyBillingTotals(BillSummaryTable billSummaryTable, PatientBalanceLedger balanceLedger,
+                                            Scanner scanner) throws SQLException {
+        System.out.println("\n-- Verify Bill Totals --");
+        List<BillSummaryTable.Mismatch> mismatches = billSummaryTable.maintained() ? billSummaryTable.verify(20) : null;
+        if (mismatches == null) {
+            System.out.println("BillTotals is not maintained (migration " + SchemaMigrations.BILL_TOTALS
+                    + " not applied); bill totals are summed from BillItem on every read.");
+        } else if (mismatches.isEmpty()) {
+            System.out.println("BillTotals matches BillItem for every bill.");
+        } else {
+            mismatches.forEach(System.out::println);
+            System.out.print("Rebuild BillTotals from BillItem now? (y/n): ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                System.out.println("Rebuilt " + billSummaryTable.rebuild() + " bill summary row(s).");
+            }
+        }
+
+        System.out.println("\n-- Verify Patient Balances --");
+        List<PatientBalanceLedger.Mismatch> balanceMismatches = balanceLedger.maintained() ? balanceLedger.verify(20) : null;
+        if (balanceMismatches == null) {
+            System.out.println("PatientBalance is not maintained (migration " + SchemaMigrations.PATIENT_BALANCE
+                    + " not applied); balances are summed from BillItem on every read.");
+        } else if (balanceMismatches.isEmpty()) {
+            System.out.println("PatientBalance matches BillItem for every patient.");
+        } else {
+            balanceMismatches.forEach(System.out::println);
+            System.out.print("Rebuild PatientBalance from BillItem now? (y/n): ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                System.out.println("Rebuilt " + balanceLedger.rebuild() + " patient balance row(s).");
+            }
+        }
+    }
+
+    private static void viewPatientBalance(PatientBalanceLedger balanceLedger, Scanner scanner) throws SQLException {
+        System.out.println("\n-- Patient Balances (ledger) --");
+        System.out.print("Patient ID(s), comma-separated: ");
+        String[] parts = scanner.nextLine().split(",");
+        int[] patientIds = new int[parts.length];
+        int count = 0;
+        for (String part : parts) {
+            try {
+                patientIds[count] = Integer.parseInt(part.trim());
+                count++;
+            } catch (NumberFormatException ex) {
+                System.out.println("Skipping invalid ID: " + part.trim());
             }
         }
+        if (count == 0) {
+            return;
+        }
+        patientIds = Arrays.copyOf(patientIds, count);
+        Map<Integer, BigDecimal> balances = balanceLedger.balancesOf(patientIds);
+        for (int patientId : patientIds) {
+            System.out.printf("Patient %d outstanding balance: %.2f%n", patientId, balances.get(patientId));
+        }
     }
 
     private static int promptInt(Scanner scanner, String label) {
@@ -550,6 +755,21 @@ public class Main {
         }
     }
 
+    private static LocalDate promptOptionalDate(Scanner scanner, String label) {
+        while (true) {
+            System.out.print(label + ": ");
+            String input = scanner.nextLine().trim();
+            if (input.isEmpty()) {
+                return null;
+            }
+            try {
+                return LocalDate.parse(input);
+            } catch (DateTimeParseException ex) {
+                System.out.println("Use format yyyy-MM-dd (e.g., 2024-05-31) or leave blank.");
+            }
+        }
+    }
+
     private static Integer promptOptionalInt(Scanner scanner, String label) {
         while (true) {
             System.out.print(label + ": ");
@@ -565,8 +785,28 @@ public class Main {
         }
     }
 
+    private static BigDecimal promptOptionalAmount(Scanner scanner, String label) {
+        while (true) {
+            System.out.print(label + ": ");
+            String input = scanner.nextLine().trim();
+            if (input.isEmpty()) {
+                return null;
+            }
+            try {
+                return new BigDecimal(input);
+            } catch (NumberFormatException ex) {
+                System.out.println("Enter an amount such as 125.50.");
+            }
+        }
+    }
+
+    private static String capitalize(String value) {
+        return value.substring(0, 1).toUpperCase() + value.substring(1).toLowerCase();
+    }
+
     private static void logError(String action, SQLException ex) {
-        System.out.println("Failed to " + action + ": " + ex.getMessage());
+        System.out.println("Failed to " + action + ": " + ex.getMessage()
+                + " [SQLState " + ex.getSQLState() + ", error " + ex.getErrorCode() + "]");
     }
 
     // ========== ADDITIONAL SELECT QUERIES IN MAIN.JAVA ==========
@@ -575,9 +815,10 @@ public class Main {
      * SELECT query example 1: View all persons from Person table
      * Demonstrates simple SELECT with PreparedStatement
      */
-    private static void viewAllPersons(Connection connection) throws SQLException {
+    private static void viewAllPersons() throws SQLException {
         String sql = "SELECT person_id, first_name, last_name, date_of_birth FROM Person ORDER BY person_id";
-        try (PreparedStatement ps = connection.prepareStatement(sql);
+        try (Connection connection = DB.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
             System.out.println("\n-- All Persons (SELECT in Main.java) --");
             System.out.println("ID | Name | Date of Birth");
@@ -596,7 +837,7 @@ public class Main {
      * SELECT query example 2: View patient details with complex JOIN
      * Demonstrates PreparedStatement with WHERE clause and parameter binding
      */
-    private static void viewPatientDetailsWithJoin(Connection connection, Scanner scanner) throws SQLException {
+    private static void viewPatientDetailsWithJoin(Scanner scanner) throws SQLException {
         System.out.print("Enter Patient ID: ");
         int patientId = Integer.parseInt(scanner.nextLine().trim());
 
@@ -609,7 +850,8 @@ public class Main {
                      "WHERE p.person_id = ? " +
                      "GROUP BY p.person_id, p.first_name, p.last_name, p.date_of_birth, pt.insurance_id, pt.notes";
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = DB.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, patientId);
             try (ResultSet rs = ps.executeQuery()) {
                 System.out.println("\n-- Patient Details with JOIN (SELECT in Main.java) --");
@@ -629,23 +871,25 @@ public class Main {
 
     /**
      * SELECT query example 3: View appointments filtered by status
-     * Demonstrates PreparedStatement with JOIN and WHERE clause
+     * Demonstrates PreparedStatement with JOIN and WHERE clause; the status name comes from the reference-data cache
      */
-    private static void viewAppointmentsByStatus(Connection connection, Scanner scanner) throws SQLException {
+    private static void viewAppointmentsByStatus(ReferenceData referenceData, Scanner scanner) throws SQLException {
         System.out.println("Status options: 1=Scheduled, 2=Completed, 3=Cancelled");
         System.out.print("Enter Status ID: ");
         int statusId = Integer.parseInt(scanner.nextLine().trim());
 
+        String status = referenceData.statusName(statusId);
+
         String sql = "SELECT a.appointment_id, a.patient_id, a.doctor_id, a.scheduled_at, a.reason, " +
-                     "ast.status, p.first_name AS patient_name, p.last_name AS patient_lastname " +
+                     "p.first_name AS patient_name, p.last_name AS patient_lastname " +
                      "FROM Appointment a " +
-                     "JOIN AppointmentStatus ast ON a.status_id = ast.status_id " +
                      "JOIN Patient pt ON a.patient_id = pt.patient_id " +
                      "JOIN Person p ON pt.patient_id = p.person_id " +
                      "WHERE a.status_id = ? " +
                      "ORDER BY a.scheduled_at";
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = DB.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, statusId);
             try (ResultSet rs = ps.executeQuery()) {
                 System.out.println("\n-- Appointments by Status (SELECT in Main.java) --");
@@ -661,7 +905,7 @@ public class Main {
                             rs.getInt("patient_id"),
                             rs.getInt("doctor_id"),
                             rs.getTimestamp("scheduled_at"),
-                            rs.getString("status"),
+                            status,
                             rs.getString("reason"));
                 }
                 if (!found) {
@@ -671,247 +915,16 @@ public class Main {
         }
     }
 
-    private static void ensureCoreTables(Connection connection) throws SQLException {
-        String[][] required = {
-                {"person", "CREATE TABLE Person (" +
-                        "person_id INT PRIMARY KEY AUTO_INCREMENT," +
-                        "first_name VARCHAR(50) NOT NULL," +
-                        "last_name VARCHAR(50) NOT NULL," +
-                        "date_of_birth DATETIME NOT NULL)"},
-                {"staffrole", "CREATE TABLE StaffRole (" +
-                        "staff_role_id INT PRIMARY KEY AUTO_INCREMENT," +
-                        "name VARCHAR(50) NOT NULL UNIQUE)"},
-                {"specialty", "CREATE TABLE Specialty (" +
-                        "specialty_id INT PRIMARY KEY AUTO_INCREMENT," +
-                        "name VARCHAR(50) NOT NULL UNIQUE," +
-                        "base_visit_fee DECIMAL(10,2) NOT NULL)"},
-                {"department", "CREATE TABLE Department (" +
-                        "department_id INT PRIMARY KEY AUTO_INCREMENT," +
-                        "name VARCHAR(100) NOT NULL," +
-                        "building_number VARCHAR(10)," +
-                        "floor INT," +
-                        "capacity INT)"},
-                {"patient", "CREATE TABLE Patient (" +
-                        "patient_id INT PRIMARY KEY," +
-                        "insurance_id VARCHAR(50)," +
-                        "notes TEXT," +
-                        "FOREIGN KEY (patient_id) REFERENCES Person(person_id) ON DELETE CASCADE)"},
-                {"staff", "CREATE TABLE Staff (" +
-                        "staff_id INT PRIMARY KEY," +
-                        "staff_role_id INT NOT NULL," +
-                        "department_id INT NOT NULL," +
-                        "hire_date DATE NOT NULL," +
-                        "FOREIGN KEY (staff_id) REFERENCES Person(person_id) ON DELETE CASCADE," +
-                        "FOREIGN KEY (staff_role_id) REFERENCES StaffRole(staff_role_id)," +
-                        "FOREIGN KEY (department_id) REFERENCES Department(department_id))"},
-                {"doctor", "CREATE TABLE Doctor (" +
-                        "staff_id INT PRIMARY KEY," +
-                        "specialty_id INT NOT NULL," +
-                        "license_no VARCHAR(50) UNIQUE," +
-                        "FOREIGN KEY (staff_id) REFERENCES Staff(staff_id) ON DELETE CASCADE," +
-                        "FOREIGN KEY (specialty_id) REFERENCES Specialty(specialty_id))"},
-                {"appointmentstatus", "CREATE TABLE AppointmentStatus (" +
-                        "status_id INT PRIMARY KEY AUTO_INCREMENT," +
-                        "status VARCHAR(30) NOT NULL UNIQUE)"},
-                {"appointment", "CREATE TABLE Appointment (" +
-                        "appointment_id INT PRIMARY KEY AUTO_INCREMENT," +
-                        "patient_id INT NOT NULL," +
-                        "doctor_id INT NOT NULL," +
-                        "scheduled_at DATETIME NOT NULL," +
-                        "reason VARCHAR(255)," +
-                        "status_id INT NOT NULL," +
-                        "FOREIGN KEY (patient_id) REFERENCES Patient(patient_id)," +
-                        "FOREIGN KEY (doctor_id) REFERENCES Doctor(staff_id)," +
-                        "FOREIGN KEY (status_id) REFERENCES AppointmentStatus(status_id))"},
-                {"bill", "CREATE TABLE Bill (" +
-                        "bill_no INT PRIMARY KEY AUTO_INCREMENT," +
-                        "patient_id INT NOT NULL," +
-                        "appointment_id INT," +
-                        "created_at DATETIME DEFAULT CURRENT_TIMESTAMP," +
-                        "FOREIGN KEY (patient_id) REFERENCES Patient(patient_id)," +
-                        "FOREIGN KEY (appointment_id) REFERENCES Appointment(appointment_id))"}
-        };
-
-        DatabaseMetaData meta = connection.getMetaData();
-        for (String[] entry : required) {
-            String table = entry[0];
-            try (ResultSet rs = meta.getTables(null, null, table, null)) {
-                if (!rs.next()) {
-                    try (Statement stmt = connection.createStatement()) {
-                        stmt.executeUpdate(entry[1]);
-                    }
-                }
-            }
-        }
-    }
-
-    private static void createBillSummaryArtifacts(Connection connection) throws SQLException {
-        try (Statement stmt = connection.createStatement()) {
-            stmt.executeUpdate("CREATE VIEW IF NOT EXISTS BillSummary AS " +
-                    "SELECT bill_no, patient_id, '' AS first_name, '' AS last_name, " +
-                    "appointment_id, created_at, 0 AS total_amount FROM Bill");
-        } catch (SQLException ignored) { }
-
-        try (Statement stmt = connection.createStatement()) {
-            stmt.executeUpdate("CREATE FUNCTION IF NOT EXISTS GetPatientBalance(p_patient_id INT) RETURNS DECIMAL(10,2) DETERMINISTIC RETURN 0");
-        } catch (SQLException ignored) { }
-    }
-
-    private static void ensureSeedData(Connection connection) throws SQLException {
-        ensureAppointmentStatusesSeed(connection);
-        ensureDemoPatient(connection);
-        ensureDemoDoctor(connection);
-    }
-
-    private static void ensureAppointmentStatusesSeed(Connection connection) throws SQLException {
-        String[] statuses = {"Scheduled", "Completed", "Cancelled"};
-        for (String status : statuses) {
-            if (!valueExists(connection, "SELECT 1 FROM AppointmentStatus WHERE status = ?", status)) {
-                try (PreparedStatement ps = connection.prepareStatement("INSERT INTO AppointmentStatus(status) VALUES (?)")) {
-                    ps.setString(1, status);
-                    ps.executeUpdate();
-                }
-            }
-        }
-    }
-
-    private static void ensureDemoPatient(Connection connection) throws SQLException {
-        final String insurance = "DEMO-INS-001";
-        if (valueExists(connection, "SELECT 1 FROM Patient WHERE insurance_id = ?", insurance)) {
-            return;
-        }
-        int personId = insertPerson(connection, "Demo", "Patient", LocalDate.of(1995, 1, 1));
-        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO Patient (patient_id, insurance_id, notes) VALUES (?, ?, ?)")) {
-            ps.setInt(1, personId);
-            ps.setString(2, insurance);
-            ps.setString(3, "Auto-generated demo patient");
-            ps.executeUpdate();
-        }
-    }
-
-    private static void ensureDemoDoctor(Connection connection) throws SQLException {
-        final String license = "DEMO-LIC-001";
-        if (valueExists(connection, "SELECT 1 FROM Doctor WHERE license_no = ?", license)) {
-            return;
-        }
-        int staffRoleId = ensureStaffRole(connection, "Doctor");
-        int departmentId = ensureDepartment(connection, "General Medicine", "A", 1, 20);
-        int specialtyId = ensureSpecialty(connection, "General Medicine", new BigDecimal("150.00"));
-        int personId = insertPerson(connection, "Demo", "Doctor", LocalDate.of(1980, 6, 15));
-
-        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO Staff (staff_id, staff_role_id, department_id, hire_date) VALUES (?, ?, ?, ?)")) {
-            ps.setInt(1, personId);
-            ps.setInt(2, staffRoleId);
-            ps.setInt(3, departmentId);
-            ps.setDate(4, Date.valueOf(LocalDate.now().minusYears(5)));
-            ps.executeUpdate();
-        }
-
-        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO Doctor (staff_id, specialty_id, license_no) VALUES (?, ?, ?)")) {
-            ps.setInt(1, personId);
-            ps.setInt(2, specialtyId);
-            ps.setString(3, license);
-            ps.executeUpdate();
-        }
-    }
-
-    private static int ensureStaffRole(Connection connection, String name) throws SQLException {
-        String select = "SELECT staff_role_id FROM StaffRole WHERE name = ?";
-        try (PreparedStatement ps = connection.prepareStatement(select)) {
-            ps.setString(1, name);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1);
-                }
-            }
-        }
-        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO StaffRole(name) VALUES (?)", Statement.RETURN_GENERATED_KEYS)) {
-            ps.setString(1, name);
-            ps.executeUpdate();
-            try (ResultSet keys = ps.getGeneratedKeys()) {
-                if (keys.next()) {
-                    return keys.getInt(1);
-                }
-            }
-        }
-        throw new SQLException("Could not ensure staff role " + name);
-    }
-
-    private static int ensureDepartment(Connection connection, String name, String building, int floor, int capacity) throws SQLException {
-        String select = "SELECT department_id FROM Department WHERE name = ?";
-        try (PreparedStatement ps = connection.prepareStatement(select)) {
-            ps.setString(1, name);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1);
-                }
-            }
-        }
-        try (PreparedStatement ps = connection.prepareStatement(
-                "INSERT INTO Department(name, building_number, floor, capacity) VALUES (?, ?, ?, ?)",
-                Statement.RETURN_GENERATED_KEYS)) {
-            ps.setString(1, name);
-            ps.setString(2, building);
-            ps.setInt(3, floor);
-            ps.setInt(4, capacity);
-            ps.executeUpdate();
-            try (ResultSet keys = ps.getGeneratedKeys()) {
-                if (keys.next()) {
-                    return keys.getInt(1);
-                }
-            }
-        }
-        throw new SQLException("Could not ensure department " + name);
-    }
-
-    private static int ensureSpecialty(Connection connection, String name, BigDecimal baseVisitFee) throws SQLException {
-        String select = "SELECT specialty_id FROM Specialty WHERE name = ?";
-        try (PreparedStatement ps = connection.prepareStatement(select)) {
-            ps.setString(1, name);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt(1);
-                }
-            }
-        }
-        try (PreparedStatement ps = connection.prepareStatement(
-                "INSERT INTO Specialty(name, base_visit_fee) VALUES (?, ?)",
-                Statement.RETURN_GENERATED_KEYS)) {
-            ps.setString(1, name);
-            ps.setBigDecimal(2, baseVisitFee);
-            ps.executeUpdate();
-            try (ResultSet keys = ps.getGeneratedKeys()) {
-                if (keys.next()) {
-                    return keys.getInt(1);
-                }
-            }
-        }
-        throw new SQLException("Could not ensure specialty " + name);
-    }
-
-    private static int insertPerson(Connection connection, String firstName, String lastName, LocalDate dob) throws SQLException {
-        String sql = "INSERT INTO Person (first_name, last_name, date_of_birth) VALUES (?, ?, ?)";
-        try (PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ps.setString(1, firstName);
-            ps.setString(2, lastName);
-            ps.setTimestamp(3, Timestamp.valueOf(dob.atStartOfDay()));
-            ps.executeUpdate();
-            try (ResultSet keys = ps.getGeneratedKeys()) {
-                if (keys.next()) {
-                    return keys.getInt(1);
-                }
-            }
-        }
-        throw new SQLException("Could not insert person record");
-    }
-
-    private static boolean valueExists(Connection connection, String sql, String value) throws SQLException {
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, value);
-            try (ResultSet rs = ps.executeQuery()) {
-                return rs.next();
-            }
-        }
+    // Indexes appointments from schedule.warmDaysBack days ago onwards; bookings earlier than that are
+    // only checked in the database
+    static DoctorSchedule warmDoctorSchedule(ConnectionPool pool, ReferenceData referenceData) throws SQLException {
+        DoctorSchedule schedule = new DoctorSchedule(pool, referenceData, (int) DB.longProperty("schedule.slotMinutes", 30),
+                LocalTime.parse(DB.properties().getProperty("schedule.dayStart", "08:00")),
+                LocalTime.parse(DB.properties().getProperty("schedule.dayEnd", "18:00")));
+        long start = System.nanoTime();
+        int indexed = schedule.warm(LocalDate.now().minusDays(DB.longProperty("schedule.warmDaysBack", 1)).atStartOfDay());
+        System.out.printf("Doctor schedule: %d appointment(s) indexed in %.1f ms%n", indexed, (System.nanoTime() - start) / 1e6);
+        return schedule;
     }
 
     private static boolean assertEntityExists(Connection connection, String sql, int id, String label) throws SQLException {
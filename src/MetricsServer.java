@@ -0,0 +1,266 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// PROMETHEUS /metrics ENDPOINT ON 127.0.0.1 (JDK HttpServer, TEXT EXPOSITION FORMAT 0.0.4)
+// A scrape asks every registered collector for current values. Collectors only read counters the components
+// already keep (LongAdders and LatencyHistograms), so the endpoint adds nothing to the request paths and costs
+// nothing between scrapes. Scrapes are served one at a time on the server's own dispatcher thread.
+public class MetricsServer implements AutoCloseable {
+
+    /** Writes one component's samples into a scrape. */
+    @FunctionalInterface
+    public interface Collector {
+        void collect(Exposition out);
+    }
+
+    /**
+     * One scrape being built. Samples are grouped by metric family in first-seen order, so collectors may
+     * write the same family (e.g. two caches) without coordinating.
+     */
+    public static final class Exposition {
+        private final Map<String, StringBuilder> families = new LinkedHashMap<>();
+
+        public Exposition counter(String name, String help, double value, String... labels) {
+            sample(family(name, "counter", help), name, value, labels);
+            return this;
+        }
+
+        public Exposition gauge(String name, String help, double value, String... labels) {
+            sample(family(name, "gauge", help), name, value, labels);
+            return this;
+        }
+
+        /**
+         * A summary: one sample per quantile, plus _sum and _count.
+         *
+         * @param quantiles pairs of (quantile, value), e.g. {0.5, p50, 0.99, p99}; may be empty
+         */
+        public Exposition summary(String name, String help, double[] quantiles, double sum, long count, String... labels) {
+            StringBuilder out = family(name, "summary", help);
+            for (int i = 0; i + 1 < quantiles.length; i += 2) {
+                String[] withQuantile = new String[labels.length + 2];
+                System.arraycopy(labels, 0, withQuantile, 0, labels.length);
+                withQuantile[labels.length] = "quantile";
+                withQuantile[labels.length + 1] = format(quantiles[i]);
+                sample(out, name, quantiles[i + 1], withQuantile);
+            }
+            sample(out, name + "_sum", sum, labels);
+            sample(out, name + "_count", count, labels);
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(4096);
+            for (StringBuilder family : families.values()) {
+                text.append(family);
+            }
+            return text.toString();
+        }
+
+        private StringBuilder family(String name, String type, String help) {
+            return families.computeIfAbsent(name, n -> new StringBuilder(256)
+                    .append("# HELP ").append(n).append(' ').append(help).append('\n')
+                    .append("# TYPE ").append(n).append(' ').append(type).append('\n'));
+        }
+
+        // labels are name/value pairs
+        private static void sample(StringBuilder out, String name, double value, String... labels) {
+            out.append(name);
+            if (labels.length > 0) {
+                out.append('{');
+                for (int i = 0; i + 1 < labels.length; i += 2) {
+                    if (i > 0) {
+                        out.append(',');
+                    }
+                    out.append(labels[i]).append("=\"");
+                    escape(out, labels[i + 1]);
+                    out.append('"');
+                }
+                out.append('}');
+            }
+            out.append(' ').append(format(value)).append('\n');
+        }
+
+        private static void escape(StringBuilder out, String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '\\' -> out.append("\\\\");
+                    case '"' -> out.append("\\\"");
+                    case '\n' -> out.append("\\n");
+                    default -> out.append(c);
+                }
+            }
+        }
+
+        private static String format(double value) {
+            if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                return Long.toString((long) value);
+            }
+            return Double.toString(value);
+        }
+    }
+
+    private final HttpServer server;
+    private final List<Collector> collectors = new CopyOnWriteArrayList<>();
+    private boolean started;
+
+    /** Binds 127.0.0.1:port (0 picks a free port); call {@link #start} to serve /metrics. */
+    public MetricsServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    }
+
+    /** Starts serving /metrics; collectors may still be registered afterwards. */
+    public synchronized MetricsServer start() {
+        if (!started) {
+            started = true;
+            server.createContext("/metrics", this::handle);
+            server.start();
+        }
+        return this;
+    }
+
+    public MetricsServer register(Collector collector) {
+        collectors.add(collector);
+        return this;
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    // 1. CONNECTION POOL: SATURATION, BORROW WAIT, TRANSACTIONS, STATEMENT CACHE
+    public MetricsServer registerPool(ConnectionPool pool) {
+        return register(out -> {
+            ConnectionPool.Stats s = pool.stats();
+            out.gauge("hospital_pool_connections", "Pooled connections by state", s.active(), "state", "active")
+                    .gauge("hospital_pool_connections", "Pooled connections by state", s.idle(), "state", "idle")
+                    .gauge("hospital_pool_max_connections", "pool.maxSize", s.maxSize())
+                    .gauge("hospital_pool_waiting_threads", "Threads blocked waiting for a connection", s.waiting())
+                    .summary("hospital_pool_borrow_wait_seconds", "Time to borrow a connection",
+                            new double[] {0.99, s.p99WaitMillis() / 1e3}, s.avgWaitMillis() * s.borrows() / 1e3, s.borrows())
+                    .counter("hospital_pool_leaks_total", "Connections held past pool.leakThresholdMs", s.leaksDetected())
+                    .counter("hospital_transactions_total", "Transactions ended, by outcome", s.commits(), "outcome", "commit")
+                    .counter("hospital_transactions_total", "Transactions ended, by outcome", s.rollbacks(), "outcome", "rollback");
+            cacheRequests(out, "statement", s.statementHits(), s.statementMisses());
+            out.counter("hospital_cache_evictions_total", "Cache entries dropped, by reason", s.statementEvictions(),
+                    "cache", "statement", "reason", "size");
+        });
+    }
+
+    // 2. PER-STATEMENT LATENCY, ROWS, ERRORS
+    public MetricsServer registerQueries(QueryMetrics metrics) {
+        return register(out -> {
+            for (QueryMetrics.StatementStats s : metrics.snapshot()) {
+                out.summary("hospital_query_duration_seconds", "Statement execution time by normalized SQL",
+                        new double[] {0.5, s.p50Millis() / 1e3, 0.95, s.p95Millis() / 1e3, 0.99, s.p99Millis() / 1e3},
+                        s.totalMillis() / 1e3, s.executions(), "sql", s.sql());
+                out.counter("hospital_query_rows_total", "Rows returned or changed by normalized SQL", s.rows(), "sql", s.sql());
+                out.counter("hospital_query_errors_total", "Failed executions by normalized SQL", s.errors(), "sql", s.sql());
+            }
+            out.counter("hospital_query_slow_total", "Executions at or above metrics.slowQueryMs", metrics.slowQueryCount());
+        });
+    }
+
+    // 3. BOOKING TRANSACTIONS: OUTCOMES, DEADLOCK / LOCK-WAIT RETRIES, COMMIT TIME
+    public MetricsServer registerBookings(BookingService bookings) {
+        return register(out -> {
+            BookingService.Stats s = bookings.stats();
+            out.counter("hospital_booking_transactions_total", "Booking transactions, by outcome", s.committed(),
+                            "outcome", "committed")
+                    .counter("hospital_booking_transactions_total", "Booking transactions, by outcome", s.failed(),
+                            "outcome", "failed")
+                    .counter("hospital_booking_retries_total", "Booking transactions retried after a deadlock or lock-wait timeout",
+                            s.retries())
+                    .summary("hospital_booking_commit_seconds", "Time spent in COMMIT of booking transactions",
+                            new double[0], s.avgCommitMillis() * s.committed() / 1e3, s.committed())
+                    .gauge("hospital_booking_commit_max_seconds", "Slowest booking COMMIT", s.maxCommitMillis() / 1e3);
+        });
+    }
+
+    // 4. ROW CACHE HIT RATE AND SIZE
+    public MetricsServer registerCache(EntityCache<?> cache) {
+        return register(out -> {
+            EntityCache.Stats s = cache.stats();
+            cacheRequests(out, s.name(), s.hits(), s.misses());
+            out.counter("hospital_cache_evictions_total", "Cache entries dropped, by reason", s.evictions(),
+                            "cache", s.name(), "reason", "size")
+                    .counter("hospital_cache_evictions_total", "Cache entries dropped, by reason", s.expirations(),
+                            "cache", s.name(), "reason", "ttl")
+                    .gauge("hospital_cache_entries", "Entries held by the cache", s.size(), "cache", s.name());
+        });
+    }
+
+    // 5. DOCTOR SCHEDULE INDEX SIZE
+    public MetricsServer registerSchedule(DoctorSchedule schedule) {
+        return register(out -> out.gauge("hospital_schedule_indexed_appointments",
+                "Appointments held in the double-booking index", schedule.size()));
+    }
+
+    // 6. CHANGE EVENTS RELAYED FROM THE OUTBOX
+    public MetricsServer registerOutbox(OutboxRelay relay) {
+        return register(out -> {
+            OutboxRelay.Stats s = relay.stats();
+            out.counter("hospital_outbox_events_delivered_total", "Change events delivered to every sink", s.delivered())
+                    .counter("hospital_outbox_failures_total", "Relay attempts that failed and were retried", s.failures())
+                    .gauge("hospital_outbox_lag_seconds", "Time the newest delivered event waited in the outbox",
+                            s.lastLagMillis() / 1e3);
+        });
+    }
+
+    /** The text a scrape would return now. */
+    public String scrape() {
+        Exposition out = new Exposition();
+        for (Collector collector : collectors) {
+            collector.collect(out);
+        }
+        return out.toString();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private static void cacheRequests(Exposition out, String cache, long hits, long misses) {
+        out.counter("hospital_cache_requests_total", "Cache lookups, by result", hits, "cache", cache, "result", "hit")
+                .counter("hospital_cache_requests_total", "Cache lookups, by result", misses, "cache", cache, "result", "miss");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body;
+            try {
+                body = scrape().getBytes(StandardCharsets.UTF_8);
+            } catch (RuntimeException ex) {
+                byte[] error = ("scrape failed: " + ex).getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(500, error.length);
+                exchange.getResponseBody().write(error);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream response = exchange.getResponseBody()) {
+                response.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+// DELIVERS COMMITTED ChangeOutbox EVENTS TO SINKS, THEN REMOVES THEM FROM THE OUTBOX
+// One background thread reads the oldest events (primary-key order, outbox.batchSize at a time), hands the batch
+// to every sink and deletes exactly the delivered event_ids. It wakes when a DAO commits events and otherwise
+// polls every outbox.pollMillis; a full batch is followed by the next one immediately. Delivery is at least once:
+// a batch whose delivery or delete fails is sent again, so consumers should skip event_ids they have seen.
+// Run one relay per database (only the process with outbox.file set starts one).
+public class OutboxRelay implements AutoCloseable {
+
+    /** A destination for change events. deliver() returns only once the batch is durable at the destination. */
+    public interface Sink extends AutoCloseable {
+        String name();
+
+        void deliver(List<ChangeOutbox.Event> events) throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    /** Delivery counters; lag is how long the newest delivered event waited in the outbox. */
+    public record Stats(long delivered, long batches, long failures, double lastLagMillis, double maxLagMillis) {
+        @Override
+        public String toString() {
+            return String.format("Outbox relay: %d event(s) in %d batch(es), %d failed attempt(s), lag %.1f ms (max %.1f ms)",
+                    delivered, batches, failures, lastLagMillis, maxLagMillis);
+        }
+    }
+
+    private static final String SELECT_BATCH = "SELECT event_id, entity, entity_id, operation, payload, created_at "
+            + "FROM ChangeOutbox ORDER BY event_id LIMIT ?";
+    // Backoff after a failed attempt, doubling up to the maximum
+    private static final long FIRST_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final ConnectionPool pool;
+    private final ChangeOutbox outbox;
+    private final int batchSize;
+    private final long pollMillis;
+    private final List<Sink> sinks = new CopyOnWriteArrayList<>();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile double lastLagMillis;
+    private volatile double maxLagMillis;
+    private volatile boolean running;
+    private Thread thread;
+
+    public OutboxRelay(ConnectionPool pool, ChangeOutbox outbox, int batchSize, Duration pollInterval) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.pool = pool;
+        this.outbox = outbox;
+        this.batchSize = batchSize;
+        this.pollMillis = Math.max(1, pollInterval.toMillis());
+    }
+
+    public OutboxRelay addSink(Sink sink) {
+        sinks.add(sink);
+        return this;
+    }
+
+    /** Starts the background thread. */
+    public synchronized OutboxRelay start() {
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this::run, "outbox-relay");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return this;
+    }
+
+    public Stats stats() {
+        return new Stats(delivered.sum(), batches.sum(), failures.sum(), lastLagMillis, maxLagMillis);
+    }
+
+    // 1. ONE BATCH: READ, DELIVER TO EVERY SINK, DELETE; RETURNS THE NUMBER OF EVENTS DELIVERED
+    public int relayOnce() throws SQLException, IOException {
+        List<ChangeOutbox.Event> events = new ArrayList<>(Math.min(batchSize, 1024));
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(SELECT_BATCH)) {
+            ps.setInt(1, batchSize);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    events.add(new ChangeOutbox.Event(rs.getLong(1), rs.getString(2), rs.getInt(3), rs.getString(4),
+                            rs.getString(5), rs.getTimestamp(6).toLocalDateTime()));
+                }
+            }
+        }
+        if (events.isEmpty()) {
+            return 0;
+        }
+        // No connection is held while the sinks write
+        for (Sink sink : sinks) {
+            sink.deliver(events);
+        }
+        delete(events);
+
+        double lag = Duration.between(events.get(events.size() - 1).createdAt(), LocalDateTime.now()).toNanos() / 1e6;
+        lastLagMillis = lag;
+        maxLagMillis = Math.max(maxLagMillis, lag);
+        delivered.add(events.size());
+        batches.increment();
+        return events.size();
+    }
+
+    /** Stops the thread (waiting up to 5 s for the batch in flight) and closes the sinks. */
+    @Override
+    public void close() {
+        Thread current;
+        synchronized (this) {
+            running = false;
+            current = thread;
+            thread = null;
+        }
+        if (current != null) {
+            current.interrupt();
+            try {
+                current.join(5_000);
+            } catch (InterruptedException ex) {
+                // Still close the sinks; the caller's interrupt stays visible to it
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Sink sink : sinks) {
+            try {
+                sink.close();
+            } catch (Exception ex) {
+                System.err.println("Could not close outbox sink " + sink.name() + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    private void run() {
+        long backoff = FIRST_BACKOFF_MILLIS;
+        while (running) {
+            try {
+                int count = relayOnce();
+                backoff = FIRST_BACKOFF_MILLIS;
+                if (count < batchSize) {
+                    outbox.awaitEvents(pollMillis);
+                }
+            } catch (SQLException | IOException | RuntimeException ex) {
+                failures.increment();
+                System.err.println("Outbox relay: delivery failed, retrying in " + backoff + " ms: " + ex.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    // Exactly the delivered ids: an event with a lower id that committed after the SELECT stays for the next batch
+    private void delete(List<ChangeOutbox.Event> events) throws SQLException {
+        StringBuilder sql = new StringBuilder("DELETE FROM ChangeOutbox WHERE event_id IN (");
+        for (int i = 0; i < events.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < events.size(); i++) {
+                ps.setLong(i + 1, events.get(i).eventId());
+            }
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Appends each event as one JSON line to a local file and forces it to disk before the batch counts as
+     * delivered: {"event_id":..,"entity":"Appointment","entity_id":..,"operation":"INSERT","created_at":"..","data":{..}}
+     */
+    public static final class FileSink implements Sink {
+        private final Path file;
+        private final FileChannel channel;
+
+        public FileSink(Path file) throws IOException {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+
+        @Override
+        public String name() {
+            return "file:" + file;
+        }
+
+        @Override
+        public synchronized void deliver(List<ChangeOutbox.Event> events) throws IOException {
+            StringBuilder lines = new StringBuilder(events.size() * 160);
+            for (ChangeOutbox.Event event : events) {
+                lines.append("{\"event_id\":").append(event.eventId())
+                        .append(",\"entity\":\"").append(event.entity())
+                        .append("\",\"entity_id\":").append(event.entityId())
+                        .append(",\"operation\":\"").append(event.operation())
+                        .append("\",\"created_at\":\"").append(event.createdAt())
+                        .append("\",\"data\":").append(event.payload())
+                        .append("}\n");
+            }
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(lines.toString());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,6 @@
+import java.time.LocalDateTime;
+
+// ONE PATIENT ROW (Person JOIN Patient)
+public record Patient(int patientId, String firstName, String lastName, LocalDateTime dateOfBirth,
+                      String insuranceId, String notes) {
+}
@@ -0,0 +1,234 @@
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// HANDLES THE PatientBalance LEDGER: ONE RUNNING BALANCE PER PATIENT
+// Triggers on BillItem and Bill adjust the patient's row in the same transaction as the bill item write,
+// so a balance lookup is a primary-key read instead of an aggregation over every bill the patient has.
+// Patients with no billed items have no row; they read as 0.00. Until the ledger and its triggers are in
+// place (migration 5 needs the TRIGGER privilege), balances are summed from Bill and BillItem instead.
+public class PatientBalanceLedger {
+
+    /** A patient whose ledger balance differs from the sum of their BillItem amounts. */
+    public record Mismatch(int patientId, BigDecimal expected, BigDecimal actual) {
+        @Override
+        public String toString() {
+            return String.format("Patient %d: ledger %s, BillItem total %.2f",
+                    patientId, actual == null ? "has no row" : String.format("%.2f", actual), expected);
+        }
+    }
+
+    static final String CREATE_TABLE = "CREATE TABLE PatientBalance ("
+            + "patient_id INT PRIMARY KEY,"
+            + "balance DECIMAL(12,2) NOT NULL DEFAULT 0,"
+            + "FOREIGN KEY (patient_id) REFERENCES Patient(patient_id) ON DELETE CASCADE)";
+
+    // Adds an amount to the patient who owns bill_no, creating the ledger row on first use
+    private static String credit(String billNo, String amount) {
+        return "INSERT INTO PatientBalance (patient_id, balance) SELECT patient_id, " + amount
+                + " FROM Bill WHERE bill_no = " + billNo
+                + " ON DUPLICATE KEY UPDATE balance = balance + " + amount;
+    }
+
+    private static String debit(String billNo, String amount) {
+        return "UPDATE PatientBalance SET balance = balance - " + amount
+                + " WHERE patient_id = (SELECT patient_id FROM Bill WHERE bill_no = " + billNo + ")";
+    }
+
+    // {name, statement}; must match the ledger section of create_and_populate.sql
+    static final String[][] TRIGGERS = {
+            {"trg_balance_item_insert",
+                    "CREATE TRIGGER trg_balance_item_insert AFTER INSERT ON BillItem FOR EACH ROW "
+                            + credit("NEW.bill_no", "NEW.amount")},
+            {"trg_balance_item_update",
+                    "CREATE TRIGGER trg_balance_item_update AFTER UPDATE ON BillItem FOR EACH ROW BEGIN "
+                            + debit("OLD.bill_no", "OLD.amount") + "; "
+                            + credit("NEW.bill_no", "NEW.amount") + "; "
+                            + "END"},
+            {"trg_balance_item_delete",
+                    "CREATE TRIGGER trg_balance_item_delete AFTER DELETE ON BillItem FOR EACH ROW "
+                            + debit("OLD.bill_no", "OLD.amount")},
+            // Deleting a bill cascades to its items without firing their triggers, so take the whole bill off here
+            {"trg_balance_bill_delete",
+                    "CREATE TRIGGER trg_balance_bill_delete BEFORE DELETE ON Bill FOR EACH ROW "
+                            + "UPDATE PatientBalance SET balance = balance - "
+                            + "(SELECT COALESCE(SUM(amount), 0) FROM BillItem WHERE bill_no = OLD.bill_no) "
+                            + "WHERE patient_id = OLD.patient_id"},
+            // A bill moved to another patient moves its total with it
+            {"trg_balance_bill_update",
+                    "CREATE TRIGGER trg_balance_bill_update AFTER UPDATE ON Bill FOR EACH ROW BEGIN "
+                            + "IF NEW.patient_id <> OLD.patient_id THEN "
+                            + "UPDATE PatientBalance SET balance = balance - "
+                            + "(SELECT COALESCE(SUM(amount), 0) FROM BillItem WHERE bill_no = NEW.bill_no) "
+                            + "WHERE patient_id = OLD.patient_id; "
+                            + "INSERT INTO PatientBalance (patient_id, balance) "
+                            + "SELECT NEW.patient_id, COALESCE(SUM(amount), 0) FROM BillItem WHERE bill_no = NEW.bill_no "
+                            + "ON DUPLICATE KEY UPDATE balance = balance + VALUES(balance); "
+                            + "END IF; "
+                            + "END"}
+    };
+
+    static final String CREATE_FUNCTION = "CREATE FUNCTION GetPatientBalance(p_patient_id INT) "
+            + "RETURNS DECIMAL(12,2) READS SQL DATA "
+            + "RETURN COALESCE((SELECT balance FROM PatientBalance WHERE patient_id = p_patient_id), 0)";
+
+    // What GetPatientBalance used to compute per call; used to rebuild and verify
+    private static final String AGGREGATE = "SELECT b.patient_id, SUM(bi.amount) AS total "
+            + "FROM Bill b JOIN BillItem bi ON bi.bill_no = b.bill_no GROUP BY b.patient_id";
+
+    // IN-list sizes used for batch lookups; a short last chunk is padded up to one of these so the
+    // pool's statement cache sees a handful of distinct SQL strings instead of one per list length
+    private static final int[] IN_LIST_SIZES = {1, 8, 64, 512};
+
+    private final ConnectionPool pool;
+    private final boolean maintained;
+
+    /**
+     * @param maintained whether migration 5 is applied (SchemaMigrations.Result.isApplied); if not, balances
+     *                   are summed from Bill and BillItem instead of read from PatientBalance
+     */
+    public PatientBalanceLedger(ConnectionPool pool, boolean maintained) {
+        this.pool = pool;
+        this.maintained = maintained;
+    }
+
+    /**
+     * Creates PatientBalance, its triggers and the ledger-backed GetPatientBalance where missing. If the
+     * table or any trigger had to be created, changes may have been missed, so the ledger is rebuilt
+     * (before the function, whose failure must not leave an empty ledger behind). If a trigger or the
+     * rebuild fails, whatever this call created is dropped again and the readers keep aggregating.
+     */
+    public static void ensureSchema(Connection connection) throws SQLException {
+        List<String> created = new ArrayList<>(); // DROP statements, newest first
+        try (Statement stmt = connection.createStatement()) {
+            try {
+                if (!Schema.tableExists(connection, "PatientBalance")) {
+                    stmt.executeUpdate(CREATE_TABLE);
+                    created.add(0, "DROP TABLE PatientBalance");
+                }
+                for (String[] trigger : TRIGGERS) {
+                    if (!Schema.triggerExists(connection, trigger[0])) {
+                        stmt.executeUpdate(trigger[1]);
+                        created.add(0, "DROP TRIGGER " + trigger[0]);
+                    }
+                }
+                if (!created.isEmpty()) {
+                    rebuild(connection);
+                }
+            } catch (SQLException ex) {
+                Schema.undo(connection, created, ex);
+                throw ex;
+            }
+            if (!Schema.functionExists(connection, "GetPatientBalance", "PatientBalance")) {
+                stmt.executeUpdate("DROP FUNCTION IF EXISTS GetPatientBalance");
+                stmt.executeUpdate(CREATE_FUNCTION);
+            }
+        }
+    }
+
+    /** False while PatientBalance is not kept current; verify and rebuild then have nothing to work on. */
+    public boolean maintained() {
+        return maintained;
+    }
+
+    // 1. BALANCE OF ONE PATIENT
+    public BigDecimal balanceOf(int patientID) throws SQLException {
+        return balancesOf(new int[] {patientID}).get(patientID);
+    }
+
+    // 2. BALANCES OF MANY PATIENTS, A FEW HUNDRED PER QUERY; EVERY REQUESTED ID IS IN THE RESULT
+    public Map<Integer, BigDecimal> balancesOf(int[] patientIDs) throws SQLException {
+        Map<Integer, BigDecimal> balances = new HashMap<>(patientIDs.length * 2);
+        for (int id : patientIDs) {
+            balances.put(id, BigDecimal.ZERO.setScale(2));
+        }
+        int max = IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+        try (Connection connection = pool.getConnection()) {
+            for (int from = 0; from < patientIDs.length; from += max) {
+                int count = Math.min(max, patientIDs.length - from);
+                int size = inListSize(count);
+                String in = "IN (?" + ", ?".repeat(size - 1) + ")";
+                String sql = maintained ? "SELECT patient_id, balance FROM PatientBalance WHERE patient_id " + in
+                        : "SELECT b.patient_id, SUM(bi.amount) FROM Bill b JOIN BillItem bi ON bi.bill_no = b.bill_no "
+                        + "WHERE b.patient_id " + in + " GROUP BY b.patient_id";
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    for (int i = 0; i < size; i++) {
+                        // Pad with the chunk's last id; duplicates in an IN list are harmless
+                        ps.setInt(i + 1, patientIDs[from + Math.min(i, count - 1)]);
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            balances.put(rs.getInt(1), rs.getBigDecimal(2));
+                        }
+                    }
+                }
+            }
+        }
+        return balances;
+    }
+
+    // 3. COMPARE THE LEDGER WITH A FULL AGGREGATION OF BillItem (AT MOST maxReported MISMATCHES)
+    public List<Mismatch> verify(int maxReported) throws SQLException {
+        // Both directions: patients with billed items, and ledger rows (which may be left over at non-zero)
+        String sql = "SELECT a.patient_id, a.total, l.balance FROM (" + AGGREGATE + ") a "
+                + "LEFT JOIN PatientBalance l ON l.patient_id = a.patient_id "
+                + "WHERE l.balance IS NULL OR l.balance <> a.total "
+                + "UNION ALL "
+                + "SELECT l.patient_id, 0, l.balance FROM PatientBalance l "
+                + "WHERE l.balance <> 0 AND NOT EXISTS (SELECT 1 FROM Bill b JOIN BillItem bi ON bi.bill_no = b.bill_no "
+                + "WHERE b.patient_id = l.patient_id) "
+                + "ORDER BY 1 LIMIT ?";
+
+        List<Mismatch> mismatches = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, maxReported);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    BigDecimal expected = rs.getBigDecimal(2);
+                    BigDecimal actual = rs.getBigDecimal(3);
+                    if (actual == null && expected.signum() == 0) {
+                        continue; // only zero-amount items: no row is the same as 0.00
+                    }
+                    mismatches.add(new Mismatch(rs.getInt(1), expected, actual));
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    // 4. RECOMPUTE THE WHOLE LEDGER IN ONE TRANSACTION, RETURNS THE ROW COUNT
+    public int rebuild() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            return rebuild(connection);
+        }
+    }
+
+    private static int rebuild(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM PatientBalance");
+            int rows = stmt.executeUpdate("INSERT INTO PatientBalance (patient_id, balance) " + AGGREGATE);
+            connection.commit();
+            return rows;
+        } catch (SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static int inListSize(int count) {
+        for (int size : IN_LIST_SIZES) {
+            if (count <= size) {
+                return size;
+            }
+        }
+        return IN_LIST_SIZES[IN_LIST_SIZES.length - 1];
+    }
+}
@@ -0,0 +1,8 @@
+import java.math.BigDecimal;
+import java.util.List;
+
+// ONE PATIENT SCREEN: DEMOGRAPHICS, APPOINTMENT COUNT, UPCOMING APPOINTMENTS, RECENT BILLS AND BALANCE
+// upcoming is soonest first, recentBills newest first
+public record PatientDashboard(Patient patient, int appointmentCount, List<Appointment> upcoming,
+                               List<BillSummary> recentBills, BigDecimal balance) {
+}
@@ -0,0 +1,128 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+// LOADS A PatientDashboard IN ONE ROUND TRIP
+// The screen used to take four: the patient, a COUNT join over Appointment, the bill list and
+// GetPatientBalance, each joining Person/Patient again. Here one UNION ALL returns tagged rows sharing one
+// column layout: a 'P' row (demographics, appointment count, ledger balance), then 'A' rows (upcoming
+// appointments) and 'B' rows (recent bills with their maintained totals). While BillTotals or PatientBalance
+// is not maintained, the same rows are aggregated from Bill and BillItem for this patient only.
+public class PatientDashboardQuery {
+
+    private static final String LEDGER_BALANCE = "(SELECT balance FROM PatientBalance WHERE patient_id = pt.patient_id)";
+    private static final String SUMMED_BALANCE = "(SELECT SUM(bi.amount) FROM Bill b "
+            + "JOIN BillItem bi ON bi.bill_no = b.bill_no WHERE b.patient_id = pt.patient_id)";
+    private static final String MAINTAINED_BILLS = "BillTotals t WHERE t.patient_id = ?";
+    private static final String SUMMED_BILLS = "(SELECT b.bill_no, b.appointment_id, b.created_at, "
+            + "COUNT(bi.order_no) AS item_count, COALESCE(SUM(bi.amount), 0) AS total_amount "
+            + "FROM Bill b LEFT JOIN BillItem bi ON bi.bill_no = b.bill_no WHERE b.patient_id = ? "
+            + "GROUP BY b.bill_no, b.appointment_id, b.created_at) t";
+
+    // kind | id | int1 | int2 | text1 | text2 | text3 | text4 | stamp | amount
+    //  P   | patient_id | appointment count | -         | first_name | last_name | insurance_id | notes | date_of_birth | balance
+    //  A   | appointment_id | doctor_id     | status_id | reason     | -         | -            | -     | scheduled_at  | -
+    //  B   | bill_no    | appointment_id    | item_count| -          | -         | -            | -     | created_at    | total_amount
+    private static String sql(String balance, String bills) {
+        return "SELECT 'P' AS kind, pt.patient_id AS id, "
+                + "(SELECT COUNT(*) FROM Appointment WHERE patient_id = pt.patient_id) AS int1, NULL AS int2, "
+                + "p.first_name AS text1, p.last_name AS text2, pt.insurance_id AS text3, pt.notes AS text4, "
+                + "p.date_of_birth AS stamp, "
+                + "COALESCE(" + balance + ", 0) AS amount "
+                + "FROM Patient pt JOIN Person p ON p.person_id = pt.patient_id WHERE pt.patient_id = ? "
+                + "UNION ALL "
+                + "SELECT * FROM (SELECT 'A' AS kind, a.appointment_id AS id, a.doctor_id AS int1, a.status_id AS int2, "
+                + "a.reason AS text1, NULL AS text2, NULL AS text3, NULL AS text4, a.scheduled_at AS stamp, NULL AS amount "
+                + "FROM Appointment a "
+                + "WHERE a.patient_id = ? AND a.scheduled_at >= ? "
+                + "AND a.status_id <> ? "
+                + "ORDER BY a.scheduled_at LIMIT ?) upcoming "
+                + "UNION ALL "
+                + "SELECT * FROM (SELECT 'B' AS kind, t.bill_no AS id, t.appointment_id AS int1, t.item_count AS int2, "
+                + "NULL AS text1, NULL AS text2, NULL AS text3, NULL AS text4, t.created_at AS stamp, t.total_amount AS amount "
+                + "FROM " + bills + " "
+                + "ORDER BY t.bill_no DESC LIMIT ?) recent";
+    }
+
+    private final ConnectionPool pool;
+    private final ReferenceData referenceData;
+    private final String sql;
+
+    /** The bill and balance readers tell whether BillTotals and PatientBalance can be read directly. */
+    public PatientDashboardQuery(ConnectionPool pool, ReferenceData referenceData, BillSummaryTable billSummaries,
+                                 PatientBalanceLedger balanceLedger) {
+        this.pool = pool;
+        this.referenceData = referenceData;
+        this.sql = sql(balanceLedger.maintained() ? LEDGER_BALANCE : SUMMED_BALANCE,
+                billSummaries.maintained() ? MAINTAINED_BILLS : SUMMED_BILLS);
+    }
+
+    /**
+     * @param upcomingLimit most appointments from now on to return
+     * @param billLimit     most bills to return, newest first
+     * @return empty if there is no such patient
+     */
+    public Optional<PatientDashboard> load(int patientId, int upcomingLimit, int billLimit) throws SQLException {
+        Patient patient = null;
+        int appointmentCount = 0;
+        BigDecimal balance = null;
+        List<Appointment> upcoming = new ArrayList<>(upcomingLimit);
+        List<BillSummary> bills = new ArrayList<>(billLimit);
+        List<Object[]> billRows = new ArrayList<>(billLimit);
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, patientId);
+            ps.setInt(2, patientId);
+            ps.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
+            ps.setInt(4, referenceData.cancelledStatusId());
+            ps.setInt(5, upcomingLimit);
+            ps.setInt(6, patientId);
+            ps.setInt(7, billLimit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    switch (rs.getString(1)) {
+                        case "P" -> {
+                            patient = new Patient(rs.getInt(2), rs.getString(5), rs.getString(6),
+                                    toLocalDateTime(rs.getTimestamp(9)), rs.getString(7), rs.getString(8));
+                            appointmentCount = rs.getInt(3);
+                            balance = rs.getBigDecimal(10);
+                        }
+                        case "A" -> {
+                            int statusId = rs.getInt(4);
+                            upcoming.add(new Appointment(rs.getInt(2), patientId, rs.getInt(3),
+                                    rs.getTimestamp(9).toLocalDateTime(), rs.getString(5), statusId,
+                                    referenceData.statusName(statusId)));
+                        }
+                        default -> billRows.add(new Object[] {rs.getInt(2), RowMappers.nullableInt(rs, 3),
+                                toLocalDateTime(rs.getTimestamp(9)), rs.getInt(4), rs.getBigDecimal(10)});
+                    }
+                }
+            }
+        }
+        if (patient == null) {
+            return Optional.empty();
+        }
+        // Bill rows carry no names; the patient row has them
+        for (Object[] row : billRows) {
+            bills.add(new BillSummary((Integer) row[0], patientId, patient.firstName(), patient.lastName(),
+                    (Integer) row[1], (LocalDateTime) row[2], (Integer) row[3], (BigDecimal) row[4]));
+        }
+        // UNION ALL does not keep the derived tables' order
+        upcoming.sort(Comparator.comparing(Appointment::scheduledAt));
+        bills.sort(Comparator.comparingInt(BillSummary::billNo).reversed());
+        return Optional.of(new PatientDashboard(patient, appointmentCount, upcoming, bills, balance));
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp value) {
+        return value == null ? null : value.toLocalDateTime();
+    }
+}
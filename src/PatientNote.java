@@ -0,0 +1,5 @@
+import java.time.LocalDateTime;
+
+// ONE APPENDED PATIENT NOTE; source SAYS WHAT WROTE IT (console, booking, billing, ...)
+public record PatientNote(long noteId, int patientId, LocalDateTime writtenAt, String source, String text) {
+}
@@ -0,0 +1,329 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// APPEND-ONLY BINARY AUDIT LOG OF COMMITTED PATIENT NOTES (GROUP-COMMITTED)
+// File: the 8-byte magic "PNLOG001", then one record per note:
+//   int length | long note_id | int patient_id | long written_at | short source length | source | text | int crc32
+// length counts the bytes from note_id to the end of text; the CRC32 covers the same bytes; written_at is the
+// local date-time as milliseconds since 1970-01-01T00:00; strings are UTF-8. Big-endian throughout.
+// append() returns once the record is on disk. One flusher thread writes every record queued since its last
+// write and forces the file once for all of them, so concurrent writers share an fsync. Opening the log drops
+// a torn record at the end (a crash mid-write); reading stops at the first record that fails its CRC.
+public final class PatientNoteLog implements AutoCloseable {
+
+    /** Records written, forces done, and the average number of records per force. */
+    public record Stats(long records, long syncs, long bytes, double avgSyncMillis) {
+        public double recordsPerSync() {
+            return syncs == 0 ? 0 : (double) records / syncs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Note audit log: %d record(s), %d fsync(s), %.1f record(s) per fsync, avg fsync %.2f ms, %.1f KB",
+                    records, syncs, recordsPerSync(), avgSyncMillis, bytes / 1024.0);
+        }
+    }
+
+    private static final byte[] MAGIC = "PNLOG001".getBytes(StandardCharsets.US_ASCII);
+    // Fixed part of a record body: note_id, patient_id, written_at, source length
+    private static final int FIXED_BODY_BYTES = 8 + 4 + 8 + 2;
+    private static final int MAX_BODY_BYTES = 16 << 20;
+    private static final int MAX_QUEUED = 4096;
+    private static final int MAX_BATCH = 1024;
+
+    private static final class Pending {
+        private final ByteBuffer record;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(ByteBuffer record) {
+            this.record = record;
+        }
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(MAX_QUEUED);
+    private final Thread flusher;
+    private final LongAdder records = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder syncNanos = new LongAdder();
+    private volatile boolean closed;
+    private long end;
+
+    private PatientNoteLog(Path file, FileChannel channel, long end) {
+        this.file = file;
+        this.channel = channel;
+        this.end = end;
+        this.flusher = new Thread(this::flushLoop, "note-log-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // Prints a log file as tab-separated lines: note_id, patient_id, written_at, source, text (line breaks as \n)
+    //   mvn compile exec:java -Dexec.mainClass=PatientNoteLog -Dexec.args="file=patient-notes.log patient=17"
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                options.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        Path file = Path.of(options.getOrDefault("file", "patient-notes.log"));
+        int patientId = Integer.parseInt(options.getOrDefault("patient", "0"));
+        long count = read(file, note -> {
+            if (patientId == 0 || note.patientId() == patientId) {
+                System.out.println(note.noteId() + "\t" + note.patientId() + "\t" + note.writtenAt() + "\t"
+                        + note.source() + "\t" + note.text().replace("\n", "\\n"));
+            }
+        });
+        System.err.println(count + " record(s) in " + file);
+    }
+
+    /** Opens (or creates) the log for appending, cutting off a torn last record. */
+    public static PatientNoteLog open(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long end;
+            if (channel.size() == 0) {
+                channel.write(ByteBuffer.wrap(MAGIC), 0);
+                channel.force(true);
+                end = MAGIC.length;
+            } else {
+                end = scan(channel, note -> { });
+                if (end < channel.size()) {
+                    System.out.printf("Note audit log %s: dropped %d byte(s) of an incomplete record at the end%n",
+                            file, channel.size() - end);
+                    channel.truncate(end);
+                    channel.force(true);
+                }
+            }
+            return new PatientNoteLog(file, channel, end);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /** Streams every complete record of a log file, oldest first; returns how many were read. */
+    public static long read(Path file, Consumer<PatientNote> consumer) throws IOException {
+        long[] count = new long[1];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            scan(channel, note -> {
+                count[0]++;
+                consumer.accept(note);
+            });
+        }
+        return count[0];
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    // 1. APPEND ONE NOTE; RETURNS WHEN IT IS ON DISK
+    public void append(PatientNote note) throws IOException {
+        if (closed) {
+            throw new IOException("Note audit log " + file + " is closed");
+        }
+        Pending pending = new Pending(encode(note));
+        try {
+            queue.put(pending);
+            if (closed && queue.remove(pending)) {
+                throw new IOException("Note audit log " + file + " is closed");
+            }
+            pending.done.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the note audit log");
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof IOException io ? io : new IOException(ex.getCause());
+        }
+    }
+
+    public Stats stats() {
+        long count = syncs.sum();
+        return new Stats(records.sum(), count, bytes.sum(), count == 0 ? 0 : syncNanos.sum() / 1e6 / count);
+    }
+
+    /** Writes what is queued, stops the flusher and closes the file. */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            flusher.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        IOException error = new IOException("Note audit log " + file + " is closed");
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.done.completeExceptionally(error);
+        }
+        channel.close();
+    }
+
+    // Group commit: everything queued while the previous force ran goes out in one write and one force
+    private void flushLoop() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            Pending first;
+            try {
+                first = queue.poll(50, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                first = null;
+            }
+            if (first == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            batch.add(first);
+            queue.drainTo(batch, MAX_BATCH - 1);
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<Pending> batch) {
+        ByteBuffer[] buffers = new ByteBuffer[batch.size()];
+        long total = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = batch.get(i).record;
+            total += buffers[i].remaining();
+        }
+        try {
+            channel.position(end);
+            long written = 0;
+            while (written < total) {
+                written += channel.write(buffers);
+            }
+            long syncStart = System.nanoTime();
+            channel.force(false);
+            syncNanos.add(System.nanoTime() - syncStart);
+            end += total;
+            syncs.increment();
+            records.add(batch.size());
+            bytes.add(total);
+            for (Pending pending : batch) {
+                pending.done.complete(null);
+            }
+        } catch (IOException ex) {
+            // Cut off whatever part of the batch reached the file, so later records follow a complete one
+            try {
+                channel.truncate(end);
+            } catch (IOException truncateEx) {
+                ex.addSuppressed(truncateEx);
+            }
+            for (Pending pending : batch) {
+                pending.done.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private static ByteBuffer encode(PatientNote note) {
+        byte[] source = note.source().getBytes(StandardCharsets.UTF_8);
+        byte[] text = note.text().getBytes(StandardCharsets.UTF_8);
+        if (source.length > Short.MAX_VALUE || FIXED_BODY_BYTES + source.length + text.length > MAX_BODY_BYTES) {
+            throw new IllegalArgumentException("Note " + note.noteId() + " is too large for the audit log");
+        }
+        int bodyLength = FIXED_BODY_BYTES + source.length + text.length;
+        ByteBuffer record = ByteBuffer.allocate(4 + bodyLength + 4);
+        record.putInt(bodyLength)
+                .putLong(note.noteId())
+                .putInt(note.patientId())
+                .putLong(note.writtenAt().toInstant(ZoneOffset.UTC).toEpochMilli())
+                .putShort((short) source.length)
+                .put(source)
+                .put(text);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, bodyLength);
+        record.putInt((int) crc.getValue());
+        return record.flip();
+    }
+
+    // Reads records from the start; returns the offset just past the last complete, intact one
+    private static long scan(FileChannel channel, Consumer<PatientNote> consumer) throws IOException {
+        channel.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+        byte[] magic = new byte[MAGIC.length];
+        try {
+            in.readFully(magic);
+        } catch (EOFException ex) {
+            throw new IOException("Not a patient note log: file too short");
+        }
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a patient note log: bad header");
+        }
+        long offset = MAGIC.length;
+        byte[] body = new byte[256];
+        CRC32 crc = new CRC32();
+        while (true) {
+            int length;
+            try {
+                length = in.readInt();
+                if (length < FIXED_BODY_BYTES || length > MAX_BODY_BYTES) {
+                    return offset;
+                }
+                if (body.length < length) {
+                    body = new byte[Math.max(length, body.length * 2)];
+                }
+                in.readFully(body, 0, length);
+                int expected = in.readInt();
+                crc.reset();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != expected) {
+                    return offset;
+                }
+            } catch (EOFException ex) {
+                return offset;
+            }
+            ByteBuffer fields = ByteBuffer.wrap(body, 0, length);
+            long noteId = fields.getLong();
+            int patientId = fields.getInt();
+            LocalDateTime writtenAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(fields.getLong()), ZoneOffset.UTC);
+            int sourceLength = fields.getShort();
+            if (sourceLength < 0 || sourceLength > fields.remaining()) {
+                return offset;
+            }
+            String source = new String(body, fields.position(), sourceLength, StandardCharsets.UTF_8);
+            int textStart = fields.position() + sourceLength;
+            String text = new String(body, textStart, length - textStart, StandardCharsets.UTF_8);
+            consumer.accept(new PatientNote(noteId, patientId, writtenAt, source, text));
+            offset += 4 + length + 4;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// APPEND-ONLY PATIENT NOTES (PatientNote TABLE + OPTIONAL AUDIT LOG FILE)
+// Each note is its own row, so adding one is a single-row INSERT however many notes the patient already has
+// (Patient.notes keeps only the intake notes). With a PatientNoteLog, the note is also written to the log once
+// its transaction has committed, so the log holds only committed notes and no row lock waits on its fsync.
+// A crash between the commit and the log write leaves a committed note that is missing from the log.
+public class PatientNotes {
+
+    static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS PatientNote ("
+            + "note_id BIGINT PRIMARY KEY AUTO_INCREMENT,"
+            + "patient_id INT NOT NULL,"
+            + "written_at DATETIME(3) NOT NULL,"
+            + "source VARCHAR(30) NOT NULL,"
+            + "note TEXT NOT NULL,"
+            + "FOREIGN KEY (patient_id) REFERENCES Patient(patient_id) ON DELETE CASCADE)";
+    // History reads walk one patient's notes in note_id order
+    static final String CREATE_INDEX = "CREATE INDEX idx_patientnote_patient ON PatientNote(patient_id, note_id)";
+
+    private static final String INSERT_NOTE = "INSERT INTO PatientNote (patient_id, written_at, source, note) VALUES (?, ?, ?, ?)";
+    private static final String SELECT_HISTORY = "SELECT note_id, patient_id, written_at, source, note "
+            + "FROM PatientNote WHERE patient_id = ? ORDER BY note_id";
+
+    private final ConnectionPool pool;
+    private final PatientNoteLog log;
+    private final ChangeOutbox outbox;
+
+    public PatientNotes(ConnectionPool pool) {
+        this(pool, null, null);
+    }
+
+    /**
+     * @param log    optional audit log; every note is appended to it after its transaction commits
+     * @param outbox optional change outbox; each note then writes a Patient NOTE event in the same transaction
+     */
+    public PatientNotes(ConnectionPool pool, PatientNoteLog log, ChangeOutbox outbox) {
+        this.pool = pool;
+        this.log = log;
+        this.outbox = outbox;
+    }
+
+    public static void ensureSchema(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(CREATE_TABLE);
+            if (!Schema.indexExists(connection, "PatientNote", "idx_patientnote_patient")) {
+                stmt.executeUpdate(CREATE_INDEX);
+            }
+        }
+    }
+
+    // 1. ADD ONE NOTE IN ITS OWN TRANSACTION
+    public PatientNote append(int patientId, String source, String text) throws SQLException {
+        PatientNote note;
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                note = append(connection, patientId, source, text);
+                connection.commit();
+            } catch (SQLException | RuntimeException ex) {
+                connection.rollback();
+                throw ex;
+            }
+        }
+        committed(note);
+        return note;
+    }
+
+    // 2. ADD ONE NOTE ON THE CALLER'S CONNECTION; THE CALLER OWNS THE TRANSACTION
+    // Nothing is written to the audit log yet: the caller passes the note to committed(...) after its commit.
+    public PatientNote append(Connection connection, int patientId, String source, String text) throws SQLException {
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("A patient note needs some text");
+        }
+        // Millisecond precision: what DATETIME(3) and the log both keep
+        LocalDateTime writtenAt = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        long noteId;
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_NOTE, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setInt(1, patientId);
+            ps.setTimestamp(2, Timestamp.valueOf(writtenAt));
+            ps.setString(3, source);
+            ps.setString(4, text);
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("PatientNote insert succeeded but no ID was returned.");
+                }
+                noteId = keys.getLong(1);
+            }
+        }
+        if (outbox != null) {
+            outbox.record(connection, "Patient", patientId, "NOTE", ChangeOutbox.payload()
+                    .put("note_id", noteId).put("source", source).put("note", text));
+        }
+        return new PatientNote(noteId, patientId, writtenAt, source, text);
+    }
+
+    /**
+     * Call after committing a transaction that used append(Connection, ...), with the notes it returned (null
+     * entries are skipped): wakes the outbox relay, then writes the notes to the audit log and waits for the fsync.
+     * A failure here does not undo the commit; the exception says which note is saved but not in the log.
+     */
+    public void committed(PatientNote... notes) throws SQLException {
+        if (outbox != null) {
+            outbox.committed();
+        }
+        if (log == null) {
+            return;
+        }
+        for (PatientNote note : notes) {
+            if (note == null) {
+                continue;
+            }
+            try {
+                log.append(note);
+            } catch (IOException ex) {
+                throw new SQLException("Note " + note.noteId() + " is saved but could not be written to the audit log: "
+                        + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    // 3. ONE PATIENT'S NOTES, OLDEST FIRST
+    public List<PatientNote> history(int patientId) throws SQLException {
+        List<PatientNote> notes = new ArrayList<>();
+        streamHistory(patientId, notes::add);
+        return notes;
+    }
+
+    /** Streams one patient's notes, oldest first, without holding them all in memory. */
+    public void streamHistory(int patientId, Consumer<PatientNote> callback) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(SELECT_HISTORY, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(DB.streamingFetchSize(connection));
+            ps.setInt(1, patientId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    callback.accept(new PatientNote(rs.getLong(1), rs.getInt(2), rs.getTimestamp(3).toLocalDateTime(),
+                            rs.getString(4), rs.getString(5)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// BULK PERSON + PATIENT ONBOARDING (E.G. MIGRATING A CLINIC)
+public class PatientOnboarding {
+
+    /** One incoming patient; the person_id is assigned by the database. */
+    public record NewPatient(String firstName, String lastName, LocalDate dateOfBirth, String insuranceId, String notes) { }
+
+    /** A chunk that was rolled back, with the first record the database rejected. */
+    public record Failure(long recordIndex, NewPatient record, int chunkSize, String message) { }
+
+    public record Report(long inserted, long failed, long elapsedNanos, List<Failure> failures) {
+        public double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : inserted * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d patient(s) inserted, %d failed, %.0f rows/s", inserted, failed, rowsPerSecond());
+        }
+    }
+
+    // Rows per multi-row INSERT statement; keeps us far below MySQL's 65535 placeholder limit
+    private static final int ROWS_PER_STATEMENT = 1000;
+
+    private static final String INSERT_PATIENT = "INSERT INTO Patient (patient_id, insurance_id, notes) VALUES (?, ?, ?)";
+
+    private final ConnectionPool pool;
+    private final int batchSize;
+
+    /**
+     * @param batchSize records per transaction; each chunk commits or rolls back as a whole
+     */
+    public PatientOnboarding(ConnectionPool pool, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.pool = pool;
+        this.batchSize = batchSize;
+    }
+
+    public Report onboard(Stream<NewPatient> patients) throws SQLException {
+        return onboard(patients.iterator());
+    }
+
+    public Report onboard(Iterable<NewPatient> patients) throws SQLException {
+        return onboard(patients.iterator());
+    }
+
+    /**
+     * Inserts Person rows with multi-row VALUES, maps the generated person_ids back onto the records,
+     * then batch-inserts the matching Patient rows. A failing chunk is rolled back and reported;
+     * later chunks still run.
+     */
+    public Report onboard(Iterator<NewPatient> patients) throws SQLException {
+        long start = System.nanoTime();
+        long inserted = 0;
+        long failed = 0;
+        long index = 0;
+        List<Failure> failures = new ArrayList<>();
+        List<NewPatient> chunk = new ArrayList<>(batchSize);
+
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            while (patients.hasNext()) {
+                chunk.clear();
+                long chunkStart = index;
+                while (chunk.size() < batchSize && patients.hasNext()) {
+                    chunk.add(patients.next());
+                    index++;
+                }
+                try {
+                    insertChunk(connection, chunk);
+                    connection.commit();
+                    inserted += chunk.size();
+                } catch (ChunkFailure ex) {
+                    connection.rollback();
+                    failed += chunk.size();
+                    int offset = ex.offset;
+                    failures.add(new Failure(chunkStart + offset, chunk.get(offset), chunk.size(), ex.getCause().getMessage()));
+                }
+            }
+        }
+        return new Report(inserted, failed, System.nanoTime() - start, Collections.unmodifiableList(failures));
+    }
+
+    private void insertChunk(Connection connection, List<NewPatient> chunk) throws SQLException, ChunkFailure {
+        int[] personIds = new int[chunk.size()];
+        for (int from = 0; from < chunk.size(); from += ROWS_PER_STATEMENT) {
+            int to = Math.min(from + ROWS_PER_STATEMENT, chunk.size());
+            try {
+                insertPersons(connection, chunk, from, to, personIds);
+            } catch (SQLException ex) {
+                // A multi-row INSERT fails as a unit, so the first row of that statement is the best we can point at
+                throw new ChunkFailure(from, ex);
+            }
+        }
+
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_PATIENT)) {
+            for (int i = 0; i < chunk.size(); i++) {
+                NewPatient patient = chunk.get(i);
+                ps.setInt(1, personIds[i]);
+                ps.setString(2, patient.insuranceId());
+                if (patient.notes() == null || patient.notes().trim().isEmpty()) {
+                    ps.setNull(3, Types.VARCHAR);
+                } else {
+                    ps.setString(3, patient.notes());
+                }
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } catch (BatchUpdateException ex) {
+            throw new ChunkFailure(Math.min(firstFailedIndex(ex.getUpdateCounts()), chunk.size() - 1), ex);
+        } catch (SQLException ex) {
+            throw new ChunkFailure(0, ex);
+        }
+    }
+
+    private static void insertPersons(Connection connection, List<NewPatient> chunk, int from, int to, int[] personIds)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder("INSERT INTO Person (first_name, last_name, date_of_birth) VALUES ");
+        for (int i = from; i < to; i++) {
+            sql.append(i == from ? "(?, ?, ?)" : ", (?, ?, ?)");
+        }
+        try (PreparedStatement ps = connection.prepareStatement(sql.toString(), Statement.RETURN_GENERATED_KEYS)) {
+            int idx = 1;
+            for (int i = from; i < to; i++) {
+                NewPatient patient = chunk.get(i);
+                ps.setString(idx++, patient.firstName());
+                ps.setString(idx++, patient.lastName());
+                ps.setTimestamp(idx++, Timestamp.valueOf(patient.dateOfBirth().atStartOfDay()));
+            }
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                int i = from;
+                while (keys.next() && i < to) {
+                    personIds[i++] = keys.getInt(1);
+                }
+                if (i != to) {
+                    throw new SQLException("Expected " + (to - from) + " generated person IDs but got " + (i - from));
+                }
+            }
+        }
+    }
+
+    // Index of the first EXECUTE_FAILED entry, or the first statement the driver never reached
+    private static int firstFailedIndex(int[] updateCounts) {
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+                return i;
+            }
+        }
+        return updateCounts.length;
+    }
+
+    private static final class ChunkFailure extends Exception {
+        private static final long serialVersionUID = 1L;
+        private final int offset;
+
+        ChunkFailure(int offset, SQLException cause) {
+            super(cause);
+            this.offset = offset;
+        }
+    }
+}
@@ -1,70 +1,136 @@
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 // HANDLES SELECT, UPDATE, INSERT, DELETE FOR PATIENT TABLE
 public class PatientTable {
-    private Connection connection;
+    /** Largest keyset page listPatientsAfter accepts. */
+    public static final int MAX_PAGE_SIZE = 1000;
 
-    public PatientTable(Connection connection) {
-        this.connection = connection;
+    private static final String SELECT_PATIENT = "SELECT " + RowMappers.PATIENT_COLUMNS + " "
+            + "FROM Person JOIN Patient ON Patient.patient_id = Person.person_id ";
+
+    private final ConnectionPool pool;
+    private final EntityCache<Patient> cache;
+    private final ChangeOutbox outbox;
+
+    /**
+     * @param cache  read-through cache for selectPatientByID, invalidated by every write through this class;
+     *               null reads the table every time
+     * @param outbox change outbox; notes updates and deletes then write their event in the same transaction;
+     *               null records none
+     */
+    public PatientTable(ConnectionPool pool, EntityCache<Patient> cache, ChangeOutbox outbox) {
+        this.pool = pool;
+        this.cache = cache;
+        this.outbox = outbox;
+    }
+
+    /**
+     * Streams every patient through the callback with a forward-only streaming result set.
+     * The connection stays busy until the scan ends, so the callback must not call back into the DAOs.
+     */
+    public void streamAllPatients(Consumer<Patient> callback) throws SQLException {
+        String sql = SELECT_PATIENT + "ORDER BY Patient.patient_id";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(DB.streamingFetchSize(connection));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    callback.accept(RowMappers.PATIENT.map(rs));
+                }
+            }
+        }
     }
 
-    // SELECT ALL PATIENTS
-    public void listAllPatients() throws SQLException {
-        String sql = "SELECT Person.first_name, Person.last_name, Person.date_of_birth, Person.person_id, "
-                + "Patient.insurance_id, Patient.notes FROM Person JOIN Patient ON Patient.patient_id = Person.person_id";
-        try (PreparedStatement ps = connection.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-            System.out.println("\n-- All Patients --");
-            System.out.println("ID | Name | DOB | Insurance | Notes");
-            while (rs.next()) {
-                System.out.printf("%d | %s %s | %s | %s | %s%n",
-                        rs.getInt("person_id"),
-                        rs.getString("first_name"),
-                        rs.getString("last_name"),
-                        rs.getTimestamp("date_of_birth"),
-                        rs.getString("insurance_id"),
-                        rs.getString("notes"));
+    /**
+     * Keyset page: up to {@code limit} patients with patient_id greater than {@code afterPatientId}, in id order.
+     */
+    public List<Patient> listPatientsAfter(int afterPatientId, int limit) throws SQLException {
+        String sql = SELECT_PATIENT + "WHERE Patient.patient_id > ? ORDER BY Patient.patient_id LIMIT ?";
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        List<Patient> page = new ArrayList<>(limit);
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, afterPatientId);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    page.add(RowMappers.PATIENT.map(rs));
+                }
             }
         }
+        return page;
     }
 
     // SELECT INDIVIDUAL PATIENT BY ID
-    public void selectPatientByID(int id) throws SQLException {
-        String sql = "SELECT Person.first_name, Person.last_name, Person.date_of_birth, Person.person_id, "
-                + "Patient.insurance_id, Patient.notes FROM Person JOIN Patient ON Patient.patient_id = Person.person_id "
-                + "WHERE Person.person_id = ?";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+    public Optional<Patient> selectPatientByID(int id) throws SQLException {
+        long stamp = 0;
+        if (cache != null) {
+            Patient cached = cache.get(id);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+            stamp = cache.stamp();
+        }
+        String sql = SELECT_PATIENT + "WHERE Person.person_id = ?";
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, id);
             try (ResultSet rs = ps.executeQuery()) {
-                System.out.println("\n-- Patient Details --");
-                if (rs.next()) {
-                    System.out.printf("ID: %d%n", rs.getInt("person_id"));
-                    System.out.printf("Name: %s %s%n", rs.getString("first_name"), rs.getString("last_name"));
-                    System.out.printf("DOB: %s%n", rs.getTimestamp("date_of_birth"));
-                    System.out.printf("Insurance: %s%n", rs.getString("insurance_id"));
-                    System.out.printf("Notes: %s%n", rs.getString("notes"));
-                } else {
-                    System.out.println("No patient found with ID " + id);
+                if (!rs.next()) {
+                    return Optional.empty();
                 }
+                Patient patient = RowMappers.PATIENT.map(rs);
+                if (cache != null) {
+                    cache.putIfFresh(id, patient, stamp);
+                }
+                return Optional.of(patient);
             }
         }
     }
 
+    /**
+     * Drops a cached patient; callers that change Patient/Person rows outside this class must call it after commit.
+     */
+    public void evict(int id) {
+        if (cache != null) {
+            cache.invalidate(id);
+        }
+    }
+
     // UPDATE PATIENT NOTES
-    public void updatePatientNotes(int id, String notes) throws SQLException {
+    public int updatePatientNotes(int id, String notes) throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            return outbox == null ? updatePatientNotes(connection, id, notes)
+                    : outbox.execute(connection, c -> updatePatientNotes(c, id, notes));
+        } finally {
+            evict(id);
+        }
+    }
+
+    private int updatePatientNotes(Connection connection, int id, String notes) throws SQLException {
         String sql = "UPDATE Patient SET notes = ? WHERE patient_id = ?";
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, notes);
             ps.setInt(2, id);
             int rows = ps.executeUpdate();
-            System.out.println(rows + " patient record(s) updated.");
+            if (rows > 0 && outbox != null) {
+                outbox.record(connection, "Patient", id, "UPDATE", ChangeOutbox.payload().put("notes", notes));
+            }
+            return rows;
         }
     }
 
     // INSERT NEW PATIENT TO TABLE
-    public void insertPatient(int p_id, String insurance_id, String notes) throws SQLException {
+    public int insertPatient(int p_id, String insurance_id, String notes) throws SQLException {
         String sql = "INSERT INTO Patient (patient_id, insurance_id, notes) VALUES(?, ?, ?)";
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, p_id);
             ps.setString(2, insurance_id);
             if (notes == null || notes.trim().isEmpty()) {
@@ -72,18 +138,30 @@ public class PatientTable {
             } else {
                 ps.setString(3, notes);
             }
-            int rows = ps.executeUpdate();
-            System.out.println(rows + " patient record(s) inserted.");
+            return ps.executeUpdate();
+        } finally {
+            evict(p_id);
         }
     }
 
     // DELETE PATIENT FROM TABLE
-    public void deletePatient(int id) throws SQLException {
+    public int deletePatient(int id) throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            return outbox == null ? deletePatient(connection, id) : outbox.execute(connection, c -> deletePatient(c, id));
+        } finally {
+            evict(id);
+        }
+    }
+
+    private int deletePatient(Connection connection, int id) throws SQLException {
         String sql = "DELETE FROM Patient WHERE patient_id = ?";
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, id);
             int rows = ps.executeUpdate();
-            System.out.println(rows + " patient record(s) deleted.");
+            if (rows > 0 && outbox != null) {
+                outbox.record(connection, "Patient", id, "DELETE", ChangeOutbox.payload());
+            }
+            return rows;
         }
     }
 }
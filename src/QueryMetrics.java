@@ -0,0 +1,225 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+// PER-STATEMENT LATENCY, ROW AND ERROR COUNTS FOR EVERY SQL STATEMENT RUN THROUGH THE CONNECTION POOL
+// Statements are keyed by normalized SQL: literals become ?, whitespace is collapsed and IN lists /
+// multi-row VALUES of any length count as one statement. Executions slower than metrics.slowQueryMs are
+// written to the slow-query log (metrics.slowQueryLog, or stderr when unset) with the SQL as prepared.
+public class QueryMetrics {
+
+    /** Point-in-time figures for one normalized statement; times in milliseconds. */
+    public record StatementStats(String sql, long executions, long errors, long rows, double totalMillis,
+                                 double p50Millis, double p95Millis, double p99Millis, double maxMillis) {
+        public double avgMillis() {
+            return executions == 0 ? 0 : totalMillis / executions;
+        }
+    }
+
+    // Live counters behind one StatementStats
+    static final class Entry {
+        private final String sql;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+
+        private Entry(String sql) {
+            this.sql = sql;
+        }
+
+        void addRows(long count) {
+            if (count > 0) {
+                rows.add(count);
+            }
+        }
+
+        StatementStats snapshot() {
+            long[] q = latency.quantilesNanos(0.50, 0.95, 0.99);
+            return new StatementStats(sql, latency.count(), errors.sum(), rows.sum(), latency.totalNanos() / 1e6,
+                    q[0] / 1e6, q[1] / 1e6, q[2] / 1e6, latency.maxNanos() / 1e6);
+        }
+    }
+
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\?(?:\\s*,\\s*\\?)+\\)");
+    private static final Pattern REPEATED_TUPLES = Pattern.compile("\\(\\?\\.\\.\\.\\)(?:\\s*,\\s*\\(\\?\\.\\.\\.\\))+");
+    // Raw SQL strings remembered with their normalized form; beyond this, normalize on every call
+    private static final int MAX_REMEMBERED_SQL = 4096;
+
+    private final long slowNanos;
+    private final Path slowLogFile;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Entry> byRawSql = new ConcurrentHashMap<>();
+    private final LongAdder slowQueries = new LongAdder();
+
+    /**
+     * @param slowQueryMillis executions at or above this go to the slow-query log; 0 or less disables it
+     * @param slowLogFile     file the slow-query log is appended to; null for stderr
+     */
+    public QueryMetrics(long slowQueryMillis, Path slowLogFile) {
+        this.slowNanos = slowQueryMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(slowQueryMillis) : Long.MAX_VALUE;
+        this.slowLogFile = slowLogFile;
+    }
+
+    /** Reads metrics.enabled, metrics.slowQueryMs and metrics.slowQueryLog; null when metrics are disabled. */
+    public static QueryMetrics fromProperties(Properties props) {
+        if (!Boolean.parseBoolean(props.getProperty("metrics.enabled", "true").trim())) {
+            return null;
+        }
+        String slowMs = props.getProperty("metrics.slowQueryMs", "200").trim();
+        String logFile = props.getProperty("metrics.slowQueryLog", "").trim();
+        return new QueryMetrics(Long.parseLong(slowMs), logFile.isEmpty() ? null : Path.of(logFile));
+    }
+
+    /** The counters for this SQL text, created on first use. */
+    Entry entry(String sql) {
+        Entry entry = byRawSql.get(sql);
+        if (entry == null) {
+            entry = entries.computeIfAbsent(normalize(sql), Entry::new);
+            if (byRawSql.size() < MAX_REMEMBERED_SQL) {
+                byRawSql.putIfAbsent(sql, entry);
+            }
+        }
+        return entry;
+    }
+
+    /** Records one execution; a slow one is also written to the slow-query log. */
+    void record(Entry entry, String sql, String operation, long nanos, boolean failed) {
+        entry.latency.record(nanos);
+        if (failed) {
+            entry.errors.increment();
+        }
+        if (nanos >= slowNanos) {
+            slowQueries.increment();
+            logSlow(sql, operation, nanos, failed);
+        }
+    }
+
+    // 1. ALL STATEMENTS, MOST TOTAL TIME FIRST
+    public List<StatementStats> snapshot() {
+        List<StatementStats> stats = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            stats.add(entry.snapshot());
+        }
+        stats.sort(Comparator.comparingDouble(StatementStats::totalMillis).reversed());
+        return stats;
+    }
+
+    public long slowQueryCount() {
+        return slowQueries.sum();
+    }
+
+    // 2. TEXT REPORT OF THE TOP STATEMENTS BY TOTAL TIME (ALL IF top <= 0)
+    public String report(int top) {
+        List<StatementStats> stats = snapshot();
+        StringBuilder out = new StringBuilder(256 + 200 * stats.size());
+        out.append(String.format("%-8s %6s %10s %10s %9s %9s %9s %9s %9s  %s%n",
+                "execs", "errors", "rows", "total(ms)", "avg(ms)", "p50(ms)", "p95(ms)", "p99(ms)", "max(ms)", "statement"));
+        int shown = 0;
+        for (StatementStats s : stats) {
+            if (top > 0 && shown++ >= top) {
+                break;
+            }
+            out.append(String.format("%-8d %6d %10d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f  %s%n",
+                    s.executions(), s.errors(), s.rows(), s.totalMillis(), s.avgMillis(),
+                    s.p50Millis(), s.p95Millis(), s.p99Millis(), s.maxMillis(), s.sql()));
+        }
+        out.append(String.format("%d statement(s), %d slow execution(s) logged%n", stats.size(), slowQueryCount()));
+        return out.toString();
+    }
+
+    // 3. WRITE THE FULL REPORT TO A FILE
+    public void writeReport(Path file) throws IOException {
+        Files.writeString(file, "# Query metrics at " + LocalDateTime.now() + System.lineSeparator() + report(0),
+                StandardCharsets.UTF_8);
+    }
+
+    // 4. START COUNTING FROM ZERO
+    public void reset() {
+        entries.clear();
+        byRawSql.clear();
+        slowQueries.reset();
+    }
+
+    /**
+     * Statement text with literals replaced by ?, whitespace collapsed, IN lists shortened to (?...) and
+     * repeated VALUES tuples to (?...), ...
+     */
+    static String normalize(String sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        int n = sql.length();
+        for (int i = 0; i < n; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                // String literal (MySQL also allows double quotes); '' and \' stay inside it
+                int j = i + 1;
+                while (j < n) {
+                    char d = sql.charAt(j);
+                    if (d == '\\') {
+                        j += 2;
+                    } else if (d == c && j + 1 < n && sql.charAt(j + 1) == c) {
+                        j += 2;
+                    } else if (d == c) {
+                        break;
+                    } else {
+                        j++;
+                    }
+                }
+                out.append('?');
+                i = j;
+            } else if (Character.isDigit(c) && !partOfIdentifier(out)) {
+                int j = i;
+                while (j + 1 < n && (Character.isDigit(sql.charAt(j + 1)) || sql.charAt(j + 1) == '.')) {
+                    j++;
+                }
+                out.append('?');
+                i = j;
+            } else if (Character.isWhitespace(c)) {
+                if (!out.isEmpty() && out.charAt(out.length() - 1) != ' ') {
+                    out.append(' ');
+                }
+            } else {
+                out.append(c);
+            }
+        }
+        String text = out.toString().trim();
+        text = IN_LIST.matcher(text).replaceAll("(?...)");
+        return REPEATED_TUPLES.matcher(text).replaceAll("(?...), ...");
+    }
+
+    private static boolean partOfIdentifier(StringBuilder out) {
+        if (out.isEmpty()) {
+            return false;
+        }
+        char prev = out.charAt(out.length() - 1);
+        return Character.isLetterOrDigit(prev) || prev == '_' || prev == '`';
+    }
+
+    private void logSlow(String sql, String operation, long nanos, boolean failed) {
+        String line = String.format("%s SLOW %.1f ms %s%s [%s] %s", LocalDateTime.now(), nanos / 1e6, operation,
+                failed ? " FAILED" : "", Thread.currentThread().getName(), sql.replaceAll("\\s+", " ").trim());
+        if (slowLogFile == null) {
+            System.err.println(line);
+            return;
+        }
+        synchronized (this) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(slowLogFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+                out.println(line);
+            } catch (IOException ex) {
+                System.err.println(line + " (could not write " + slowLogFile + ": " + ex.getMessage() + ")");
+            }
+        }
+    }
+}
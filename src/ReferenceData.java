@@ -0,0 +1,172 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// IN-PROCESS CACHE OF THE LOOKUP TABLES (AppointmentStatus, StaffRole, Specialty, Department, Service)
+// Loaded once at startup and swapped atomically on refresh, so lookups never touch the database
+// unless the TTL has expired, invalidate() was called, or an id is missing from the snapshot.
+public class ReferenceData {
+
+    /** One row of the Service price list. */
+    public record Service(int serviceId, String code, String description, BigDecimal unitPrice) { }
+
+    private record Snapshot(IntMap<String> statuses, IntMap<String> staffRoles,
+                            IntMap<String> specialties, IntMap<String> departments,
+                            IntMap<Service> services, int cancelledStatusId, long loadedAtNanos) {
+        Snapshot withLoadedAt(long nanos) {
+            return new Snapshot(statuses, staffRoles, specialties, departments, services, cancelledStatusId, nanos);
+        }
+    }
+
+    /** Name of the one status whose appointments take no doctor slot and are left out of upcoming lists. */
+    public static final String CANCELLED = "Cancelled";
+
+    // A missing id forces a reload at most this often (a row may have been added since the last load)
+    private static final long MISS_RELOAD_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ConnectionPool pool;
+    private final long ttlNanos;
+    private volatile Snapshot snapshot;
+    private volatile boolean invalidated;
+
+    public ReferenceData(ConnectionPool pool, Duration ttl) throws SQLException {
+        this.pool = pool;
+        this.ttlNanos = ttl.toNanos();
+        this.snapshot = load(pool);
+    }
+
+    public String statusName(int statusId) {
+        return lookup(Snapshot::statuses, statusId);
+    }
+
+    public String staffRoleName(int staffRoleId) {
+        return lookup(Snapshot::staffRoles, staffRoleId);
+    }
+
+    public String specialtyName(int specialtyId) {
+        return lookup(Snapshot::specialties, specialtyId);
+    }
+
+    public String departmentName(int departmentId) {
+        return lookup(Snapshot::departments, departmentId);
+    }
+
+    /** Current price-list entry of a service, or null if there is no such service. */
+    public Service service(int serviceId) {
+        return lookup(Snapshot::services, serviceId);
+    }
+
+    /**
+     * status_id of {@link #CANCELLED}, or -1 if there is no such status. Never matches a real row, so
+     * {@code status_id <> ?} bound to it is safe either way.
+     */
+    public int cancelledStatusId() {
+        return current().cancelledStatusId();
+    }
+
+    public boolean isCancelled(int statusId) {
+        return statusId == cancelledStatusId();
+    }
+
+    /** Status ids in ascending order, e.g. for building menus. */
+    public int[] statusIds() {
+        return current().statuses().keys();
+    }
+
+    /** Marks the cache stale; the next lookup reloads every table. */
+    public void invalidate() {
+        invalidated = true;
+    }
+
+    /** Reloads all lookup tables now. */
+    public synchronized void refresh() throws SQLException {
+        snapshot = load(pool);
+        invalidated = false;
+    }
+
+    private interface Table<V> {
+        IntMap<V> of(Snapshot snapshot);
+    }
+
+    private <V> V lookup(Table<V> table, int id) {
+        Snapshot current = current();
+        V value = table.of(current).get(id);
+        if (value == null && System.nanoTime() - current.loadedAtNanos() > MISS_RELOAD_INTERVAL_NANOS) {
+            value = table.of(reload(current)).get(id);
+        }
+        return value;
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (invalidated || System.nanoTime() - current.loadedAtNanos() > ttlNanos) {
+            current = reload(current);
+        }
+        return current;
+    }
+
+    private synchronized Snapshot reload(Snapshot seen) {
+        if (snapshot != seen) {
+            return snapshot; // another thread already reloaded
+        }
+        try {
+            refresh();
+        } catch (SQLException ex) {
+            // Keep serving the old values and try again after another TTL
+            System.err.println("Could not refresh reference data: " + ex.getMessage());
+            snapshot = seen.withLoadedAt(System.nanoTime());
+            invalidated = false;
+        }
+        return snapshot;
+    }
+
+    private static Snapshot load(ConnectionPool pool) throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            IntMap<String> statuses = load(connection, "SELECT status_id, status FROM AppointmentStatus");
+            return new Snapshot(
+                    statuses,
+                    load(connection, "SELECT staff_role_id, name FROM StaffRole"),
+                    load(connection, "SELECT specialty_id, name FROM Specialty"),
+                    load(connection, "SELECT department_id, name FROM Department"),
+                    loadServices(connection),
+                    idOf(statuses, CANCELLED),
+                    System.nanoTime());
+        }
+    }
+
+    private static int idOf(IntMap<String> names, String name) {
+        for (int id : names.keys()) {
+            if (name.equals(names.get(id))) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    private static IntMap<String> load(Connection connection, String sql) throws SQLException {
+        IntMap.Builder<String> builder = IntMap.builder();
+        try (PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                builder.put(rs.getInt(1), rs.getString(2));
+            }
+        }
+        return builder.build();
+    }
+
+    private static IntMap<Service> loadServices(Connection connection) throws SQLException {
+        IntMap.Builder<Service> builder = IntMap.builder();
+        try (PreparedStatement ps = connection.prepareStatement(
+                "SELECT service_id, code, description, unit_price FROM Service");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                builder.put(rs.getInt(1), new Service(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getBigDecimal(4)));
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,8 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// TURNS THE CURRENT ResultSet ROW INTO A TYPED VALUE
+@FunctionalInterface
+public interface RowMapper<T> {
+    T map(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,84 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+// COLUMN LISTS AND THE INDEX-BASED MAPPERS THAT READ THEM
+// Each *_COLUMNS string must stay in the same order as the getXxx(index) calls of its mapper.
+public final class RowMappers {
+
+    public static final String PATIENT_COLUMNS = "Person.person_id, Person.first_name, Person.last_name, "
+            + "Person.date_of_birth, Patient.insurance_id, Patient.notes";
+
+    public static final RowMapper<Patient> PATIENT = rs -> new Patient(
+            rs.getInt(1),
+            rs.getString(2),
+            rs.getString(3),
+            rs.getTimestamp(4).toLocalDateTime(),
+            rs.getString(5),
+            rs.getString(6));
+
+    // No AppointmentStatus join: the status name is resolved from the reference-data cache
+    public static final String APPOINTMENT_COLUMNS = "Appointment.appointment_id, Appointment.patient_id, "
+            + "Appointment.doctor_id, Appointment.scheduled_at, Appointment.reason, Appointment.status_id";
+
+    public static RowMapper<Appointment> appointment(ReferenceData referenceData) {
+        return rs -> {
+            int statusId = rs.getInt(6);
+            return new Appointment(
+                    rs.getInt(1),
+                    rs.getInt(2),
+                    rs.getInt(3),
+                    rs.getTimestamp(4).toLocalDateTime(),
+                    rs.getString(5),
+                    statusId,
+                    referenceData.statusName(statusId));
+        };
+    }
+
+    public static final String BILL_COLUMNS = "Bill.bill_no, Bill.patient_id, Bill.appointment_id, Bill.created_at";
+
+    public static final RowMapper<Bill> BILL = rs -> new Bill(
+            rs.getInt(1),
+            rs.getInt(2),
+            nullableInt(rs, 3),
+            toLocalDateTime(rs.getTimestamp(4)));
+
+    public static final String BILL_ITEM_COLUMNS = "BillItem.bill_no, BillItem.order_no, BillItem.charge_type, "
+            + "BillItem.service_id, BillItem.description, BillItem.amount";
+
+    public static final RowMapper<BillItem> BILL_ITEM = rs -> new BillItem(
+            rs.getInt(1),
+            rs.getInt(2),
+            rs.getString(3),
+            nullableInt(rs, 4),
+            rs.getString(5),
+            rs.getBigDecimal(6));
+
+    // BillTotals joined to Person for the names; totals are maintained by triggers, not aggregated here
+    public static final String BILL_SUMMARY_COLUMNS = "BillTotals.bill_no, BillTotals.patient_id, Person.first_name, "
+            + "Person.last_name, BillTotals.appointment_id, BillTotals.created_at, BillTotals.item_count, "
+            + "BillTotals.total_amount";
+
+    public static final RowMapper<BillSummary> BILL_SUMMARY = rs -> new BillSummary(
+            rs.getInt(1),
+            rs.getInt(2),
+            rs.getString(3),
+            rs.getString(4),
+            nullableInt(rs, 5),
+            toLocalDateTime(rs.getTimestamp(6)),
+            rs.getInt(7),
+            rs.getBigDecimal(8));
+
+    private RowMappers() {
+    }
+
+    public static Integer nullableInt(ResultSet rs, int column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp ts) {
+        return ts == null ? null : ts.toLocalDateTime();
+    }
+}
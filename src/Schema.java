@@ -0,0 +1,84 @@
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+
+// LOOKUPS USED BY THE ensureSchema() METHODS TO CREATE ONLY WHAT IS MISSING
+public final class Schema {
+
+    private Schema() {
+    }
+
+    public static boolean tableExists(Connection connection, String table) throws SQLException {
+        DatabaseMetaData meta = connection.getMetaData();
+        // Stored case depends on lower_case_table_names (MySQL) or the database's default (H2)
+        for (String name : new String[] {table, table.toLowerCase(Locale.ROOT), table.toUpperCase(Locale.ROOT)}) {
+            try (ResultSet rs = meta.getTables(connection.getCatalog(), null, name, new String[] {"TABLE"})) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public static boolean indexExists(Connection connection, String table, String index) throws SQLException {
+        DatabaseMetaData meta = connection.getMetaData();
+        for (String name : new String[] {table, table.toLowerCase(Locale.ROOT), table.toUpperCase(Locale.ROOT)}) {
+            try (ResultSet rs = meta.getIndexInfo(connection.getCatalog(), null, name, false, true)) {
+                while (rs.next()) {
+                    if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    public static boolean triggerExists(Connection connection, String trigger) throws SQLException {
+        return exists(connection,
+                "SELECT 1 FROM information_schema.TRIGGERS WHERE TRIGGER_SCHEMA = DATABASE() AND TRIGGER_NAME = ?",
+                trigger);
+    }
+
+    /** True if the stored function exists and its body mentions {@code bodyFragment}. */
+    public static boolean functionExists(Connection connection, String function, String bodyFragment) throws SQLException {
+        String sql = "SELECT ROUTINE_DEFINITION FROM information_schema.ROUTINES "
+                + "WHERE ROUTINE_SCHEMA = DATABASE() AND ROUTINE_TYPE = 'FUNCTION' AND ROUTINE_NAME = ?";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, function);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                String body = rs.getString(1);
+                return body != null && body.contains(bodyFragment);
+            }
+        }
+    }
+
+    /** Runs the DROP statements undoing what a failed ensureSchema() created; their own failures are added to cause. */
+    public static void undo(Connection connection, List<String> drops, SQLException cause) {
+        for (String drop : drops) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.executeUpdate(drop);
+            } catch (SQLException ex) {
+                cause.addSuppressed(ex);
+            }
+        }
+    }
+
+    private static boolean exists(Connection connection, String sql, String name) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+}
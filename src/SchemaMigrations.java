@@ -0,0 +1,485 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// VERSIONED SCHEMA MIGRATIONS, RECORDED IN schema_version
+// Startup reads the applied versions with one query and is done if every migration is there; only missing
+// ones run, in order, each recorded once it succeeds. create_and_populate.sql fills schema_version for the
+// DDL it runs itself, so the DML-only account of create_app_user.sql can start on such a database. Every
+// migration creates only what is absent, so a database built by an older version of this program (or an
+// older script) is adopted by running them all once, which needs an account with DDL privileges. Optional
+// migrations (triggers and the stored function need privileges some accounts lack) report their failure and
+// are retried on the next start; a required one that fails stops startup.
+public final class SchemaMigrations {
+
+    /** One schema change. */
+    @FunctionalInterface
+    public interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    public record Migration(int version, String description, boolean required, Step step) { }
+
+    /** What migrate() did: versions applied, versions that failed, and how long it took. */
+    public record Result(int latestVersion, List<Integer> applied, List<Integer> failed, long elapsedNanos) {
+        public boolean upToDate() {
+            return applied.isEmpty() && failed.isEmpty();
+        }
+
+        /** After migrate() every migration is in place except the optional ones that failed. */
+        public boolean isApplied(int version) {
+            return !failed.contains(version);
+        }
+
+        @Override
+        public String toString() {
+            if (upToDate()) {
+                return String.format("Schema: version %d, up to date (checked in %.1f ms)", latestVersion, elapsedNanos / 1e6);
+            }
+            return String.format("Schema: applied %s%s in %.1f ms", applied.isEmpty() ? "nothing" : "version(s) " + applied,
+                    failed.isEmpty() ? "" : ", failed " + failed + " (retried next start)", elapsedNanos / 1e6);
+        }
+    }
+
+    private static final String CREATE_VERSION_TABLE = "CREATE TABLE IF NOT EXISTS schema_version ("
+            + "version INT PRIMARY KEY,"
+            + "description VARCHAR(200) NOT NULL,"
+            + "applied_at DATETIME NOT NULL,"
+            + "duration_ms INT NOT NULL)";
+
+    // create_and_populate.sql tables in dependency order
+    private static final String[] CORE_TABLES = {
+            "CREATE TABLE IF NOT EXISTS Person ("
+                    + "person_id INT PRIMARY KEY AUTO_INCREMENT,"
+                    + "first_name VARCHAR(50) NOT NULL,"
+                    + "last_name VARCHAR(50) NOT NULL,"
+                    + "date_of_birth DATETIME NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS Contact ("
+                    + "contact_id INT PRIMARY KEY AUTO_INCREMENT,"
+                    + "person_id INT NOT NULL,"
+                    + "contact_type ENUM('email', 'phone') NOT NULL,"
+                    + "contact_info VARCHAR(100) NOT NULL,"
+                    + "FOREIGN KEY (person_id) REFERENCES Person(person_id) ON DELETE CASCADE)",
+            "CREATE TABLE IF NOT EXISTS StaffRole ("
+                    + "staff_role_id INT PRIMARY KEY AUTO_INCREMENT,"
+                    + "name VARCHAR(50) NOT NULL UNIQUE)",
+            "CREATE TABLE IF NOT EXISTS Specialty ("
+                    + "specialty_id INT PRIMARY KEY AUTO_INCREMENT,"
+                    + "name VARCHAR(50) NOT NULL UNIQUE,"
+                    + "base_visit_fee DECIMAL(10,2) NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS Department ("
+                    + "department_id INT PRIMARY KEY AUTO_INCREMENT,"
+                    + "name VARCHAR(100) NOT NULL,"
+                    + "building_number VARCHAR(10),"
+                    + "floor INT,"
+                    + "capacity INT)",
+            "CREATE TABLE IF NOT EXISTS Patient ("
+                    + "patient_id INT PRIMARY KEY,"
+                    + "insurance_id VARCHAR(50),"
+                    + "notes TEXT,"
+                    + "FOREIGN KEY (patient_id) REFERENCES Person(person_id) ON DELETE CASCADE)",
+            "CREATE TABLE IF NOT EXISTS Staff ("
+                    + "staff_id INT PRIMARY KEY,"
+                    + "staff_role_id INT NOT NULL,"
+                    + "department_id INT NOT NULL,"
+                    + "hire_date DATE NOT NULL,"
+                    + "FOREIGN KEY (staff_id) REFERENCES Person(person_id) ON DELETE CASCADE,"
+                    + "FOREIGN KEY (staff_role_id) REFERENCES StaffRole(staff_role_id),"
+                    + "FOREIGN KEY (department_id) REFERENCES Department(department_id))",
+            "CREATE TABLE IF NOT EXISTS Doctor ("
+                    + "staff_id INT PRIMARY KEY,"
+                    + "specialty_id INT NOT NULL,"
+                    + "license_no VARCHAR(50) UNIQUE,"
+                    + "FOREIGN KEY (staff_id) REFERENCES Staff(staff_id) ON DELETE CASCADE,"
+                    + "FOREIGN KEY (specialty_id) REFERENCES Specialty(specialty_id))",
+            "CREATE TABLE IF NOT EXISTS AppointmentStatus ("
+                    + "status_id INT PRIMARY KEY AUTO_INCREMENT,"
+                    + "status VARCHAR(30) NOT NULL UNIQUE)",
+            "CREATE TABLE IF NOT EXISTS Appointment ("
+                    + "appointment_id INT PRIMARY KEY AUTO_INCREMENT,"
+                    + "patient_id INT NOT NULL,"
+                    + "doctor_id INT NOT NULL,"
+                    + "scheduled_at DATETIME NOT NULL,"
+                    + "reason VARCHAR(255),"
+                    + "status_id INT NOT NULL,"
+                    + "FOREIGN KEY (patient_id) REFERENCES Patient(patient_id),"
+                    + "FOREIGN KEY (doctor_id) REFERENCES Doctor(staff_id),"
+                    + "FOREIGN KEY (status_id) REFERENCES AppointmentStatus(status_id))",
+            "CREATE TABLE IF NOT EXISTS Prescription ("
+                    + "prescription_id INT PRIMARY KEY AUTO_INCREMENT,"
+                    + "patient_id INT NOT NULL,"
+                    + "doctor_id INT NOT NULL,"
+                    + "appointment_id INT,"
+                    + "start_date DATETIME NOT NULL,"
+                    + "end_date DATETIME NOT NULL,"
+                    + "notes TEXT,"
+                    + "FOREIGN KEY (patient_id) REFERENCES Patient(patient_id),"
+                    + "FOREIGN KEY (doctor_id) REFERENCES Doctor(staff_id),"
+                    + "FOREIGN KEY (appointment_id) REFERENCES Appointment(appointment_id))",
+            "CREATE TABLE IF NOT EXISTS Medication ("
+                    + "medication_id INT PRIMARY KEY AUTO_INCREMENT,"
+                    + "name VARCHAR(100) NOT NULL,"
+                    + "unit VARCHAR(20),"
+                    + "unit_price DECIMAL(10,2))",
+            "CREATE TABLE IF NOT EXISTS PrescriptionItem ("
+                    + "prescription_id INT NOT NULL,"
+                    + "order_no INT NOT NULL,"
+                    + "medication_id INT NOT NULL,"
+                    + "dosage VARCHAR(50),"
+                    + "quantity INT,"
+                    + "PRIMARY KEY (prescription_id, order_no),"
+                    + "FOREIGN KEY (prescription_id) REFERENCES Prescription(prescription_id) ON DELETE CASCADE,"
+                    + "FOREIGN KEY (medication_id) REFERENCES Medication(medication_id))",
+            "CREATE TABLE IF NOT EXISTS Service ("
+                    + "service_id INT PRIMARY KEY AUTO_INCREMENT,"
+                    + "code VARCHAR(50) NOT NULL UNIQUE,"
+                    + "description VARCHAR(255),"
+                    + "unit_price DECIMAL(10,2) NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS Bill ("
+                    + "bill_no INT PRIMARY KEY AUTO_INCREMENT,"
+                    + "patient_id INT NOT NULL,"
+                    + "appointment_id INT,"
+                    + "created_at DATETIME DEFAULT CURRENT_TIMESTAMP,"
+                    + "FOREIGN KEY (patient_id) REFERENCES Patient(patient_id),"
+                    + "FOREIGN KEY (appointment_id) REFERENCES Appointment(appointment_id))",
+            "CREATE TABLE IF NOT EXISTS BillItem ("
+                    + "bill_no INT NOT NULL,"
+                    + "order_no INT NOT NULL,"
+                    + "charge_type ENUM('Doctor','Room','Prescription','Medication','Service','Other') NOT NULL,"
+                    + "service_id INT,"
+                    + "description VARCHAR(255),"
+                    + "amount DECIMAL(10,2) NOT NULL,"
+                    + "PRIMARY KEY (bill_no, order_no),"
+                    + "FOREIGN KEY (bill_no) REFERENCES Bill(bill_no) ON DELETE CASCADE,"
+                    + "FOREIGN KEY (service_id) REFERENCES Service(service_id))"
+    };
+
+    // {table, index, DDL}; MySQL has no CREATE INDEX IF NOT EXISTS
+    // Appointment's patient and status indexes are the composite ones of migration 10 (AppointmentSearch)
+    private static final String[][] CORE_INDEXES = {
+            {"Contact", "idx_contact_person", "CREATE INDEX idx_contact_person ON Contact(person_id)"},
+            {"Staff", "idx_staff_dept", "CREATE INDEX idx_staff_dept ON Staff(department_id)"},
+            {"Prescription", "idx_prescription_patient", "CREATE INDEX idx_prescription_patient ON Prescription(patient_id)"},
+            {"Bill", "idx_bill_patient", "CREATE INDEX idx_bill_patient ON Bill(patient_id)"},
+            {"Prescription", "idx_prescription_doctor", "CREATE INDEX idx_prescription_doctor ON Prescription(doctor_id)"},
+            {"BillItem", "idx_billitem_service", "CREATE INDEX idx_billitem_service ON BillItem(service_id)"}
+    };
+
+    private static final String CREATE_BILL_TIMESTAMP_TRIGGER = "CREATE TRIGGER trg_set_bill_timestamp "
+            + "BEFORE INSERT ON Bill FOR EACH ROW "
+            + "SET NEW.created_at = COALESCE(NEW.created_at, NOW())";
+
+    private static final String CREATE_PATIENT_APPOINTMENTS_VIEW = "CREATE OR REPLACE VIEW v_patient_appointments AS "
+            + "SELECT pt.patient_id, p.first_name, p.last_name, a.appointment_id, a.doctor_id, a.scheduled_at, "
+            + "a.reason, ast.status "
+            + "FROM Patient pt "
+            + "JOIN Person p ON p.person_id = pt.patient_id "
+            + "LEFT JOIN Appointment a ON a.patient_id = pt.patient_id "
+            + "LEFT JOIN AppointmentStatus ast ON ast.status_id = a.status_id";
+
+    /** Versions whose derived tables have readers that fall back to aggregating while they are missing. */
+    public static final int BILL_TOTALS = 4;
+    public static final int PATIENT_BALANCE = 5;
+
+    /** Every migration, oldest first. Append new ones with the next version; never renumber or edit applied ones. */
+    public static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Core tables and indexes", true, SchemaMigrations::createCoreTables),
+            new Migration(2, "Appointment statuses, demo patient and demo doctor", true, SchemaMigrations::seedData),
+            new Migration(3, "Bill created_at trigger", false,
+                    connection -> createTriggerIfMissing(connection, "trg_set_bill_timestamp", CREATE_BILL_TIMESTAMP_TRIGGER)),
+            new Migration(BILL_TOTALS, "BillTotals table, triggers and BillSummary view", false, BillSummaryTable::ensureSchema),
+            new Migration(PATIENT_BALANCE, "PatientBalance ledger, triggers and GetPatientBalance function", false,
+                    PatientBalanceLedger::ensureSchema),
+            new Migration(6, "v_patient_appointments view", true,
+                    connection -> execute(connection, CREATE_PATIENT_APPOINTMENTS_VIEW)),
+            new Migration(7, "Appointment (doctor_id, scheduled_at) index", false, DoctorSchedule::ensureSchema),
+            new Migration(8, "ChangeOutbox table", true, ChangeOutbox::ensureSchema),
+            new Migration(9, "PatientNote table", true, PatientNotes::ensureSchema),
+            new Migration(10, "Appointment search indexes", true, AppointmentSearch::ensureSchema)
+    );
+
+    private SchemaMigrations() {
+    }
+
+    // 1. APPLY EVERY MIGRATION NOT YET RECORDED; ONE QUERY WHEN THERE IS NOTHING TO DO
+    public static Result migrate(Connection connection) throws SQLException {
+        long start = System.nanoTime();
+        Set<Integer> done = appliedVersions(connection);
+        List<Integer> applied = new ArrayList<>();
+        List<Integer> failed = new ArrayList<>();
+        for (Migration migration : MIGRATIONS) {
+            if (done.contains(migration.version())) {
+                continue;
+            }
+            long stepStart = System.nanoTime();
+            try {
+                migration.step().apply(connection);
+            } catch (SQLException ex) {
+                if (migration.required()) {
+                    String what = "Migration " + migration.version() + " (" + migration.description() + ")";
+                    throw isPrivilegeError(ex) ? needsAdmin(what, ex)
+                            : new SQLException(what + " failed: " + ex.getMessage(), ex.getSQLState(), ex.getErrorCode(), ex);
+                }
+                System.out.println("Migration " + migration.version() + " (" + migration.description()
+                        + ") failed: " + ex.getMessage());
+                failed.add(migration.version());
+                continue;
+            }
+            record(connection, migration, System.nanoTime() - stepStart);
+            applied.add(migration.version());
+        }
+        return new Result(latestVersion(), applied, failed, System.nanoTime() - start);
+    }
+
+    /** Versions recorded in schema_version, creating the table on first use. */
+    public static Set<Integer> appliedVersions(Connection connection) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version FROM schema_version")) {
+            while (rs.next()) {
+                versions.add(rs.getInt(1));
+            }
+        } catch (SQLException ex) {
+            // Table not found is 42S02 on MySQL but 42102/42104 on H2; confirm through the metadata before creating
+            String state = ex.getSQLState();
+            if (state == null || !state.startsWith("42") || Schema.tableExists(connection, "schema_version")) {
+                throw ex;
+            }
+            try {
+                execute(connection, CREATE_VERSION_TABLE);
+            } catch (SQLException createEx) {
+                throw isPrivilegeError(createEx) ? needsAdmin("Creating schema_version", createEx) : createEx;
+            }
+        }
+        return versions;
+    }
+
+    // MySQL: 1044 no access to the database, 1142 command denied on a table, 1227 needs a global privilege
+    private static boolean isPrivilegeError(SQLException ex) {
+        int code = ex.getErrorCode();
+        return code == 1044 || code == 1142 || code == 1227;
+    }
+
+    // The DML-only account of create_app_user.sql cannot run DDL; say how to get past it instead of the bare error
+    private static SQLException needsAdmin(String what, SQLException ex) {
+        return new SQLException(what + " needs DDL privileges the configured account lacks (" + ex.getMessage() + "). "
+                + "Run the migrations with an admin account: start the program once with a user that has CREATE, "
+                + "ALTER, INDEX, DROP and CREATE VIEW on the schema, or build the database with "
+                + "src/create_and_populate.sql, which records the migrations it contains.",
+                ex.getSQLState(), ex.getErrorCode(), ex);
+    }
+
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version();
+    }
+
+    private static void record(Connection connection, Migration migration, long nanos) throws SQLException {
+        String sql = "INSERT INTO schema_version (version, description, applied_at, duration_ms) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, migration.version());
+            ps.setString(2, migration.description());
+            ps.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            ps.setInt(4, (int) Math.min(Integer.MAX_VALUE, nanos / 1_000_000));
+            ps.executeUpdate();
+        } catch (SQLException ex) {
+            // Another instance starting at the same time recorded it first; the migration is idempotent
+            if (ex.getSQLState() == null || !ex.getSQLState().startsWith("23")) {
+                throw ex;
+            }
+        }
+    }
+
+    private static void createCoreTables(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (String ddl : CORE_TABLES) {
+                stmt.executeUpdate(ddl);
+            }
+            for (String[] index : CORE_INDEXES) {
+                if (!Schema.indexExists(connection, index[0], index[1])) {
+                    stmt.executeUpdate(index[2]);
+                }
+            }
+        }
+    }
+
+    private static void createTriggerIfMissing(Connection connection, String trigger, String ddl) throws SQLException {
+        if (!Schema.triggerExists(connection, trigger)) {
+            execute(connection, ddl);
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+
+    // ========== SEED DATA (MIGRATION 2) ==========
+
+    private static void seedData(Connection connection) throws SQLException {
+        ensureAppointmentStatusesSeed(connection);
+        ensureDemoPatient(connection);
+        ensureDemoDoctor(connection);
+    }
+
+    private static void ensureAppointmentStatusesSeed(Connection connection) throws SQLException {
+        String[] statuses = {"Scheduled", "Completed", "Cancelled"};
+        for (String status : statuses) {
+            if (!valueExists(connection, "SELECT 1 FROM AppointmentStatus WHERE status = ?", status)) {
+                try (PreparedStatement ps = connection.prepareStatement("INSERT INTO AppointmentStatus(status) VALUES (?)")) {
+                    ps.setString(1, status);
+                    ps.executeUpdate();
+                }
+            }
+        }
+    }
+
+    private static void ensureDemoPatient(Connection connection) throws SQLException {
+        final String insurance = "DEMO-INS-001";
+        if (valueExists(connection, "SELECT 1 FROM Patient WHERE insurance_id = ?", insurance)) {
+            return;
+        }
+        int personId = insertPerson(connection, "Demo", "Patient", LocalDate.of(1995, 1, 1));
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO Patient (patient_id, insurance_id, notes) VALUES (?, ?, ?)")) {
+            ps.setInt(1, personId);
+            ps.setString(2, insurance);
+            ps.setString(3, "Auto-generated demo patient");
+            ps.executeUpdate();
+        }
+    }
+
+    private static void ensureDemoDoctor(Connection connection) throws SQLException {
+        final String license = "DEMO-LIC-001";
+        if (valueExists(connection, "SELECT 1 FROM Doctor WHERE license_no = ?", license)) {
+            return;
+        }
+        int staffRoleId = ensureStaffRole(connection, "Doctor");
+        int departmentId = ensureDepartment(connection, "General Medicine", "A", 1, 20);
+        int specialtyId = ensureSpecialty(connection, "General Medicine", new BigDecimal("150.00"));
+        int personId = insertPerson(connection, "Demo", "Doctor", LocalDate.of(1980, 6, 15));
+
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO Staff (staff_id, staff_role_id, department_id, hire_date) VALUES (?, ?, ?, ?)")) {
+            ps.setInt(1, personId);
+            ps.setInt(2, staffRoleId);
+            ps.setInt(3, departmentId);
+            ps.setDate(4, Date.valueOf(LocalDate.now().minusYears(5)));
+            ps.executeUpdate();
+        }
+
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO Doctor (staff_id, specialty_id, license_no) VALUES (?, ?, ?)")) {
+            ps.setInt(1, personId);
+            ps.setInt(2, specialtyId);
+            ps.setString(3, license);
+            ps.executeUpdate();
+        }
+    }
+
+    private static int ensureStaffRole(Connection connection, String name) throws SQLException {
+        String select = "SELECT staff_role_id FROM StaffRole WHERE name = ?";
+        try (PreparedStatement ps = connection.prepareStatement(select)) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+        }
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO StaffRole(name) VALUES (?)", Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, name);
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (keys.next()) {
+                    return keys.getInt(1);
+                }
+            }
+        }
+        throw new SQLException("Could not ensure staff role " + name);
+    }
+
+    private static int ensureDepartment(Connection connection, String name, String building, int floor, int capacity) throws SQLException {
+        String select = "SELECT department_id FROM Department WHERE name = ?";
+        try (PreparedStatement ps = connection.prepareStatement(select)) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+        }
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO Department(name, building_number, floor, capacity) VALUES (?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, name);
+            ps.setString(2, building);
+            ps.setInt(3, floor);
+            ps.setInt(4, capacity);
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (keys.next()) {
+                    return keys.getInt(1);
+                }
+            }
+        }
+        throw new SQLException("Could not ensure department " + name);
+    }
+
+    private static int ensureSpecialty(Connection connection, String name, BigDecimal baseVisitFee) throws SQLException {
+        String select = "SELECT specialty_id FROM Specialty WHERE name = ?";
+        try (PreparedStatement ps = connection.prepareStatement(select)) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+        }
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO Specialty(name, base_visit_fee) VALUES (?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, name);
+            ps.setBigDecimal(2, baseVisitFee);
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (keys.next()) {
+                    return keys.getInt(1);
+                }
+            }
+        }
+        throw new SQLException("Could not ensure specialty " + name);
+    }
+
+    private static int insertPerson(Connection connection, String firstName, String lastName, LocalDate dob) throws SQLException {
+        String sql = "INSERT INTO Person (first_name, last_name, date_of_birth) VALUES (?, ?, ?)";
+        try (PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, firstName);
+            ps.setString(2, lastName);
+            ps.setTimestamp(3, Timestamp.valueOf(dob.atStartOfDay()));
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (keys.next()) {
+                    return keys.getInt(1);
+                }
+            }
+        }
+        throw new SQLException("Could not insert person record");
+    }
+
+    private static boolean valueExists(Connection connection, String sql, String value) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, value);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+}
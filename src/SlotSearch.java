@@ -0,0 +1,138 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// FREE-SLOT SEARCH ACROSS DOCTORS, E.G. "NEXT 10 FREE SLOTS FOR ANY CARDIOLOGY DOCTOR THIS WEEK"
+// Reads the per-doctor, per-day occupancy bitmaps DoctorSchedule maintains on every booking, status change
+// and delete, so a query never touches Appointment. The doctor roster (id, name, specialty) is loaded once
+// and reloaded with refresh().
+public class SlotSearch {
+
+    public record FreeSlot(int doctorId, String doctorName, int specialtyId, LocalDateTime start) {
+        @Override
+        public String toString() {
+            return String.format("%s  Dr. %s (doctor %d, specialty %d)", start, doctorName, doctorId, specialtyId);
+        }
+    }
+
+    // Parallel arrays in doctor_id order; bySpecialty holds positions into them
+    private record Roster(int[] doctorIds, String[] names, int[] specialtyIds, int[] all, IntMap<int[]> bySpecialty) { }
+
+    private final ConnectionPool pool;
+    private final DoctorSchedule schedule;
+    private volatile Roster roster;
+
+    public SlotSearch(ConnectionPool pool, DoctorSchedule schedule) throws SQLException {
+        this.pool = pool;
+        this.schedule = schedule;
+        this.roster = loadRoster(pool);
+    }
+
+    /** Reloads the doctor roster (new doctors, specialty changes). */
+    public void refresh() throws SQLException {
+        roster = loadRoster(pool);
+    }
+
+    private static Roster loadRoster(ConnectionPool pool) throws SQLException {
+        String sql = "SELECT d.staff_id, d.specialty_id, p.first_name, p.last_name "
+                + "FROM Doctor d JOIN Person p ON p.person_id = d.staff_id ORDER BY d.staff_id";
+        List<int[]> rows = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                rows.add(new int[] {rs.getInt(1), rs.getInt(2)});
+                names.add(rs.getString(3) + " " + rs.getString(4));
+            }
+        }
+
+        int n = rows.size();
+        int[] doctorIds = new int[n];
+        int[] specialtyIds = new int[n];
+        int[] all = new int[n];
+        Map<Integer, List<Integer>> groups = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            doctorIds[i] = rows.get(i)[0];
+            specialtyIds[i] = rows.get(i)[1];
+            all[i] = i;
+            groups.computeIfAbsent(specialtyIds[i], k -> new ArrayList<>()).add(i);
+        }
+        IntMap.Builder<int[]> bySpecialty = IntMap.builder();
+        for (Map.Entry<Integer, List<Integer>> group : groups.entrySet()) {
+            bySpecialty.put(group.getKey(), group.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return new Roster(doctorIds, names.toArray(new String[0]), specialtyIds, all, bySpecialty.build());
+    }
+
+    /**
+     * The earliest free slots starting in [from, to), in time order (then doctor_id), at most {@code limit}.
+     *
+     * @param specialtyId only doctors of this specialty; null for every doctor
+     */
+    public List<FreeSlot> search(Integer specialtyId, LocalDateTime from, LocalDateTime to, int limit) {
+        Roster r = roster;
+        int[] members = specialtyId == null ? r.all() : r.bySpecialty().get(specialtyId);
+        List<FreeSlot> found = new ArrayList<>(Math.min(limit, 64));
+        if (members == null || members.length == 0 || limit <= 0) {
+            return found;
+        }
+        // Days before the index horizon would look empty; they are not searched
+        LocalDateTime indexedFrom = schedule.indexedFrom();
+        if (from.isBefore(indexedFrom)) {
+            from = indexedFrom;
+        }
+
+        long[] free = new long[members.length];
+        for (LocalDate day = from.toLocalDate(); day.atStartOfDay().isBefore(to); day = day.plusDays(1)) {
+            long window = windowMask(day, from, to);
+            if (window == 0) {
+                continue;
+            }
+            long anyFree = 0;
+            for (int i = 0; i < members.length; i++) {
+                free[i] = ~schedule.busySlots(r.doctorIds()[members[i]], day) & window;
+                anyFree |= free[i];
+            }
+            // Walk the day's slots in time order; within a slot, doctors in doctor_id order
+            for (long slots = anyFree; slots != 0; slots &= slots - 1) {
+                int k = Long.numberOfTrailingZeros(slots);
+                LocalDateTime start = schedule.slotStart(day, k);
+                for (int i = 0; i < members.length; i++) {
+                    if ((free[i] & (1L << k)) != 0) {
+                        int d = members[i];
+                        found.add(new FreeSlot(r.doctorIds()[d], r.names()[d], r.specialtyIds()[d], start));
+                        if (found.size() == limit) {
+                            return found;
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Number of doctors in the roster. */
+    public int doctorCount() {
+        return roster.doctorIds().length;
+    }
+
+    // Grid slots of day that start in [from, to)
+    private long windowMask(LocalDate day, LocalDateTime from, LocalDateTime to) {
+        long mask = 0;
+        for (int k = 0; k < schedule.slotsPerDay(); k++) {
+            LocalDateTime start = schedule.slotStart(day, k);
+            if (!start.isBefore(from) && start.isBefore(to)) {
+                mask |= 1L << k;
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,169 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// PER-CONNECTION LRU CACHE OF PREPARED STATEMENTS, KEYED BY SQL TEXT
+public class StatementCache {
+
+    /**
+     * Hit/miss/eviction totals, shared by every cache in a pool.
+     */
+    public static final class Counters {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        public long hits() {
+            return hits.sum();
+        }
+
+        public long misses() {
+            return misses.sum();
+        }
+
+        public long evictions() {
+            return evictions.sum();
+        }
+
+        public double hitRatio() {
+            long h = hits(), total = h + misses();
+            return total == 0 ? 0 : h / (double) total;
+        }
+    }
+
+    private record Key(String sql, int autoGeneratedKeys) { }
+
+    private static final class Entry {
+        private final PreparedStatement statement;
+        // The driver's defaults, restored on release so one caller's settings never reach the next
+        private final int fetchSize;
+        private final int maxRows;
+        private final int queryTimeout;
+        private boolean inUse;
+
+        Entry(PreparedStatement statement) throws SQLException {
+            this.statement = statement;
+            this.fetchSize = statement.getFetchSize();
+            this.maxRows = statement.getMaxRows();
+            this.queryTimeout = statement.getQueryTimeout();
+        }
+    }
+
+    private final Connection physical;
+    private final int maxSize;
+    private final Counters counters;
+    // Access order: iteration starts at the least recently used statement
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public StatementCache(Connection physical, int maxSize, Counters counters) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.counters = counters;
+    }
+
+    /**
+     * Returns the cached statement for this SQL (or prepares and caches it).
+     * If the cached one is still checked out, e.g. the same query nested inside its own result loop,
+     * a throwaway statement is prepared instead and {@link #release} closes it.
+     */
+    public synchronized PreparedStatement checkout(String sql, int autoGeneratedKeys) throws SQLException {
+        Key key = new Key(sql, autoGeneratedKeys);
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.inUse) {
+            counters.hits.increment();
+            entry.inUse = true;
+            return entry.statement;
+        }
+        counters.misses.increment();
+        PreparedStatement statement = physical.prepareStatement(sql, autoGeneratedKeys);
+        if (entry == null) {
+            Entry created;
+            try {
+                created = new Entry(statement);
+            } catch (SQLException ex) {
+                closeQuietly(statement);
+                throw ex;
+            }
+            created.inUse = true;
+            entries.put(key, created);
+            evictOverflow();
+        }
+        return statement;
+    }
+
+    /**
+     * Called instead of close(): resets the statement for the next caller, or closes it if it is not cached.
+     */
+    public synchronized void release(String sql, int autoGeneratedKeys, PreparedStatement statement) {
+        Entry entry = entries.get(new Key(sql, autoGeneratedKeys));
+        if (entry == null || entry.statement != statement) {
+            closeQuietly(statement);
+            return;
+        }
+        try {
+            reset(entry);
+            entry.inUse = false;
+        } catch (SQLException ex) {
+            entries.remove(new Key(sql, autoGeneratedKeys));
+            closeQuietly(statement);
+            return;
+        }
+        // Statements that were in use when the cache overflowed are evicted now that one is free
+        evictOverflow();
+    }
+
+    /** Statements currently cached, in use or not. */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            closeQuietly(entry.statement);
+        }
+        entries.clear();
+    }
+
+    // Batched rows that were never executed would otherwise run in the next caller's executeBatch()
+    private static void reset(Entry entry) throws SQLException {
+        PreparedStatement statement = entry.statement;
+        statement.clearParameters();
+        statement.clearBatch();
+        statement.clearWarnings();
+        // Max rows first: some drivers reject a fetch size above the current max rows
+        if (statement.getMaxRows() != entry.maxRows) {
+            statement.setMaxRows(entry.maxRows);
+        }
+        if (statement.getFetchSize() != entry.fetchSize) {
+            statement.setFetchSize(entry.fetchSize);
+        }
+        if (statement.getQueryTimeout() != entry.queryTimeout) {
+            statement.setQueryTimeout(entry.queryTimeout);
+        }
+    }
+
+    // Closes least recently used statements that nobody holds until the cache is back within maxSize
+    private void evictOverflow() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            Entry entry = it.next();
+            if (!entry.inUse) {
+                it.remove();
+                counters.evictions.increment();
+                closeQuietly(entry.statement);
+            }
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+            // nothing useful to do with a failed close
+        }
+    }
+}
@@ -0,0 +1,361 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Locale;
+
+// ROW-AT-A-TIME OUTPUT FOR ONE TABLE: MULTI-ROW INSERTS OVER JDBC, OR A CSV FILE FOR LOAD DATA INFILE
+// Values are appended column by column and each row is closed with end():
+//   writer.integer(id).string(name).dateTime(dob).end();
+public abstract class TableWriter implements AutoCloseable {
+
+    protected final String table;
+    protected final String[] columns;
+    private long rows;
+
+    protected TableWriter(String table, String[] columns) {
+        this.table = table;
+        this.columns = columns.clone();
+    }
+
+    /**
+     * Buffers rows and inserts them {@code rowsPerStatement} at a time with one multi-row INSERT.
+     * Before each INSERT the parent writer (the table this one has a foreign key to) is flushed,
+     * so rows can be generated in any interleaving without breaking FK checks.
+     */
+    public static TableWriter jdbc(Connection connection, int rowsPerStatement, TableWriter parent,
+                                   String table, String... columns) {
+        return new Jdbc(connection, rowsPerStatement, (Jdbc) parent, table, columns);
+    }
+
+    /** Writes {@code <dir>/<table>.csv} in the format {@link #loadDataStatement()} expects. */
+    public static TableWriter csv(Path dir, String table, String... columns) throws IOException {
+        Files.createDirectories(dir);
+        Path file = dir.resolve(table.toLowerCase(Locale.ROOT) + ".csv").toAbsolutePath();
+        return new Csv(file, Files.newBufferedWriter(file, StandardCharsets.UTF_8), table, columns);
+    }
+
+    /** Writes the same CSV format to {@code out} (e.g. a compressed file); closing the writer closes out. */
+    public static TableWriter csv(Writer out, String table, String... columns) {
+        return new Csv(null, out, table, columns);
+    }
+
+    public abstract TableWriter integer(int value) throws SQLException, IOException;
+
+    /** A nullable INT column. */
+    public TableWriter integer(Integer value) throws SQLException, IOException {
+        return value == null ? nullValue() : integer(value.intValue());
+    }
+
+    public abstract TableWriter string(String value) throws SQLException, IOException;
+
+    public abstract TableWriter date(LocalDate value) throws SQLException, IOException;
+
+    public abstract TableWriter dateTime(LocalDateTime value) throws SQLException, IOException;
+
+    /** A DECIMAL(_, 2) column given in cents. */
+    public abstract TableWriter money(long cents) throws SQLException, IOException;
+
+    public abstract TableWriter nullValue() throws SQLException, IOException;
+
+    /** Completes the current row. */
+    public void end() throws SQLException, IOException {
+        rows++;
+        endRow();
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    public String table() {
+        return table;
+    }
+
+    /** Sends any buffered rows on. */
+    public abstract void flush() throws SQLException, IOException;
+
+    @Override
+    public abstract void close() throws SQLException, IOException;
+
+    protected abstract void endRow() throws SQLException, IOException;
+
+    /** MySQL statement that loads this writer's CSV file; only CSV writers have one. */
+    public String loadDataStatement() {
+        throw new UnsupportedOperationException(table + " is not written to a file");
+    }
+
+    // ---------- JDBC ----------
+
+    private static final class Jdbc extends TableWriter {
+        private final Connection connection;
+        private final int rowsPerStatement;
+        private final Jdbc parent;
+        private final Object[] buffer;
+        private int filled; // values in buffer
+        private PreparedStatement fullBatch;
+
+        Jdbc(Connection connection, int rowsPerStatement, Jdbc parent, String table, String[] columns) {
+            super(table, columns);
+            if (rowsPerStatement < 1) {
+                throw new IllegalArgumentException("rowsPerStatement must be at least 1");
+            }
+            this.connection = connection;
+            this.rowsPerStatement = rowsPerStatement;
+            this.parent = parent;
+            this.buffer = new Object[rowsPerStatement * columns.length];
+        }
+
+        @Override
+        public TableWriter integer(int value) {
+            return add(value);
+        }
+
+        @Override
+        public TableWriter string(String value) {
+            return add(value);
+        }
+
+        @Override
+        public TableWriter date(LocalDate value) {
+            return add(value == null ? null : Date.valueOf(value));
+        }
+
+        @Override
+        public TableWriter dateTime(LocalDateTime value) {
+            return add(value == null ? null : Timestamp.valueOf(value));
+        }
+
+        @Override
+        public TableWriter money(long cents) {
+            return add(BigDecimal.valueOf(cents, 2));
+        }
+
+        @Override
+        public TableWriter nullValue() {
+            return add(null);
+        }
+
+        private TableWriter add(Object value) {
+            buffer[filled++] = value;
+            return this;
+        }
+
+        @Override
+        protected void endRow() throws SQLException {
+            if (filled % columns.length != 0) {
+                throw new IllegalStateException(table + ": row ended after " + (filled % columns.length)
+                        + " of " + columns.length + " values");
+            }
+            if (filled == buffer.length) {
+                flush();
+            }
+        }
+
+        @Override
+        public void flush() throws SQLException {
+            if (parent != null) {
+                parent.flush();
+            }
+            int rowCount = filled / columns.length;
+            if (rowCount == 0) {
+                return;
+            }
+            if (rowCount == rowsPerStatement) {
+                if (fullBatch == null) {
+                    fullBatch = connection.prepareStatement(insertSql(rowCount));
+                }
+                bindAndExecute(fullBatch);
+            } else {
+                try (PreparedStatement ps = connection.prepareStatement(insertSql(rowCount))) {
+                    bindAndExecute(ps);
+                }
+            }
+            Arrays.fill(buffer, 0, filled, null);
+            filled = 0;
+        }
+
+        private void bindAndExecute(PreparedStatement ps) throws SQLException {
+            for (int i = 0; i < filled; i++) {
+                Object value = buffer[i];
+                if (value == null) {
+                    ps.setNull(i + 1, Types.NULL);
+                } else if (value instanceof Integer v) {
+                    ps.setInt(i + 1, v);
+                } else if (value instanceof String v) {
+                    ps.setString(i + 1, v);
+                } else if (value instanceof Timestamp v) {
+                    ps.setTimestamp(i + 1, v);
+                } else if (value instanceof Date v) {
+                    ps.setDate(i + 1, v);
+                } else {
+                    ps.setBigDecimal(i + 1, (BigDecimal) value);
+                }
+            }
+            ps.executeUpdate();
+        }
+
+        private String insertSql(int rowCount) {
+            String row = "(?" + ", ?".repeat(columns.length - 1) + ")";
+            StringBuilder sql = new StringBuilder(64 + rowCount * (row.length() + 2))
+                    .append("INSERT INTO ").append(table)
+                    .append(" (").append(String.join(", ", columns)).append(") VALUES ");
+            for (int i = 0; i < rowCount; i++) {
+                sql.append(i == 0 ? "" : ", ").append(row);
+            }
+            return sql.toString();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                flush();
+            } finally {
+                if (fullBatch != null) {
+                    fullBatch.close();
+                }
+            }
+        }
+    }
+
+    // ---------- CSV ----------
+
+    // Fields separated by ',', strings in double quotes with '"' and '\' escaped by '\', NULL written as \N
+    private static final class Csv extends TableWriter {
+        private final Path file;
+        private final Writer out;
+        private final StringBuilder line = new StringBuilder(256);
+
+        // file is null when writing to a stream of unknown destination
+        Csv(Path file, Writer out, String table, String[] columns) {
+            super(table, columns);
+            this.file = file;
+            this.out = out;
+        }
+
+        @Override
+        public TableWriter integer(int value) {
+            separator().append(value);
+            return this;
+        }
+
+        @Override
+        public TableWriter string(String value) {
+            if (value == null) {
+                return nullValue();
+            }
+            separator().append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"', '\\' -> line.append('\\').append(c);
+                    case '\n' -> line.append("\\n");
+                    case '\r' -> line.append("\\r");
+                    default -> line.append(c);
+                }
+            }
+            line.append('"');
+            return this;
+        }
+
+        @Override
+        public TableWriter date(LocalDate value) {
+            if (value == null) {
+                return nullValue();
+            }
+            separator();
+            appendDate(value);
+            return this;
+        }
+
+        @Override
+        public TableWriter dateTime(LocalDateTime value) {
+            if (value == null) {
+                return nullValue();
+            }
+            separator();
+            appendDate(value.toLocalDate()).append(' ');
+            pad2(value.getHour()).append(':');
+            pad2(value.getMinute()).append(':');
+            pad2(value.getSecond());
+            return this;
+        }
+
+        @Override
+        public TableWriter money(long cents) {
+            separator();
+            if (cents < 0) {
+                line.append('-');
+                cents = -cents;
+            }
+            line.append(cents / 100).append('.');
+            pad2((int) (cents % 100));
+            return this;
+        }
+
+        @Override
+        public TableWriter nullValue() {
+            separator().append("\\N");
+            return this;
+        }
+
+        private StringBuilder separator() {
+            if (!line.isEmpty()) {
+                line.append(',');
+            }
+            return line;
+        }
+
+        // java.time formatting allocates per call; these run for every row of a multi-GB file
+        private StringBuilder appendDate(LocalDate date) {
+            line.append(date.getYear()).append('-');
+            pad2(date.getMonthValue()).append('-');
+            return pad2(date.getDayOfMonth());
+        }
+
+        private StringBuilder pad2(int value) {
+            return line.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+        }
+
+        @Override
+        protected void endRow() throws IOException {
+            line.append('\n');
+            out.append(line);
+            line.setLength(0);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        @Override
+        public String loadDataStatement() {
+            if (file == null) {
+                return super.loadDataStatement();
+            }
+            return "LOAD DATA LOCAL INFILE '" + file.toString().replace("\\", "/") + "'\n"
+                    + "    INTO TABLE " + table + "\n"
+                    + "    CHARACTER SET utf8mb4\n"
+                    + "    FIELDS TERMINATED BY ',' OPTIONALLY ENCLOSED BY '\"' ESCAPED BY '\\\\'\n"
+                    + "    LINES TERMINATED BY '\\n'\n"
+                    + "    (" + String.join(", ", columns) + ");";
+        }
+    }
+}
@@ -7,8 +7,14 @@ CREATE DATABASE IF NOT EXISTS Hospital;
 USE Hospital;
 
 SET FOREIGN_KEY_CHECKS = 0;
+DROP TABLE IF EXISTS schema_version;
+DROP TABLE IF EXISTS ChangeOutbox;
 DROP TRIGGER IF EXISTS trg_set_bill_timestamp;
+DROP VIEW IF EXISTS v_patient_appointments;
 DROP VIEW IF EXISTS BillSummary;
+DROP TABLE IF EXISTS BillTotals;
+DROP TABLE IF EXISTS PatientBalance;
+DROP TABLE IF EXISTS PatientNote;
 DROP FUNCTION IF EXISTS GetPatientBalance;
 DROP TABLE IF EXISTS BillItem;
 DROP TABLE IF EXISTS Bill;
@@ -122,8 +128,13 @@ CREATE TABLE Appointment (
     FOREIGN KEY (status_id) REFERENCES AppointmentStatus(status_id)
 );
 
-CREATE INDEX idx_appt_patient ON Appointment(patient_id);
-CREATE INDEX idx_appt_doctor ON Appointment(doctor_id);
+-- Appointment search (AppointmentSearch): one index per leading filter, each continuing with
+-- (scheduled_at, appointment_id) so that every page is a range scan in keyset order
+CREATE INDEX idx_appt_patient_time ON Appointment(patient_id, scheduled_at, appointment_id);
+-- Also serves the double-booking check (DoctorSchedule)
+CREATE INDEX idx_appt_doctor_time ON Appointment(doctor_id, scheduled_at, appointment_id);
+CREATE INDEX idx_appt_status_time ON Appointment(status_id, scheduled_at, appointment_id);
+CREATE INDEX idx_appt_time ON Appointment(scheduled_at, appointment_id);
 
 -- 11. PRESCRIPTION
 CREATE TABLE Prescription (
@@ -210,45 +221,224 @@ SET NEW.created_at = COALESCE(NEW.created_at, NOW());
 -- INDEX EXAMPLES
 -- ======================
 
-CREATE INDEX idx_appointment_status ON Appointment(status_id);
 CREATE INDEX idx_prescription_doctor ON Prescription(doctor_id);
 CREATE INDEX idx_billitem_service ON BillItem(service_id);
 
+-- ======================
+-- MAINTAINED BILL TOTALS
+-- ======================
+
+-- One row per bill with a running item count and total, kept current by the triggers below
+-- (the billing dashboard reads it instead of aggregating BillItem on every request).
+-- Deleting a bill removes its row via the FK cascade.
+CREATE TABLE BillTotals (
+    bill_no INT PRIMARY KEY,
+    patient_id INT NOT NULL,
+    appointment_id INT,
+    created_at DATETIME,
+    item_count INT NOT NULL DEFAULT 0,
+    total_amount DECIMAL(12,2) NOT NULL DEFAULT 0,
+    FOREIGN KEY (bill_no) REFERENCES Bill(bill_no)
+        ON DELETE CASCADE ON UPDATE CASCADE
+);
+
+CREATE INDEX idx_billtotals_patient ON BillTotals(patient_id);
+
+CREATE TRIGGER trg_billtotals_bill_insert
+AFTER INSERT ON Bill
+FOR EACH ROW
+INSERT INTO BillTotals (bill_no, patient_id, appointment_id, created_at, item_count, total_amount)
+VALUES (NEW.bill_no, NEW.patient_id, NEW.appointment_id, NEW.created_at, 0, 0);
+
+CREATE TRIGGER trg_billtotals_bill_update
+AFTER UPDATE ON Bill
+FOR EACH ROW
+UPDATE BillTotals
+   SET patient_id = NEW.patient_id, appointment_id = NEW.appointment_id, created_at = NEW.created_at
+ WHERE bill_no = NEW.bill_no;
+
+CREATE TRIGGER trg_billtotals_item_insert
+AFTER INSERT ON BillItem
+FOR EACH ROW
+UPDATE BillTotals
+   SET item_count = item_count + 1, total_amount = total_amount + NEW.amount
+ WHERE bill_no = NEW.bill_no;
+
+DELIMITER //
+CREATE TRIGGER trg_billtotals_item_update
+AFTER UPDATE ON BillItem
+FOR EACH ROW
+BEGIN
+    UPDATE BillTotals
+       SET item_count = item_count - 1, total_amount = total_amount - OLD.amount
+     WHERE bill_no = OLD.bill_no;
+    UPDATE BillTotals
+       SET item_count = item_count + 1, total_amount = total_amount + NEW.amount
+     WHERE bill_no = NEW.bill_no;
+END;//
+DELIMITER ;
+
+CREATE TRIGGER trg_billtotals_item_delete
+AFTER DELETE ON BillItem
+FOR EACH ROW
+UPDATE BillTotals
+   SET item_count = item_count - 1, total_amount = total_amount - OLD.amount
+ WHERE bill_no = OLD.bill_no;
+
 -- ======================
 -- VIEW FOR REPORTING
 -- ======================
+-- Same columns as before, now read from the maintained totals
 CREATE VIEW BillSummary AS
-SELECT b.bill_no,
-       b.patient_id,
+SELECT t.bill_no,
+       t.patient_id,
        p.first_name,
        p.last_name,
-       b.appointment_id,
-       b.created_at,
-       COALESCE(SUM(bi.amount), 0) AS total_amount
-FROM Bill b
-JOIN Patient pt ON pt.patient_id = b.patient_id
-JOIN Person p ON p.person_id = pt.patient_id
-LEFT JOIN BillItem bi ON bi.bill_no = b.bill_no
-GROUP BY b.bill_no, b.patient_id, p.first_name, p.last_name, b.appointment_id, b.created_at;
+       t.appointment_id,
+       t.created_at,
+       t.total_amount
+FROM BillTotals t
+JOIN Person p ON p.person_id = t.patient_id;
 
 -- ======================
--- FUNCTION FOR BILL TOTALS
+-- PATIENT BALANCE LEDGER
 -- ======================
+
+-- Running balance per patient, adjusted by the triggers below in the same transaction as the
+-- BillItem write. Patients without billed items have no row (balance 0.00).
+CREATE TABLE PatientBalance (
+    patient_id INT PRIMARY KEY,
+    balance DECIMAL(12,2) NOT NULL DEFAULT 0,
+    FOREIGN KEY (patient_id) REFERENCES Patient(patient_id)
+        ON DELETE CASCADE
+);
+
+CREATE TRIGGER trg_balance_item_insert
+AFTER INSERT ON BillItem
+FOR EACH ROW
+INSERT INTO PatientBalance (patient_id, balance)
+SELECT patient_id, NEW.amount FROM Bill WHERE bill_no = NEW.bill_no
+ON DUPLICATE KEY UPDATE balance = balance + NEW.amount;
+
 DELIMITER //
-CREATE FUNCTION GetPatientBalance(p_patient_id INT)
-RETURNS DECIMAL(10,2)
-DETERMINISTIC
+CREATE TRIGGER trg_balance_item_update
+AFTER UPDATE ON BillItem
+FOR EACH ROW
 BEGIN
-    DECLARE total DECIMAL(10,2);
-    SELECT COALESCE(SUM(bi.amount), 0)
-      INTO total
-      FROM Bill b
-      LEFT JOIN BillItem bi ON bi.bill_no = b.bill_no
-     WHERE b.patient_id = p_patient_id;
-    RETURN total;
+    UPDATE PatientBalance
+       SET balance = balance - OLD.amount
+     WHERE patient_id = (SELECT patient_id FROM Bill WHERE bill_no = OLD.bill_no);
+    INSERT INTO PatientBalance (patient_id, balance)
+    SELECT patient_id, NEW.amount FROM Bill WHERE bill_no = NEW.bill_no
+    ON DUPLICATE KEY UPDATE balance = balance + NEW.amount;
 END;//
 DELIMITER ;
 
+CREATE TRIGGER trg_balance_item_delete
+AFTER DELETE ON BillItem
+FOR EACH ROW
+UPDATE PatientBalance
+   SET balance = balance - OLD.amount
+ WHERE patient_id = (SELECT patient_id FROM Bill WHERE bill_no = OLD.bill_no);
+
+-- Deleting a bill cascades to its items without firing their triggers
+CREATE TRIGGER trg_balance_bill_delete
+BEFORE DELETE ON Bill
+FOR EACH ROW
+UPDATE PatientBalance
+   SET balance = balance - (SELECT COALESCE(SUM(amount), 0) FROM BillItem WHERE bill_no = OLD.bill_no)
+ WHERE patient_id = OLD.patient_id;
+
+DELIMITER //
+CREATE TRIGGER trg_balance_bill_update
+AFTER UPDATE ON Bill
+FOR EACH ROW
+BEGIN
+    IF NEW.patient_id <> OLD.patient_id THEN
+        UPDATE PatientBalance
+           SET balance = balance - (SELECT COALESCE(SUM(amount), 0) FROM BillItem WHERE bill_no = NEW.bill_no)
+         WHERE patient_id = OLD.patient_id;
+        INSERT INTO PatientBalance (patient_id, balance)
+        SELECT NEW.patient_id, COALESCE(SUM(amount), 0) FROM BillItem WHERE bill_no = NEW.bill_no
+        ON DUPLICATE KEY UPDATE balance = balance + VALUES(balance);
+    END IF;
+END;//
+DELIMITER ;
+
+-- ======================
+-- FUNCTION FOR BILL TOTALS
+-- ======================
+-- Reads the ledger row instead of aggregating every bill of the patient
+CREATE FUNCTION GetPatientBalance(p_patient_id INT)
+RETURNS DECIMAL(12,2)
+READS SQL DATA
+RETURN COALESCE((SELECT balance FROM PatientBalance WHERE patient_id = p_patient_id), 0);
+
+-- ======================
+-- PATIENT NOTES
+-- ======================
+-- Append-only: one row per note, so adding a note never rewrites the patient's earlier ones
+-- (Patient.notes keeps the intake notes).
+CREATE TABLE PatientNote (
+    note_id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    patient_id INT NOT NULL,
+    written_at DATETIME(3) NOT NULL,
+    source VARCHAR(30) NOT NULL,
+    note TEXT NOT NULL,
+    FOREIGN KEY (patient_id) REFERENCES Patient(patient_id)
+        ON DELETE CASCADE
+);
+
+CREATE INDEX idx_patientnote_patient ON PatientNote(patient_id, note_id);
+
+-- ======================
+-- CHANGE OUTBOX
+-- ======================
+-- Change events written in the same transaction as the change (outbox.enabled), relayed after commit
+CREATE TABLE ChangeOutbox (
+    event_id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    entity VARCHAR(20) NOT NULL,
+    entity_id INT NOT NULL,
+    operation VARCHAR(10) NOT NULL,
+    payload TEXT NOT NULL,
+    created_at DATETIME(3) NOT NULL
+);
+
+-- ======================
+-- VIEW OF PATIENT APPOINTMENTS
+-- ======================
+CREATE VIEW v_patient_appointments AS
+SELECT pt.patient_id, p.first_name, p.last_name, a.appointment_id, a.doctor_id, a.scheduled_at,
+       a.reason, ast.status
+FROM Patient pt
+JOIN Person p ON p.person_id = pt.patient_id
+LEFT JOIN Appointment a ON a.patient_id = pt.patient_id
+LEFT JOIN AppointmentStatus ast ON ast.status_id = a.status_id;
+
+-- ======================
+-- SCHEMA VERSION
+-- ======================
+-- Migrations (SchemaMigrations) whose DDL this script has already run. The program then starts with the
+-- DML-only account of create_app_user.sql: it only applies migration 2 (demo patient and doctor, plain
+-- INSERTs) on its first start.
+CREATE TABLE schema_version (
+    version INT PRIMARY KEY,
+    description VARCHAR(200) NOT NULL,
+    applied_at DATETIME NOT NULL,
+    duration_ms INT NOT NULL
+);
+
+INSERT INTO schema_version (version, description, applied_at, duration_ms) VALUES
+(1, 'Core tables and indexes', NOW(), 0),
+(3, 'Bill created_at trigger', NOW(), 0),
+(4, 'BillTotals table, triggers and BillSummary view', NOW(), 0),
+(5, 'PatientBalance ledger, triggers and GetPatientBalance function', NOW(), 0),
+(6, 'v_patient_appointments view', NOW(), 0),
+(7, 'Appointment (doctor_id, scheduled_at) index', NOW(), 0),
+(8, 'ChangeOutbox table', NOW(), 0),
+(9, 'PatientNote table', NOW(), 0),
+(10, 'Appointment search indexes', NOW(), 0);
+
 -- ======================
 -- SAMPLE DATA
 -- ======================
@@ -0,0 +1,91 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// H2 cannot create the MySQL triggers, so migrations 4 and 5 fail here as on an account without TRIGGER
+class BillingTotalsTest {
+
+    private ConnectionPool pool;
+    private int patientId;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        pool = TestDatabase.migrated();
+        patientId = firstId("SELECT MIN(patient_id) FROM Patient");
+        TestDatabase.execute(pool,
+                "INSERT INTO Bill (bill_no, patient_id) VALUES (1, " + patientId + "), (2, " + patientId + ")",
+                "INSERT INTO BillItem (bill_no, order_no, charge_type, amount) VALUES "
+                        + "(1, 1, 'Doctor', 100.00), (1, 2, 'Service', 250.00), (2, 1, 'Other', 5.50)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void failedTriggerMigrationLeavesNoTablesBehind() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            SchemaMigrations.Result result = SchemaMigrations.migrate(connection);
+            assertFalse(result.isApplied(SchemaMigrations.BILL_TOTALS));
+            assertFalse(result.isApplied(SchemaMigrations.PATIENT_BALANCE));
+            assertTrue(result.isApplied(SchemaMigrations.latestVersion()));
+            assertFalse(Schema.tableExists(connection, "BillTotals"));
+            assertFalse(Schema.tableExists(connection, "PatientBalance"));
+        }
+    }
+
+    @Test
+    void billSummariesAreAggregatedWhileUnmaintained() throws SQLException {
+        BillSummaryTable summaries = new BillSummaryTable(pool, false);
+        List<BillSummary> bills = summaries.listForPatient(patientId);
+        assertEquals(2, bills.size());
+        assertEquals(2, bills.get(0).itemCount());
+        assertEquals(new BigDecimal("350.00"), bills.get(0).totalAmount());
+
+        List<BillSummary> latest = summaries.listLatest(null, 1);
+        assertEquals(1, latest.size());
+        assertEquals(2, latest.get(0).billNo());
+        assertEquals(new BigDecimal("5.50"), latest.get(0).totalAmount());
+    }
+
+    @Test
+    void balancesAreSummedWhileUnmaintained() throws SQLException {
+        PatientBalanceLedger ledger = new PatientBalanceLedger(pool, false);
+        assertEquals(new BigDecimal("355.50"), ledger.balanceOf(patientId));
+        // No bills reads as zero, as a missing ledger row does
+        assertEquals(BigDecimal.ZERO.setScale(2), ledger.balanceOf(patientId + 1000));
+    }
+
+    @Test
+    void dashboardAggregatesWhileUnmaintained() throws SQLException {
+        PatientDashboardQuery query = new PatientDashboardQuery(pool, new ReferenceData(pool, Duration.ofMinutes(5)),
+                new BillSummaryTable(pool, false), new PatientBalanceLedger(pool, false));
+        PatientDashboard dashboard = query.load(patientId, 5, 5).orElseThrow();
+        assertEquals(new BigDecimal("355.50"), dashboard.balance());
+        assertEquals(2, dashboard.recentBills().size());
+        assertEquals(2, dashboard.recentBills().get(0).billNo());
+        assertEquals(1, dashboard.recentBills().get(1).billNo());
+        assertEquals(2, dashboard.recentBills().get(1).itemCount());
+    }
+
+    private int firstId(String sql) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
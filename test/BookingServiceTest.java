@@ -0,0 +1,177 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BookingServiceTest {
+
+    private ConnectionPool pool;
+    private BookingService service;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        pool = TestDatabase.pool();
+        TestDatabase.execute(pool, "CREATE TABLE item (id INT PRIMARY KEY)");
+        service = new BookingService(pool, null, null, null, 3, Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void commitsOnTheFirstAttempt() throws SQLException {
+        BookingService.Outcome<Integer> outcome = service.execute(connection -> insert(connection, 1));
+        assertEquals(1, outcome.value());
+        assertEquals(1, outcome.attempts());
+        assertEquals(0, outcome.retries());
+        assertEquals(1, count());
+        assertEquals(1, service.stats().committed());
+    }
+
+    @Test
+    void deadlockIsRetriedAndTheFailedAttemptRolledBack() throws SQLException {
+        AtomicInteger calls = new AtomicInteger();
+        BookingService.Outcome<Integer> outcome = service.execute(connection -> {
+            int attempt = calls.incrementAndGet();
+            insert(connection, attempt);
+            if (attempt < 3) {
+                throw deadlock();
+            }
+            return attempt;
+        });
+        assertEquals(3, outcome.attempts());
+        assertEquals(2, outcome.retries());
+        // Only the committed attempt's row is left
+        assertEquals(1, count());
+        assertEquals(2, service.stats().retries());
+        assertEquals(0, service.stats().failed());
+    }
+
+    @Test
+    void lockWaitTimeoutIsRetried() throws SQLException {
+        AtomicInteger calls = new AtomicInteger();
+        BookingService.Outcome<Integer> outcome = service.execute(connection -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new SQLException("Lock wait timeout exceeded", "HY000", 1205);
+            }
+            return insert(connection, 1);
+        });
+        assertEquals(2, outcome.attempts());
+    }
+
+    @Test
+    void deadlockWrappedAsTheCauseIsRetried() throws SQLException {
+        AtomicInteger calls = new AtomicInteger();
+        BookingService.Outcome<Integer> outcome = service.execute(connection -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new BatchUpdateException("Batch failed", new int[0], deadlock());
+            }
+            return insert(connection, 1);
+        });
+        assertEquals(2, outcome.attempts());
+    }
+
+    @Test
+    void otherErrorsAreRethrownWithoutRetry() throws SQLException {
+        AtomicInteger calls = new AtomicInteger();
+        SQLException duplicate = new SQLException("Duplicate entry", "23000", 1062);
+        SQLException thrown = assertThrows(SQLException.class, () -> service.execute(connection -> {
+            calls.incrementAndGet();
+            insert(connection, 1);
+            throw duplicate;
+        }));
+        assertSame(duplicate, thrown);
+        assertEquals(1, calls.get());
+        assertEquals(0, count());
+        assertEquals(1, service.stats().failed());
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        AtomicInteger calls = new AtomicInteger();
+        SQLException thrown = assertThrows(SQLException.class, () -> service.execute(connection -> {
+            calls.incrementAndGet();
+            throw deadlock();
+        }));
+        assertEquals(1213, thrown.getErrorCode());
+        assertEquals(3, calls.get());
+        assertEquals(2, service.stats().retries());
+        assertEquals(1, service.stats().failed());
+    }
+
+    @Test
+    void retryableErrorsAreFoundInEitherChain() {
+        SQLException next = new SQLException("Batch entry failed");
+        next.setNextException(deadlock());
+        assertTrue(BookingService.isRetryable(next));
+        assertTrue(BookingService.isRetryable(new SQLException("Wrapped", new RuntimeException(deadlock()))));
+        assertTrue(BookingService.isRetryable(new SQLException("Serialization failure", "40001")));
+        assertFalse(BookingService.isRetryable(new SQLException("Syntax error", "42000", 1064)));
+
+        // A chain that loops ends instead of recursing forever
+        SQLException first = new SQLException("First");
+        SQLException second = new SQLException("Second");
+        first.setNextException(second);
+        second.initCause(first);
+        assertFalse(BookingService.isRetryable(first));
+    }
+
+    @Test
+    void bookingATakenSlotIsRejected() throws SQLException {
+        try (ConnectionPool migrated = TestDatabase.migrated()) {
+            DoctorSchedule schedule = new DoctorSchedule(migrated, new ReferenceData(migrated, Duration.ofMinutes(5)), 30);
+            BookingService booking = new BookingService(migrated, null, schedule, null, 3, Duration.ZERO);
+            int patientId = firstId(migrated, "SELECT MIN(patient_id) FROM Patient");
+            int doctorId = firstId(migrated, "SELECT MIN(staff_id) FROM Doctor");
+            Timestamp at = Timestamp.valueOf("2040-01-02 09:00:00");
+
+            int appointmentId = booking.book(new BillingWorkflow.Request(patientId, doctorId, at, null, 1, null)).value();
+            DoctorSchedule.ConflictException ex = assertThrows(DoctorSchedule.ConflictException.class,
+                    () -> booking.book(new BillingWorkflow.Request(patientId, doctorId, at, null, 1, null)));
+            assertEquals(appointmentId, ex.appointmentId());
+            // A Cancelled booking takes no slot
+            booking.book(new BillingWorkflow.Request(patientId, doctorId, at, null, 3, null));
+            assertEquals(1, schedule.size());
+        }
+    }
+
+    private static SQLException deadlock() {
+        return new SQLException("Deadlock found when trying to get lock", "40001", 1213);
+    }
+
+    private static int insert(Connection connection, int id) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO item (id) VALUES (?)")) {
+            ps.setInt(1, id);
+            ps.executeUpdate();
+        }
+        return id;
+    }
+
+    private int count() throws SQLException {
+        return firstId(pool, "SELECT COUNT(*) FROM item");
+    }
+
+    private static int firstId(ConnectionPool pool, String sql) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
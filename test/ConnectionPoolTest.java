@@ -0,0 +1,126 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ConnectionPoolTest {
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        pool = TestDatabase.pool("pool.minIdle", "1", "pool.maxSize", "2", "pool.borrowTimeoutMs", "100");
+        TestDatabase.execute(pool, "CREATE TABLE item (id INT PRIMARY KEY)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void returnedConnectionIsReused() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            assertTrue(connection.isValid(1));
+        }
+        try (Connection connection = pool.getConnection()) {
+            assertTrue(connection.isValid(1));
+        }
+        ConnectionPool.Stats stats = pool.stats();
+        assertEquals(1, stats.open());
+        assertEquals(1, stats.idle());
+        assertEquals(0, stats.active());
+    }
+
+    @Test
+    void borrowTimesOutWhenEveryConnectionIsInUse() throws SQLException {
+        try (Connection first = pool.getConnection(); Connection second = pool.getConnection()) {
+            assertNotSame(first, second);
+            assertEquals(2, pool.stats().active());
+            assertThrows(SQLTransientConnectionException.class, pool::getConnection);
+        }
+        // The failed borrow gave its permit back
+        try (Connection connection = pool.getConnection()) {
+            assertFalse(connection.isClosed());
+        }
+    }
+
+    @Test
+    void openTransactionIsRolledBackOnReturn() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement("INSERT INTO item (id) VALUES (1)")) {
+                ps.executeUpdate();
+            }
+        }
+        assertEquals(1, pool.stats().rollbacks());
+        try (Connection connection = pool.getConnection()) {
+            assertTrue(connection.getAutoCommit());
+            assertEquals(0, count(connection));
+        }
+    }
+
+    @Test
+    void committedWorkIsCounted() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement("INSERT INTO item (id) VALUES (1)")) {
+                ps.executeUpdate();
+            }
+            connection.commit();
+        }
+        assertEquals(1, pool.stats().commits());
+        assertEquals(0, pool.stats().rollbacks());
+        try (Connection connection = pool.getConnection()) {
+            assertEquals(1, count(connection));
+        }
+    }
+
+    @Test
+    void returnedConnectionCannotBeUsed() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.close();
+        assertTrue(connection.isClosed());
+        assertThrows(SQLException.class, () -> connection.prepareStatement("SELECT 1"));
+        // A second close is a no-op rather than a second return
+        connection.close();
+        assertEquals(1, pool.stats().idle());
+    }
+
+    @Test
+    void preparedStatementsComeFromTheCache() throws SQLException {
+        long misses = pool.stats().statementMisses();
+        for (int i = 0; i < 3; i++) {
+            try (Connection connection = pool.getConnection()) {
+                count(connection);
+            }
+        }
+        assertEquals(misses + 1, pool.stats().statementMisses());
+        assertEquals(2, pool.stats().statementHits());
+    }
+
+    @Test
+    void closedPoolRefusesBorrows() {
+        pool.close();
+        assertThrows(SQLException.class, pool::getConnection);
+        assertEquals(0, pool.stats().open());
+    }
+
+    private static int count(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT COUNT(*) FROM item");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
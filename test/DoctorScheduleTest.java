@@ -0,0 +1,207 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DoctorScheduleTest {
+
+    private static final LocalDate DAY = LocalDate.of(2040, 1, 2);
+    private static final int SCHEDULED = 1;
+    private static final int CANCELLED = 3;
+
+    private ConnectionPool pool;
+    private ReferenceData referenceData;
+    private DoctorSchedule schedule;
+    private int patientId;
+    private int doctorId;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        pool = TestDatabase.migrated();
+        patientId = firstId("SELECT MIN(patient_id) FROM Patient");
+        doctorId = firstId("SELECT MIN(staff_id) FROM Doctor");
+        // 30-minute slots from 08:00 to 18:00
+        referenceData = new ReferenceData(pool, Duration.ofMinutes(5));
+        schedule = new DoctorSchedule(pool, referenceData, 30);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void overlappingHoldIsRejected() throws SQLException {
+        DoctorSchedule.Hold hold = schedule.hold(doctorId, at(9, 0));
+        DoctorSchedule.ConflictException ex = assertThrows(DoctorSchedule.ConflictException.class,
+                () -> schedule.hold(doctorId, at(9, 15)));
+        assertEquals(doctorId, ex.doctorId());
+        // Another booking in progress, not a stored appointment
+        assertNull(ex.appointmentId());
+        DoctorSchedule.Hold next = schedule.hold(doctorId, at(9, 30));
+        DoctorSchedule.Hold otherDoctor = schedule.hold(doctorId + 1, at(9, 0));
+        assertEquals(3, schedule.size());
+        otherDoctor.close();
+        next.close();
+        hold.close();
+        assertEquals(0, schedule.size());
+    }
+
+    @Test
+    void closingAnUnconfirmedHoldFreesTheSlot() throws SQLException {
+        schedule.hold(doctorId, at(9, 0)).close();
+        assertEquals(0, schedule.size());
+        assertEquals(0, schedule.busySlots(doctorId, DAY));
+        DoctorSchedule.Hold hold = schedule.hold(doctorId, at(9, 0));
+        assertEquals(1, schedule.size());
+        hold.close();
+    }
+
+    @Test
+    void confirmedHoldKeepsTheSlotUntilReleased() throws SQLException {
+        try (DoctorSchedule.Hold hold = schedule.hold(doctorId, at(9, 0))) {
+            hold.confirm(42);
+        }
+        DoctorSchedule.ConflictException ex = assertThrows(DoctorSchedule.ConflictException.class,
+                () -> schedule.hold(doctorId, at(9, 0)));
+        assertEquals(42, ex.appointmentId());
+
+        schedule.release(42);
+        assertEquals(0, schedule.size());
+        schedule.hold(doctorId, at(9, 0)).close();
+    }
+
+    @Test
+    void busySlotsMarksTheGridSlot() throws SQLException {
+        assertEquals(20, schedule.slotsPerDay());
+        assertEquals(at(9, 0), schedule.slotStart(DAY, 2));
+        DoctorSchedule.Hold hold = schedule.hold(doctorId, at(9, 0));
+        assertEquals(1L << 2, schedule.busySlots(doctorId, DAY));
+        assertEquals(0, schedule.busySlots(doctorId, DAY.plusDays(1)));
+        hold.close();
+        assertEquals(0, schedule.busySlots(doctorId, DAY));
+    }
+
+    @Test
+    void warmIndexesStoredAppointmentsExceptCancelled() throws SQLException {
+        int booked = insertAppointment(at(10, 0), SCHEDULED);
+        insertAppointment(at(11, 0), CANCELLED);
+        insertAppointment(at(10, 0).minusYears(2), SCHEDULED);
+
+        assertEquals(1, schedule.warm(DAY.minusDays(1).atStartOfDay()));
+        assertEquals(DAY.minusDays(1).atStartOfDay(), schedule.indexedFrom());
+        DoctorSchedule.ConflictException ex = assertThrows(DoctorSchedule.ConflictException.class,
+                () -> schedule.hold(doctorId, at(10, 0)));
+        assertEquals(booked, ex.appointmentId());
+        schedule.hold(doctorId, at(11, 0)).close();
+        // Before the horizon only the in-transaction check guards the slot
+        schedule.hold(doctorId, at(10, 0).minusYears(2)).close();
+    }
+
+    @Test
+    void checkFreeSeesAppointmentsTheIndexDoesNot() throws SQLException {
+        int booked = insertAppointment(at(10, 0), SCHEDULED);
+        insertAppointment(at(11, 0), CANCELLED);
+        try (Connection connection = pool.getConnection()) {
+            DoctorSchedule.ConflictException ex = assertThrows(DoctorSchedule.ConflictException.class,
+                    () -> schedule.checkFree(connection, doctorId, at(10, 15)));
+            assertEquals(booked, ex.appointmentId());
+            schedule.checkFree(connection, doctorId, at(10, 30));
+            schedule.checkFree(connection, doctorId, at(11, 0));
+        }
+    }
+
+    @Test
+    void refreshDropsAnAppointmentThatWasCancelled() throws SQLException {
+        int booked = insertAppointment(at(10, 0), SCHEDULED);
+        schedule.warm(DAY.atStartOfDay());
+        assertEquals(1, schedule.size());
+
+        TestDatabase.execute(pool, "UPDATE Appointment SET status_id = " + CANCELLED + " WHERE appointment_id = " + booked);
+        schedule.refresh(booked);
+        assertEquals(0, schedule.size());
+        schedule.hold(doctorId, at(10, 0)).close();
+    }
+
+    @Test
+    void refreshReportsAnOverlapWrittenWithoutAHold() throws SQLException {
+        int booked = insertAppointment(at(10, 0), SCHEDULED);
+        schedule.warm(DAY.atStartOfDay());
+        int overlapping = insertAppointment(at(10, 15), SCHEDULED);
+
+        DoctorSchedule.ConflictException ex = assertThrows(DoctorSchedule.ConflictException.class,
+                () -> schedule.refresh(overlapping));
+        assertEquals(booked, ex.appointmentId());
+        assertEquals(1, schedule.size());
+    }
+
+    @Test
+    void reinstatingACancelledAppointmentChecksTheSlot() throws SQLException {
+        AppointmentTable appointments = new AppointmentTable(pool, referenceData, null, schedule, null);
+        Timestamp slot = Timestamp.valueOf(at(10, 0));
+        int cancelled = appointments.insertAppointment(patientId, doctorId, slot, "Test", CANCELLED);
+        int booked = appointments.insertAppointment(patientId, doctorId, slot, "Test", SCHEDULED);
+
+        DoctorSchedule.ConflictException ex = assertThrows(DoctorSchedule.ConflictException.class,
+                () -> appointments.updateAppointmentStatus(cancelled, SCHEDULED));
+        assertEquals(booked, ex.appointmentId());
+        assertEquals(CANCELLED, appointments.selectAppointmentByID(cancelled).orElseThrow().statusId());
+
+        // Once the other booking is cancelled the slot can be taken back
+        appointments.updateAppointmentStatus(booked, CANCELLED);
+        assertEquals(0, schedule.size());
+        assertEquals(1, appointments.updateAppointmentStatus(cancelled, SCHEDULED));
+        ex = assertThrows(DoctorSchedule.ConflictException.class, () -> schedule.hold(doctorId, at(10, 0)));
+        assertEquals(cancelled, ex.appointmentId());
+    }
+
+    @Test
+    void onlyCancelledTakesNoSlot() throws SQLException {
+        assertTrue(schedule.occupiesSlot(SCHEDULED));
+        assertFalse(schedule.occupiesSlot(CANCELLED));
+    }
+
+    private static LocalDateTime at(int hour, int minute) {
+        return DAY.atTime(hour, minute);
+    }
+
+    private int insertAppointment(LocalDateTime scheduledAt, int statusId) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement("INSERT INTO Appointment "
+                     + "(patient_id, doctor_id, scheduled_at, reason, status_id) VALUES (?, ?, ?, 'Test', ?)",
+                     Statement.RETURN_GENERATED_KEYS)) {
+            ps.setInt(1, patientId);
+            ps.setInt(2, doctorId);
+            ps.setTimestamp(3, Timestamp.valueOf(scheduledAt));
+            ps.setInt(4, statusId);
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                keys.next();
+                return keys.getInt(1);
+            }
+        }
+    }
+
+    private int firstId(String sql) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StatementCacheTest {
+
+    private static final int NO_KEYS = Statement.NO_GENERATED_KEYS;
+
+    private Connection connection;
+    private StatementCache.Counters counters;
+    private StatementCache cache;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection(TestDatabase.newUrl(), "sa", "");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE item (id INT PRIMARY KEY)");
+            stmt.executeUpdate("INSERT INTO item (id) VALUES (1), (2), (3)");
+        }
+        counters = new StatementCache.Counters();
+        cache = new StatementCache(connection, 2, counters);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        cache.clear();
+        connection.close();
+    }
+
+    @Test
+    void releasedStatementIsHandedOutAgain() throws SQLException {
+        PreparedStatement first = cache.checkout("SELECT id FROM item", NO_KEYS);
+        cache.release("SELECT id FROM item", NO_KEYS, first);
+        PreparedStatement second = cache.checkout("SELECT id FROM item", NO_KEYS);
+        assertSame(first, second);
+        assertEquals(1, counters.hits());
+        assertEquals(1, counters.misses());
+    }
+
+    @Test
+    void statementInUseIsNotShared() throws SQLException {
+        PreparedStatement outer = cache.checkout("SELECT id FROM item", NO_KEYS);
+        PreparedStatement inner = cache.checkout("SELECT id FROM item", NO_KEYS);
+        assertNotSame(outer, inner);
+        // The throwaway one is closed on release, the cached one kept
+        cache.release("SELECT id FROM item", NO_KEYS, inner);
+        cache.release("SELECT id FROM item", NO_KEYS, outer);
+        assertTrue(inner.isClosed());
+        assertFalse(outer.isClosed());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void generatedKeysModeIsPartOfTheKey() throws SQLException {
+        PreparedStatement plain = cache.checkout("INSERT INTO item (id) VALUES (?)", NO_KEYS);
+        cache.release("INSERT INTO item (id) VALUES (?)", NO_KEYS, plain);
+        PreparedStatement keys = cache.checkout("INSERT INTO item (id) VALUES (?)", Statement.RETURN_GENERATED_KEYS);
+        assertNotSame(plain, keys);
+        cache.release("INSERT INTO item (id) VALUES (?)", Statement.RETURN_GENERATED_KEYS, keys);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void releaseResetsTheStatementForTheNextCaller() throws SQLException {
+        String sql = "SELECT id FROM item WHERE id >= ? ORDER BY id";
+        PreparedStatement ps = cache.checkout(sql, NO_KEYS);
+        int defaultFetchSize = ps.getFetchSize();
+        ps.setInt(1, 1);
+        // H2 rejects a fetch size above max rows, so the reset has to restore them in the right order
+        ps.setMaxRows(100);
+        ps.setFetchSize(77);
+        ps.setQueryTimeout(5);
+        cache.release(sql, NO_KEYS, ps);
+
+        PreparedStatement again = cache.checkout(sql, NO_KEYS);
+        assertSame(ps, again);
+        assertEquals(0, again.getMaxRows());
+        assertEquals(defaultFetchSize, again.getFetchSize());
+        assertEquals(0, again.getQueryTimeout());
+        // The previous caller's parameter is gone
+        assertThrows(SQLException.class, again::executeQuery);
+        again.setInt(1, 1);
+        try (ResultSet rs = again.executeQuery()) {
+            int rows = 0;
+            while (rs.next()) {
+                rows++;
+            }
+            assertEquals(3, rows);
+        }
+        cache.release(sql, NO_KEYS, again);
+    }
+
+    @Test
+    void releaseDropsUnexecutedBatchRows() throws SQLException {
+        String sql = "INSERT INTO item (id) VALUES (?)";
+        PreparedStatement ps = cache.checkout(sql, NO_KEYS);
+        ps.setInt(1, 10);
+        ps.addBatch();
+        cache.release(sql, NO_KEYS, ps);
+
+        PreparedStatement again = cache.checkout(sql, NO_KEYS);
+        again.setInt(1, 11);
+        again.addBatch();
+        assertEquals(1, again.executeBatch().length);
+        cache.release(sql, NO_KEYS, again);
+    }
+
+    @Test
+    void leastRecentlyUsedStatementIsEvicted() throws SQLException {
+        PreparedStatement a = use("SELECT 1");
+        PreparedStatement b = use("SELECT 2");
+        use("SELECT 1");
+        PreparedStatement c = use("SELECT 3");
+        assertEquals(2, cache.size());
+        assertTrue(b.isClosed());
+        assertFalse(a.isClosed());
+        assertFalse(c.isClosed());
+        assertEquals(1, counters.evictions());
+    }
+
+    @Test
+    void statementsInUseAreEvictedOnceReleased() throws SQLException {
+        PreparedStatement a = cache.checkout("SELECT 1", NO_KEYS);
+        PreparedStatement b = cache.checkout("SELECT 2", NO_KEYS);
+        PreparedStatement c = cache.checkout("SELECT 3", NO_KEYS);
+        // Nothing can be evicted while every statement is checked out
+        assertEquals(3, cache.size());
+        cache.release("SELECT 1", NO_KEYS, a);
+        assertEquals(2, cache.size());
+        assertTrue(a.isClosed());
+        cache.release("SELECT 2", NO_KEYS, b);
+        cache.release("SELECT 3", NO_KEYS, c);
+        assertEquals(2, cache.size());
+        assertFalse(b.isClosed());
+        assertFalse(c.isClosed());
+    }
+
+    @Test
+    void clearClosesEverything() throws SQLException {
+        PreparedStatement a = use("SELECT 1");
+        PreparedStatement b = use("SELECT 2");
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertTrue(a.isClosed());
+        assertTrue(b.isClosed());
+    }
+
+    private PreparedStatement use(String sql) throws SQLException {
+        PreparedStatement ps = cache.checkout(sql, NO_KEYS);
+        cache.release(sql, NO_KEYS, ps);
+        return ps;
+    }
+}
@@ -0,0 +1,50 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// FRESH IN-MEMORY H2 (MySQL MODE) DATABASES FOR TESTS, ONE PER CALL
+public final class TestDatabase {
+
+    private static final AtomicInteger NEXT = new AtomicInteger();
+
+    private TestDatabase() {
+    }
+
+    /** JDBC url of a new, empty database that lives until the JVM exits. */
+    public static String newUrl() {
+        return "jdbc:h2:mem:test" + NEXT.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+    }
+
+    /** A pool over a new, empty database; extra pool.* keys are given as key, value pairs. */
+    public static ConnectionPool pool(String... settings) throws SQLException {
+        Properties props = new Properties();
+        props.setProperty("url", newUrl());
+        props.setProperty("user", "sa");
+        props.setProperty("password", "");
+        props.setProperty("pool.leakThresholdMs", "0");
+        for (int i = 0; i + 1 < settings.length; i += 2) {
+            props.setProperty(settings[i], settings[i + 1]);
+        }
+        return new ConnectionPool(props);
+    }
+
+    /** A pool over a new database with every migration applied (the MySQL-only triggers are skipped). */
+    public static ConnectionPool migrated() throws SQLException {
+        ConnectionPool pool = pool();
+        try (Connection connection = pool.getConnection()) {
+            SchemaMigrations.migrate(connection);
+        }
+        return pool;
+    }
+
+    public static void execute(ConnectionPool pool, String... sql) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             Statement stmt = connection.createStatement()) {
+            for (String statement : sql) {
+                stmt.executeUpdate(statement);
+            }
+        }
+    }
+}